@@ -916,18 +916,24 @@ public class Importer implements DisposableBean, ApplicationListener {
             LOGGER.fine("Running import " + context.getId());
         }
 
-        for (ImportTask task : context.getTasks()) {
-            if (!filter.include(task)) {
-                continue;
-            }
-            if (!task.readyForImport()) {
-                continue;
-            }
+        // the catalog changes of all the tasks are notified to the listeners at once
+        catalog.beginBatch();
+        try {
+            for (ImportTask task : context.getTasks()) {
+                if (!filter.include(task)) {
+                    continue;
+                }
+                if (!task.readyForImport()) {
+                    continue;
+                }
 
-            if (context.progress().isCanceled()) {
-                break;
+                if (context.progress().isCanceled()) {
+                    break;
+                }
+                run(task);
             }
-            run(task);
+        } finally {
+            catalog.commitBatch();
         }
 
         context.updated();
@@ -9,9 +9,9 @@ import org.geoserver.threadlocals.ThreadLocalsTransfer;
 import org.geowebcache.seed.SeederThreadPoolExecutor;
 
 /**
- * Combination of {@link org.geoserver.wms.ThreadLocalTransferExecutor} and {@link
- * SeederThreadPoolExecutor} so that Integrated GWC can preserve the current authentication when
- * seeding.
+ * A {@link SeederThreadPoolExecutor} transferring thread locals to the pool threads, like the WMS
+ * {@link org.geoserver.wms.RenderingExecutor} does, so that Integrated GWC can preserve the current
+ * authentication when seeding.
  *
  * <p>Will perform thread locals transfer using Spring registered {@link
  * org.geoserver.threadlocals.ThreadLocalTransfer} when starting a new task, and will clean up
@@ -26,7 +26,6 @@ public class SeederThreadLocalTransferExecutor extends SeederThreadPoolExecutor
         super(corePoolSize, maxPoolSize);
     }
 
-    /** Copied from {@link org.geoserver.wms.ThreadLocalTransferExecutor} */
     @Override
     public Future<?> submit(Runnable task) {
         ThreadLocalsTransfer threadLocalTransfer = new ThreadLocalsTransfer();
@@ -41,7 +40,6 @@ public class SeederThreadLocalTransferExecutor extends SeederThreadPoolExecutor
                 });
     }
 
-    /** Copied from {@link org.geoserver.wms.ThreadLocalTransferExecutor} */
     @Override
     public <T> Future<T> submit(Callable<T> task) {
         ThreadLocalsTransfer threadLocalTransfer = new ThreadLocalsTransfer();
@@ -56,7 +54,6 @@ public class SeederThreadLocalTransferExecutor extends SeederThreadPoolExecutor
                 });
     }
 
-    /** Copied from {@link org.geoserver.wms.ThreadLocalTransferExecutor} */
     @Override
     public <T> Future<T> submit(Runnable task, T result) {
         ThreadLocalsTransfer threadLocalTransfer = new ThreadLocalsTransfer();
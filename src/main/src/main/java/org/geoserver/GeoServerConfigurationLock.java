@@ -6,6 +6,7 @@
 package org.geoserver;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
@@ -22,6 +23,17 @@ import org.geotools.util.logging.Logging;
  * GeoServerConfigurationLock#setEnabled(boolean)} or by setting the system variable
  * {code}-DGeoServerConfigurationLock.enabled=false{code}
  *
+ * <p>Callers that know their changes are confined to a single workspace can use {@link
+ * #lock(LockType, String)} and {@link #tryLock(LockType, String)}, which hold the global lock in
+ * read mode, and a workspace lock in the requested mode. Configuration changes in different
+ * workspaces can thus proceed in parallel, while global locks still exclude all of them. Locks are
+ * always taken global first, then workspace, and a thread holds at most one workspace lock, so the
+ * ordering is deadlock free. Workspace locks are striped over a fixed number of read/write locks,
+ * two workspaces sharing a stripe simply get serialized. Workspace locking is disabled by default,
+ * it can be enabled using the system variable
+ * {code}-DGeoServerConfigurationLock.workspaceLocking=true{code}, otherwise workspace locks are
+ * turned into global ones.
+ *
  * @author Andrea Aime - GeoSolution
  */
 public class GeoServerConfigurationLock {
@@ -38,8 +50,29 @@ public class GeoServerConfigurationLock {
 
     private static final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock(true);
 
+    /** Number of workspace lock stripes */
+    static final int WORKSPACE_STRIPES = 64;
+
+    private static final ReentrantReadWriteLock[] workspaceLocks =
+            new ReentrantReadWriteLock[WORKSPACE_STRIPES];
+
+    static {
+        for (int i = 0; i < WORKSPACE_STRIPES; i++) {
+            workspaceLocks[i] = new ReentrantReadWriteLock(true);
+        }
+    }
+
     private static final ThreadLocal<LockType> currentLock = new ThreadLocal<>();
 
+    /** The workspace locked by the current thread, null if the lock is a global one */
+    private static final ThreadLocal<String> currentWorkspace = new ThreadLocal<>();
+
+    private static final LongAdder acquiredCount = new LongAdder();
+
+    private static final LongAdder timeoutCount = new LongAdder();
+
+    private static final LongAdder waitTime = new LongAdder();
+
     public static enum LockType {
         READ,
         WRITE
@@ -47,6 +80,8 @@ public class GeoServerConfigurationLock {
 
     private boolean enabled;
 
+    private boolean workspaceLocking;
+
     public GeoServerConfigurationLock() {
         String pvalue = System.getProperty("GeoServerConfigurationLock.enabled");
         if (pvalue != null) {
@@ -54,6 +89,9 @@ public class GeoServerConfigurationLock {
         } else {
             enabled = true;
         }
+        workspaceLocking =
+                Boolean.parseBoolean(
+                        System.getProperty("GeoServerConfigurationLock.workspaceLocking"));
 
         LOGGER.info("GeoServer configuration lock is " + (enabled ? "enabled" : "disabled"));
     }
@@ -63,19 +101,41 @@ public class GeoServerConfigurationLock {
      * method is called as well before the code exits
      */
     public void lock(LockType type) {
+        lock(type, null);
+    }
+
+    /**
+     * Opens a lock in the specified mode, limited to the given workspace (or a global one, if the
+     * workspace is null). To avoid deadlocks make sure the corresponding unlock method is called as
+     * well before the code exits
+     */
+    public void lock(LockType type, String workspace) {
         if (!enabled) {
             return;
         }
+        if (!workspaceLocking) {
+            workspace = null;
+        }
 
-        Lock lock = getLock(type);
-
-        lock.lock();
+        long start = System.nanoTime();
+        if (workspace == null) {
+            getLock(type).lock();
+        } else {
+            getLock(LockType.READ).lock();
+            getWorkspaceLock(type, workspace).lock();
+        }
+        recordAcquired(start);
         currentLock.set(type);
+        currentWorkspace.set(workspace);
 
         if (LOGGER.isLoggable(LEVEL)) {
             LOGGER.log(
                     LEVEL,
-                    "Thread " + Thread.currentThread().getId() + " got the lock in mode " + type);
+                    "Thread "
+                            + Thread.currentThread().getId()
+                            + " got the lock in mode "
+                            + type
+                            + (workspace != null ? " on workspace " + workspace : ""));
         }
     }
 
@@ -105,15 +165,45 @@ public class GeoServerConfigurationLock {
      * @return true if the lock was acquired and false otherwise
      */
     public boolean tryLock(LockType type) {
+        return tryLock(type, null);
+    }
+
+    /**
+     * Same as {@link #tryLock(LockType)}, but the lock is limited to the given workspace (or a
+     * global one, if the workspace is null)
+     *
+     * @return true if the lock was acquired and false otherwise
+     */
+    public boolean tryLock(LockType type, String workspace) {
         if (!enabled) {
             return true;
         }
-
-        Lock lock = getLock(type);
+        if (!workspaceLocking) {
+            workspace = null;
+        }
 
         boolean res = false;
+        long start = System.nanoTime();
         try {
-            res = lock.tryLock(DEFAULT_TRY_LOCK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (workspace == null) {
+                res = getLock(type).tryLock(DEFAULT_TRY_LOCK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } else {
+                Lock global = getLock(LockType.READ);
+                if (global.tryLock(DEFAULT_TRY_LOCK_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    long remaining =
+                            TimeUnit.MILLISECONDS.toNanos(DEFAULT_TRY_LOCK_TIMEOUT_MS)
+                                    - (System.nanoTime() - start);
+                    try {
+                        res =
+                                getWorkspaceLock(type, workspace)
+                                        .tryLock(remaining, TimeUnit.NANOSECONDS);
+                    } finally {
+                        if (!res) {
+                            global.unlock();
+                        }
+                    }
+                }
+            }
         } catch (InterruptedException e) {
             LOGGER.log(
                     Level.WARNING,
@@ -124,7 +214,11 @@ public class GeoServerConfigurationLock {
             res = false;
         } finally {
             if (res) {
+                recordAcquired(start);
                 currentLock.set(type);
+                currentWorkspace.set(workspace);
+            } else {
+                timeoutCount.increment();
             }
         }
 
@@ -135,14 +229,16 @@ public class GeoServerConfigurationLock {
                         "Thread "
                                 + Thread.currentThread().getId()
                                 + " got the lock in mode "
-                                + type);
+                                + type
+                                + (workspace != null ? " on workspace " + workspace : ""));
             } else {
                 LOGGER.log(
                         LEVEL,
                         "Thread "
                                 + Thread.currentThread().getId()
                                 + " could not get the lock in mode "
-                                + type);
+                                + type
+                                + (workspace != null ? " on workspace " + workspace : ""));
             }
         }
 
@@ -162,8 +258,9 @@ public class GeoServerConfigurationLock {
         } else {
             // core java does not have a notion of lock upgrade, one has to release the
             // read lock and get a write one
+            String workspace = currentWorkspace.get();
             unlock();
-            if (tryLock(LockType.WRITE)) {
+            if (tryLock(LockType.WRITE, workspace)) {
                 currentLock.set(LockType.WRITE);
             } else {
                 currentLock.set(null);
@@ -187,20 +284,29 @@ public class GeoServerConfigurationLock {
         if (type == null) {
             return;
         }
+        final String workspace = currentWorkspace.get();
         try {
-            Lock lock = getLock(type);
-
             if (LOGGER.isLoggable(LEVEL)) {
                 LOGGER.log(
                         LEVEL,
                         "Thread "
                                 + Thread.currentThread().getId()
                                 + " releasing the lock in mode "
-                                + type);
+                                + type
+                                + (workspace != null ? " on workspace " + workspace : ""));
+            }
+            if (workspace == null) {
+                getLock(type).unlock();
+            } else {
+                try {
+                    getWorkspaceLock(type, workspace).unlock();
+                } finally {
+                    getLock(LockType.READ).unlock();
+                }
             }
-            lock.unlock();
         } finally {
             currentLock.set(null);
+            currentWorkspace.set(null);
         }
     }
 
@@ -212,6 +318,41 @@ public class GeoServerConfigurationLock {
         this.enabled = enabled;
     }
 
+    /** Returns true if workspace locks are actually limited to the workspace */
+    public boolean isWorkspaceLocking() {
+        return workspaceLocking;
+    }
+
+    public void setWorkspaceLocking(boolean workspaceLocking) {
+        this.workspaceLocking = workspaceLocking;
+    }
+
+    /** Returns the number of locks acquired so far */
+    public long getAcquiredCount() {
+        return acquiredCount.sum();
+    }
+
+    /** Returns the number of lock attempts that failed to acquire the lock in time */
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    /** Returns the total time spent waiting to acquire locks, in the given unit */
+    public long getWaitTime(TimeUnit unit) {
+        return unit.convert(waitTime.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    private void recordAcquired(long start) {
+        acquiredCount.increment();
+        waitTime.add(System.nanoTime() - start);
+    }
+
+    private Lock getWorkspaceLock(LockType type, String workspace) {
+        ReentrantReadWriteLock stripe =
+                workspaceLocks[Math.floorMod(workspace.hashCode(), WORKSPACE_STRIPES)];
+        return type == LockType.WRITE ? stripe.writeLock() : stripe.readLock();
+    }
+
     /** */
     private Lock getLock(LockType type) {
         Lock lock;
@@ -231,4 +372,12 @@ public class GeoServerConfigurationLock {
     public LockType getCurrentLock() {
         return currentLock.get();
     }
+
+    /**
+     * Returns the workspace locked by the current thread, or {@code null} if the current lock is a
+     * global one
+     */
+    public String getCurrentWorkspace() {
+        return currentWorkspace.get();
+    }
 }
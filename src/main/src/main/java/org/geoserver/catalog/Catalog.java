@@ -1374,6 +1374,40 @@ public interface Catalog extends CatalogInfo {
     /** Removes a listener from the catalog. */
     void removeListener(CatalogListener listener);
 
+    /**
+     * Starts a batch of changes on the current thread. Until the matching {@link #commitBatch()}
+     * call the add, post modify and remove events are accumulated and coalesced for the {@link
+     * org.geoserver.catalog.event.CatalogBatchListener} listeners, and delivered to them in one go
+     * on commit. Other listeners, and the events sent before a change happens, are not affected.
+     *
+     * <p>The changes themselves are applied immediately, the batch does not provide rollback
+     * abilities. Batches can be nested, the events are delivered when the outermost one is
+     * committed. Callers must always commit the batch, typically in a finally block:
+     *
+     * <pre>
+     * catalog.beginBatch();
+     * try {
+     *     // add, save, remove catalog objects
+     * } finally {
+     *     catalog.commitBatch();
+     * }
+     * </pre>
+     *
+     * The default implementation does nothing, events are delivered as they happen.
+     */
+    default void beginBatch() {
+        // no batching support
+    }
+
+    /**
+     * Commits the batch started with {@link #beginBatch()}, delivering the accumulated events
+     *
+     * @throws CatalogException if one of the batch listeners failed handling the events
+     */
+    default void commitBatch() {
+        // no batching support
+    }
+
     /**
      * Fires the event for an object being added to the catalog.
      *
@@ -0,0 +1,130 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import com.google.common.cache.CacheStats;
+
+/**
+ * Point in time statistics of one of the {@link ResourcePool} caches.
+ *
+ * <p>The load statistics are only available for caches whose values are created by the cache
+ * itself, they are {@code null} for caches filled by putting values created elsewhere.
+ *
+ * @see ResourcePool#getCacheStatistics()
+ */
+public class ResourceCacheStatistics {
+
+    String name;
+    long size;
+    long maximumSize;
+    long hitCount;
+    long missCount;
+    double hitRate;
+    long evictionCount;
+    Long loadSuccessCount;
+    Long loadExceptionCount;
+    Long totalLoadTime;
+    Double averageLoadPenalty;
+
+    /**
+     * Builds the statistics of a cache
+     *
+     * @param name The cache name
+     * @param size The current number of entries
+     * @param maximumSize The maximum number of entries, or -1 if the cache is not bounded
+     * @param stats The cache statistics
+     * @param loading Whether the cache creates its own values, and has thus meaningful load
+     *     statistics
+     */
+    public ResourceCacheStatistics(
+            String name, long size, long maximumSize, CacheStats stats, boolean loading) {
+        this.name = name;
+        this.size = size;
+        this.maximumSize = maximumSize;
+        this.hitCount = stats.hitCount();
+        this.missCount = stats.missCount();
+        this.hitRate = stats.hitRate();
+        this.evictionCount = stats.evictionCount();
+        if (loading) {
+            this.loadSuccessCount = stats.loadSuccessCount();
+            this.loadExceptionCount = stats.loadExceptionCount();
+            this.totalLoadTime = stats.totalLoadTime();
+            this.averageLoadPenalty = stats.averageLoadPenalty();
+        }
+    }
+
+    /** The cache name, e.g., "dataStore" */
+    public String getName() {
+        return name;
+    }
+
+    /** The current number of entries */
+    public long getSize() {
+        return size;
+    }
+
+    /** The maximum number of entries, or -1 if the cache is not bounded */
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public double getHitRate() {
+        return hitRate;
+    }
+
+    /** Number of entries evicted because of size or idle time limits */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /** Number of values successfully created by the cache, or null if not tracked */
+    public Long getLoadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    /** Number of failed value creations, or null if not tracked */
+    public Long getLoadExceptionCount() {
+        return loadExceptionCount;
+    }
+
+    /** The total time spent loading new values, in nanoseconds, or null if not tracked */
+    public Long getTotalLoadTime() {
+        return totalLoadTime;
+    }
+
+    /** The average time spent loading a new value, in nanoseconds, or null if not tracked */
+    public Double getAverageLoadPenalty() {
+        return averageLoadPenalty;
+    }
+
+    @Override
+    public String toString() {
+        return "ResourceCacheStatistics[name="
+                + name
+                + ", size="
+                + size
+                + ", maximumSize="
+                + maximumSize
+                + ", hitCount="
+                + hitCount
+                + ", missCount="
+                + missCount
+                + ", evictionCount="
+                + evictionCount
+                + ", loadSuccessCount="
+                + loadSuccessCount
+                + ", totalLoadTime="
+                + totalLoadTime
+                + "]";
+    }
+}
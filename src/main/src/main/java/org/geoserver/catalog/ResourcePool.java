@@ -5,6 +5,13 @@
  */
 package org.geoserver.catalog;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.collect.ForwardingMap;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import java.awt.RenderingHints;
 import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
@@ -34,8 +41,13 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.measure.Unit;
@@ -49,7 +61,7 @@ import org.eclipse.xsd.XSDParticle;
 import org.eclipse.xsd.XSDSchema;
 import org.eclipse.xsd.XSDTypeDefinition;
 import org.geoserver.catalog.event.CatalogAddEvent;
-import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogBatchListener;
 import org.geoserver.catalog.event.CatalogModifyEvent;
 import org.geoserver.catalog.event.CatalogPostModifyEvent;
 import org.geoserver.catalog.event.CatalogRemoveEvent;
@@ -110,9 +122,9 @@ import org.geotools.referencing.CRS;
 import org.geotools.styling.Style;
 import org.geotools.styling.StyleImpl;
 import org.geotools.styling.StyledLayerDescriptor;
-import org.geotools.util.SoftValueHashMap;
 import org.geotools.util.URLs;
 import org.geotools.util.Utilities;
+import org.geotools.util.factory.GeoTools;
 import org.geotools.util.factory.Hints;
 import org.geotools.util.logging.Logging;
 import org.geotools.xml.DocumentFactory;
@@ -400,6 +412,27 @@ public class ResourcePool {
     protected Map<String, WebMapTileServer> createWmtsCache() {
         return new WMTSCache();
     }
+    /**
+     * Returns the statistics of the resource caches. Caches replaced by subclasses with a different
+     * {@link Map} implementation are not reported.
+     */
+    public List<ResourceCacheStatistics> getCacheStatistics() {
+        List<ResourceCacheStatistics> result = new ArrayList<>();
+        for (Map<?, ?> cache :
+                Arrays.asList(
+                        dataStoreCache,
+                        featureTypeCache,
+                        featureTypeAttributeCache,
+                        hintCoverageReaderCache,
+                        wmsCache,
+                        wmtsCache)) {
+            if (cache instanceof CatalogResourceCache) {
+                result.add(((CatalogResourceCache<?, ?>) cache).getStatistics());
+            }
+        }
+        return result;
+    }
+
     /**
      * Sets the size of the feature type cache.
      *
@@ -532,141 +565,126 @@ public class ResourcePool {
     @SuppressWarnings({"rawtypes", "unchecked"})
     public DataAccess<? extends FeatureType, ? extends Feature> getDataStore(DataStoreInfo info)
             throws IOException {
-
-        DataStoreInfo expandedStore = clone(info, true);
-
-        DataAccess<? extends FeatureType, ? extends Feature> dataStore = null;
         try {
             String id = info.getId();
-            dataStore = dataStoreCache.get(id);
-            if (dataStore == null) {
-                synchronized (dataStoreCache) {
-                    dataStore = dataStoreCache.get(id);
-                    if (dataStore == null) {
-                        // create data store
-                        Map<String, Serializable> connectionParameters =
-                                expandedStore.getConnectionParameters();
-
-                        // call this method to execute the hack which recognizes
-                        // urls which are relative to the data directory
-                        // TODO: find a better way to do this
-                        connectionParameters =
-                                ResourcePool.getParams(
-                                        connectionParameters, catalog.getResourceLoader());
-
-                        // obtain the factory
-                        DataAccessFactory factory = null;
-                        try {
-                            factory = getDataStoreFactory(info);
-                        } catch (IOException e) {
-                            throw new IOException(
-                                    "Failed to find the datastore factory for "
-                                            + info.getName()
-                                            + ", did you forget to install the store extension jar?");
-                        }
-                        if (factory == null) {
-                            throw new IOException(
-                                    "Failed to find the datastore factory for "
-                                            + info.getName()
-                                            + ", did you forget to install the store extension jar?");
-                        }
-                        Param[] params = factory.getParametersInfo();
-
-                        // ensure that the namespace parameter is set for the datastore
-                        if (!connectionParameters.containsKey("namespace") && params != null) {
-                            // if we grabbed the factory, check that the factory actually supports
-                            // a namespace parameter, if we could not get the factory, assume that
-                            // it does
-                            boolean supportsNamespace = true;
-                            supportsNamespace = false;
-
-                            for (Param p : params) {
-                                if ("namespace".equalsIgnoreCase(p.key)) {
-                                    supportsNamespace = true;
-                                    break;
-                                }
-                            }
-
-                            if (supportsNamespace) {
-                                WorkspaceInfo ws = info.getWorkspace();
-                                NamespaceInfo ns =
-                                        info.getCatalog().getNamespaceByPrefix(ws.getName());
-                                if (ns == null) {
-                                    ns = info.getCatalog().getDefaultNamespace();
-                                }
-                                if (ns != null) {
-                                    connectionParameters.put("namespace", ns.getURI());
-                                }
-                            }
-                        }
+            // cache only if the id is not null, no need to cache the stores
+            // returned from un-saved DataStoreInfo objects (it would be actually
+            // harmful, NPE when trying to dispose of them)
+            if (id == null) {
+                return createDataStore(info);
+            }
+            // concurrent requests for the same store wait for a single creation, while
+            // requests for other stores are not blocked
+            return dataStoreCache.get(id, () -> createDataStore(info));
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw (IOException) new IOException().initCause(e);
+        }
+    }
 
-                        // see if the store has a repository param, if so, pass the one wrapping
-                        // the store
-                        if (params != null) {
-                            for (Param p : params) {
-                                if (Repository.class.equals(p.getType())) {
-                                    connectionParameters.put(p.getName(), repository);
-                                }
-                            }
-                        }
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private DataAccess<? extends FeatureType, ? extends Feature> createDataStore(DataStoreInfo info)
+            throws IOException {
+        DataStoreInfo expandedStore = clone(info, true);
 
-                        // see if the store has a entity resolver param, if so, pass it down
-                        EntityResolver resolver = getEntityResolver();
-                        if (resolver != null && params != null) {
-                            for (Param p : params) {
-                                if (EntityResolver.class.equals(p.getType())) {
-                                    if (!(resolver instanceof Serializable)) {
-                                        resolver = new SerializableEntityResolver(resolver);
-                                    }
-                                    connectionParameters.put(p.getName(), (Serializable) resolver);
-                                }
-                            }
-                        }
+        // create data store
+        Map<String, Serializable> connectionParameters = expandedStore.getConnectionParameters();
 
-                        dataStore = DataStoreUtils.getDataAccess(connectionParameters);
-                        if (dataStore == null) {
-                            /*
-                             * Preserve DataStore retyping behaviour by calling
-                             * DataAccessFinder.getDataStore after the call to
-                             * DataStoreUtils.getDataStore above.
-                             *
-                             * TODO: DataAccessFinder can also find DataStores, and when retyping is
-                             * supported for DataAccess, we can use a single mechanism.
-                             */
-                            dataStore = DataAccessFinder.getDataStore(connectionParameters);
-                        }
+        // call this method to execute the hack which recognizes
+        // urls which are relative to the data directory
+        // TODO: find a better way to do this
+        connectionParameters =
+                ResourcePool.getParams(connectionParameters, catalog.getResourceLoader());
 
-                        if (dataStore == null) {
-                            throw new NullPointerException(
-                                    "Could not acquire data access '" + info.getName() + "'");
-                        }
+        // obtain the factory
+        DataAccessFactory factory = null;
+        try {
+            factory = getDataStoreFactory(info);
+        } catch (IOException e) {
+            throw new IOException(
+                    "Failed to find the datastore factory for "
+                            + info.getName()
+                            + ", did you forget to install the store extension jar?");
+        }
+        if (factory == null) {
+            throw new IOException(
+                    "Failed to find the datastore factory for "
+                            + info.getName()
+                            + ", did you forget to install the store extension jar?");
+        }
+        Param[] params = factory.getParametersInfo();
+
+        // ensure that the namespace parameter is set for the datastore
+        if (!connectionParameters.containsKey("namespace") && params != null) {
+            // if we grabbed the factory, check that the factory actually supports
+            // a namespace parameter, if we could not get the factory, assume that
+            // it does
+            boolean supportsNamespace = true;
+            supportsNamespace = false;
+
+            for (Param p : params) {
+                if ("namespace".equalsIgnoreCase(p.key)) {
+                    supportsNamespace = true;
+                    break;
+                }
+            }
 
-                        // cache only if the id is not null, no need to cache the stores
-                        // returned from un-saved DataStoreInfo objects (it would be actually
-                        // harmful, NPE when trying to dispose of them)
-                        if (id != null) {
-                            dataStoreCache.put(id, dataStore);
-                        }
-                    }
+            if (supportsNamespace) {
+                WorkspaceInfo ws = info.getWorkspace();
+                NamespaceInfo ns = info.getCatalog().getNamespaceByPrefix(ws.getName());
+                if (ns == null) {
+                    ns = info.getCatalog().getDefaultNamespace();
+                }
+                if (ns != null) {
+                    connectionParameters.put("namespace", ns.getURI());
                 }
             }
+        }
 
-            return dataStore;
-        } catch (Exception e) {
-            // if anything goes wrong we have to clean up the store anyways
-            if (dataStore != null) {
-                try {
-                    dataStore.dispose();
-                } catch (Exception ex) {
-                    // fine, we had to try
+        // see if the store has a repository param, if so, pass the one wrapping
+        // the store
+        if (params != null) {
+            for (Param p : params) {
+                if (Repository.class.equals(p.getType())) {
+                    connectionParameters.put(p.getName(), repository);
                 }
             }
-            if (e instanceof IOException) {
-                throw (IOException) e;
-            } else {
-                throw (IOException) new IOException().initCause(e);
+        }
+
+        // see if the store has a entity resolver param, if so, pass it down
+        EntityResolver resolver = getEntityResolver();
+        if (resolver != null && params != null) {
+            for (Param p : params) {
+                if (EntityResolver.class.equals(p.getType())) {
+                    if (!(resolver instanceof Serializable)) {
+                        resolver = new SerializableEntityResolver(resolver);
+                    }
+                    connectionParameters.put(p.getName(), (Serializable) resolver);
+                }
             }
         }
+
+        DataAccess<? extends FeatureType, ? extends Feature> dataStore =
+                DataStoreUtils.getDataAccess(connectionParameters);
+        if (dataStore == null) {
+            /*
+             * Preserve DataStore retyping behaviour by calling
+             * DataAccessFinder.getDataStore after the call to
+             * DataStoreUtils.getDataStore above.
+             *
+             * TODO: DataAccessFinder can also find DataStores, and when retyping is
+             * supported for DataAccess, we can use a single mechanism.
+             */
+            dataStore = DataAccessFinder.getDataStore(connectionParameters);
+        }
+
+        if (dataStore == null) {
+            throw new NullPointerException(
+                    "Could not acquire data access '" + info.getName() + "'");
+        }
+
+        return dataStore;
     }
 
     /**
@@ -1520,13 +1538,11 @@ public class ResourcePool {
      * @param hints Hints to use when loading the coverage, may be <code>null</code>.
      * @throws IOException Any errors that occur loading the reader.
      */
-    @SuppressWarnings("deprecation")
+    @SuppressWarnings({"deprecation", "unchecked"})
     private GridCoverageReader getGridCoverageReader(
             CoverageStoreInfo info, CoverageInfo coverageInfo, String coverageName, Hints hints)
             throws IOException {
 
-        CoverageStoreInfo expandedStore = clone(info, true);
-
         final AbstractGridFormat gridFormat = info.getFormat();
         if (gridFormat == null) {
             throw new IOException("Could not find the raster plugin for format " + info.getType());
@@ -1545,35 +1561,25 @@ public class ResourcePool {
             hints.add(new RenderingHints(Hints.EXECUTOR_SERVICE, coverageExecutor));
         }
         // look into the cache
-        Object key = new CoverageHintReaderKey(info.getId(), hints);
-        GridCoverageReader reader = hintCoverageReaderCache.get(key);
-
-        // if not found in cache, create it
-        if (reader == null) {
-            synchronized (hintCoverageReaderCache) {
-                if (key != null) {
+        CoverageHintReaderKey key = new CoverageHintReaderKey(info.getId(), hints);
+        GridCoverageReader reader;
+        Hints readerHints = hints;
+        if (hintCoverageReaderCache instanceof CatalogResourceCache) {
+            // concurrent requests for the same reader wait for a single creation, while
+            // requests for other readers are not blocked
+            reader =
+                    ((CatalogResourceCache<CoverageHintReaderKey, GridCoverageReader>)
+                                    hintCoverageReaderCache)
+                            .get(key, () -> createReader(info, gridFormat, readerHints));
+        } else {
+            reader = hintCoverageReaderCache.get(key);
+            // if not found in cache, create it
+            if (reader == null) {
+                synchronized (hintCoverageReaderCache) {
                     reader = hintCoverageReaderCache.get(key);
-                }
-                if (reader == null) {
-                    /////////////////////////////////////////////////////////
-                    //
-                    // Getting coverage reader using the format and the real path.
-                    //
-                    // /////////////////////////////////////////////////////////
-                    final String urlString = expandedStore.getURL();
-                    Object readObject = getObjectToRead(urlString);
-
-                    // readers might change the provided hints, pass down a defensive copy
-                    reader = gridFormat.getReader(readObject, hints);
                     if (reader == null) {
-                        throw new IOException(
-                                "Failed to create reader from "
-                                        + urlString
-                                        + " and hints "
-                                        + hints);
-                    }
-                    if (key != null) {
-                        hintCoverageReaderCache.put((CoverageHintReaderKey) key, reader);
+                        reader = createReader(info, gridFormat, hints);
+                        hintCoverageReaderCache.put(key, reader);
                     }
                 }
             }
@@ -1629,6 +1635,27 @@ public class ResourcePool {
         }
     }
 
+    private GridCoverageReader createReader(
+            CoverageStoreInfo info, AbstractGridFormat gridFormat, Hints hints) throws IOException {
+        CoverageStoreInfo expandedStore = clone(info, true);
+
+        /////////////////////////////////////////////////////////
+        //
+        // Getting coverage reader using the format and the real path.
+        //
+        // /////////////////////////////////////////////////////////
+        final String urlString = expandedStore.getURL();
+        Object readObject = getObjectToRead(urlString);
+
+        // readers might change the provided hints, pass down a defensive copy
+        GridCoverageReader reader = gridFormat.getReader(readObject, hints);
+        if (reader == null) {
+            throw new IOException(
+                    "Failed to create reader from " + urlString + " and hints " + hints);
+        }
+        return reader;
+    }
+
     /**
      * Attempted to convert the URL-ish string to a file object, otherwise just returns the string
      * itself
@@ -2235,6 +2262,48 @@ public class ResourcePool {
         return new GeoServerDataDirectory(catalog.getResourceLoader());
     }
 
+    /**
+     * Opens in background the data stores and coverage readers of the enabled stores, so that the
+     * first requests hitting them do not pay the connection and initialization costs. Failures are
+     * logged and otherwise ignored, the store will be opened again on first use.
+     *
+     * @param executor The executor running the store initializations
+     * @return A future completing once all the stores have been visited
+     */
+    public CompletableFuture<Void> prewarm(Executor executor) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (DataStoreInfo store : catalog.getDataStores()) {
+            if (store.isEnabled()) {
+                futures.add(prewarm(store, () -> getDataStore(store), executor));
+            }
+        }
+        for (CoverageStoreInfo store : catalog.getCoverageStores()) {
+            if (store.isEnabled()) {
+                // same hints used by the OGC services, to hit the same cache entry
+                futures.add(
+                        prewarm(
+                                store,
+                                () -> getGridCoverageReader(store, GeoTools.getDefaultHints()),
+                                executor));
+            }
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]));
+    }
+
+    private CompletableFuture<Void> prewarm(
+            StoreInfo store, Callable<?> loader, Executor executor) {
+        return CompletableFuture.runAsync(
+                () -> {
+                    try {
+                        loader.call();
+                        LOGGER.fine("Pre-warmed store " + store.getName());
+                    } catch (Exception e) {
+                        LOGGER.log(Level.WARNING, "Failed to pre-warm store " + store.getName(), e);
+                    }
+                },
+                executor);
+    }
+
     /** Disposes all cached resources. */
     public void dispose() {
         crsCache.clear();
@@ -2250,58 +2319,137 @@ public class ResourcePool {
 
     /**
      * Base class for all the resource caches, ensures type safety and provides an easier way to
-     * handle with resource disposal
+     * handle with resource disposal.
+     *
+     * <p>The caches are bounded in size and can be configured to expire idle entries, using the
+     * following system/environment variables, where {@code <name>} is the cache name:
+     *
+     * <ul>
+     *   <li>{@code org.geoserver.catalog.resourcePool.<name>.maxSize}: maximum number of entries, a
+     *       negative value means no limit
+     *   <li>{@code org.geoserver.catalog.resourcePool.<name>.expireAfterAccess}: seconds after
+     *       which an entry that was not accessed gets evicted, disabled by default
+     * </ul>
+     *
+     * Evicted entries are disposed right away, limits should hence be set above the number of
+     * resources that can be in concurrent use.
      *
      * @author Andrea Aime
      * @param <K>
      * @param <V>
      */
-    abstract class CatalogResourceCache<K, V> extends SoftValueHashMap<K, V> {
+    abstract class CatalogResourceCache<K, V> extends ForwardingMap<K, V> {
 
-        public CatalogResourceCache() {
-            this(100);
+        final String name;
+
+        final long maximumSize;
+
+        final Cache<K, V> cache;
+
+        /** Set when a value is put directly, in which case the load statistics are not tracked */
+        volatile boolean filledByPut;
+
+        public CatalogResourceCache(String name) {
+            this(name, -1);
         }
 
-        public CatalogResourceCache(int hardReferences) {
-            super(hardReferences);
-            super.cleaner =
-                    new ValueCleaner() {
+        public CatalogResourceCache(String name, long defaultMaximumSize) {
+            this.name = name;
+            this.maximumSize = getCacheProperty(name, "maxSize", defaultMaximumSize);
+            long expireAfterAccess = getCacheProperty(name, "expireAfterAccess", -1);
 
-                        @Override
-                        public void clean(Object key, Object object) {
-                            dispose((K) key, (V) object);
+            CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+            if (maximumSize >= 0) {
+                builder.maximumSize(maximumSize);
+            }
+            if (expireAfterAccess > 0) {
+                builder.expireAfterAccess(expireAfterAccess, TimeUnit.SECONDS);
+            }
+            RemovalListener<K, V> listener =
+                    n -> {
+                        // replaced values are still in use by whoever put the new one
+                        if (n.getCause() != RemovalCause.REPLACED && n.getValue() != null) {
+                            dispose(n.getKey(), n.getValue());
                         }
                     };
+            this.cache = builder.removalListener(listener).build();
         }
 
         @Override
-        public V remove(Object key) {
-            V object = super.remove(key);
-            if (object != null) {
-                dispose((K) key, object);
-            }
-            return object;
+        protected Map<K, V> delegate() {
+            return cache.asMap();
         }
 
         @Override
-        public void clear() {
-            for (Entry entry : entrySet()) {
-                try {
-                    dispose((K) entry.getKey(), (V) entry.getValue());
-                } catch (Exception e) {
-                    LOGGER.log(Level.WARNING, "Error dispoing entry: " + entry, e);
+        public V get(Object key) {
+            // going through the cache to record hits and misses
+            return key == null ? null : cache.getIfPresent(key);
+        }
+
+        /**
+         * Returns the value associated to the key, creating it with the loader if missing.
+         * Concurrent requests for the same key wait for a single load, requests for other keys, or
+         * for values already in the cache, are not blocked.
+         */
+        public V get(K key, Callable<? extends V> loader) throws IOException {
+            try {
+                return cache.get(key, loader);
+            } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
                 }
+                throw new IOException(cause);
             }
-            super.clear();
+        }
+
+        @Override
+        public V put(K key, V value) {
+            if (value == null) {
+                return remove(key);
+            }
+            filledByPut = true;
+            return super.put(key, value);
+        }
+
+        @Override
+        public void clear() {
+            // disposes all entries via the removal listener
+            cache.invalidateAll();
+        }
+
+        /** The cache name, used for configuration and statistics */
+        public String getName() {
+            return name;
+        }
+
+        /** Returns the maximum number of entries, or -1 if the cache is not bounded */
+        public long getMaximumSize() {
+            return maximumSize;
+        }
+
+        /** Returns a snapshot of the cache statistics */
+        public ResourceCacheStatistics getStatistics() {
+            return new ResourceCacheStatistics(
+                    name, cache.size(), maximumSize, cache.stats(), !filledByPut);
         }
 
         protected abstract void dispose(K key, V object);
     }
 
+    static long getCacheProperty(String cacheName, String key, long defaultValue) {
+        return GeoServerExtensions.getLongProperty(
+                "org.geoserver.catalog.resourcePool." + cacheName + "." + key, defaultValue);
+    }
+
     class FeatureTypeCache extends CatalogResourceCache<String, FeatureType> {
 
         public FeatureTypeCache(int maxSize) {
-            super(maxSize);
+            super("featureType", maxSize);
         }
 
         protected void dispose(String key, FeatureType featureType) {
@@ -2329,6 +2477,11 @@ public class ResourcePool {
      */
     @SuppressWarnings("rawtypes")
     class DataStoreCache extends CatalogResourceCache<String, DataAccess> {
+
+        public DataStoreCache() {
+            super("dataStore");
+        }
+
         /**
          * Ensure data access entry is removed from catalog, and ensure DataAccess dispose is called
          * to return system resources.
@@ -2363,6 +2516,10 @@ public class ResourcePool {
 
     class CoverageReaderCache extends CatalogResourceCache<String, GridCoverageReader> {
 
+        public CoverageReaderCache() {
+            super("coverageReader");
+        }
+
         protected void dispose(String id, GridCoverageReader reader) {
             CoverageStoreInfo info = catalog.getCoverageStore(id);
             if (info != null) {
@@ -2383,6 +2540,10 @@ public class ResourcePool {
     class CoverageHintReaderCache
             extends CatalogResourceCache<CoverageHintReaderKey, GridCoverageReader> {
 
+        public CoverageHintReaderCache() {
+            super("coverageHintReader");
+        }
+
         protected void dispose(CoverageHintReaderKey key, GridCoverageReader reader) {
             CoverageStoreInfo info = catalog.getCoverageStore(key.id);
             if (info != null) {
@@ -2442,7 +2603,7 @@ public class ResourcePool {
     class FeatureTypeAttributeCache extends CatalogResourceCache<String, List<AttributeTypeInfo>> {
 
         FeatureTypeAttributeCache(int size) {
-            super(size);
+            super("featureTypeAttribute", size);
         }
 
         @Override
@@ -2453,6 +2614,10 @@ public class ResourcePool {
 
     class WMSCache extends CatalogResourceCache<String, WebMapServer> {
 
+        public WMSCache() {
+            super("wms");
+        }
+
         @Override
         protected void dispose(String key, WebMapServer server) {
             HTTPClient client = server.getHTTPClient();
@@ -2476,6 +2641,10 @@ public class ResourcePool {
 
     class WMTSCache extends CatalogResourceCache<String, WebMapTileServer> {
 
+        public WMTSCache() {
+            super("wmts");
+        }
+
         @Override
         protected void dispose(String key, WebMapTileServer server) {
             HTTPClient client = server.getHTTPClient();
@@ -2497,7 +2666,8 @@ public class ResourcePool {
         }
     }
     /** Listens to catalog events clearing cache entires when resources are modified. */
-    public class CacheClearingListener extends CatalogVisitorAdapter implements CatalogListener {
+    public class CacheClearingListener extends CatalogVisitorAdapter
+            implements CatalogBatchListener {
 
         public void handleAddEvent(CatalogAddEvent event) {}
 
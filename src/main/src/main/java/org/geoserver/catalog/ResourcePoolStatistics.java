@@ -0,0 +1,64 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.geotools.util.logging.Logging;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Publishes the {@link ResourcePool} cache statistics in the platform MBean server, under the
+ * {@link #OBJECT_NAME} name. The statistics are always looked up against the current resource pool
+ * of the catalog, as it gets replaced on reload.
+ */
+public class ResourcePoolStatistics
+        implements ResourcePoolStatisticsMXBean, InitializingBean, DisposableBean {
+
+    static final Logger LOGGER = Logging.getLogger(ResourcePoolStatistics.class);
+
+    public static final String OBJECT_NAME = "org.geoserver:type=ResourcePool";
+
+    Catalog catalog;
+
+    ObjectName registered;
+
+    public ResourcePoolStatistics(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @Override
+    public List<ResourceCacheStatistics> getCacheStatistics() {
+        return catalog.getResourcePool().getCacheStatistics();
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        try {
+            // might be already there, e.g., multiple application contexts in the same JVM
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+                registered = name;
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to register the resource pool statistics", e);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (registered != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registered);
+            registered = null;
+        }
+    }
+}
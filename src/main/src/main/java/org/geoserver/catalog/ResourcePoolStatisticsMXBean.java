@@ -0,0 +1,14 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.util.List;
+
+/** JMX view of the {@link ResourcePool} cache statistics */
+public interface ResourcePoolStatisticsMXBean {
+
+    /** Returns the statistics of each resource cache */
+    List<ResourceCacheStatistics> getCacheStatistics();
+}
@@ -0,0 +1,50 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.event;
+
+import java.util.List;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogException;
+
+/**
+ * Catalog listener that can handle the changes performed in a batch (see {@link
+ * Catalog#beginBatch()}) in one go.
+ *
+ * <p>While a batch is in progress the add, post modify and remove events are not delivered to the
+ * listener, but accumulated and coalesced, and then passed to {@link #handleBatch(List)} when the
+ * batch is committed. The events sent before a change happens ({@link CatalogBeforeAddEvent} and
+ * {@link CatalogModifyEvent}) are still delivered immediately. Listeners that do not implement this
+ * interface keep on receiving all events as they happen.
+ */
+public interface CatalogBatchListener extends CatalogListener {
+
+    /**
+     * Handles the changes performed in a batch. The events are sorted in the order the changes
+     * occurred, and are coalesced so that there is at most one event per catalog object:
+     *
+     * <ul>
+     *   <li>Multiple post modify events are merged into a single one, reporting each changed
+     *       property once, with the value it had before the first change and the value it has after
+     *       the last one
+     *   <li>Post modify events following an add are dropped, the added object already has its final
+     *       state
+     *   <li>Post modify events preceding a remove are dropped
+     *   <li>An add followed by a remove results in no event at all
+     * </ul>
+     *
+     * The default implementation replays the events through the single event handling methods.
+     */
+    default void handleBatch(List<CatalogEvent> events) throws CatalogException {
+        for (CatalogEvent event : events) {
+            if (event instanceof CatalogAddEvent) {
+                handleAddEvent((CatalogAddEvent) event);
+            } else if (event instanceof CatalogPostModifyEvent) {
+                handlePostModifyEvent((CatalogPostModifyEvent) event);
+            } else if (event instanceof CatalogRemoveEvent) {
+                handleRemoveEvent((CatalogRemoveEvent) event);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.event;
+
+import java.util.List;
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.CatalogInfo;
+
+/**
+ * Catalog listener running an action, typically emptying a cache, when catalog objects are added,
+ * removed or modified, and when the catalog is reloaded. The changes can be restricted to given
+ * types of catalog objects. A batch of changes runs the action at most once.
+ */
+public class CatalogInvalidator implements CatalogBatchListener {
+
+    Runnable invalidate;
+
+    Class<? extends CatalogInfo>[] types;
+
+    /**
+     * Builds a new invalidator
+     *
+     * @param invalidate the action to run on catalog changes
+     * @param types the types of catalog objects whose changes run the action, all changes do if
+     *     none is provided
+     */
+    @SafeVarargs
+    public CatalogInvalidator(Runnable invalidate, Class<? extends CatalogInfo>... types) {
+        this.invalidate = invalidate;
+        this.types = types;
+    }
+
+    boolean isRelevant(CatalogEvent event) {
+        if (types.length == 0) {
+            return true;
+        }
+        for (Class<? extends CatalogInfo> type : types) {
+            if (type.isInstance(event.getSource())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void invalidate(CatalogEvent event) {
+        if (isRelevant(event)) {
+            invalidate.run();
+        }
+    }
+
+    @Override
+    public void handleBatch(List<CatalogEvent> events) throws CatalogException {
+        if (events.stream().anyMatch(this::isRelevant)) {
+            invalidate.run();
+        }
+    }
+
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+        invalidate(event);
+    }
+
+    @Override
+    public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+        invalidate(event);
+    }
+
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+        // we use the post event
+    }
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+        invalidate(event);
+    }
+
+    @Override
+    public void reloaded() {
+        invalidate.run();
+    }
+}
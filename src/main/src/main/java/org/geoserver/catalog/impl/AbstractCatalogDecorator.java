@@ -623,6 +623,16 @@ public class AbstractCatalogDecorator extends AbstractDecorator<Catalog> impleme
         delegate.removeListener(listener);
     }
 
+    @Override
+    public void beginBatch() {
+        delegate.beginBatch();
+    }
+
+    @Override
+    public void commitBatch() {
+        delegate.commitBatch();
+    }
+
     public void fireAdded(CatalogInfo object) {
         delegate.fireAdded(object);
     }
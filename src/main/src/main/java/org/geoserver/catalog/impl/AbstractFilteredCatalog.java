@@ -801,6 +801,16 @@ public abstract class AbstractFilteredCatalog extends AbstractDecorator<Catalog>
         delegate.removeListeners(listenerClass);
     }
 
+    @Override
+    public void beginBatch() {
+        delegate.beginBatch();
+    }
+
+    @Override
+    public void commitBatch() {
+        delegate.commitBatch();
+    }
+
     @Override
     public CatalogCapabilities getCatalogCapabilities() {
         return delegate.getCatalogCapabilities();
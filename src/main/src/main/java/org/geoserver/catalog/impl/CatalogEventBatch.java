@@ -0,0 +1,122 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogBatchListener;
+import org.geoserver.catalog.event.CatalogEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.catalog.event.impl.CatalogPostModifyEventImpl;
+
+/**
+ * Accumulates and coalesces the events generated during a catalog batch, according to the rules
+ * described in {@link CatalogBatchListener#handleBatch(List)}.
+ */
+class CatalogEventBatch {
+
+    /** Nesting level of the batch, events are delivered when the outermost batch is committed */
+    int depth;
+
+    /** The events, with nulls in place of the ones that got coalesced */
+    List<CatalogEvent> events = new ArrayList<>();
+
+    /** Position of the pending event for each object, by id */
+    Map<String, Integer> positions = new HashMap<>();
+
+    /** Position of the pending event for objects without an id */
+    Map<CatalogInfo, Integer> anonymousPositions = new IdentityHashMap<>();
+
+    /** Adds an event to the batch, coalescing it with the pending one for the same object */
+    void add(CatalogEvent event) {
+        CatalogInfo source = event.getSource();
+        Integer position = getPosition(source);
+        CatalogEvent previous = position != null ? events.get(position) : null;
+
+        if (previous == null) {
+            setPosition(source, events.size());
+            events.add(event);
+        } else if (event instanceof CatalogPostModifyEvent) {
+            if (previous instanceof CatalogPostModifyEvent) {
+                events.set(
+                        position,
+                        merge((CatalogPostModifyEvent) previous, (CatalogPostModifyEvent) event));
+            }
+            // a modification after an add is already reflected by the added object
+        } else if (event instanceof CatalogRemoveEvent) {
+            events.set(position, null);
+            if (previous instanceof CatalogAddEvent) {
+                // never seen by the listeners, no need to report it
+                setPosition(source, null);
+            } else {
+                setPosition(source, events.size());
+                events.add(event);
+            }
+        } else {
+            // e.g., an object removed and added back in the same batch, keep both
+            setPosition(source, events.size());
+            events.add(event);
+        }
+    }
+
+    private Integer getPosition(CatalogInfo source) {
+        String id = source.getId();
+        return id != null ? positions.get(id) : anonymousPositions.get(source);
+    }
+
+    private void setPosition(CatalogInfo source, Integer position) {
+        String id = source.getId();
+        if (id != null && position != null) {
+            positions.put(id, position);
+        } else if (id != null) {
+            positions.remove(id);
+        } else if (position != null) {
+            anonymousPositions.put(source, position);
+        } else {
+            anonymousPositions.remove(source);
+        }
+    }
+
+    private CatalogPostModifyEvent merge(
+            CatalogPostModifyEvent previous, CatalogPostModifyEvent event) {
+        List<String> propertyNames = new ArrayList<>(previous.getPropertyNames());
+        List<Object> oldValues = new ArrayList<>(previous.getOldValues());
+        List<Object> newValues = new ArrayList<>(previous.getNewValues());
+        List<String> names = event.getPropertyNames();
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            Object newValue = event.getNewValues().get(i);
+            int idx = propertyNames.indexOf(name);
+            if (idx >= 0) {
+                newValues.set(idx, newValue);
+            } else {
+                propertyNames.add(name);
+                oldValues.add(event.getOldValues().get(i));
+                newValues.add(newValue);
+            }
+        }
+
+        CatalogPostModifyEventImpl merged = new CatalogPostModifyEventImpl();
+        merged.setSource(event.getSource());
+        merged.setPropertyNames(propertyNames);
+        merged.setOldValues(oldValues);
+        merged.setNewValues(newValues);
+        return merged;
+    }
+
+    /** Returns the coalesced events, in the order the changes occurred */
+    List<CatalogEvent> getEvents() {
+        List<CatalogEvent> result = new ArrayList<>(events.size());
+        events.stream().filter(Objects::nonNull).forEach(result::add);
+        return result;
+    }
+}
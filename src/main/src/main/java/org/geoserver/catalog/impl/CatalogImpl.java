@@ -59,6 +59,7 @@ import org.geoserver.catalog.WMTSLayerInfo;
 import org.geoserver.catalog.WMTSStoreInfo;
 import org.geoserver.catalog.WorkspaceInfo;
 import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogBatchListener;
 import org.geoserver.catalog.event.CatalogBeforeAddEvent;
 import org.geoserver.catalog.event.CatalogEvent;
 import org.geoserver.catalog.event.CatalogListener;
@@ -104,6 +105,9 @@ public class CatalogImpl implements Catalog {
     /** listeners */
     protected List listeners = new CopyOnWriteArrayList<>();
 
+    /** the batch in progress on the current thread, if any */
+    private final ThreadLocal<CatalogEventBatch> batch = new ThreadLocal<>();
+
     /** resources */
     protected ResourcePool resourcePool;
 
@@ -1638,6 +1642,54 @@ public class CatalogImpl implements Catalog {
                 .forEach(l -> listeners.remove(l));
     }
 
+    @Override
+    public void beginBatch() {
+        CatalogEventBatch current = batch.get();
+        if (current == null) {
+            current = new CatalogEventBatch();
+            batch.set(current);
+        }
+        current.depth++;
+    }
+
+    @Override
+    public void commitBatch() {
+        CatalogEventBatch current = batch.get();
+        if (current == null) {
+            throw new IllegalStateException("No batch in progress");
+        }
+        if (--current.depth > 0) {
+            return;
+        }
+        batch.remove();
+
+        List<CatalogEvent> events = current.getEvents();
+        if (events.isEmpty()) {
+            return;
+        }
+        CatalogException toThrow = null;
+        for (Object l : listeners) {
+            if (l instanceof CatalogBatchListener) {
+                try {
+                    ((CatalogBatchListener) l).handleBatch(events);
+                } catch (Throwable t) {
+                    if (t instanceof CatalogException && toThrow == null) {
+                        toThrow = (CatalogException) t;
+                    } else if (LOGGER.isLoggable(Level.WARNING)) {
+                        LOGGER.log(
+                                Level.WARNING,
+                                "Catalog listener threw exception handling batch.",
+                                t);
+                    }
+                }
+            }
+        }
+
+        if (toThrow != null) {
+            throw toThrow;
+        }
+    }
+
     public Iterator search(String cql) {
         // TODO Auto-generated method stub
         return null;
@@ -1721,9 +1773,23 @@ public class CatalogImpl implements Catalog {
     protected void event(CatalogEvent event) {
         CatalogException toThrow = null;
 
+        // in a batch the events following a change are delivered on commit to batch listeners
+        CatalogEventBatch current = batch.get();
+        boolean batched =
+                current != null
+                        && (event instanceof CatalogAddEvent
+                                || event instanceof CatalogPostModifyEvent
+                                || event instanceof CatalogRemoveEvent);
+        if (batched) {
+            current.add(event);
+        }
+
         for (Iterator l = listeners.iterator(); l.hasNext(); ) {
             try {
                 CatalogListener listener = (CatalogListener) l.next();
+                if (batched && listener instanceof CatalogBatchListener) {
+                    continue;
+                }
 
                 if (event instanceof CatalogAddEvent) {
                     listener.handleAddEvent((CatalogAddEvent) event);
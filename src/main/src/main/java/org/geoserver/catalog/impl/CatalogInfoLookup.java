@@ -8,6 +8,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -29,6 +30,14 @@ import org.opengis.feature.type.Name;
  * <p>The lookups by predicate have been tested and optimized for performance, in particular the
  * current for loops turned out to be significantly faster than building and returning streams
  *
+ * <p>The value maps matching a given query class are computed once and cached, so that lookups do
+ * not need to scan the class keys and run {@link Class#isAssignableFrom(Class)} on each call. The
+ * cache is reset whenever a new implementation class is added to the lookup.
+ *
+ * <p>Subclasses can register {@link SecondaryIndex} objects, that group the values by the
+ * identifier of a related object (e.g., the store of a resource), and are kept in synch on add,
+ * remove and update.
+ *
  * @param <T>
  */
 class CatalogInfoLookup<T extends CatalogInfo> {
@@ -39,11 +48,32 @@ class CatalogInfoLookup<T extends CatalogInfo> {
     Function<T, Name> nameMapper;
     static final Predicate TRUE = x -> true;
 
+    /** The id maps matching a given query class */
+    volatile ConcurrentHashMap<Class<?>, List<Map<String, T>>> idBuckets =
+            new ConcurrentHashMap<>();
+
+    /** The name maps matching a given query class */
+    volatile ConcurrentHashMap<Class<?>, List<Map<Name, T>>> nameBuckets =
+            new ConcurrentHashMap<>();
+
+    /** The secondary indexes, set up at construction time */
+    List<SecondaryIndex<T>> indexes = new ArrayList<>();
+
     public CatalogInfoLookup(Function<T, Name> nameMapper) {
         super();
         this.nameMapper = nameMapper;
     }
 
+    /**
+     * Registers a secondary index in this lookup. Meant to be called only at construction time,
+     * before any value is added
+     */
+    protected SecondaryIndex<T> addIndex(Function<T, Collection<String>> keysMapper) {
+        SecondaryIndex<T> index = new SecondaryIndex<>(keysMapper, nameMapper);
+        indexes.add(index);
+        return index;
+    }
+
     <K> Map<K, T> getMapForValue(ConcurrentHashMap<Class<T>, Map<K, T>> maps, T value) {
         Class<T> vc;
         if (Proxy.isProxyClass(value.getClass())) {
@@ -61,10 +91,44 @@ class CatalogInfoLookup<T extends CatalogInfo> {
         Map<K, T> vcMap = maps.get(vc);
         if (vcMap == null) {
             vcMap = maps.computeIfAbsent(vc, k -> new ConcurrentSkipListMap<K, T>());
+            resetBuckets();
         }
         return vcMap;
     }
 
+    /** Drops the cached class buckets, to be called when the set of value maps changes */
+    void resetBuckets() {
+        idBuckets = new ConcurrentHashMap<>();
+        nameBuckets = new ConcurrentHashMap<>();
+    }
+
+    /** Returns the maps whose key class is compatible with the query class */
+    <K> List<Map<K, T>> getBuckets(
+            ConcurrentHashMap<Class<?>, List<Map<K, T>>> buckets,
+            ConcurrentHashMap<Class<T>, Map<K, T>> maps,
+            Class<?> clazz) {
+        List<Map<K, T>> result = buckets.get(clazz);
+        if (result == null) {
+            List<Map<K, T>> matches = new ArrayList<>();
+            for (Map.Entry<Class<T>, Map<K, T>> entry : maps.entrySet()) {
+                if (clazz.isAssignableFrom(entry.getKey())) {
+                    matches.add(entry.getValue());
+                }
+            }
+            result = Collections.unmodifiableList(matches);
+            buckets.put(clazz, result);
+        }
+        return result;
+    }
+
+    List<Map<String, T>> getIdBuckets(Class<?> clazz) {
+        return getBuckets(idBuckets, idMultiMap, clazz);
+    }
+
+    List<Map<Name, T>> getNameBuckets(Class<?> clazz) {
+        return getBuckets(nameBuckets, nameMultiMap, clazz);
+    }
+
     public T add(T value) {
         if (Proxy.isProxyClass(value.getClass())) {
             ModificationProxy h = (ModificationProxy) Proxy.getInvocationHandler(value);
@@ -73,6 +137,9 @@ class CatalogInfoLookup<T extends CatalogInfo> {
         Map<Name, T> nameMap = getMapForValue(nameMultiMap, value);
         Name name = nameMapper.apply(value);
         nameMap.put(name, value);
+        for (SecondaryIndex<T> index : indexes) {
+            index.add(value, name);
+        }
         Map<String, T> idMap = getMapForValue(idMultiMap, value);
         return idMap.put(value.getId(), value);
     }
@@ -90,6 +157,9 @@ class CatalogInfoLookup<T extends CatalogInfo> {
         Name name = nameMapper.apply(value);
         Map<Name, T> nameMap = getMapForValue(nameMultiMap, value);
         nameMap.remove(name);
+        for (SecondaryIndex<T> index : indexes) {
+            index.remove(value, name);
+        }
         Map<String, T> idMap = getMapForValue(idMultiMap, value);
         return idMap.remove(value.getId());
     }
@@ -106,11 +176,33 @@ class CatalogInfoLookup<T extends CatalogInfo> {
             nameMap.remove(oldName);
             nameMap.put(newName, actualValue);
         }
+        for (SecondaryIndex<T> index : indexes) {
+            index.update(actualValue, proxiedValue, oldName, newName);
+        }
+    }
+
+    /**
+     * Changes the name of a value without touching its other properties, used when the name depends
+     * on a related object that got renamed
+     */
+    protected void rename(Class<?> clazz, Name oldName, Name newName) {
+        Map<Name, T> nameMap = getMapForValue(nameMultiMap, clazz);
+        T value = nameMap.remove(oldName);
+        if (value != null) {
+            nameMap.put(newName, value);
+            for (SecondaryIndex<T> index : indexes) {
+                index.rename(value, oldName, newName);
+            }
+        }
     }
 
     public void clear() {
         idMultiMap.clear();
         nameMultiMap.clear();
+        for (SecondaryIndex<T> index : indexes) {
+            index.clear();
+        }
+        resetBuckets();
     }
 
     /**
@@ -123,15 +215,33 @@ class CatalogInfoLookup<T extends CatalogInfo> {
      */
     <U extends CatalogInfo> List<U> list(Class<U> clazz, Predicate<U> predicate) {
         ArrayList<U> result = new ArrayList<U>();
-        for (Class<T> key : nameMultiMap.keySet()) {
-            if (clazz.isAssignableFrom(key)) {
-                Map<Name, T> valueMap = nameMultiMap.get(key);
-                if (valueMap != null) {
-                    for (T v : valueMap.values()) {
-                        final U u = (U) v;
-                        if (predicate == TRUE || predicate.test(u)) {
-                            result.add(u);
-                        }
+        List<Map<Name, T>> buckets = getNameBuckets(clazz);
+        for (int i = 0; i < buckets.size(); i++) {
+            for (T v : buckets.get(i).values()) {
+                final U u = (U) v;
+                if (predicate == TRUE || predicate.test(u)) {
+                    result.add(u);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Looks up objects by class and matching predicate, among the ones associated to the given key
+     * in the secondary index
+     */
+    <U extends CatalogInfo> List<U> list(
+            SecondaryIndex<T> index, String key, Class<U> clazz, Predicate<U> predicate) {
+        ArrayList<U> result = new ArrayList<U>();
+        Map<Name, T> valueMap = index.get(key);
+        if (valueMap != null) {
+            for (T v : valueMap.values()) {
+                if (clazz.isInstance(v)) {
+                    final U u = (U) v;
+                    if (predicate == TRUE || predicate.test(u)) {
+                        result.add(u);
                     }
                 }
             }
@@ -142,15 +252,11 @@ class CatalogInfoLookup<T extends CatalogInfo> {
 
     /** Looks up a CatalogInfo by class and identifier */
     public <U extends CatalogInfo> U findById(String id, Class<U> clazz) {
-        for (Class<T> key : idMultiMap.keySet()) {
-            if (clazz.isAssignableFrom(key)) {
-                Map<String, T> valueMap = idMultiMap.get(key);
-                if (valueMap != null) {
-                    T t = valueMap.get(id);
-                    if (t != null) {
-                        return (U) t;
-                    }
-                }
+        List<Map<String, T>> buckets = getIdBuckets(clazz);
+        for (int i = 0; i < buckets.size(); i++) {
+            T t = buckets.get(i).get(id);
+            if (t != null) {
+                return (U) t;
             }
         }
 
@@ -159,15 +265,11 @@ class CatalogInfoLookup<T extends CatalogInfo> {
 
     /** Looks up a CatalogInfo by class and name */
     public <U extends CatalogInfo> U findByName(Name name, Class<U> clazz) {
-        for (Class<T> key : nameMultiMap.keySet()) {
-            if (clazz.isAssignableFrom(key)) {
-                Map<Name, T> valueMap = nameMultiMap.get(key);
-                if (valueMap != null) {
-                    T t = valueMap.get(name);
-                    if (t != null) {
-                        return (U) t;
-                    }
-                }
+        List<Map<Name, T>> buckets = getNameBuckets(clazz);
+        for (int i = 0; i < buckets.size(); i++) {
+            T t = buckets.get(i).get(name);
+            if (t != null) {
+                return (U) t;
             }
         }
 
@@ -183,16 +285,12 @@ class CatalogInfoLookup<T extends CatalogInfo> {
      * things going on)
      */
     <U extends CatalogInfo> U findFirst(Class<U> clazz, Predicate<U> predicate) {
-        for (Class<T> key : nameMultiMap.keySet()) {
-            if (clazz.isAssignableFrom(key)) {
-                Map<Name, T> valueMap = nameMultiMap.get(key);
-                if (valueMap != null) {
-                    for (T v : valueMap.values()) {
-                        final U u = (U) v;
-                        if (predicate == TRUE || predicate.test(u)) {
-                            return u;
-                        }
-                    }
+        List<Map<Name, T>> buckets = getNameBuckets(clazz);
+        for (int i = 0; i < buckets.size(); i++) {
+            for (T v : buckets.get(i).values()) {
+                final U u = (U) v;
+                if (predicate == TRUE || predicate.test(u)) {
+                    return u;
                 }
             }
         }
@@ -224,4 +322,90 @@ class CatalogInfoLookup<T extends CatalogInfo> {
 
         return this;
     }
+
+    /**
+     * Groups the values of a lookup by one or more keys extracted from them, typically the
+     * identifiers of related objects (e.g., the workspace of a store). Values sharing a key are
+     * kept sorted by name, like in the main lookup.
+     *
+     * @param <T>
+     */
+    static class SecondaryIndex<T extends CatalogInfo> {
+
+        /** Key used for values whose related object is missing (e.g., a global layer group) */
+        static final String NULL_KEY = "<null>";
+
+        final ConcurrentHashMap<String, Map<Name, T>> index = new ConcurrentHashMap<>();
+
+        final Function<T, Collection<String>> keysMapper;
+
+        final Function<T, Name> nameMapper;
+
+        SecondaryIndex(Function<T, Collection<String>> keysMapper, Function<T, Name> nameMapper) {
+            this.keysMapper = keysMapper;
+            this.nameMapper = nameMapper;
+        }
+
+        /** Builds a key mapper for the common case of a single, possibly null, related id */
+        static <T> Function<T, Collection<String>> singleKey(Function<T, String> mapper) {
+            return v -> Collections.singletonList(mapper.apply(v));
+        }
+
+        static String toKey(String key) {
+            return key == null ? NULL_KEY : key;
+        }
+
+        /** Returns the values associated to the key, or null if there is none */
+        Map<Name, T> get(String key) {
+            return index.get(toKey(key));
+        }
+
+        void add(T value, Name name) {
+            for (String key : keysMapper.apply(value)) {
+                index.computeIfAbsent(toKey(key), k -> new ConcurrentSkipListMap<>())
+                        .put(name, value);
+            }
+        }
+
+        void remove(T value, Name name) {
+            for (String key : keysMapper.apply(value)) {
+                removeFromKey(key, name);
+            }
+        }
+
+        private void removeFromKey(String key, Name name) {
+            Map<Name, T> values = index.get(toKey(key));
+            if (values != null) {
+                values.remove(name);
+            }
+        }
+
+        void update(T actualValue, T proxiedValue, Name oldName, Name newName) {
+            Collection<String> oldKeys = keysMapper.apply(actualValue);
+            Collection<String> newKeys = keysMapper.apply(proxiedValue);
+            if (oldName.equals(newName) && oldKeys.equals(newKeys)) {
+                return;
+            }
+            for (String key : oldKeys) {
+                removeFromKey(key, oldName);
+            }
+            for (String key : newKeys) {
+                index.computeIfAbsent(toKey(key), k -> new ConcurrentSkipListMap<>())
+                        .put(newName, actualValue);
+            }
+        }
+
+        void rename(T value, Name oldName, Name newName) {
+            for (String key : keysMapper.apply(value)) {
+                Map<Name, T> values = index.get(toKey(key));
+                if (values != null && values.remove(oldName) != null) {
+                    values.put(newName, value);
+                }
+            }
+        }
+
+        void clear() {
+            index.clear();
+        }
+    }
 }
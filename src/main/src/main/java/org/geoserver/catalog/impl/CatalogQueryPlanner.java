@@ -0,0 +1,522 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.impl.CatalogInfoLookup.SecondaryIndex;
+import org.geotools.feature.NameImpl;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.type.Name;
+import org.opengis.filter.And;
+import org.opengis.filter.Filter;
+import org.opengis.filter.Or;
+import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.PropertyIsLike;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
+
+/**
+ * Plans the execution of {@link DefaultCatalogFacade#list} queries against the in memory lookups.
+ *
+ * <p>The filter is split in its top level conjuncts, and the most selective one that can be
+ * answered by an index (e.g., {@code id = 'x'}, {@code store.id = 'x'}, {@code prefixedName =
+ * 'ws:name'}, or an "in" expressed as an {@link Or} of such equalities) is used to pick the
+ * candidates, instead of scanning the whole lookup. All conjuncts are then evaluated against the
+ * candidates, with the simple comparisons on common properties (id, name, prefixedName, enabled,
+ * advertised) compiled into direct getter calls, and the others falling back on {@link
+ * Filter#evaluate(Object)}.
+ *
+ * <p>The chosen plan is logged at FINE level, and can be retrieved with {@link
+ * DefaultCatalogFacade#explain(Class, Filter)} for tuning purposes.
+ */
+class CatalogQueryPlanner {
+
+    static final Logger LOGGER = Logging.getLogger(CatalogQueryPlanner.class);
+
+    /** The candidates for a query, along with a description of how they were found */
+    static class Access<T> {
+        final List<T> candidates;
+
+        final String description;
+
+        Access(List<T> candidates, String description) {
+            this.candidates = candidates;
+            this.description = description;
+        }
+    }
+
+    /** A query execution plan */
+    static class Plan<T extends CatalogInfo> {
+
+        /** The indexed access, or null if the whole lookup needs to be scanned */
+        final Access<T> access;
+
+        /** The predicate to be applied to the candidates */
+        final Predicate<T> predicate;
+
+        final List<String> residuals;
+
+        Plan(Access<T> access, Predicate<T> predicate, List<String> residuals) {
+            this.access = access;
+            this.predicate = predicate;
+            this.residuals = residuals;
+        }
+
+        /** Returns true if the plan uses an index */
+        boolean isIndexed() {
+            return access != null;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            if (access == null) {
+                sb.append("full scan");
+            } else {
+                sb.append("index ")
+                        .append(access.description)
+                        .append(" (")
+                        .append(access.candidates.size())
+                        .append(" candidates)");
+            }
+            if (!residuals.isEmpty()) {
+                sb.append(", filter ").append(residuals);
+            }
+            return sb.toString();
+        }
+    }
+
+    final DefaultCatalogFacade facade;
+
+    CatalogQueryPlanner(DefaultCatalogFacade facade) {
+        this.facade = facade;
+    }
+
+    /**
+     * Plans a query on the given lookup
+     *
+     * @param of the type of object to be returned, lookup contents not matching it are skipped
+     * @param lookup the lookup containing the objects
+     * @param filter the query filter
+     */
+    <T extends CatalogInfo> Plan<T> plan(Class<T> of, CatalogInfoLookup<?> lookup, Filter filter) {
+        List<Filter> conjuncts = getConjuncts(filter);
+
+        // pick the access path with the least candidates
+        Access<T> best = null;
+        for (Filter conjunct : conjuncts) {
+            Access<T> access = getAccess(of, lookup, conjunct);
+            if (access != null
+                    && (best == null || access.candidates.size() < best.candidates.size())) {
+                best = access;
+            }
+        }
+
+        // all the conjuncts still need to be evaluated (the indexes can return a superset)
+        // but the simple ones are compiled into direct getter calls
+        List<Predicate<T>> predicates = new ArrayList<>();
+        List<String> residuals = new ArrayList<>();
+        for (Filter conjunct : conjuncts) {
+            predicates.add(compile(of, conjunct));
+            residuals.add(String.valueOf(conjunct));
+        }
+        Predicate<T> predicate;
+        if (predicates.isEmpty()) {
+            predicate = CatalogInfoLookup.TRUE;
+        } else if (predicates.size() == 1) {
+            predicate = predicates.get(0);
+        } else {
+            predicate =
+                    o -> {
+                        for (int i = 0; i < predicates.size(); i++) {
+                            if (!predicates.get(i).test(o)) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    };
+        }
+
+        return new Plan<>(best, predicate, residuals);
+    }
+
+    /** Executes a plan, returning the matching objects */
+    <T extends CatalogInfo> List<T> execute(
+            Class<T> of, CatalogInfoLookup<?> lookup, Plan<T> plan) {
+        if (plan.access == null) {
+            return lookup.list(of, plan.predicate);
+        }
+        List<T> result = new ArrayList<>();
+        for (T candidate : plan.access.candidates) {
+            if (of.isInstance(candidate)
+                    && (plan.predicate == CatalogInfoLookup.TRUE
+                            || plan.predicate.test(candidate))) {
+                result.add(candidate);
+            }
+        }
+        return result;
+    }
+
+    /** Plans and executes the query in one shot */
+    <T extends CatalogInfo> List<T> list(Class<T> of, CatalogInfoLookup<?> lookup, Filter filter) {
+        Plan<T> plan = plan(of, lookup, filter);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Query plan for " + of.getSimpleName() + " [" + filter + "]: " + plan);
+        }
+        return execute(of, lookup, plan);
+    }
+
+    private List<Filter> getConjuncts(Filter filter) {
+        if (filter == null || filter == Filter.INCLUDE) {
+            return Collections.emptyList();
+        } else if (filter instanceof And) {
+            List<Filter> result = new ArrayList<>();
+            for (Filter child : ((And) filter).getChildren()) {
+                result.addAll(getConjuncts(child));
+            }
+            return result;
+        } else {
+            return Collections.singletonList(filter);
+        }
+    }
+
+    /**
+     * Returns the indexed access for a conjunct, or null if the conjunct cannot be answered by an
+     * index
+     */
+    private <T extends CatalogInfo> Access<T> getAccess(
+            Class<T> of, CatalogInfoLookup<?> lookup, Filter conjunct) {
+        String property;
+        List<String> values = new ArrayList<>();
+        if (conjunct instanceof PropertyIsEqualTo) {
+            PropertyIsEqualTo equal = (PropertyIsEqualTo) conjunct;
+            property = getProperty(equal);
+            String value = getStringLiteral(equal);
+            if (property == null || value == null || !equal.isMatchingCase()) {
+                return null;
+            }
+            values.add(value);
+        } else if (conjunct instanceof Or) {
+            // an "in" list, all children need to be equalities on the same property
+            property = null;
+            for (Filter child : ((Or) conjunct).getChildren()) {
+                if (!(child instanceof PropertyIsEqualTo)) {
+                    return null;
+                }
+                PropertyIsEqualTo equal = (PropertyIsEqualTo) child;
+                String childProperty = getProperty(equal);
+                String value = getStringLiteral(equal);
+                if (childProperty == null
+                        || value == null
+                        || !equal.isMatchingCase()
+                        || (property != null && !property.equals(childProperty))) {
+                    return null;
+                }
+                property = childProperty;
+                values.add(value);
+            }
+            if (property == null) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+
+        // union of the matches, the same object might be found more than once
+        List<T> candidates = new ArrayList<>();
+        Set<T> found = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (String value : values) {
+            List<T> matches = getMatches(of, lookup, property, value);
+            if (matches == null) {
+                return null;
+            }
+            for (T match : matches) {
+                if (found.add(match)) {
+                    candidates.add(match);
+                }
+            }
+        }
+        String description = property + (values.size() == 1 ? " = " : " in ") + values;
+        return new Access<>(candidates, description);
+    }
+
+    /**
+     * Returns the objects matching the property value (possibly a superset of them), or null if the
+     * property is not indexed
+     */
+    private <T extends CatalogInfo> List<T> getMatches(
+            Class<T> of, CatalogInfoLookup<?> lookup, String property, String value) {
+        switch (property) {
+            case "id":
+                return single(lookup.findById(value, of));
+            case "name":
+                if (lookup == facade.workspaces) {
+                    return single(lookup.findByName(new NameImpl(value), of));
+                }
+                return null;
+            case "prefix":
+                if (lookup == facade.namespaces) {
+                    return single(lookup.findByName(new NameImpl(value), of));
+                }
+                return null;
+            case "prefixedName":
+                return getByPrefixedName(of, lookup, value);
+            case "store.id":
+                return byIndex(of, lookup, facade.resources, facade.resources.byStore, value);
+            case "resource.id":
+                return byIndex(of, lookup, facade.layers, facade.layers.byResource, value);
+            case "defaultStyle.id":
+            case "styles.id":
+                return byIndex(of, lookup, facade.layers, facade.layers.byStyle, value);
+            case "workspace.id":
+                return byWorkspace(of, lookup, value);
+            case "workspace.name":
+                // a missing workspace results in no candidates
+                WorkspaceInfo ws =
+                        facade.workspaces.findByName(new NameImpl(value), WorkspaceInfo.class);
+                return byWorkspace(of, lookup, ws != null ? ws.getId() : null);
+            default:
+                return null;
+        }
+    }
+
+    private <T extends CatalogInfo> List<T> byWorkspace(
+            Class<T> of, CatalogInfoLookup<?> lookup, String workspaceId) {
+        if (lookup == facade.stores) {
+            return byIndex(of, lookup, facade.stores, facade.stores.byWorkspace, workspaceId);
+        } else if (lookup == facade.layerGroups) {
+            return byIndex(
+                    of, lookup, facade.layerGroups, facade.layerGroups.byWorkspace, workspaceId);
+        } else if (lookup == facade.styles) {
+            return byIndex(of, lookup, facade.styles, facade.styles.byWorkspace, workspaceId);
+        }
+        return null;
+    }
+
+    private <T extends CatalogInfo, U extends CatalogInfo> List<T> byIndex(
+            Class<T> of,
+            CatalogInfoLookup<?> lookup,
+            CatalogInfoLookup<U> indexed,
+            SecondaryIndex<U> index,
+            String value) {
+        if (lookup != indexed) {
+            return null;
+        }
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        return (List<T>) indexed.list(index, value, (Class<U>) of, CatalogInfoLookup.TRUE);
+    }
+
+    /**
+     * Looks up resources, layers and layer groups by prefixed name. Names can contain colons, so
+     * all the possible splits are tried
+     */
+    private <T extends CatalogInfo> List<T> getByPrefixedName(
+            Class<T> of, CatalogInfoLookup<?> lookup, String prefixedName) {
+        boolean resourceBased = lookup == facade.resources || lookup == facade.layers;
+        if (!resourceBased && lookup != facade.layerGroups) {
+            return null;
+        }
+
+        List<T> result = new ArrayList<>();
+        if (!resourceBased) {
+            // global layer group
+            addIfNotNull(result, lookup.findByName(new NameImpl(null, prefixedName), of));
+        }
+        int idx = prefixedName.indexOf(':');
+        while (idx > 0) {
+            String prefix = prefixedName.substring(0, idx);
+            String local = prefixedName.substring(idx + 1);
+            CatalogInfo container =
+                    resourceBased
+                            ? facade.namespaces.findByName(
+                                    new NameImpl(prefix), NamespaceInfo.class)
+                            : facade.workspaces.findByName(
+                                    new NameImpl(prefix), WorkspaceInfo.class);
+            if (container != null) {
+                Name name = new NameImpl(container.getId(), local);
+                addIfNotNull(result, lookup.findByName(name, of));
+            }
+            idx = prefixedName.indexOf(':', idx + 1);
+        }
+        return result;
+    }
+
+    private <T> void addIfNotNull(List<T> list, T value) {
+        if (value != null) {
+            list.add(value);
+        }
+    }
+
+    private <T> List<T> single(T value) {
+        return value == null ? Collections.emptyList() : Collections.singletonList(value);
+    }
+
+    /** Turns a conjunct into a predicate, avoiding reflection for the common comparisons */
+    private <T extends CatalogInfo> Predicate<T> compile(Class<T> of, Filter filter) {
+        if (filter instanceof PropertyIsEqualTo) {
+            PropertyIsEqualTo equal = (PropertyIsEqualTo) filter;
+            String property = getProperty(equal);
+            Object value = getLiteral(equal);
+            Function<Object, Object> getter = property == null ? null : getGetter(of, property);
+            if (getter != null
+                    && equal.isMatchingCase()
+                    && (value instanceof String || value instanceof Boolean)
+                    && value.getClass().equals(getPropertyType(property))) {
+                return o -> value.equals(getter.apply(o));
+            }
+        } else if (filter instanceof PropertyIsLike) {
+            Predicate<T> prefix = compilePrefix(of, (PropertyIsLike) filter);
+            if (prefix != null) {
+                return prefix;
+            }
+        }
+
+        return o -> filter.evaluate(o);
+    }
+
+    /** Compiles a "starts with" like filter, e.g. {@code name like 'abc*'} */
+    private <T extends CatalogInfo> Predicate<T> compilePrefix(Class<T> of, PropertyIsLike like) {
+        if (!like.isMatchingCase() || !(like.getExpression() instanceof PropertyName)) {
+            return null;
+        }
+        String property = ((PropertyName) like.getExpression()).getPropertyName();
+        Function<Object, Object> getter = getGetter(of, property);
+        String pattern = like.getLiteral();
+        String wildcard = like.getWildCard();
+        if (getter == null
+                || !String.class.equals(getPropertyType(property))
+                || pattern == null
+                || wildcard == null
+                || wildcard.isEmpty()
+                || !pattern.endsWith(wildcard)) {
+            return null;
+        }
+        String prefix = pattern.substring(0, pattern.length() - wildcard.length());
+        if (prefix.contains(wildcard)
+                || (like.getSingleChar() != null
+                        && !like.getSingleChar().isEmpty()
+                        && prefix.contains(like.getSingleChar()))
+                || (like.getEscape() != null
+                        && !like.getEscape().isEmpty()
+                        && prefix.contains(like.getEscape()))) {
+            return null;
+        }
+        return o -> {
+            Object value = getter.apply(o);
+            return value != null && ((String) value).startsWith(prefix);
+        };
+    }
+
+    /** Returns the type of the properties supported by {@link #getGetter(Class, String)} */
+    private Class<?> getPropertyType(String property) {
+        switch (property) {
+            case "id":
+            case "name":
+            case "prefixedName":
+                return String.class;
+            case "enabled":
+            case "advertised":
+                return Boolean.class;
+            default:
+                return null;
+        }
+    }
+
+    /** Returns a direct getter for the property, or null if not supported for the type */
+    private Function<Object, Object> getGetter(Class<?> of, String property) {
+        switch (property) {
+            case "id":
+                return o -> ((CatalogInfo) o).getId();
+            case "name":
+                if (StoreInfo.class.isAssignableFrom(of)) {
+                    return o -> ((StoreInfo) o).getName();
+                } else if (ResourceInfo.class.isAssignableFrom(of)) {
+                    return o -> ((ResourceInfo) o).getName();
+                } else if (PublishedInfo.class.isAssignableFrom(of)) {
+                    return o -> ((PublishedInfo) o).getName();
+                } else if (StyleInfo.class.isAssignableFrom(of)) {
+                    return o -> ((StyleInfo) o).getName();
+                } else if (WorkspaceInfo.class.isAssignableFrom(of)) {
+                    return o -> ((WorkspaceInfo) o).getName();
+                }
+                return null;
+            case "prefixedName":
+                if (ResourceInfo.class.isAssignableFrom(of)) {
+                    return o -> ((ResourceInfo) o).prefixedName();
+                } else if (PublishedInfo.class.isAssignableFrom(of)) {
+                    return o -> ((PublishedInfo) o).prefixedName();
+                }
+                return null;
+            case "enabled":
+                if (StoreInfo.class.isAssignableFrom(of)) {
+                    return o -> ((StoreInfo) o).isEnabled();
+                } else if (ResourceInfo.class.isAssignableFrom(of)) {
+                    return o -> ((ResourceInfo) o).isEnabled();
+                } else if (LayerInfo.class.isAssignableFrom(of)
+                        || LayerGroupInfo.class.isAssignableFrom(of)) {
+                    return o -> ((PublishedInfo) o).isEnabled();
+                }
+                return null;
+            case "advertised":
+                if (ResourceInfo.class.isAssignableFrom(of)) {
+                    return o -> ((ResourceInfo) o).isAdvertised();
+                } else if (LayerInfo.class.isAssignableFrom(of)
+                        || LayerGroupInfo.class.isAssignableFrom(of)) {
+                    return o -> ((PublishedInfo) o).isAdvertised();
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /** Returns the property name of a property/literal comparison, in either order */
+    private String getProperty(PropertyIsEqualTo equal) {
+        Expression e1 = equal.getExpression1();
+        Expression e2 = equal.getExpression2();
+        if (e1 instanceof PropertyName && e2 instanceof Literal) {
+            return ((PropertyName) e1).getPropertyName();
+        } else if (e2 instanceof PropertyName && e1 instanceof Literal) {
+            return ((PropertyName) e2).getPropertyName();
+        }
+        return null;
+    }
+
+    private Object getLiteral(PropertyIsEqualTo equal) {
+        Expression e1 = equal.getExpression1();
+        Expression e2 = equal.getExpression2();
+        if (e1 instanceof Literal) {
+            return ((Literal) e1).getValue();
+        } else if (e2 instanceof Literal) {
+            return ((Literal) e2).getValue();
+        }
+        return null;
+    }
+
+    private String getStringLiteral(PropertyIsEqualTo equal) {
+        Object value = getLiteral(equal);
+        return value instanceof String ? (String) value : null;
+    }
+}
@@ -11,11 +11,14 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Function;
@@ -35,6 +38,7 @@ import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.catalog.StoreInfo;
 import org.geoserver.catalog.StyleInfo;
 import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.impl.CatalogInfoLookup.SecondaryIndex;
 import org.geoserver.catalog.util.CloseableIterator;
 import org.geoserver.catalog.util.CloseableIteratorAdapter;
 import org.geoserver.ows.util.OwsUtils;
@@ -91,12 +95,73 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
                             s.getWorkspace() != null ? s.getWorkspace().getId() : null,
                             s.getName());
 
+    /** Returns the id of the object, or null if the object is null */
+    static String id(CatalogInfo info) {
+        return info != null ? info.getId() : null;
+    }
+
+    /** Stores, indexed also by workspace */
+    static final class StoreInfoLookup extends CatalogInfoLookup<StoreInfo> {
+
+        final SecondaryIndex<StoreInfo> byWorkspace =
+                addIndex(SecondaryIndex.singleKey(s -> id(s.getWorkspace())));
+
+        public StoreInfoLookup() {
+            super(STORE_NAME_MAPPER);
+        }
+
+        @Override
+        public StoreInfoLookup setCatalog(Catalog catalog) {
+            super.setCatalog(catalog);
+            return this;
+        }
+    }
+
+    /** Resources, indexed also by store */
+    static final class ResourceInfoLookup extends CatalogInfoLookup<ResourceInfo> {
+
+        final SecondaryIndex<ResourceInfo> byStore =
+                addIndex(SecondaryIndex.singleKey(r -> id(r.getStore())));
+
+        public ResourceInfoLookup() {
+            super(RESOURCE_NAME_MAPPER);
+        }
+
+        @Override
+        public ResourceInfoLookup setCatalog(Catalog catalog) {
+            super.setCatalog(catalog);
+            return this;
+        }
+    }
+
     static final class LayerInfoLookup extends CatalogInfoLookup<LayerInfo> {
 
+        final SecondaryIndex<LayerInfo> byResource =
+                addIndex(SecondaryIndex.singleKey(l -> id(l.getResource())));
+
+        final SecondaryIndex<LayerInfo> byStyle = addIndex(LayerInfoLookup::styleIds);
+
         public LayerInfoLookup() {
             super(LAYER_NAME_MAPPER);
         }
 
+        /** The ids of the default and alternate styles of the layer */
+        static Collection<String> styleIds(LayerInfo layer) {
+            Set<String> ids = new HashSet<>();
+            if (layer.getDefaultStyle() != null) {
+                ids.add(layer.getDefaultStyle().getId());
+            }
+            Set<StyleInfo> styles = layer.getStyles();
+            if (styles != null) {
+                for (StyleInfo style : styles) {
+                    if (style != null) {
+                        ids.add(style.getId());
+                    }
+                }
+            }
+            return ids;
+        }
+
         public void update(ResourceInfo proxiedValue) {
             ModificationProxy h = (ModificationProxy) Proxy.getInvocationHandler(proxiedValue);
             ResourceInfo actualValue = (ResourceInfo) h.getProxyObject();
@@ -104,12 +169,8 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
             Name oldName = RESOURCE_NAME_MAPPER.apply(actualValue);
             Name newName = RESOURCE_NAME_MAPPER.apply(proxiedValue);
             if (!oldName.equals(newName)) {
-                Map<Name, LayerInfo> nameMap = getMapForValue(nameMultiMap, LayerInfoImpl.class);
-                LayerInfo value = nameMap.remove(oldName);
-                // handle case of feature type without a corresponding layer
-                if (value != null) {
-                    nameMap.put(newName, value);
-                }
+                // handles also the case of feature type without a corresponding layer
+                rename(LayerInfoImpl.class, oldName, newName);
             }
         }
 
@@ -120,16 +181,49 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         }
     }
 
+    /** Layer groups, indexed also by workspace */
+    static final class LayerGroupInfoLookup extends CatalogInfoLookup<LayerGroupInfo> {
+
+        final SecondaryIndex<LayerGroupInfo> byWorkspace =
+                addIndex(SecondaryIndex.singleKey(lg -> id(lg.getWorkspace())));
+
+        public LayerGroupInfoLookup() {
+            super(LAYERGROUP_NAME_MAPPER);
+        }
+
+        @Override
+        public LayerGroupInfoLookup setCatalog(Catalog catalog) {
+            super.setCatalog(catalog);
+            return this;
+        }
+    }
+
+    /** Styles, indexed also by workspace */
+    static final class StyleInfoLookup extends CatalogInfoLookup<StyleInfo> {
+
+        final SecondaryIndex<StyleInfo> byWorkspace =
+                addIndex(SecondaryIndex.singleKey(s -> id(s.getWorkspace())));
+
+        public StyleInfoLookup() {
+            super(STYLE_NAME_MAPPER);
+        }
+
+        @Override
+        public StyleInfoLookup setCatalog(Catalog catalog) {
+            super.setCatalog(catalog);
+            return this;
+        }
+    }
+
     /** Contains the stores keyed by implementation class */
-    protected CatalogInfoLookup<StoreInfo> stores = new CatalogInfoLookup<>(STORE_NAME_MAPPER);
+    protected StoreInfoLookup stores = new StoreInfoLookup();
 
     /** The default store keyed by workspace id */
     protected Map<String, DataStoreInfo> defaultStores =
             new ConcurrentHashMap<String, DataStoreInfo>();
 
     /** resources */
-    protected CatalogInfoLookup<ResourceInfo> resources =
-            new CatalogInfoLookup<>(RESOURCE_NAME_MAPPER);
+    protected ResourceInfoLookup resources = new ResourceInfoLookup();
 
     /** The default namespace */
     protected volatile NamespaceInfo defaultNamespace;
@@ -152,15 +246,17 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
     protected List<MapInfo> maps = new CopyOnWriteArrayList<MapInfo>();
 
     /** layer groups */
-    protected CatalogInfoLookup<LayerGroupInfo> layerGroups =
-            new CatalogInfoLookup<>(LAYERGROUP_NAME_MAPPER);
+    protected LayerGroupInfoLookup layerGroups = new LayerGroupInfoLookup();
 
     /** styles */
-    protected CatalogInfoLookup<StyleInfo> styles = new CatalogInfoLookup<>(STYLE_NAME_MAPPER);
+    protected StyleInfoLookup styles = new StyleInfoLookup();
 
     /** the catalog */
     private CatalogImpl catalog;
 
+    /** plans the execution of filtered queries against the lookups */
+    private final CatalogQueryPlanner planner = new CatalogQueryPlanner(this);
+
     public DefaultCatalogFacade(Catalog catalog) {
         setCatalog(catalog);
     }
@@ -237,7 +333,17 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
             ws = workspace;
         }
 
-        List<T> matches = stores.list(clazz, s -> ws.equals(s.getWorkspace()));
+        List<T> matches;
+        if (ws != null && ws.getId() != null) {
+            matches =
+                    stores.list(
+                            stores.byWorkspace,
+                            ws.getId(),
+                            clazz,
+                            s -> ws.equals(s.getWorkspace()));
+        } else {
+            matches = stores.list(clazz, s -> ws.equals(s.getWorkspace()));
+        }
         return ModificationProxy.createList(matches, clazz);
     }
 
@@ -384,7 +490,17 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
     }
 
     public <T extends ResourceInfo> List<T> getResourcesByStore(StoreInfo store, Class<T> clazz) {
-        List<T> matches = resources.list(clazz, r -> store.equals(r.getStore()));
+        List<T> matches;
+        if (store.getId() != null) {
+            matches =
+                    resources.list(
+                            resources.byStore,
+                            store.getId(),
+                            clazz,
+                            r -> store.equals(r.getStore()));
+        } else {
+            matches = resources.list(clazz, r -> store.equals(r.getStore()));
+        }
         return ModificationProxy.createList(matches, clazz);
     }
 
@@ -431,6 +547,17 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
     }
 
     public List<LayerInfo> getLayers(ResourceInfo resource) {
+        // direct lookup in the resource index, the id does not change on resource rename
+        if (resource.getId() != null) {
+            List<LayerInfo> matches =
+                    layers.list(
+                            layers.byResource,
+                            resource.getId(),
+                            LayerInfo.class,
+                            CatalogInfoLookup.TRUE);
+            return ModificationProxy.createList(matches, LayerInfo.class);
+        }
+
         // in the current setup we cannot have multiple layers associated to the same
         // resource, as they would all share the same name (the one of the resource) so
         // a direct lookup becomes possible
@@ -443,19 +570,17 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
             matches.add(layer);
             return ModificationProxy.createList(matches, LayerInfo.class);
         }
-
-        // we check the id first as it's faster to compare than a full blown equals
-        // String id = resource.getId();
-        // List<LayerInfo> matches = layers.list(LayerInfo.class, li ->
-        // id.equals(li.getResource().getId()) && resource.equals(li.getResource()));
-        //     return ModificationProxy.createList(matches,LayerInfo.class);
     }
 
     public List<LayerInfo> getLayers(StyleInfo style) {
-        List<LayerInfo> matches =
-                layers.list(
-                        LayerInfo.class,
-                        li -> style.equals(li.getDefaultStyle()) || li.getStyles().contains(style));
+        Predicate<LayerInfo> predicate =
+                li -> style.equals(li.getDefaultStyle()) || li.getStyles().contains(style);
+        List<LayerInfo> matches;
+        if (style.getId() != null) {
+            matches = layers.list(layers.byStyle, style.getId(), LayerInfo.class, predicate);
+        } else {
+            matches = layers.list(LayerInfo.class, predicate);
+        }
         return ModificationProxy.createList(matches, LayerInfo.class);
     }
 
@@ -584,7 +709,18 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
             predicate = lg -> ws.equals(lg.getWorkspace());
         }
 
-        List<LayerGroupInfo> matches = layerGroups.list(LayerGroupInfo.class, predicate);
+        List<LayerGroupInfo> matches;
+        if (workspace == NO_WORKSPACE) {
+            matches =
+                    layerGroups.list(
+                            layerGroups.byWorkspace, null, LayerGroupInfo.class, predicate);
+        } else if (ws != null && ws.getId() != null) {
+            matches =
+                    layerGroups.list(
+                            layerGroups.byWorkspace, ws.getId(), LayerGroupInfo.class, predicate);
+        } else {
+            matches = layerGroups.list(LayerGroupInfo.class, predicate);
+        }
         return ModificationProxy.createList(matches, LayerGroupInfo.class);
     }
 
@@ -857,7 +993,12 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         // TODO: support ANY_WORKSPACE?
         List<StyleInfo> matches;
         if (workspace == NO_WORKSPACE) {
-            matches = styles.list(StyleInfo.class, s -> s.getWorkspace() == null);
+            matches =
+                    styles.list(
+                            styles.byWorkspace,
+                            null,
+                            StyleInfo.class,
+                            s -> s.getWorkspace() == null);
         } else {
             WorkspaceInfo ws;
             if (workspace == null) {
@@ -866,7 +1007,12 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
                 ws = workspace;
             }
 
-            matches = styles.list(StyleInfo.class, s -> ws.equals(s.getWorkspace()));
+            Predicate<StyleInfo> predicate = s -> ws.equals(s.getWorkspace());
+            if (ws != null && ws.getId() != null) {
+                matches = styles.list(styles.byWorkspace, ws.getId(), StyleInfo.class, predicate);
+            } else {
+                matches = styles.list(StyleInfo.class, predicate);
+            }
         }
 
         return ModificationProxy.createList(matches, StyleInfo.class);
@@ -906,7 +1052,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
 
         // stores
         if (stores == null) {
-            stores = new CatalogInfoLookup<>(STORE_NAME_MAPPER);
+            stores = new StoreInfoLookup();
         }
         for (Object o : stores.values()) {
             resolve((StoreInfoImpl) o);
@@ -914,7 +1060,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
 
         // styles
         if (styles == null) {
-            styles = new CatalogInfoLookup<>(STYLE_NAME_MAPPER);
+            styles = new StyleInfoLookup();
         }
         for (StyleInfo s : styles.values()) {
             resolve(s);
@@ -922,7 +1068,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
 
         // resources
         if (resources == null) {
-            resources = new CatalogInfoLookup<>(RESOURCE_NAME_MAPPER);
+            resources = new ResourceInfoLookup();
         }
         for (Object o : resources.values()) {
             resolve((ResourceInfo) o);
@@ -938,7 +1084,7 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
 
         // layer groups
         if (layerGroups == null) {
-            layerGroups = new CatalogInfoLookup<>(LAYERGROUP_NAME_MAPPER);
+            layerGroups = new LayerGroupInfoLookup();
         }
         for (LayerGroupInfo lg : layerGroups.values()) {
             resolve(lg);
@@ -1089,23 +1235,23 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         List<T> all;
 
         if (NamespaceInfo.class.isAssignableFrom(of)) {
-            all = (List<T>) namespaces.list(of, toPredicate(filter));
+            all = planner.list(of, namespaces, filter);
         } else if (WorkspaceInfo.class.isAssignableFrom(of)) {
-            all = (List<T>) workspaces.list(of, toPredicate(filter));
+            all = planner.list(of, workspaces, filter);
         } else if (StoreInfo.class.isAssignableFrom(of)) {
-            all = (List<T>) stores.list(of, toPredicate(filter));
+            all = planner.list(of, stores, filter);
         } else if (ResourceInfo.class.isAssignableFrom(of)) {
-            all = (List<T>) resources.list(of, toPredicate(filter));
+            all = planner.list(of, resources, filter);
         } else if (LayerInfo.class.isAssignableFrom(of)) {
-            all = (List<T>) layers.list(of, toPredicate(filter));
+            all = planner.list(of, layers, filter);
         } else if (LayerGroupInfo.class.isAssignableFrom(of)) {
-            all = (List<T>) layerGroups.list(of, toPredicate(filter));
+            all = planner.list(of, layerGroups, filter);
         } else if (PublishedInfo.class.isAssignableFrom(of)) {
             all = new ArrayList<>();
-            all.addAll((List<T>) layers.list(LayerInfo.class, toPredicate(filter)));
-            all.addAll((List<T>) layerGroups.list(LayerGroupInfo.class, toPredicate(filter)));
+            all.addAll((List<T>) planner.list(LayerInfo.class, layers, filter));
+            all.addAll((List<T>) planner.list(LayerGroupInfo.class, layerGroups, filter));
         } else if (StyleInfo.class.isAssignableFrom(of)) {
-            all = (List<T>) styles.list(of, toPredicate(filter));
+            all = planner.list(of, styles, filter);
         } else if (MapInfo.class.isAssignableFrom(of)) {
             all = (List<T>) new ArrayList<>(maps);
         } else {
@@ -1126,11 +1272,35 @@ public class DefaultCatalogFacade extends AbstractCatalogFacade implements Catal
         return ModificationProxy.createList(all, of);
     }
 
-    private <T> Predicate<T> toPredicate(Filter filter) {
-        if (filter != null && filter != Filter.INCLUDE) {
-            return o -> filter.evaluate(o);
+    /**
+     * Returns a description of how a {@link #list(Class, Filter, Integer, Integer, SortBy...)}
+     * query would be executed, e.g., which index would be used to locate the candidates, for tuning
+     * purposes
+     */
+    public <T extends CatalogInfo> String explain(final Class<T> of, final Filter filter) {
+        if (NamespaceInfo.class.isAssignableFrom(of)) {
+            return planner.plan(of, namespaces, filter).toString();
+        } else if (WorkspaceInfo.class.isAssignableFrom(of)) {
+            return planner.plan(of, workspaces, filter).toString();
+        } else if (StoreInfo.class.isAssignableFrom(of)) {
+            return planner.plan(of, stores, filter).toString();
+        } else if (ResourceInfo.class.isAssignableFrom(of)) {
+            return planner.plan(of, resources, filter).toString();
+        } else if (LayerInfo.class.isAssignableFrom(of)) {
+            return planner.plan(of, layers, filter).toString();
+        } else if (LayerGroupInfo.class.isAssignableFrom(of)) {
+            return planner.plan(of, layerGroups, filter).toString();
+        } else if (PublishedInfo.class.isAssignableFrom(of)) {
+            return "layers: "
+                    + planner.plan(LayerInfo.class, layers, filter)
+                    + ", layer groups: "
+                    + planner.plan(LayerGroupInfo.class, layerGroups, filter);
+        } else if (StyleInfo.class.isAssignableFrom(of)) {
+            return planner.plan(of, styles, filter).toString();
+        } else if (MapInfo.class.isAssignableFrom(of)) {
+            return "full scan";
         } else {
-            return CatalogInfoLookup.TRUE;
+            throw new IllegalArgumentException("Unknown type: " + of);
         }
     }
 
@@ -19,6 +19,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.UnaryOperator;
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.CatalogInfo;
@@ -75,49 +76,43 @@ public class ModificationProxy implements WrappingProxy, Serializable {
 
     /** Intercepts getter and setter methods. */
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-
-        String property = null;
-        if ((method.getName().startsWith("get") || method.getName().startsWith("is"))
-                && method.getParameterCount() == 0) {
+        MethodInfo mi = MethodInfo.of(method);
+        String property = mi.property;
+        if (mi.getter) {
             // intercept getter to check the dirty property set
-            property = method.getName().substring(method.getName().startsWith("get") ? 3 : 2);
             if (properties != null && properties().containsKey(property)) {
                 // return the previously set object
                 return properties().get(property);
-            } else {
+            } else if (mi.collection) {
                 // if collection, create a wrapper
-                if (Collection.class.isAssignableFrom(method.getReturnType())) {
-                    Collection real = (Collection) method.invoke(proxyObject, null);
-                    if (real == null) {
-                        // in this case there is nothing we can do
-                        return null;
-                    }
-                    Collection wrap = ModificationProxyCloner.cloneCollection(real, true);
-                    properties().put(property, wrap);
-                    // we also need to store a clone of the initial state as the collection
-                    // might be a live one
-                    Collection clone = ModificationProxyCloner.cloneCollection(real, false);
-                    oldCollectionValues().put(property, clone);
-                    return wrap;
-                } else if (Map.class.isAssignableFrom(method.getReturnType())) {
-                    Map real = (Map) method.invoke(proxyObject, null);
-                    if (real == null) {
-                        // in this case there is nothing we can do
-                        return null;
-                    }
-                    Map wrap = ModificationProxyCloner.cloneMap(real, true);
-                    properties().put(property, wrap);
-                    // we also need to store a clone of the initial state as the collection
-                    // might be a live one
-                    Map clone = ModificationProxyCloner.cloneMap(real, false);
-                    oldCollectionValues().put(property, clone);
-                    return wrap;
+                Collection real = (Collection) method.invoke(proxyObject, null);
+                if (real == null) {
+                    // in this case there is nothing we can do
+                    return null;
+                }
+                Collection wrap = ModificationProxyCloner.cloneCollection(real, true);
+                properties().put(property, wrap);
+                // we also need to store a clone of the initial state as the collection
+                // might be a live one
+                Collection clone = ModificationProxyCloner.cloneCollection(real, false);
+                oldCollectionValues().put(property, clone);
+                return wrap;
+            } else if (mi.map) {
+                Map real = (Map) method.invoke(proxyObject, null);
+                if (real == null) {
+                    // in this case there is nothing we can do
+                    return null;
                 }
+                Map wrap = ModificationProxyCloner.cloneMap(real, true);
+                properties().put(property, wrap);
+                // we also need to store a clone of the initial state as the collection
+                // might be a live one
+                Map clone = ModificationProxyCloner.cloneMap(real, false);
+                oldCollectionValues().put(property, clone);
+                return wrap;
             }
-        }
-        if (method.getName().startsWith("set") && args.length == 1) {
+        } else if (mi.setter) {
             // intercept setter and put new value in list
-            property = method.getName().substring(3);
             properties().put(property, args[0]);
 
             return null;
@@ -158,6 +153,50 @@ public class ModificationProxy implements WrappingProxy, Serializable {
         return proxyObject;
     }
 
+    /**
+     * Caches the classification of the methods invoked through the proxy, to avoid parsing their
+     * names on each call.
+     */
+    static final class MethodInfo {
+
+        static final Map<Method, MethodInfo> CACHE = new ConcurrentHashMap<>();
+
+        /** The property name for getters and setters, null otherwise */
+        final String property;
+
+        final boolean getter;
+
+        final boolean setter;
+
+        /** Getter returning a collection */
+        final boolean collection;
+
+        /** Getter returning a map */
+        final boolean map;
+
+        MethodInfo(Method method) {
+            String name = method.getName();
+            int parameters = method.getParameterCount();
+            if ((name.startsWith("get") || name.startsWith("is")) && parameters == 0) {
+                this.property = name.substring(name.startsWith("get") ? 3 : 2);
+                this.getter = true;
+                this.setter = false;
+                this.collection = Collection.class.isAssignableFrom(method.getReturnType());
+                this.map = Map.class.isAssignableFrom(method.getReturnType());
+            } else {
+                this.getter = false;
+                this.setter = name.startsWith("set") && parameters == 1;
+                this.property = setter ? name.substring(3) : null;
+                this.collection = false;
+                this.map = false;
+            }
+        }
+
+        static MethodInfo of(Method method) {
+            return CACHE.computeIfAbsent(method, MethodInfo::new);
+        }
+    }
+
     public HashMap<String, Object> getProperties() {
         return properties();
     }
@@ -0,0 +1,321 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.geoserver.catalog.event.CatalogInvalidator;
+import org.geoserver.ows.AbstractDispatcherCallback;
+import org.geoserver.ows.HttpErrorCodeException;
+import org.geoserver.ows.Request;
+import org.geoserver.ows.Response;
+import org.geoserver.ows.URLMangler.URLType;
+import org.geoserver.ows.util.ResponseCacheUtils;
+import org.geoserver.ows.util.ResponseUtils;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.ServiceException;
+import org.geotools.util.logging.Logging;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Caches the encoded GetCapabilities documents, so that repeated requests do not need to walk the
+ * catalog and encode the whole document again.
+ *
+ * <p>Documents are keyed by request path and parameters, proxified base URL, update sequence, and
+ * the roles of the current user, as the security subsystem can hide layers based on roles. The
+ * cache is emptied on every catalog and configuration change, and entries also expire after a
+ * while, as some contents (e.g., time dimension values) depend on the data rather than the
+ * configuration. A gzip compressed copy of each document is kept too, and sent to clients accepting
+ * it. Cached responses carry an ETag, specific to the content encoding, requests whose
+ * If-None-Match header matches it get back a 304.
+ *
+ * <p>Only GET requests not using SOAP are cached. Setups whose data security rules are based on the
+ * user name, rather than on roles, should leave the cache disabled.
+ *
+ * <p>The cache is disabled by default, it can be enabled by setting "{@value #ENABLED_KEY}" to
+ * "true", either as a system, environment or servlet context variable. The maximum memory used by
+ * the cache (in bytes) and the time to live of the entries (in seconds) can be set using the
+ * "{@value #MAX_MEMORY_KEY}" and "{@value #EXPIRATION_KEY}" variables.
+ */
+public class CapabilitiesDocumentCache extends AbstractDispatcherCallback {
+
+    static final Logger LOGGER = Logging.getLogger(CapabilitiesDocumentCache.class);
+
+    static final String ENABLED_KEY = "CAPABILITIES_DOCUMENT_CACHE_ENABLED";
+
+    static final String MAX_MEMORY_KEY = "CAPABILITIES_DOCUMENT_CACHE_MAX_MEMORY";
+
+    static final String EXPIRATION_KEY = "CAPABILITIES_DOCUMENT_CACHE_EXPIRATION";
+
+    static final long DEFAULT_MAX_MEMORY = 64 * 1024 * 1024;
+
+    static final long DEFAULT_EXPIRATION = 600;
+
+    /** An encoded capabilities document */
+    static class CapabilitiesDocument {
+        byte[] contents;
+        byte[] gzipped;
+        String etag;
+        String gzipEtag;
+
+        CapabilitiesDocument(byte[] contents) throws IOException {
+            this.contents = contents;
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(contents.length / 4 + 64);
+            try (GZIPOutputStream gos = new GZIPOutputStream(bos)) {
+                gos.write(contents);
+            }
+            this.gzipped = bos.toByteArray();
+            String hash = Hashing.murmur3_128().hashBytes(contents).toString();
+            this.etag = "\"" + hash + "\"";
+            this.gzipEtag = "\"" + hash + "-gzip\"";
+        }
+
+        /** The ETag of the identity or gzip encoded representation */
+        String getEtag(boolean gzip) {
+            return gzip ? gzipEtag : etag;
+        }
+
+        int getWeight() {
+            return contents.length + gzipped.length;
+        }
+    }
+
+    GeoServer gs;
+
+    boolean enabled;
+
+    Cache<String, CapabilitiesDocument> documents;
+
+    public CapabilitiesDocumentCache(GeoServer gs) {
+        this.gs = gs;
+        this.enabled = Boolean.parseBoolean(GeoServerExtensions.getProperty(ENABLED_KEY));
+        long maxMemory = GeoServerExtensions.getLongProperty(MAX_MEMORY_KEY, DEFAULT_MAX_MEMORY);
+        long expiration = GeoServerExtensions.getLongProperty(EXPIRATION_KEY, DEFAULT_EXPIRATION);
+        this.documents =
+                CacheBuilder.newBuilder()
+                        .maximumWeight(maxMemory)
+                        .<String, CapabilitiesDocument>weigher((k, v) -> v.getWeight())
+                        .expireAfterWrite(expiration, TimeUnit.SECONDS)
+                        .recordStats()
+                        .build();
+
+        gs.getCatalog().addListener(new CatalogInvalidator(this::invalidate));
+        gs.addListener(new ConfigurationInvalidator());
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Capabilities document cache is enabled: " + enabled);
+        }
+    }
+
+    /** Returns true if the capabilities documents are cached */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Enables/disables the capabilities document cache */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            invalidate();
+        }
+    }
+
+    /** Drops all the cached documents */
+    public void invalidate() {
+        documents.invalidateAll();
+    }
+
+    /** Returns the cache statistics */
+    public CacheStats getStatistics() {
+        return documents.stats();
+    }
+
+    @Override
+    public Response responseDispatched(
+            Request request, Operation operation, Object result, Response response) {
+        if (!enabled
+                || !"GetCapabilities".equalsIgnoreCase(request.getRequest())
+                || !request.isGet()
+                || request.isSOAP()
+                || request.getHttpRequest() == null) {
+            return response;
+        }
+
+        String key = getKey(request, response);
+        CapabilitiesDocument document;
+        try {
+            document =
+                    documents.get(
+                            key,
+                            () -> {
+                                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                                response.write(result, bos, operation);
+                                return new CapabilitiesDocument(bos.toByteArray());
+                            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new ServiceException(cause);
+        }
+
+        boolean gzip = acceptsGzip(request.getHttpRequest());
+        if (ResponseCacheUtils.matches(request.getHttpRequest(), document.getEtag(gzip))) {
+            throw new HttpErrorCodeException(HttpServletResponse.SC_NOT_MODIFIED);
+        }
+        return new CachedDocumentResponse(response, document, gzip);
+    }
+
+    /** Builds the cache key for the request */
+    String getKey(Request request, Response response) {
+        HttpServletRequest httpRequest = request.getHttpRequest();
+        StringBuilder sb = new StringBuilder();
+        sb.append(response.getClass().getName()).append('\n');
+        sb.append(httpRequest.getRequestURI()).append('\n');
+        if (request.getRawKvp() != null) {
+            // sort the parameters, their order does not matter
+            Map<String, Object> kvp = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            kvp.putAll(request.getRawKvp());
+            for (Map.Entry<String, Object> entry : kvp.entrySet()) {
+                Object value = entry.getValue();
+                sb.append(entry.getKey()).append('=');
+                sb.append(
+                        value instanceof Object[]
+                                ? Arrays.toString((Object[]) value)
+                                : String.valueOf(value));
+                sb.append('&');
+            }
+            sb.append('\n');
+        }
+        // the base URL used in the document, after proxy base URL handling
+        String baseURL = ResponseUtils.baseURL(httpRequest);
+        sb.append(ResponseUtils.buildURL(baseURL, "/", null, URLType.SERVICE)).append('\n');
+        sb.append(gs.getGlobal().getUpdateSequence()).append('\n');
+        sb.append(ResponseCacheUtils.getRoles());
+        return sb.toString();
+    }
+
+    /** Returns true if the client accepts gzip compressed responses */
+    static boolean acceptsGzip(HttpServletRequest request) {
+        String ae = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        return ae != null && ae.contains("gzip");
+    }
+
+    /** A Response wrapper writing out a cached document */
+    static class CachedDocumentResponse extends Response {
+
+        Response delegate;
+
+        CapabilitiesDocument document;
+
+        boolean gzip;
+
+        public CachedDocumentResponse(
+                Response delegate, CapabilitiesDocument document, boolean gzip) {
+            super(delegate.getBinding());
+            this.delegate = delegate;
+            this.document = document;
+            this.gzip = gzip;
+        }
+
+        public boolean canHandle(Operation operation) {
+            return delegate.canHandle(operation);
+        }
+
+        public String getMimeType(Object value, Operation operation) throws ServiceException {
+            return delegate.getMimeType(value, operation);
+        }
+
+        public String[][] getHeaders(Object value, Operation operation) throws ServiceException {
+            List<String[]> headers = new ArrayList<>();
+            String[][] delegateHeaders = delegate.getHeaders(value, operation);
+            if (delegateHeaders != null) {
+                headers.addAll(Arrays.asList(delegateHeaders));
+            }
+            headers.add(new String[] {HttpHeaders.ETAG, document.getEtag(gzip)});
+            headers.add(new String[] {HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING});
+            if (gzip) {
+                headers.add(new String[] {HttpHeaders.CONTENT_ENCODING, "gzip"});
+            }
+            return headers.toArray(new String[headers.size()][]);
+        }
+
+        public void write(Object value, OutputStream output, Operation operation)
+                throws IOException, ServiceException {
+            output.write(gzip ? document.gzipped : document.contents);
+        }
+
+        public String getPreferredDisposition(Object value, Operation operation) {
+            return delegate.getPreferredDisposition(value, operation);
+        }
+
+        public String getAttachmentFileName(Object value, Operation operation) {
+            return delegate.getAttachmentFileName(value, operation);
+        }
+
+        public String getCharset(Operation operation) {
+            return delegate.getCharset(operation);
+        }
+    }
+
+    /** Empties the cache on configuration changes */
+    class ConfigurationInvalidator extends ConfigurationListenerAdapter {
+
+        @Override
+        public void handlePostGlobalChange(GeoServerInfo global) {
+            invalidate();
+        }
+
+        @Override
+        public void handleSettingsAdded(SettingsInfo settings) {
+            invalidate();
+        }
+
+        @Override
+        public void handleSettingsPostModified(SettingsInfo settings) {
+            invalidate();
+        }
+
+        @Override
+        public void handleSettingsRemoved(SettingsInfo settings) {
+            invalidate();
+        }
+
+        @Override
+        public void handlePostServiceChange(ServiceInfo service) {
+            invalidate();
+        }
+
+        @Override
+        public void handleServiceRemove(ServiceInfo service) {
+            invalidate();
+        }
+
+        @Override
+        public void reloaded() {
+            invalidate();
+        }
+    }
+}
@@ -0,0 +1,545 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogFacade;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.catalog.impl.ModificationProxy;
+import org.geoserver.config.util.XStreamPersister;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.GeoServerResourceLoader;
+import org.geoserver.platform.resource.Resource;
+import org.geoserver.platform.resource.Resource.Type;
+import org.geoserver.platform.resource.Resources;
+import org.geoserver.security.GeoServerSecurityManager;
+import org.geotools.util.logging.Logging;
+import org.opengis.util.CodeList;
+
+/**
+ * Binary snapshot of the catalog, allowing {@link GeoServerLoader} to skip parsing the XML
+ * configuration files on restart when the data directory did not change.
+ *
+ * <p>The snapshot is a Java serialization of the catalog objects, written after a successful XML
+ * load, along with a manifest digest of the paths and last modified times of the catalog
+ * configuration files. On startup the digest is recomputed and, if it matches, the catalog is
+ * rebuilt from the snapshot in a single pass. Any mismatch or read failure results in a regular XML
+ * load, followed by a new snapshot.
+ *
+ * <p>Store passwords are left out of the snapshot, so that they are not written in clear text, and
+ * read back from the store configuration files when the snapshot is loaded.
+ *
+ * <p>The snapshot is disabled by default, and can be enabled setting the {@link #SNAPSHOT_KEY}
+ * system/environment variable to true.
+ */
+class CatalogSnapshot {
+
+    static final Logger LOGGER = Logging.getLogger(CatalogSnapshot.class);
+
+    /** Key of the variable enabling the snapshot */
+    static final String SNAPSHOT_KEY = "GEOSERVER_CATALOG_SNAPSHOT";
+
+    /** Location of the snapshot, relative to the data directory */
+    static final String SNAPSHOT_PATH = "snapshot/catalog.bin";
+
+    /** Bumped every time the snapshot contents change in an incompatible way */
+    static final int VERSION = 2;
+
+    /** The catalog configuration directories, whose changes invalidate the snapshot */
+    static final String[] CATALOG_DIRECTORIES = {"workspaces", "styles", "layergroups"};
+
+    /** The catalog contents */
+    static class Contents implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        int version = VERSION;
+        String manifest;
+        List<WorkspaceInfo> workspaces = new ArrayList<>();
+        List<NamespaceInfo> namespaces = new ArrayList<>();
+        List<StoreInfo> stores = new ArrayList<>();
+        List<ResourceInfo> resources = new ArrayList<>();
+        List<StyleInfo> styles = new ArrayList<>();
+        List<LayerInfo> layers = new ArrayList<>();
+        List<LayerGroupInfo> layerGroups = new ArrayList<>();
+        String defaultWorkspace;
+        String defaultNamespace;
+        /** Default data store ids, by workspace id */
+        Map<String, String> defaultStores = new HashMap<>();
+        /** Stores disabled at startup because they could not connect */
+        Set<String> disabledOnLoad = new HashSet<>();
+        /** Password connection parameters left out of the snapshot, by store id */
+        Map<String, Set<String>> passwords = new HashMap<>();
+    }
+
+    /**
+     * Object input stream resolving only the classes that can be found in a catalog. The snapshot
+     * is a data directory file, which can be replaced by anyone allowed to write there (e.g., via
+     * the REST resource API), and deserializing arbitrary classes can be exploited to run code.
+     * Rejected classes make the read fail, and the catalog is loaded from the XML files instead.
+     */
+    static class CatalogObjectInputStream extends ObjectInputStream {
+
+        /** The JDK and GeoTools utility classes found in the snapshot */
+        static final Set<String> ALLOWED_CLASSES =
+                new HashSet<>(
+                        Arrays.asList(
+                                "java.lang.Boolean",
+                                "java.lang.Byte",
+                                "java.lang.Character",
+                                "java.lang.Double",
+                                "java.lang.Enum",
+                                "java.lang.Float",
+                                "java.lang.Integer",
+                                "java.lang.Long",
+                                "java.lang.Number",
+                                "java.lang.Short",
+                                "java.lang.String",
+                                "java.lang.String$CaseInsensitiveComparator",
+                                "java.sql.Date",
+                                "java.sql.Time",
+                                "java.sql.Timestamp",
+                                "java.util.ArrayList",
+                                "java.util.Arrays$ArrayList",
+                                "java.util.Collections$EmptyList",
+                                "java.util.Collections$EmptyMap",
+                                "java.util.Collections$EmptySet",
+                                "java.util.Collections$SingletonList",
+                                "java.util.Collections$SingletonMap",
+                                "java.util.Collections$SingletonSet",
+                                "java.util.Collections$SynchronizedCollection",
+                                "java.util.Collections$SynchronizedList",
+                                "java.util.Collections$SynchronizedMap",
+                                "java.util.Collections$SynchronizedRandomAccessList",
+                                "java.util.Collections$SynchronizedSet",
+                                "java.util.Collections$UnmodifiableCollection",
+                                "java.util.Collections$UnmodifiableList",
+                                "java.util.Collections$UnmodifiableMap",
+                                "java.util.Collections$UnmodifiableRandomAccessList",
+                                "java.util.Collections$UnmodifiableSet",
+                                "java.util.Date",
+                                "java.util.HashMap",
+                                "java.util.HashSet",
+                                "java.util.LinkedHashMap",
+                                "java.util.LinkedHashSet",
+                                "java.util.LinkedList",
+                                "java.util.Locale",
+                                "java.util.TreeMap",
+                                "java.util.TreeSet",
+                                "java.util.UUID",
+                                "java.util.concurrent.CopyOnWriteArrayList",
+                                "org.geotools.util.AbstractInternationalString",
+                                "org.geotools.util.CheckedArrayList",
+                                "org.geotools.util.CheckedHashSet",
+                                "org.geotools.util.DateRange",
+                                "org.geotools.util.GenericName",
+                                "org.geotools.util.GrowableInternationalString",
+                                "org.geotools.util.LocalName",
+                                "org.geotools.util.MeasurementRange",
+                                "org.geotools.util.NumberRange",
+                                "org.geotools.util.Range",
+                                "org.geotools.util.ScopedName",
+                                "org.geotools.util.SimpleInternationalString",
+                                "org.geotools.util.UnmodifiableArrayList",
+                                "org.geotools.util.Version"));
+
+        /** Package and class name prefixes allowed in the snapshot */
+        static final String[] ALLOWED_PREFIXES = {
+            Contents.class.getName(),
+            "java.math.",
+            "java.net.URI",
+            "java.awt.Rectangle",
+            "java.awt.geom.",
+            "org.geoserver.catalog.",
+            "org.geotools.coverage.grid.",
+            "org.geotools.geometry.",
+            "org.geotools.jdbc.",
+            "org.geotools.measure.",
+            "org.geotools.metadata.",
+            "org.geotools.referencing.",
+            "org.locationtech.jts.geom.",
+            "javax.measure.",
+            "si.uom.",
+            "systems.uom.",
+            "tec.uom.",
+            "it.geosolutions.jaiext.range."
+        };
+
+        ClassLoader classLoader;
+
+        CatalogObjectInputStream(InputStream input) throws IOException {
+            super(input);
+            this.classLoader = CatalogImpl.class.getClassLoader();
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc)
+                throws IOException, ClassNotFoundException {
+            String name = desc.getName();
+            checkAllowed(name);
+            try {
+                return Class.forName(name, false, classLoader);
+            } catch (ClassNotFoundException ex) {
+                return super.resolveClass(desc);
+            }
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces)
+                throws IOException, ClassNotFoundException {
+            for (String name : interfaces) {
+                checkAllowed(name);
+            }
+            return super.resolveProxyClass(interfaces);
+        }
+
+        private void checkAllowed(String name) throws InvalidClassException {
+            if (!isAllowed(name)) {
+                throw new InvalidClassException(name, "Class not allowed in a catalog snapshot");
+            }
+        }
+
+        static boolean isAllowed(String name) {
+            // arrays are allowed if their component type is
+            int dimensions = 0;
+            while (dimensions < name.length() && name.charAt(dimensions) == '[') {
+                dimensions++;
+            }
+            if (dimensions > 0) {
+                String component = name.substring(dimensions);
+                if (component.length() == 1) {
+                    // primitive type
+                    return true;
+                } else if (component.startsWith("L") && component.endsWith(";")) {
+                    name = component.substring(1, component.length() - 1);
+                } else {
+                    return false;
+                }
+            }
+            if (ALLOWED_CLASSES.contains(name)) {
+                return true;
+            }
+            for (String prefix : ALLOWED_PREFIXES) {
+                if (name.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return name.startsWith("org.opengis.") && isCodeList(name);
+        }
+
+        /**
+         * GeoAPI objects are allowed only if they are code lists, e.g., axis directions. The class
+         * is looked up without being initialized, no code is run.
+         */
+        private static boolean isCodeList(String name) {
+            try {
+                Class<?> clazz = Class.forName(name, false, CatalogImpl.class.getClassLoader());
+                return CodeList.class.isAssignableFrom(clazz);
+            } catch (ClassNotFoundException | LinkageError e) {
+                return false;
+            }
+        }
+    }
+
+    /** Returns true if the snapshot has been enabled */
+    static boolean isEnabled() {
+        return Boolean.parseBoolean(GeoServerExtensions.getProperty(SNAPSHOT_KEY));
+    }
+
+    GeoServerResourceLoader resourceLoader;
+
+    /** Reads back the store passwords from the configuration files, can be null */
+    XStreamPersister xp;
+
+    CatalogSnapshot(GeoServerResourceLoader resourceLoader, XStreamPersister xp) {
+        this.resourceLoader = resourceLoader;
+        this.xp = xp;
+    }
+
+    /**
+     * Computes a digest of the catalog configuration files paths and last modified dates, used to
+     * check if the snapshot is still valid
+     */
+    String computeManifest() throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(String.valueOf(VERSION).getBytes(StandardCharsets.UTF_8));
+            for (String directory : CATALOG_DIRECTORIES) {
+                addToManifest(digest, resourceLoader.get(directory));
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Failed to compute the catalog manifest", e);
+        }
+    }
+
+    private void addToManifest(MessageDigest digest, Resource resource) {
+        Type type = resource.getType();
+        if (type == Type.UNDEFINED) {
+            return;
+        }
+        String entry = resource.path() + ":" + resource.lastmodified() + "\n";
+        digest.update(entry.getBytes(StandardCharsets.UTF_8));
+        if (type == Type.DIRECTORY) {
+            // sort the children, the listing order is not guaranteed
+            List<Resource> children = new ArrayList<>(resource.list());
+            children.sort((r1, r2) -> r1.name().compareTo(r2.name()));
+            for (Resource child : children) {
+                addToManifest(digest, child);
+            }
+        }
+    }
+
+    /**
+     * Reads the catalog from the snapshot
+     *
+     * @param manifest the current manifest
+     * @return the catalog, or null if the snapshot is missing, stale, or cannot be read
+     */
+    CatalogImpl read(String manifest) {
+        Resource resource = resourceLoader.get(SNAPSHOT_PATH);
+        if (!Resources.exists(resource)) {
+            return null;
+        }
+        Contents contents;
+        try (InputStream in = new BufferedInputStream(resource.in(), 64 * 1024);
+                ObjectInputStream ois = new CatalogObjectInputStream(in)) {
+            contents = (Contents) ois.readObject();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to read the catalog snapshot, ignoring it", e);
+            return null;
+        }
+        if (contents.version != VERSION || !manifest.equals(contents.manifest)) {
+            LOGGER.info("The catalog snapshot is stale, ignoring it");
+            return null;
+        }
+        for (StoreInfo store : contents.stores) {
+            Set<String> fields = contents.passwords.get(store.getId());
+            if (fields != null) {
+                try {
+                    store.getConnectionParameters().putAll(readPasswords(store, fields));
+                } catch (Exception e) {
+                    LOGGER.log(
+                            Level.WARNING,
+                            "Failed to read the passwords of store "
+                                    + store.getName()
+                                    + ", ignoring the catalog snapshot",
+                            e);
+                    return null;
+                }
+            }
+        }
+
+        CatalogImpl catalog = new CatalogImpl();
+        catalog.setResourceLoader(resourceLoader);
+        // the objects have already been validated when first loaded, add them directly
+        CatalogFacade facade = catalog.getFacade();
+        for (WorkspaceInfo ws : contents.workspaces) {
+            catalog.resolve(ws);
+            facade.add(ws);
+        }
+        for (NamespaceInfo ns : contents.namespaces) {
+            catalog.resolve(ns);
+            facade.add(ns);
+        }
+        for (StyleInfo style : contents.styles) {
+            catalog.resolve(style);
+            facade.add(style);
+        }
+        for (StoreInfo store : contents.stores) {
+            if (contents.disabledOnLoad.contains(store.getId())) {
+                // will be checked again by the loader
+                store.setEnabled(true);
+                store.setError(null);
+            }
+            catalog.resolve(store);
+            facade.add(store);
+        }
+        for (ResourceInfo resource : contents.resources) {
+            catalog.resolve(resource);
+            facade.add(resource);
+        }
+        for (LayerInfo layer : contents.layers) {
+            catalog.resolve(layer);
+            facade.add(layer);
+        }
+        for (LayerGroupInfo group : contents.layerGroups) {
+            catalog.resolve(group);
+            facade.add(group);
+        }
+        if (contents.defaultWorkspace != null) {
+            catalog.setDefaultWorkspace(catalog.getWorkspace(contents.defaultWorkspace));
+        }
+        if (contents.defaultNamespace != null) {
+            catalog.setDefaultNamespace(catalog.getNamespace(contents.defaultNamespace));
+        }
+        for (Map.Entry<String, String> entry : contents.defaultStores.entrySet()) {
+            WorkspaceInfo ws = catalog.getWorkspace(entry.getKey());
+            DataStoreInfo ds = catalog.getDataStore(entry.getValue());
+            if (ws != null && ds != null) {
+                catalog.setDefaultDataStore(ws, ds);
+            }
+        }
+        catalog.resolve();
+        return catalog;
+    }
+
+    /** Writes the catalog snapshot, failures are logged but not propagated */
+    void write(Catalog catalog, String manifest) {
+        Contents contents = new Contents();
+        contents.manifest = manifest;
+        unwrap(catalog.getWorkspaces(), contents.workspaces);
+        unwrap(catalog.getNamespaces(), contents.namespaces);
+        unwrap(catalog.getStores(StoreInfo.class), contents.stores);
+        unwrap(catalog.getResources(ResourceInfo.class), contents.resources);
+        unwrap(catalog.getStyles(), contents.styles);
+        unwrap(catalog.getLayers(), contents.layers);
+        unwrap(catalog.getLayerGroups(), contents.layerGroups);
+        if (catalog.getDefaultWorkspace() != null) {
+            contents.defaultWorkspace = catalog.getDefaultWorkspace().getId();
+        }
+        if (catalog.getDefaultNamespace() != null) {
+            contents.defaultNamespace = catalog.getDefaultNamespace().getId();
+        }
+        for (WorkspaceInfo ws : contents.workspaces) {
+            DataStoreInfo ds = catalog.getDefaultDataStore(ws);
+            if (ds != null) {
+                contents.defaultStores.put(ws.getId(), ds.getId());
+            }
+        }
+        // the passwords are left out, replacing the live connection parameters while serializing
+        Map<Object, Object> replacements = new IdentityHashMap<>();
+        for (StoreInfo store : contents.stores) {
+            if (!store.isEnabled() && store.getError() != null) {
+                contents.disabledOnLoad.add(store.getId());
+            }
+            Map<String, Serializable> parameters = store.getConnectionParameters();
+            if (parameters == null || parameters.isEmpty()) {
+                continue;
+            }
+            Set<String> fields = getPasswordFields(store);
+            if (fields == null) {
+                LOGGER.info(
+                        "Cannot tell the password parameters of the stores, "
+                                + "the catalog snapshot will not be written");
+                return;
+            }
+            Map<String, Serializable> stripped = new HashMap<>(parameters);
+            Set<String> removed = new HashSet<>();
+            for (String field : fields) {
+                if (stripped.remove(field) != null) {
+                    removed.add(field);
+                }
+            }
+            if (!removed.isEmpty()) {
+                replacements.put(parameters, stripped);
+                contents.passwords.put(store.getId(), removed);
+            }
+        }
+
+        Resource resource = resourceLoader.get(SNAPSHOT_PATH);
+        try (OutputStream out = new BufferedOutputStream(resource.out(), 64 * 1024);
+                ObjectOutputStream oos = new ReplacingObjectOutputStream(out, replacements)) {
+            oos.writeObject(contents);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to write the catalog snapshot", e);
+            resource.delete();
+        }
+    }
+
+    /**
+     * Returns the names of the connection parameters of the store holding passwords, or null if
+     * they cannot be determined
+     */
+    Set<String> getPasswordFields(StoreInfo store) {
+        GeoServerSecurityManager securityManager = xp != null ? xp.getSecurityManager() : null;
+        if (securityManager == null) {
+            return null;
+        }
+        return securityManager.getConfigPasswordEncryptionHelper().getEncryptedFields(store);
+    }
+
+    /** Reads the given password parameters, decrypted, from the store configuration file */
+    Map<String, Serializable> readPasswords(StoreInfo store, Set<String> fields)
+            throws IOException {
+        if (xp == null || !(store instanceof DataStoreInfo)) {
+            throw new IOException("Cannot read the configuration of store " + store.getName());
+        }
+        Resource resource =
+                new GeoServerDataDirectory(resourceLoader).config((DataStoreInfo) store);
+        StoreInfo stored;
+        try (InputStream in = resource.in()) {
+            stored = xp.load(in, DataStoreInfo.class);
+        }
+        Map<String, Serializable> result = new HashMap<>();
+        for (String field : fields) {
+            Serializable value = stored.getConnectionParameters().get(field);
+            if (value != null) {
+                result.put(field, value);
+            }
+        }
+        return result;
+    }
+
+    /** Object output stream writing a replacement in place of some of the objects */
+    static class ReplacingObjectOutputStream extends ObjectOutputStream {
+
+        Map<Object, Object> replacements;
+
+        ReplacingObjectOutputStream(OutputStream out, Map<Object, Object> replacements)
+                throws IOException {
+            super(out);
+            this.replacements = replacements;
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) throws IOException {
+            Object replacement = replacements.get(obj);
+            return replacement != null ? replacement : obj;
+        }
+    }
+
+    private <T> void unwrap(Collection<? extends T> source, List<T> target) {
+        for (T t : source) {
+            target.add(ModificationProxy.unwrap(t));
+        }
+    }
+}
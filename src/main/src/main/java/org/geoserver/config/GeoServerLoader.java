@@ -6,10 +6,18 @@
 package org.geoserver.config;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.*;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -22,8 +30,10 @@ import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.LayerGroupInfo;
 import org.geoserver.catalog.LayerInfo;
 import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.PublishedInfo;
 import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.catalog.ResourcePool;
+import org.geoserver.catalog.StoreInfo;
 import org.geoserver.catalog.StyleInfo;
 import org.geoserver.catalog.WMSLayerInfo;
 import org.geoserver.catalog.WMSStoreInfo;
@@ -32,6 +42,8 @@ import org.geoserver.catalog.WMTSStoreInfo;
 import org.geoserver.catalog.WorkspaceInfo;
 import org.geoserver.catalog.event.CatalogListener;
 import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.catalog.impl.ModificationProxy;
+import org.geoserver.catalog.impl.ResolvingProxy;
 import org.geoserver.catalog.util.LegacyCatalogImporter;
 import org.geoserver.catalog.util.LegacyCatalogReader;
 import org.geoserver.catalog.util.LegacyFeatureTypeInfoReader;
@@ -97,16 +109,120 @@ public abstract class GeoServerLoader {
         }
     }
 
+    /**
+     * A pool of {@link XStreamPersister} configured for catalog loading. Persisters are not meant
+     * to be used by multiple threads at the same time, the pool allows to parse the configuration
+     * files in the IO threads, reusing the (expensive to build) persisters across them.
+     */
+    static final class PersisterPool {
+
+        final Queue<XStreamPersister> persisters = new ConcurrentLinkedQueue<>();
+
+        final XStreamPersisterFactory xpf;
+
+        final XStreamPersister template;
+
+        final Catalog catalog;
+
+        /** Cumulated parse time, across all threads */
+        final LongAdder parseTime = new LongAdder();
+
+        /** Number of objects parsed */
+        final LongAdder parsed = new LongAdder();
+
+        PersisterPool(XStreamPersisterFactory xpf, XStreamPersister template, Catalog catalog) {
+            this.xpf = xpf;
+            this.template = template;
+            this.catalog = catalog;
+        }
+
+        <T> T depersist(byte[] contents, Class<T> clazz) throws IOException {
+            XStreamPersister xp = persisters.poll();
+            if (xp == null) {
+                xp = xpf.createXMLPersister();
+                xp.setCatalog(catalog);
+                xp.setUnwrapNulls(false);
+                xp.setEncryptPasswordFields(template.isEncryptPasswordFields());
+            }
+            long start = System.nanoTime();
+            try {
+                return GeoServerLoader.depersist(xp, contents, clazz);
+            } finally {
+                parseTime.add(System.nanoTime() - start);
+                parsed.increment();
+                persisters.offer(xp);
+            }
+        }
+    }
+
+    /**
+     * Collects the time spent in the various catalog loading phases, each phase can be started and
+     * stopped multiple times, the time is cumulated
+     */
+    static final class LoadingPhases {
+
+        final Map<String, Stopwatch> phases = new LinkedHashMap<>();
+
+        void start(String phase) {
+            Stopwatch sw = phases.computeIfAbsent(phase, k -> Stopwatch.createUnstarted());
+            if (!sw.isRunning()) {
+                sw.start();
+            }
+        }
+
+        void stop(String phase) {
+            Stopwatch sw = phases.get(phase);
+            if (sw != null && sw.isRunning()) {
+                sw.stop();
+            }
+        }
+
+        /** Returns the time spent in the phase, in milliseconds */
+        long getTime(String phase) {
+            Stopwatch sw = phases.get(phase);
+            return sw != null ? sw.elapsed(TimeUnit.MILLISECONDS) : 0;
+        }
+
+        @Override
+        public String toString() {
+            return phases.entrySet().stream()
+                    .map(e -> e.getKey() + " " + e.getValue())
+                    .collect(Collectors.joining(", "));
+        }
+    }
+
     /** Data store IO resources */
     static final class StoreContents {
         Resource resource;
         byte[] contents;
+        /** The parsed store, if parsing happened in the IO threads */
+        StoreInfo store;
+        /** The parsing error, if any */
+        Exception error;
 
         public StoreContents(Resource resource, byte[] contents) {
             super();
             this.resource = resource;
             this.contents = contents;
         }
+
+        /** Parses the contents, can be called in the IO threads to parallelize parsing */
+        void parse(PersisterPool persisters, Class<? extends StoreInfo> clazz) {
+            try {
+                store = persisters.depersist(contents, clazz);
+            } catch (Exception e) {
+                error = e;
+            }
+        }
+
+        <T extends StoreInfo> T getStore(XStreamPersister xp, Class<T> clazz) throws Exception {
+            if (error != null) {
+                throw error;
+            } else if (store != null) {
+                return clazz.cast(store);
+            }
+            return depersist(xp, contents, clazz);
+        }
     }
 
     /** Layer IO resources */
@@ -114,12 +230,77 @@ public abstract class GeoServerLoader {
         Resource resource;
         byte[] contents;
         byte[] layerContents;
+        /** The parsed resource, if parsing happened in the IO threads */
+        ResourceInfo resourceInfo;
+        /** The parsed layer, if parsing happened in the IO threads */
+        LayerInfo layer;
+        /** The resource parsing error, if any */
+        Exception resourceError;
+        /** The layer parsing error, if any */
+        Exception layerError;
 
         public LayerContents(Resource resource, byte[] contents, byte[] layerContents) {
             this.resource = resource;
             this.contents = contents;
             this.layerContents = layerContents;
         }
+
+        /** Parses the contents, can be called in the IO threads to parallelize parsing */
+        void parse(PersisterPool persisters, Class<? extends ResourceInfo> clazz) {
+            try {
+                resourceInfo = persisters.depersist(contents, clazz);
+            } catch (Exception e) {
+                resourceError = e;
+                return;
+            }
+            try {
+                layer = persisters.depersist(layerContents, LayerInfo.class);
+            } catch (Exception e) {
+                layerError = e;
+            }
+        }
+
+        <T extends ResourceInfo> T getResource(XStreamPersister xp, Class<T> clazz)
+                throws Exception {
+            if (resourceError != null) {
+                throw resourceError;
+            } else if (resourceInfo != null) {
+                return clazz.cast(resourceInfo);
+            }
+            return depersist(xp, contents, clazz);
+        }
+
+        LayerInfo getLayer(XStreamPersister xp) throws Exception {
+            if (layerError != null) {
+                throw layerError;
+            } else if (layer != null) {
+                return layer;
+            }
+            return depersist(xp, layerContents, LayerInfo.class);
+        }
+    }
+
+    /** A parsed configuration file, or the error that occurred while parsing it */
+    static final class ParsedContents<T> {
+        Resource resource;
+        T value;
+        Exception error;
+
+        ParsedContents(Resource resource, PersisterPool persisters, Class<T> clazz) {
+            this.resource = resource;
+            try {
+                this.value = persisters.depersist(resource.getContents(), clazz);
+            } catch (Exception e) {
+                this.error = e;
+            }
+        }
+
+        T get() throws Exception {
+            if (error != null) {
+                throw error;
+            }
+            return value;
+        }
     }
 
     /** Resource/Layer mapper to IO resources (generic) */
@@ -146,6 +327,21 @@ public abstract class GeoServerLoader {
                 return null;
             }
         }
+
+        /**
+         * Returns a mapper that also parses the resource and layer, allowing to perform it in the
+         * IO threads
+         */
+        ResourceMapper<LayerContents> parsing(
+                PersisterPool persisters, Class<? extends ResourceInfo> clazz) {
+            return rd -> {
+                LayerContents lc = apply(rd);
+                if (lc != null) {
+                    lc.parse(persisters, clazz);
+                }
+                return lc;
+            };
+        }
     }
 
     /** Feature Type IO resource mapper */
@@ -181,7 +377,7 @@ public abstract class GeoServerLoader {
         public void accept(LayerContents lc) {
             T ft = null;
             try {
-                ft = depersist(xp, lc.contents, clazz);
+                ft = lc.getResource(xp, clazz);
                 catalog.add(ft);
             } catch (Exception e) {
                 LOGGER.log(Level.WARNING, "Failed to load resource", e);
@@ -203,7 +399,9 @@ public abstract class GeoServerLoader {
             }
 
             try {
-                LayerInfo l = depersist(xp, lc.layerContents, LayerInfo.class);
+                LayerInfo l = lc.getLayer(xp);
+                // parsed in the IO threads before the resource got added, resolve it now
+                l.setResource(resolve(catalog, l.getResource()));
                 catalog.add(l);
 
                 LOGGER.info("Loaded layer '" + l.getName() + "'");
@@ -213,6 +411,22 @@ public abstract class GeoServerLoader {
         }
     }
 
+    /**
+     * Resolves a reference to an object that was not in the catalog yet when the configuration file
+     * got parsed, returns the reference unchanged if the object cannot be found
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T resolve(Catalog catalog, T reference) {
+        T resolved = ResolvingProxy.resolve(catalog, reference);
+        return resolved != null ? (T) CatalogImpl.unwrap(resolved) : reference;
+    }
+
+    /** Enables the background opening of stores at startup */
+    static final String PREWARM_KEY = "org.geoserver.catalog.resourcePool.prewarm";
+
+    /** Number of threads used to pre-warm the stores */
+    static final String PREWARM_THREADS_KEY = "org.geoserver.catalog.resourcePool.prewarmThreads";
+
     static final ExtensionFilter XML_FILTER = new Resources.ExtensionFilter("XML");
 
     protected GeoServerResourceLoader resourceLoader;
@@ -276,6 +490,8 @@ public abstract class GeoServerLoader {
 
                 // load initializers
                 loadInitializers(geoserver);
+
+                prewarmStores(geoserver.getCatalog());
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
@@ -285,6 +501,32 @@ public abstract class GeoServerLoader {
         return bean;
     }
 
+    /**
+     * Opens the enabled stores in background if {@link #PREWARM_KEY} is set to true, using {@link
+     * #PREWARM_THREADS_KEY} threads (4 by default)
+     */
+    void prewarmStores(Catalog catalog) {
+        if (!Boolean.parseBoolean(GeoServerExtensions.getProperty(PREWARM_KEY))) {
+            return;
+        }
+        int threads = GeoServerExtensions.getIntProperty(PREWARM_THREADS_KEY, 4);
+        ExecutorService executor =
+                Executors.newFixedThreadPool(
+                        threads,
+                        new ThreadFactoryBuilder()
+                                .setNameFormat("ResourcePoolPrewarm-%d")
+                                .setDaemon(true)
+                                .build());
+        Stopwatch sw = Stopwatch.createStarted();
+        catalog.getResourcePool()
+                .prewarm(executor)
+                .whenComplete(
+                        (r, t) -> {
+                            executor.shutdown();
+                            LOGGER.info("Pre-warmed stores in " + sw.stop());
+                        });
+    }
+
     protected abstract void loadCatalog(Catalog catalog, XStreamPersister xp) throws Exception;
 
     protected abstract void loadGeoServer(final GeoServer geoServer, XStreamPersister xp)
@@ -394,7 +636,7 @@ public abstract class GeoServerLoader {
             // assume 2.x style data directory
             Stopwatch sw = Stopwatch.createStarted();
             LOGGER.info("Loading catalog...");
-            CatalogImpl catalog2 = (CatalogImpl) readCatalog(xp);
+            CatalogImpl catalog2 = readCatalogOrSnapshot(xp);
             LOGGER.info("Read catalog in " + sw.stop());
             // make to remove the old resource pool catalog listener
             ((CatalogImpl) catalog).sync(catalog2);
@@ -411,6 +653,50 @@ public abstract class GeoServerLoader {
         }
     }
 
+    /**
+     * Reads the catalog from the binary snapshot, if enabled and up to date, otherwise reads it
+     * from the XML files and refreshes the snapshot
+     */
+    CatalogImpl readCatalogOrSnapshot(XStreamPersister xp) throws Exception {
+        if (!CatalogSnapshot.isEnabled()) {
+            return (CatalogImpl) readCatalog(xp);
+        }
+
+        CatalogSnapshot snapshot = new CatalogSnapshot(resourceLoader, xp);
+        String manifest = snapshot.computeManifest();
+        CatalogImpl catalog = snapshot.read(manifest);
+        if (catalog != null) {
+            LOGGER.info("Catalog read from snapshot");
+            if (checkStoresOnStartup(xp)) {
+                checkDataStores(catalog);
+            }
+            return catalog;
+        }
+
+        catalog = (CatalogImpl) readCatalog(xp);
+        snapshot.write(catalog, manifest);
+        return catalog;
+    }
+
+    /** Disables the enabled data stores that cannot be connected to */
+    void checkDataStores(Catalog catalog) {
+        for (DataStoreInfo ds : catalog.getDataStores()) {
+            if (!ds.isEnabled()) {
+                continue;
+            }
+            try {
+                ds.getDataStore(null);
+            } catch (Throwable t) {
+                LOGGER.warning("Error connecting to '" + ds.getName() + "'. Disabling.");
+                LOGGER.log(Level.INFO, "", t);
+
+                DataStoreInfo info = ModificationProxy.unwrap(ds);
+                info.setError(t);
+                info.setEnabled(false);
+            }
+        }
+    }
+
     boolean checkStoresOnStartup(XStreamPersister xp) {
         Resource f = resourceLoader.get("global.xml");
         if (Resources.exists(f)) {
@@ -431,12 +717,33 @@ public abstract class GeoServerLoader {
         return true;
     }
 
-    /** Reads the catalog from disk. */
+    /**
+     * Reads the catalog from disk.
+     *
+     * <p>The configuration files are read and parsed in parallel by the IO threads of {@link
+     * AsynchResourceIterator}, using a pool of persisters, while the objects are added to the
+     * catalog by the calling thread, in dependency order (stores before resources, resources before
+     * layers). References to objects not yet loaded are kept as proxies, and resolved when the
+     * object is added to the catalog. The objects are all added in a single batch, see {@link
+     * Catalog#beginBatch()}.
+     */
     Catalog readCatalog(XStreamPersister xp) throws Exception {
         CatalogImpl catalog = new CatalogImpl();
         catalog.setResourceLoader(resourceLoader);
+        catalog.beginBatch();
+        try {
+            loadCatalog(catalog, xp);
+        } finally {
+            catalog.commitBatch();
+        }
+        return catalog;
+    }
+
+    private void loadCatalog(CatalogImpl catalog, XStreamPersister xp) throws Exception {
         xp.setCatalog(catalog);
         xp.setUnwrapNulls(false);
+        PersisterPool persisters = new PersisterPool(xpf, xp, catalog);
+        LoadingPhases phases = new LoadingPhases();
 
         // see if we really need to verify stores on startup
         boolean checkStores = checkStoresOnStartup(xp);
@@ -445,7 +752,9 @@ public abstract class GeoServerLoader {
         }
 
         // global styles
-        loadStyles(resourceLoader.get("styles"), catalog, xp);
+        phases.start("styles");
+        loadStyles(resourceLoader.get("styles"), catalog, xp, persisters);
+        phases.stop("styles");
 
         // workspaces, stores, and resources
         Resource workspaces = resourceLoader.get("workspaces");
@@ -471,6 +780,7 @@ public abstract class GeoServerLoader {
                             .filter(r -> Resources.DirectoryFilter.INSTANCE.accept(r))
                             .collect(Collectors.toList());
 
+            phases.start("workspaces");
             try (AsynchResourceIterator<WorkspaceContents> it =
                     new AsynchResourceIterator<>(
                             workspaces,
@@ -536,29 +846,34 @@ public abstract class GeoServerLoader {
                     // load the styles for the workspace
                     Resource styles = workspaceResource.get("styles");
                     if (styles != null) {
-                        loadStyles(styles, catalog, xp);
+                        phases.stop("workspaces");
+                        phases.start("styles");
+                        loadStyles(styles, catalog, xp, persisters);
+                        phases.stop("styles");
+                        phases.start("workspaces");
                     }
                 }
             }
+            phases.stop("workspaces");
 
-            // maps each store into a StoreContents
+            // maps each store into a parsed StoreContents
             ResourceMapper<StoreContents> storeMapper =
                     sd -> {
                         Resource f = sd.get("datastore.xml");
                         if (Resources.exists(f)) {
-                            return new StoreContents(f, f.getContents());
+                            return parseStore(f, persisters, DataStoreInfo.class);
                         }
                         f = sd.get("coveragestore.xml");
                         if (Resources.exists(f)) {
-                            return new StoreContents(f, f.getContents());
+                            return parseStore(f, persisters, CoverageStoreInfo.class);
                         }
                         f = sd.get("wmsstore.xml");
                         if (Resources.exists(f)) {
-                            return new StoreContents(f, f.getContents());
+                            return parseStore(f, persisters, WMSStoreInfo.class);
                         }
                         f = sd.get("wmtsstore.xml");
                         if (Resources.exists(f)) {
-                            return new StoreContents(f, f.getContents());
+                            return parseStore(f, persisters, WMTSStoreInfo.class);
                         }
                         if (!isConfigDirectory(sd)) {
                             LOGGER.warning("Ignoring store directory '" + sd.name() + "'");
@@ -569,6 +884,7 @@ public abstract class GeoServerLoader {
 
             for (Resource wsd : workspaceList) {
                 // load the stores for this workspace
+                phases.start("stores and resources");
                 try (AsynchResourceIterator<StoreContents> it =
                         new AsynchResourceIterator<>(
                                 wsd, Resources.DirectoryFilter.INSTANCE, storeMapper)) {
@@ -576,13 +892,13 @@ public abstract class GeoServerLoader {
                         StoreContents storeContents = it.next();
                         final String resourceName = storeContents.resource.name();
                         if ("datastore.xml".equals(resourceName)) {
-                            loadDataStore(storeContents, catalog, xp, checkStores);
+                            loadDataStore(storeContents, catalog, xp, persisters, checkStores);
                         } else if ("coveragestore.xml".equals(resourceName)) {
-                            loadCoverageStore(storeContents, catalog, xp);
+                            loadCoverageStore(storeContents, catalog, xp, persisters);
                         } else if ("wmsstore.xml".equals(resourceName)) {
-                            loadWmsStore(storeContents, catalog, xp);
+                            loadWmsStore(storeContents, catalog, xp, persisters);
                         } else if ("wmtsstore.xml".equals(resourceName)) {
-                            loadWmtsStore(storeContents, catalog, xp);
+                            loadWmtsStore(storeContents, catalog, xp, persisters);
                         } else if (!isConfigDirectory(storeContents.resource)) {
                             LOGGER.warning(
                                     "Ignoring store directory '"
@@ -593,10 +909,14 @@ public abstract class GeoServerLoader {
                     }
                 }
 
+                phases.stop("stores and resources");
+
                 // load the layer groups for this workspace
                 Resource layergroups = wsd.get("layergroups");
                 if (layergroups != null) {
-                    loadLayerGroups(layergroups, catalog, xp);
+                    phases.start("layer groups");
+                    loadLayerGroups(layergroups, catalog, xp, persisters);
+                    phases.stop("layer groups");
                 }
             }
         } else {
@@ -606,23 +926,50 @@ public abstract class GeoServerLoader {
         // layergroups
         Resource layergroups = resourceLoader.get("layergroups");
         if (layergroups != null) {
-            loadLayerGroups(layergroups, catalog, xp);
+            phases.start("layer groups");
+            loadLayerGroups(layergroups, catalog, xp, persisters);
+            phases.stop("layer groups");
         }
+        phases.start("resolve");
         xp.setUnwrapNulls(true);
         catalog.resolve();
+        phases.stop("resolve");
         // re-enable extended validation
         if (!checkStores) {
             catalog.setExtendedValidation(true);
         }
-        return catalog;
+        if (LOGGER.isLoggable(Level.INFO)) {
+            LOGGER.info(
+                    "Catalog loading phases: "
+                            + phases
+                            + ". Parsed "
+                            + persisters.parsed.sum()
+                            + " configuration files in the IO threads, cumulated parse time "
+                            + TimeUnit.NANOSECONDS.toMillis(persisters.parseTime.sum())
+                            + " ms, using "
+                            + persisters.persisters.size()
+                            + " persisters");
+        }
+    }
+
+    /** Reads and parses a store configuration file */
+    private StoreContents parseStore(
+            Resource f, PersisterPool persisters, Class<? extends StoreInfo> clazz)
+            throws IOException {
+        StoreContents contents = new StoreContents(f, f.getContents());
+        contents.parse(persisters, clazz);
+        return contents;
     }
 
     private void loadWmsStore(
-            StoreContents storeContents, CatalogImpl catalog, XStreamPersister xp) {
+            StoreContents storeContents,
+            CatalogImpl catalog,
+            XStreamPersister xp,
+            PersisterPool persisters) {
         final Resource storeResource = storeContents.resource;
         WMSStoreInfo wms = null;
         try {
-            wms = depersist(xp, storeContents.contents, WMSStoreInfo.class);
+            wms = storeContents.getStore(xp, WMSStoreInfo.class);
             catalog.add(wms);
 
             LOGGER.info(
@@ -642,7 +989,7 @@ public abstract class GeoServerLoader {
                 new AsynchResourceIterator<>(
                         storeResource.parent(),
                         Resources.DirectoryFilter.INSTANCE,
-                        WMS_LAYER_MAPPER)) {
+                        WMS_LAYER_MAPPER.parsing(persisters, WMSLayerInfo.class))) {
             while (it.hasNext()) {
                 LayerContents lc = it.next();
                 coverageLoader.accept(lc);
@@ -651,11 +998,14 @@ public abstract class GeoServerLoader {
     }
 
     private void loadWmtsStore(
-            StoreContents storeContents, CatalogImpl catalog, XStreamPersister xp) {
+            StoreContents storeContents,
+            CatalogImpl catalog,
+            XStreamPersister xp,
+            PersisterPool persisters) {
         final Resource storeResource = storeContents.resource;
         WMTSStoreInfo wmts = null;
         try {
-            wmts = depersist(xp, storeContents.contents, WMTSStoreInfo.class);
+            wmts = storeContents.getStore(xp, WMTSStoreInfo.class);
             catalog.add(wmts);
 
             LOGGER.info("Loaded wmtsstore '" + wmts.getName() + "'");
@@ -672,7 +1022,7 @@ public abstract class GeoServerLoader {
                 new AsynchResourceIterator<>(
                         storeResource.parent(),
                         Resources.DirectoryFilter.INSTANCE,
-                        WMTS_LAYER_MAPPER)) {
+                        WMTS_LAYER_MAPPER.parsing(persisters, WMTSLayerInfo.class))) {
             while (it.hasNext()) {
                 LayerContents lc = it.next();
                 coverageLoader.accept(lc);
@@ -681,11 +1031,14 @@ public abstract class GeoServerLoader {
     }
 
     private void loadCoverageStore(
-            StoreContents storeContents, CatalogImpl catalog, XStreamPersister xp) {
+            StoreContents storeContents,
+            CatalogImpl catalog,
+            XStreamPersister xp,
+            PersisterPool persisters) {
         CoverageStoreInfo cs = null;
         final Resource storeResource = storeContents.resource;
         try {
-            cs = depersist(xp, storeContents.contents, CoverageStoreInfo.class);
+            cs = storeContents.getStore(xp, CoverageStoreInfo.class);
             catalog.add(cs);
 
             if (LOGGER.isLoggable(Level.INFO)) {
@@ -710,7 +1063,7 @@ public abstract class GeoServerLoader {
                 new AsynchResourceIterator<>(
                         storeResource.parent(),
                         Resources.DirectoryFilter.INSTANCE,
-                        COVERAGE_LAYER_MAPPER)) {
+                        COVERAGE_LAYER_MAPPER.parsing(persisters, CoverageInfo.class))) {
             while (it.hasNext()) {
                 LayerContents lc = it.next();
                 coverageLoader.accept(lc);
@@ -722,11 +1075,12 @@ public abstract class GeoServerLoader {
             StoreContents storeContents,
             CatalogImpl catalog,
             XStreamPersister xp,
+            PersisterPool persisters,
             boolean checkStores) {
         final Resource storeResource = storeContents.resource;
         DataStoreInfo ds;
         try {
-            ds = depersist(xp, storeContents.contents, DataStoreInfo.class);
+            ds = storeContents.getStore(xp, DataStoreInfo.class);
             catalog.add(ds);
 
             if (LOGGER.isLoggable(Level.INFO)) {
@@ -764,7 +1118,7 @@ public abstract class GeoServerLoader {
                 new AsynchResourceIterator<>(
                         storeResource.parent(),
                         Resources.DirectoryFilter.INSTANCE,
-                        FEATURE_LAYER_MAPPER)) {
+                        FEATURE_LAYER_MAPPER.parsing(persisters, FeatureTypeInfo.class))) {
             while (it.hasNext()) {
                 LayerContents lc = it.next();
                 featureLoader.accept(lc);
@@ -945,13 +1299,21 @@ public abstract class GeoServerLoader {
     }
 
     void loadStyles(Resource styles, Catalog catalog, XStreamPersister xp) throws IOException {
+        loadStyles(styles, catalog, xp, new PersisterPool(xpf, xp, catalog));
+    }
+
+    void loadStyles(Resource styles, Catalog catalog, XStreamPersister xp, PersisterPool persisters)
+            throws IOException {
         Filter<Resource> styleFilter =
                 r -> XML_FILTER.accept(r) && !Resources.exists(styles.get(r.name() + ".xml"));
-        try (AsynchResourceIterator<byte[]> it =
-                new AsynchResourceIterator<>(styles, styleFilter, r -> r.getContents())) {
+        try (AsynchResourceIterator<ParsedContents<StyleInfo>> it =
+                new AsynchResourceIterator<>(
+                        styles,
+                        styleFilter,
+                        r -> new ParsedContents<>(r, persisters, StyleInfo.class))) {
             while (it.hasNext()) {
                 try {
-                    StyleInfo s = depersist(xp, it.next(), StyleInfo.class);
+                    StyleInfo s = it.next().get();
                     catalog.add(s);
 
                     if (LOGGER.isLoggable(Level.INFO)) {
@@ -965,16 +1327,29 @@ public abstract class GeoServerLoader {
     }
 
     void loadLayerGroups(Resource layerGroups, Catalog catalog, XStreamPersister xp) {
-        try (AsynchResourceIterator<byte[]> it =
-                new AsynchResourceIterator<>(layerGroups, XML_FILTER, r -> r.getContents())) {
+        loadLayerGroups(layerGroups, catalog, xp, new PersisterPool(xpf, xp, catalog));
+    }
+
+    void loadLayerGroups(
+            Resource layerGroups, Catalog catalog, XStreamPersister xp, PersisterPool persisters) {
+        try (AsynchResourceIterator<ParsedContents<LayerGroupInfo>> it =
+                new AsynchResourceIterator<>(
+                        layerGroups,
+                        XML_FILTER,
+                        r -> new ParsedContents<>(r, persisters, LayerGroupInfo.class))) {
             while (it.hasNext()) {
                 try {
-                    LayerGroupInfo lg = depersist(xp, it.next(), LayerGroupInfo.class);
+                    LayerGroupInfo lg = it.next().get();
                     if (lg.getLayers() == null || lg.getLayers().size() == 0) {
                         LOGGER.warning(
                                 "Skipping empty layer group '" + lg.getName() + "', it is invalid");
                         continue;
                     }
+                    // nested groups might have been parsed before being added
+                    List<PublishedInfo> layers = lg.getLayers();
+                    for (int i = 0; i < layers.size(); i++) {
+                        layers.set(i, resolve(catalog, layers.get(i)));
+                    }
                     catalog.add(lg);
 
                     LOGGER.info("Loaded layer group '" + lg.getName() + "'");
@@ -19,7 +19,9 @@ public interface JAIInfo extends Cloneable, Serializable {
     static enum PngEncoderType {
         JDK,
         NATIVE,
-        PNGJ
+        PNGJ,
+        /** Compresses large images in parallel, falls back on PNGJ for unsupported layouts */
+        PARALLEL
     };
 
     /** Flag controlling image interpolation. */
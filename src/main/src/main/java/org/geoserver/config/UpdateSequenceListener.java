@@ -8,13 +8,14 @@ package org.geoserver.config;
 import java.util.List;
 import org.geoserver.catalog.CatalogException;
 import org.geoserver.catalog.event.CatalogAddEvent;
-import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogBatchListener;
+import org.geoserver.catalog.event.CatalogEvent;
 import org.geoserver.catalog.event.CatalogModifyEvent;
 import org.geoserver.catalog.event.CatalogPostModifyEvent;
 import org.geoserver.catalog.event.CatalogRemoveEvent;
 
 /** Updates the updateSequence on Catalog events. */
-class UpdateSequenceListener implements CatalogListener, ConfigurationListener {
+class UpdateSequenceListener implements CatalogBatchListener, ConfigurationListener {
 
     GeoServer geoServer;
     boolean updating = false;
@@ -56,6 +57,12 @@ class UpdateSequenceListener implements CatalogListener, ConfigurationListener {
         incrementSequence();
     }
 
+    @Override
+    public void handleBatch(List<CatalogEvent> events) throws CatalogException {
+        // a single bump for the whole batch
+        incrementSequence();
+    }
+
     public void reloaded() {
         // never mind
     }
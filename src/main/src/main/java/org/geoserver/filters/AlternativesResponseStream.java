@@ -64,7 +64,10 @@ public class AlternativesResponseStream extends ServletOutputStream {
         //            logger.warning("Mime type was not set before first write!");
         //        }
 
-        if (type != null && isCompressible(type)) {
+        // content that is already encoded (e.g., precompressed) is passed through as is
+        if (type != null
+                && isCompressible(type)
+                && !myResponse.containsHeader("Content-Encoding")) {
             logger.log(Level.FINE, "Compressing output for mimetype: {0}", type);
             myResponse.addHeader("Content-Encoding", "gzip");
             myStream = new GZIPResponseStream(myResponse);
@@ -1570,6 +1570,16 @@ public class SecureCatalogImpl extends AbstractDecorator<Catalog> implements Cat
         delegate.removeListeners(listenerClass);
     }
 
+    @Override
+    public void beginBatch() {
+        delegate.beginBatch();
+    }
+
+    @Override
+    public void commitBatch() {
+        delegate.commitBatch();
+    }
+
     @Override
     public CatalogCapabilities getCatalogCapabilities() {
         return delegate.getCatalogCapabilities();
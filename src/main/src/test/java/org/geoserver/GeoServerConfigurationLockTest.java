@@ -0,0 +1,103 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.geoserver.GeoServerConfigurationLock.LockType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GeoServerConfigurationLockTest {
+
+    GeoServerConfigurationLock locker;
+
+    ExecutorService executor;
+
+    long timeout;
+
+    @Before
+    public void setUp() {
+        // don't wait 30 seconds for locks that cannot be acquired
+        timeout = GeoServerConfigurationLock.DEFAULT_TRY_LOCK_TIMEOUT_MS;
+        GeoServerConfigurationLock.DEFAULT_TRY_LOCK_TIMEOUT_MS = 100;
+        locker = new GeoServerConfigurationLock();
+        locker.setWorkspaceLocking(true);
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        locker.unlock();
+        executor.shutdownNow();
+        GeoServerConfigurationLock.DEFAULT_TRY_LOCK_TIMEOUT_MS = timeout;
+    }
+
+    private int stripe(String workspace) {
+        return Math.floorMod(workspace.hashCode(), GeoServerConfigurationLock.WORKSPACE_STRIPES);
+    }
+
+    private boolean tryLockInOtherThread(LockType type, String workspace) throws Exception {
+        Future<Boolean> future =
+                executor.submit(
+                        () -> {
+                            boolean locked = locker.tryLock(type, workspace);
+                            if (locked) {
+                                locker.unlock();
+                            }
+                            return locked;
+                        });
+        return future.get();
+    }
+
+    @Test
+    public void testWorkspaceWritesInParallel() throws Exception {
+        locker.lock(LockType.WRITE, "ws1");
+        assertEquals(LockType.WRITE, locker.getCurrentLock());
+        assertEquals("ws1", locker.getCurrentWorkspace());
+
+        // find a workspace that does not share the stripe with ws1
+        String other = "ws2";
+        for (int i = 3; stripe(other) == stripe("ws1"); i++) {
+            other = "ws" + i;
+        }
+        assertTrue(tryLockInOtherThread(LockType.WRITE, other));
+        assertFalse(tryLockInOtherThread(LockType.READ, "ws1"));
+    }
+
+    @Test
+    public void testGlobalWriteExcludesWorkspaces() throws Exception {
+        locker.lock(LockType.WRITE);
+        assertNull(locker.getCurrentWorkspace());
+        assertFalse(tryLockInOtherThread(LockType.READ, "ws1"));
+        locker.unlock();
+
+        locker.lock(LockType.READ, "ws1");
+        assertFalse(tryLockInOtherThread(LockType.WRITE, null));
+        assertTrue(tryLockInOtherThread(LockType.READ, null));
+    }
+
+    @Test
+    public void testUpgradeKeepsWorkspace() {
+        locker.lock(LockType.READ, "ws1");
+        locker.tryUpgradeLock();
+        assertEquals(LockType.WRITE, locker.getCurrentLock());
+        assertEquals("ws1", locker.getCurrentWorkspace());
+    }
+
+    @Test
+    public void testWorkspaceLockingDisabled() {
+        locker.setWorkspaceLocking(false);
+        locker.lock(LockType.WRITE, "ws1");
+        assertNull(locker.getCurrentWorkspace());
+    }
+}
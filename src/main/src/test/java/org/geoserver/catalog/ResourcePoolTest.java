@@ -21,8 +21,13 @@ import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.net.URI;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.media.jai.PlanarImage;
 import javax.xml.namespace.QName;
@@ -74,7 +79,6 @@ import org.geotools.styling.AbstractStyleVisitor;
 import org.geotools.styling.Mark;
 import org.geotools.styling.PolygonSymbolizer;
 import org.geotools.styling.Style;
-import org.geotools.util.SoftValueHashMap;
 import org.geotools.util.URLs;
 import org.geotools.util.Version;
 import org.geotools.util.factory.GeoTools;
@@ -299,6 +303,93 @@ public class ResourcePoolTest extends GeoServerSystemTestSupport {
         assertTrue(disposeCalled);
     }
 
+    @Test
+    public void testBoundedDataStoreCache() throws IOException {
+        disposeCalled = false;
+        System.setProperty("org.geoserver.catalog.resourcePool.dataStore.maxSize", "1");
+        try {
+            Catalog catalog = getCatalog();
+            ResourcePool pool =
+                    new ResourcePool(catalog) {
+                        {
+                            dataStoreCache =
+                                    new DataStoreCache() {
+                                        @Override
+                                        protected void dispose(String name, DataAccess dataStore) {
+                                            disposeCalled = true;
+                                            super.dispose(name, dataStore);
+                                        }
+                                    };
+                        }
+                    };
+            catalog.setResourcePool(pool);
+
+            List<DataStoreInfo> stores = catalog.getDataStores();
+            pool.getDataStore(stores.get(0));
+            assertFalse(disposeCalled);
+            // the second store pushes out the first one, which gets disposed
+            pool.getDataStore(stores.get(1));
+            assertTrue(disposeCalled);
+            assertEquals(1, pool.getDataStoreCache().size());
+
+            ResourceCacheStatistics stats =
+                    pool.getCacheStatistics().stream()
+                            .filter(s -> "dataStore".equals(s.getName()))
+                            .findFirst()
+                            .get();
+            assertEquals(1, stats.getMaximumSize());
+            assertEquals(1, stats.getEvictionCount());
+            assertTrue(stats.getMissCount() >= 2);
+            assertTrue(stats.getLoadSuccessCount() >= 2);
+        } finally {
+            System.clearProperty("org.geoserver.catalog.resourcePool.dataStore.maxSize");
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSingleLoadPerKey() throws Exception {
+        ResourcePool pool = new ResourcePool();
+        ResourcePool.CatalogResourceCache<String, List<AttributeTypeInfo>> cache =
+                (ResourcePool.CatalogResourceCache<String, List<AttributeTypeInfo>>)
+                        pool.getFeatureTypeAttributeCache();
+        AtomicInteger loads = new AtomicInteger();
+        Callable<List<AttributeTypeInfo>> loader =
+                () -> {
+                    loads.incrementAndGet();
+                    Thread.sleep(100);
+                    return new ArrayList<>();
+                };
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<AttributeTypeInfo>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> cache.get("key", loader)));
+            }
+            List<AttributeTypeInfo> first = futures.get(0).get();
+            for (Future<List<AttributeTypeInfo>> future : futures) {
+                assertSame(first, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, loads.get());
+
+        // failures are propagated, and not cached
+        try {
+            cache.get(
+                    "failing",
+                    () -> {
+                        throw new IOException("failed");
+                    });
+            fail("Should have failed");
+        } catch (IOException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertNull(cache.get("failing"));
+    }
+
     @Test
     public void testConfigureFeatureTypeCacheSize() {
         GeoServer gs = getGeoServer();
@@ -311,8 +402,9 @@ public class ResourcePoolTest extends GeoServerSystemTestSupport {
         // twice as big
         assertEquals(
                 400,
-                ((SoftValueHashMap) catalog.getResourcePool().getFeatureTypeCache())
-                        .getHardReferencesCount());
+                ((ResourcePool.CatalogResourceCache)
+                                catalog.getResourcePool().getFeatureTypeCache())
+                        .getMaximumSize());
     }
 
     @Test
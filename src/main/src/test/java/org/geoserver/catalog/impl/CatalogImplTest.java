@@ -67,6 +67,8 @@ import org.geoserver.catalog.WMTSLayerInfo;
 import org.geoserver.catalog.WMTSStoreInfo;
 import org.geoserver.catalog.WorkspaceInfo;
 import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogBatchListener;
+import org.geoserver.catalog.event.CatalogEvent;
 import org.geoserver.catalog.event.CatalogListener;
 import org.geoserver.catalog.event.CatalogModifyEvent;
 import org.geoserver.catalog.event.CatalogPostModifyEvent;
@@ -1305,6 +1307,123 @@ public class CatalogImplTest extends GeoServerSystemTestSupport {
         assertEquals(ft, l.removed.get(0).getSource());
     }
 
+    @Test
+    public void testBatchEvents() {
+        addNamespace();
+        addDataStore();
+
+        TestListener l = new TestListener();
+        catalog.addListener(l);
+        TestBatchListener bl = new TestBatchListener();
+        catalog.addListener(bl);
+
+        FeatureTypeInfo ft = catalog.getFactory().createFeatureType();
+        ft.setName("ftName");
+        ft.setDescription("ftDescription");
+        ft.setStore(ds);
+        catalog.add(ft);
+
+        FeatureTypeInfo ft2 = catalog.getFactory().createFeatureType();
+        ft2.setName("ftName2");
+        ft2.setStore(ds);
+
+        catalog.beginBatch();
+        try {
+            // two modifications of the same object get merged
+            ft = catalog.getFeatureTypeByName("ftName");
+            ft.setDescription("changed");
+            catalog.save(ft);
+            ft = catalog.getFeatureTypeByName("ftName");
+            ft.setDescription("changedAgain");
+            ft.setTitle("title");
+            catalog.save(ft);
+
+            // added and removed, nothing to report
+            catalog.add(ft2);
+            ft2 = catalog.getFeatureTypeByName("ftName2");
+            ft2.setDescription("changed");
+            catalog.save(ft2);
+            catalog.remove(ft2);
+
+            // regular listeners still get the events as they happen
+            assertEquals(3, l.postModified.size());
+            assertEquals(1, l.removed.size());
+            // while batch listeners only got the events preceding the changes
+            assertEquals(3, bl.modified.size());
+            assertTrue(bl.batches.isEmpty());
+        } finally {
+            catalog.commitBatch();
+        }
+
+        assertEquals(1, bl.batches.size());
+        List<CatalogEvent> events = bl.batches.get(0);
+        assertEquals(1, events.size());
+        CatalogPostModifyEvent event = (CatalogPostModifyEvent) events.get(0);
+        assertEquals(ft.getId(), event.getSource().getId());
+        int idx = event.getPropertyNames().indexOf("description");
+        assertEquals("ftDescription", event.getOldValues().get(idx));
+        assertEquals("changedAgain", event.getNewValues().get(idx));
+        assertTrue(event.getPropertyNames().contains("title"));
+        // the default implementation replays the events through the single handlers
+        assertEquals(1, bl.postModified.size());
+        assertTrue(bl.removed.isEmpty());
+    }
+
+    @Test
+    public void testBatchThroughCatalogBean() {
+        // the REST controllers use the "catalog" bean, wrapped by the secure, advertised and local
+        // workspace decorators, they all have to forward the batch to the raw catalog
+        Catalog decorated = getCatalog();
+        Catalog raw = (Catalog) applicationContext.getBean("rawCatalog");
+        assertNotSame(raw, decorated);
+
+        TestBatchListener bl = new TestBatchListener();
+        raw.addListener(bl);
+        WorkspaceInfo batchWs = raw.getFactory().createWorkspace();
+        batchWs.setName("batchWs");
+        try {
+            decorated.beginBatch();
+            try {
+                raw.add(batchWs);
+                assertTrue(bl.batches.isEmpty());
+            } finally {
+                decorated.commitBatch();
+            }
+            assertEquals(1, bl.batches.size());
+            assertEquals(1, bl.added.size());
+        } finally {
+            raw.removeListener(bl);
+            raw.remove(raw.getWorkspaceByName("batchWs"));
+        }
+    }
+
+    @Test
+    public void testNestedBatch() {
+        addNamespace();
+        addDataStore();
+
+        TestBatchListener bl = new TestBatchListener();
+        catalog.addListener(bl);
+
+        catalog.beginBatch();
+        try {
+            catalog.beginBatch();
+            try {
+                FeatureTypeInfo ft = catalog.getFactory().createFeatureType();
+                ft.setName("ftName");
+                ft.setStore(ds);
+                catalog.add(ft);
+            } finally {
+                catalog.commitBatch();
+            }
+            assertTrue(bl.batches.isEmpty());
+        } finally {
+            catalog.commitBatch();
+        }
+        assertEquals(1, bl.batches.size());
+        assertEquals(1, bl.added.size());
+    }
+
     @Test
     public void testModifyMetadata() {
         // set default namespace
@@ -2586,6 +2705,16 @@ public class CatalogImplTest extends GeoServerSystemTestSupport {
         public void reloaded() {}
     }
 
+    static class TestBatchListener extends TestListener implements CatalogBatchListener {
+        public List<List<CatalogEvent>> batches = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void handleBatch(List<CatalogEvent> events) throws CatalogException {
+            batches.add(events);
+            CatalogBatchListener.super.handleBatch(events);
+        }
+    }
+
     static class ExceptionThrowingListener implements CatalogListener {
 
         public boolean throwCatalogException;
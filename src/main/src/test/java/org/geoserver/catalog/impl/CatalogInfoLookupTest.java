@@ -0,0 +1,226 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.CoverageStoreInfo;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.impl.DefaultCatalogFacade.LayerInfoLookup;
+import org.geoserver.catalog.impl.DefaultCatalogFacade.ResourceInfoLookup;
+import org.geoserver.catalog.impl.DefaultCatalogFacade.StoreInfoLookup;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CatalogInfoLookupTest {
+
+    WorkspaceInfoImpl ws1;
+    WorkspaceInfoImpl ws2;
+    NamespaceInfoImpl ns;
+    DataStoreInfoImpl ds1;
+    DataStoreInfoImpl ds2;
+    CoverageStoreInfoImpl cs1;
+    FeatureTypeInfoImpl ft1;
+    FeatureTypeInfoImpl ft2;
+
+    @Before
+    public void setUp() {
+        ws1 = workspace("ws1");
+        ws2 = workspace("ws2");
+        ns = new NamespaceInfoImpl();
+        ns.setId("ns-id");
+        ns.setPrefix("ns");
+        ds1 = new DataStoreInfoImpl(null, "ds1-id");
+        ds1.setName("ds1");
+        ds1.setWorkspace(ws1);
+        ds2 = new DataStoreInfoImpl(null, "ds2-id");
+        ds2.setName("ds2");
+        ds2.setWorkspace(ws2);
+        cs1 = new CoverageStoreInfoImpl(null, "cs1-id");
+        cs1.setName("cs1");
+        cs1.setWorkspace(ws1);
+        ft1 = featureType("ft1", ds1);
+        ft2 = featureType("ft2", ds1);
+    }
+
+    private WorkspaceInfoImpl workspace(String name) {
+        WorkspaceInfoImpl ws = new WorkspaceInfoImpl();
+        ws.setId(name + "-id");
+        ws.setName(name);
+        return ws;
+    }
+
+    private FeatureTypeInfoImpl featureType(String name, DataStoreInfo store) {
+        FeatureTypeInfoImpl ft = new FeatureTypeInfoImpl(null, name + "-id");
+        ft.setName(name);
+        ft.setNamespace(ns);
+        ft.setStore(store);
+        return ft;
+    }
+
+    private StyleInfoImpl style(String name) {
+        StyleInfoImpl style = new StyleInfoImpl(null);
+        style.setId(name + "-id");
+        style.setName(name);
+        return style;
+    }
+
+    private LayerInfoImpl layer(ResourceInfo resource, StyleInfo defaultStyle) {
+        LayerInfoImpl layer = new LayerInfoImpl();
+        layer.setId(resource.getName() + "-layer-id");
+        layer.setResource(resource);
+        layer.setDefaultStyle(defaultStyle);
+        return layer;
+    }
+
+    @Test
+    public void testFindByClassHierarchy() {
+        StoreInfoLookup stores = new StoreInfoLookup();
+        stores.add(ds1);
+        stores.add(cs1);
+
+        assertThat(stores.findById("ds1-id", StoreInfo.class), sameInstance(ds1));
+        assertThat(stores.findById("ds1-id", DataStoreInfo.class), sameInstance(ds1));
+        assertNull(stores.findById("ds1-id", CoverageStoreInfo.class));
+        assertThat(stores.findById("cs1-id", CatalogInfo.class), sameInstance(cs1));
+        assertEquals(2, stores.list(StoreInfo.class, CatalogInfoLookup.TRUE).size());
+        assertThat(stores.list(CoverageStoreInfo.class, CatalogInfoLookup.TRUE), contains(cs1));
+
+        // a new implementation class must show up in the cached class buckets
+        stores.add(ds2);
+        assertEquals(3, stores.list(StoreInfo.class, CatalogInfoLookup.TRUE).size());
+        stores.clear();
+        assertThat(stores.list(StoreInfo.class, CatalogInfoLookup.TRUE), empty());
+        assertNull(stores.findById("ds1-id", StoreInfo.class));
+    }
+
+    @Test
+    public void testStoresByWorkspace() {
+        StoreInfoLookup stores = new StoreInfoLookup();
+        stores.add(ds1);
+        stores.add(ds2);
+        stores.add(cs1);
+
+        assertThat(
+                stores.list(stores.byWorkspace, "ws1-id", StoreInfo.class, CatalogInfoLookup.TRUE),
+                contains(cs1, ds1));
+        assertThat(
+                stores.list(
+                        stores.byWorkspace, "ws1-id", DataStoreInfo.class, CatalogInfoLookup.TRUE),
+                contains(ds1));
+
+        // move ds1 to the other workspace
+        DataStoreInfo proxy = ModificationProxy.create(ds1, DataStoreInfo.class);
+        proxy.setWorkspace(ws2);
+        stores.update(proxy);
+        ModificationProxy.handler(proxy).commit();
+        assertThat(
+                stores.list(stores.byWorkspace, "ws1-id", StoreInfo.class, CatalogInfoLookup.TRUE),
+                contains(cs1));
+        assertThat(
+                stores.list(
+                        stores.byWorkspace, "ws2-id", DataStoreInfo.class, CatalogInfoLookup.TRUE),
+                contains(ds1, ds2));
+
+        stores.remove(ds2);
+        assertThat(
+                stores.list(stores.byWorkspace, "ws2-id", StoreInfo.class, CatalogInfoLookup.TRUE),
+                contains(ds1));
+    }
+
+    @Test
+    public void testResourcesByStore() {
+        ResourceInfoLookup resources = new ResourceInfoLookup();
+        resources.add(ft1);
+        resources.add(ft2);
+
+        assertThat(
+                resources.list(
+                        resources.byStore, "ds1-id", ResourceInfo.class, CatalogInfoLookup.TRUE),
+                contains(ft1, ft2));
+
+        FeatureTypeInfo proxy = ModificationProxy.create(ft2, FeatureTypeInfo.class);
+        proxy.setStore(ds2);
+        resources.update(proxy);
+        ModificationProxy.handler(proxy).commit();
+
+        assertThat(
+                resources.list(
+                        resources.byStore,
+                        "ds1-id",
+                        FeatureTypeInfo.class,
+                        CatalogInfoLookup.TRUE),
+                contains(ft1));
+        assertThat(
+                resources.list(
+                        resources.byStore, "ds2-id", ResourceInfo.class, CatalogInfoLookup.TRUE),
+                contains(ft2));
+    }
+
+    @Test
+    public void testLayersByResourceAndStyle() {
+        StyleInfoImpl s1 = style("s1");
+        StyleInfoImpl s2 = style("s2");
+        LayerInfoLookup layers = new LayerInfoLookup();
+        LayerInfoImpl l1 = layer(ft1, s1);
+        LayerInfoImpl l2 = layer(ft2, s1);
+        l2.getStyles().add(s2);
+        layers.add(l1);
+        layers.add(l2);
+
+        assertThat(
+                layers.list(layers.byResource, "ft1-id", LayerInfo.class, CatalogInfoLookup.TRUE),
+                contains(l1));
+        assertThat(
+                layers.list(layers.byStyle, "s1-id", LayerInfo.class, CatalogInfoLookup.TRUE),
+                contains(l1, l2));
+        assertThat(
+                layers.list(layers.byStyle, "s2-id", LayerInfo.class, CatalogInfoLookup.TRUE),
+                contains(l2));
+
+        // change the default style
+        LayerInfo proxy = ModificationProxy.create(l1, LayerInfo.class);
+        proxy.setDefaultStyle(s2);
+        layers.update(proxy);
+        ModificationProxy.handler(proxy).commit();
+        assertThat(
+                layers.list(layers.byStyle, "s1-id", LayerInfo.class, CatalogInfoLookup.TRUE),
+                contains(l2));
+        assertThat(
+                layers.list(layers.byStyle, "s2-id", LayerInfo.class, CatalogInfoLookup.TRUE),
+                contains(l1, l2));
+
+        // rename the resource, the indexes must follow
+        FeatureTypeInfo ftProxy = ModificationProxy.create(ft1, FeatureTypeInfo.class);
+        ftProxy.setName("ft3");
+        layers.update(ftProxy);
+        ModificationProxy.handler(ftProxy).commit();
+        assertThat(
+                layers.findByName(DefaultCatalogFacade.LAYER_NAME_MAPPER.apply(l1), LayerInfo.class),
+                sameInstance(l1));
+        assertThat(
+                layers.list(layers.byResource, "ft1-id", LayerInfo.class, CatalogInfoLookup.TRUE),
+                contains(l1));
+
+        layers.remove(l1);
+        assertThat(
+                layers.list(layers.byResource, "ft1-id", LayerInfo.class, CatalogInfoLookup.TRUE),
+                empty());
+        assertThat(
+                layers.list(layers.byStyle, "s2-id", LayerInfo.class, CatalogInfoLookup.TRUE),
+                contains(l2));
+    }
+}
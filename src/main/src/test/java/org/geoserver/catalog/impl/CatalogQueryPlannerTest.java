@@ -0,0 +1,146 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.Predicates;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.util.CloseableIterator;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.filter.Filter;
+
+public class CatalogQueryPlannerTest {
+
+    DefaultCatalogFacade facade;
+
+    WorkspaceInfoImpl ws1;
+    WorkspaceInfoImpl ws2;
+    DataStoreInfoImpl ds1;
+    DataStoreInfoImpl ds2;
+    FeatureTypeInfoImpl ft1;
+    FeatureTypeInfoImpl ft2;
+    FeatureTypeInfoImpl ft3;
+
+    @Before
+    public void setUp() {
+        facade = new DefaultCatalogFacade(new CatalogImpl());
+
+        ws1 = new WorkspaceInfoImpl();
+        ws1.setId("ws1-id");
+        ws1.setName("ws1");
+        facade.add(ws1);
+        ws2 = new WorkspaceInfoImpl();
+        ws2.setId("ws2-id");
+        ws2.setName("ws2");
+        facade.add(ws2);
+        NamespaceInfoImpl ns = new NamespaceInfoImpl();
+        ns.setId("ns-id");
+        ns.setPrefix("ws1");
+        ns.setURI("http://www.geoserver.org/ws1");
+        facade.add(ns);
+
+        ds1 = new DataStoreInfoImpl(null, "ds1-id");
+        ds1.setName("ds1");
+        ds1.setWorkspace(ws1);
+        facade.add(ds1);
+        ds2 = new DataStoreInfoImpl(null, "ds2-id");
+        ds2.setName("ds2");
+        ds2.setWorkspace(ws2);
+        facade.add(ds2);
+
+        ft1 = featureType("ft1", ns, ds1, true);
+        ft2 = featureType("ft2", ns, ds1, false);
+        ft3 = featureType("other", ns, ds2, true);
+    }
+
+    private FeatureTypeInfoImpl featureType(
+            String name, NamespaceInfoImpl ns, DataStoreInfoImpl store, boolean enabled) {
+        FeatureTypeInfoImpl ft = new FeatureTypeInfoImpl(null, name + "-id");
+        ft.setName(name);
+        ft.setNamespace(ns);
+        ft.setStore(store);
+        ft.setEnabled(enabled);
+        facade.add(ft);
+        return ft;
+    }
+
+    private <T extends CatalogInfo> List<String> listIds(Class<T> clazz, Filter filter) {
+        List<String> result = new ArrayList<>();
+        try (CloseableIterator<T> it = facade.list(clazz, filter, null, null)) {
+            while (it.hasNext()) {
+                result.add(it.next().getId());
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testIdIndex() {
+        Filter filter = Predicates.equal("id", "ft2-id");
+        assertThat(listIds(ResourceInfo.class, filter), containsInAnyOrder("ft2-id"));
+        assertThat(facade.explain(ResourceInfo.class, filter), startsWith("index id = "));
+
+        Filter in =
+                Predicates.or(Predicates.equal("id", "ft1-id"), Predicates.equal("id", "other-id"));
+        assertThat(listIds(ResourceInfo.class, in), containsInAnyOrder("ft1-id", "other-id"));
+        assertThat(facade.explain(ResourceInfo.class, in), startsWith("index id in "));
+    }
+
+    @Test
+    public void testStoreIndexWithResidual() {
+        Filter filter = Predicates.equal("store.id", "ds1-id");
+        assertThat(listIds(ResourceInfo.class, filter), containsInAnyOrder("ft1-id", "ft2-id"));
+        assertThat(facade.explain(ResourceInfo.class, filter), startsWith("index store.id"));
+
+        Filter enabled = Predicates.and(filter, Predicates.equal("enabled", Boolean.TRUE));
+        assertThat(listIds(ResourceInfo.class, enabled), containsInAnyOrder("ft1-id"));
+        assertThat(facade.explain(ResourceInfo.class, enabled), containsString("filter"));
+    }
+
+    @Test
+    public void testPrefixedName() {
+        Filter filter = Predicates.equal("prefixedName", "ws1:ft2");
+        assertThat(listIds(ResourceInfo.class, filter), containsInAnyOrder("ft2-id"));
+        assertThat(facade.explain(ResourceInfo.class, filter), startsWith("index prefixedName"));
+
+        Filter missing = Predicates.equal("prefixedName", "ws2:ft2");
+        assertThat(listIds(ResourceInfo.class, missing), empty());
+    }
+
+    @Test
+    public void testWorkspaceName() {
+        Filter filter = Predicates.equal("workspace.name", "ws2");
+        assertThat(listIds(StoreInfo.class, filter), containsInAnyOrder("ds2-id"));
+        assertThat(facade.explain(StoreInfo.class, filter), startsWith("index workspace.name"));
+
+        Filter missing = Predicates.equal("workspace.name", "notThere");
+        assertThat(listIds(StoreInfo.class, missing), empty());
+    }
+
+    @Test
+    public void testScan() {
+        Filter like = Predicates.factory.like(Predicates.factory.property("name"), "ft*");
+        assertThat(listIds(ResourceInfo.class, like), containsInAnyOrder("ft1-id", "ft2-id"));
+        assertThat(facade.explain(ResourceInfo.class, like), startsWith("full scan"));
+
+        Filter disabled = Predicates.equal("enabled", Boolean.FALSE);
+        assertThat(listIds(ResourceInfo.class, disabled), containsInAnyOrder("ft2-id"));
+
+        assertThat(
+                listIds(ResourceInfo.class, Filter.INCLUDE),
+                containsInAnyOrder("ft1-id", "ft2-id", "other-id"));
+        assertThat(facade.explain(ResourceInfo.class, Filter.INCLUDE), startsWith("full scan"));
+    }
+}
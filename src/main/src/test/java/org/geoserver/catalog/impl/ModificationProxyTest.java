@@ -151,6 +151,35 @@ public class ModificationProxyTest {
         assertThat(newBean.getListValue(), contains("Cunning", "Plan"));
     }
 
+    @Test
+    public void testMethodInfo() throws Exception {
+        ModificationProxy.MethodInfo getter =
+                ModificationProxy.MethodInfo.of(TestBean.class.getMethod("getValue"));
+        assertTrue(getter.getter);
+        assertFalse(getter.collection);
+        assertEquals("Value", getter.property);
+        // classifications are computed once and shared
+        assertSame(getter, ModificationProxy.MethodInfo.of(TestBean.class.getMethod("getValue")));
+
+        ModificationProxy.MethodInfo list =
+                ModificationProxy.MethodInfo.of(TestBean.class.getMethod("getListValue"));
+        assertTrue(list.getter);
+        assertTrue(list.collection);
+
+        ModificationProxy.MethodInfo setter =
+                ModificationProxy.MethodInfo.of(
+                        TestBean.class.getMethod("setValue", String.class));
+        assertTrue(setter.setter);
+        assertFalse(setter.getter);
+        assertEquals("Value", setter.property);
+
+        ModificationProxy.MethodInfo other =
+                ModificationProxy.MethodInfo.of(Object.class.getMethod("toString"));
+        assertFalse(other.getter);
+        assertFalse(other.setter);
+        assertNull(other.property);
+    }
+
     /** Matches a modification proxy wrapping an object matching the given matcher */
     public static <T> Matcher<T> modProxy(Matcher<T> objectMatcher) {
         return new BaseMatcher<T>() {
@@ -0,0 +1,209 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.io.IOUtils;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.config.impl.GeoServerImpl;
+import org.geoserver.ows.HttpErrorCodeException;
+import org.geoserver.ows.Request;
+import org.geoserver.ows.Response;
+import org.geoserver.platform.Operation;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class CapabilitiesDocumentCacheTest {
+
+    /** Counts how many times the document got encoded */
+    static class CountingResponse extends Response {
+        int writes;
+
+        CountingResponse() {
+            super(String.class);
+        }
+
+        @Override
+        public String getMimeType(Object value, Operation operation) {
+            return "text/xml";
+        }
+
+        @Override
+        public void write(Object value, OutputStream output, Operation operation)
+                throws IOException {
+            writes++;
+            output.write(((String) value).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    GeoServerImpl gs;
+
+    CapabilitiesDocumentCache cache;
+
+    CountingResponse response;
+
+    @Before
+    public void setUp() {
+        gs = new GeoServerImpl();
+        gs.setCatalog(new CatalogImpl());
+        gs.setGlobal(gs.getFactory().createGlobal());
+        cache = new CapabilitiesDocumentCache(gs);
+        cache.setEnabled(true);
+        response = new CountingResponse();
+    }
+
+    private Request request(String... headers) {
+        MockHttpServletRequest httpRequest = new MockHttpServletRequest("GET", "/geoserver/wms");
+        httpRequest.setServerName("localhost");
+        httpRequest.setServerPort(8080);
+        httpRequest.setContextPath("/geoserver");
+        for (int i = 0; i < headers.length - 1; i += 2) {
+            httpRequest.addHeader(headers[i], headers[i + 1]);
+        }
+        Request request = new Request();
+        request.setHttpRequest(httpRequest);
+        request.setGet(true);
+        request.setRequest("GetCapabilities");
+        Map<String, Object> kvp = new HashMap<>();
+        kvp.put("SERVICE", "WMS");
+        kvp.put("REQUEST", "GetCapabilities");
+        request.setRawKvp(kvp);
+        return request;
+    }
+
+    private byte[] write(Response r, Object value) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        r.write(value, bos, null);
+        return bos.toByteArray();
+    }
+
+    @Test
+    public void testCached() throws Exception {
+        Response r1 = cache.responseDispatched(request(), null, "<caps/>", response);
+        assertNotSame(response, r1);
+        assertArrayEquals("<caps/>".getBytes(StandardCharsets.UTF_8), write(r1, "<caps/>"));
+
+        Response r2 = cache.responseDispatched(request(), null, "<caps/>", response);
+        assertArrayEquals("<caps/>".getBytes(StandardCharsets.UTF_8), write(r2, "<caps/>"));
+        assertEquals(1, response.writes);
+        assertEquals(1, cache.getStatistics().hitCount());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        cache.setEnabled(false);
+        assertSame(response, cache.responseDispatched(request(), null, "<caps/>", response));
+    }
+
+    @Test
+    public void testInvalidatedOnCatalogChange() throws Exception {
+        cache.responseDispatched(request(), null, "<caps/>", response);
+
+        WorkspaceInfo ws = gs.getCatalog().getFactory().createWorkspace();
+        ws.setName("ws");
+        gs.getCatalog().add(ws);
+
+        cache.responseDispatched(request(), null, "<caps/>", response);
+        assertEquals(2, response.writes);
+    }
+
+    @Test
+    public void testNotModified() throws Exception {
+        Response r = cache.responseDispatched(request(), null, "<caps/>", response);
+        String etag = getHeader(r, HttpHeaders.ETAG);
+        try {
+            cache.responseDispatched(
+                    request(HttpHeaders.IF_NONE_MATCH, etag), null, "<caps/>", response);
+            fail("Should have thrown a 304");
+        } catch (HttpErrorCodeException e) {
+            assertEquals(HttpServletResponse.SC_NOT_MODIFIED, e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void testGzip() throws Exception {
+        Response r =
+                cache.responseDispatched(
+                        request(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"),
+                        null,
+                        "<caps/>",
+                        response);
+        assertEquals("gzip", getHeader(r, HttpHeaders.CONTENT_ENCODING));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, getHeader(r, HttpHeaders.VARY));
+        try (GZIPInputStream is = new GZIPInputStream(new ByteArrayInputStream(write(r, null)))) {
+            assertEquals("<caps/>", IOUtils.toString(is, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testEtagPerEncoding() throws Exception {
+        Response identity = cache.responseDispatched(request(), null, "<caps/>", response);
+        String etag = getHeader(identity, HttpHeaders.ETAG);
+        Response gzipped =
+                cache.responseDispatched(
+                        request(HttpHeaders.ACCEPT_ENCODING, "gzip"), null, "<caps/>", response);
+        String gzipEtag = getHeader(gzipped, HttpHeaders.ETAG);
+        assertNotEquals(etag, gzipEtag);
+        assertTrue(gzipEtag.endsWith("-gzip\""));
+
+        // the identity ETag does not validate the gzip representation, and vice versa
+        assertNotNull(
+                cache.responseDispatched(
+                        request(
+                                HttpHeaders.ACCEPT_ENCODING,
+                                "gzip",
+                                HttpHeaders.IF_NONE_MATCH,
+                                etag),
+                        null,
+                        "<caps/>",
+                        response));
+        assertNotNull(
+                cache.responseDispatched(
+                        request(HttpHeaders.IF_NONE_MATCH, gzipEtag), null, "<caps/>", response));
+        try {
+            cache.responseDispatched(
+                    request(
+                            HttpHeaders.ACCEPT_ENCODING,
+                            "gzip",
+                            HttpHeaders.IF_NONE_MATCH,
+                            gzipEtag),
+                    null,
+                    "<caps/>",
+                    response);
+            fail("Should have thrown a 304");
+        } catch (HttpErrorCodeException e) {
+            assertEquals(HttpServletResponse.SC_NOT_MODIFIED, e.getErrorCode());
+        }
+    }
+
+    private String getHeader(Response r, String name) {
+        for (String[] header : r.getHeaders("<caps/>", null)) {
+            if (header[0].equals(name)) {
+                return header[1];
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,253 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import static org.geotools.referencing.crs.DefaultGeographicCRS.WGS84;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.geoserver.catalog.CatalogFactory;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.Keyword;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.catalog.impl.DataStoreInfoImpl;
+import org.geoserver.catalog.impl.NamespaceInfoImpl;
+import org.geoserver.catalog.impl.WorkspaceInfoImpl;
+import org.geoserver.config.CatalogSnapshot.CatalogObjectInputStream;
+import org.geoserver.platform.GeoServerResourceLoader;
+import org.geoserver.platform.resource.Resource;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CatalogSnapshotTest {
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    GeoServerResourceLoader resourceLoader;
+
+    CatalogImpl catalog;
+
+    @Before
+    public void setUp() throws IOException {
+        resourceLoader = new GeoServerResourceLoader(folder.getRoot());
+        touch("workspaces/ws/workspace.xml", "<workspace/>");
+
+        catalog = new CatalogImpl();
+        catalog.setResourceLoader(resourceLoader);
+        WorkspaceInfoImpl ws = new WorkspaceInfoImpl();
+        ws.setName("ws");
+        catalog.add(ws);
+        NamespaceInfoImpl ns = new NamespaceInfoImpl();
+        ns.setPrefix("ws");
+        ns.setURI("http://www.geoserver.org/ws");
+        catalog.add(ns);
+        DataStoreInfoImpl ds = new DataStoreInfoImpl(catalog);
+        ds.setName("ds");
+        ds.setWorkspace(catalog.getWorkspaceByName("ws"));
+        catalog.add(ds);
+
+        CatalogFactory factory = catalog.getFactory();
+        StyleInfo style = factory.createStyle();
+        style.setName("style");
+        style.setFilename("style.sld");
+        catalog.add(style);
+        FeatureTypeInfo ft = factory.createFeatureType();
+        ft.setName("ft");
+        ft.setNativeName("ft");
+        ft.setStore(catalog.getDataStoreByName("ws", "ds"));
+        ft.setNamespace(catalog.getNamespaceByPrefix("ws"));
+        ft.setSRS("EPSG:4326");
+        ft.setNativeBoundingBox(new ReferencedEnvelope(-10, 10, -20, 20, WGS84));
+        ft.setLatLonBoundingBox(new ReferencedEnvelope(-10, 10, -20, 20, WGS84));
+        ft.getKeywords().add(new Keyword("keyword"));
+        catalog.add(ft);
+        LayerInfo layer = factory.createLayer();
+        layer.setResource(catalog.getFeatureTypeByName("ws", "ft"));
+        layer.setDefaultStyle(catalog.getStyleByName("style"));
+        catalog.add(layer);
+        LayerGroupInfo group = factory.createLayerGroup();
+        group.setName("group");
+        group.setWorkspace(catalog.getWorkspaceByName("ws"));
+        group.getLayers().add(catalog.getLayerByName("ft"));
+        group.getStyles().add(catalog.getStyleByName("style"));
+        catalog.add(group);
+    }
+
+    private void touch(String path, String contents) throws IOException {
+        Resource resource = resourceLoader.get(path);
+        try (OutputStream os = resource.out()) {
+            os.write(contents.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        CatalogSnapshot snapshot = new CatalogSnapshot(resourceLoader, null);
+        String manifest = snapshot.computeManifest();
+        assertNull(snapshot.read(manifest));
+
+        snapshot.write(catalog, manifest);
+        CatalogImpl copy = snapshot.read(manifest);
+        assertNotNull(copy);
+
+        WorkspaceInfo ws = copy.getWorkspaceByName("ws");
+        assertNotNull(ws);
+        assertEquals(catalog.getDefaultWorkspace().getId(), copy.getDefaultWorkspace().getId());
+        NamespaceInfo ns = copy.getNamespaceByPrefix("ws");
+        assertEquals("http://www.geoserver.org/ws", ns.getURI());
+        DataStoreInfo ds = copy.getDataStoreByName("ws", "ds");
+        assertNotNull(ds);
+        assertEquals(ws.getId(), ds.getWorkspace().getId());
+        assertSame(copy, ds.getCatalog());
+
+        FeatureTypeInfo ft = copy.getFeatureTypeByName("ws", "ft");
+        assertNotNull(ft);
+        assertEquals(ds.getId(), ft.getStore().getId());
+        assertEquals(ns.getId(), ft.getNamespace().getId());
+        assertEquals(new ReferencedEnvelope(-10, 10, -20, 20, WGS84), ft.getNativeBoundingBox());
+        assertEquals("keyword", ft.getKeywords().get(0).getValue());
+        StyleInfo style = copy.getStyleByName("style");
+        assertNotNull(style);
+        assertEquals("style.sld", style.getFilename());
+        LayerInfo layer = copy.getLayerByName("ft");
+        assertNotNull(layer);
+        assertEquals(ft.getId(), layer.getResource().getId());
+        assertEquals(style.getId(), layer.getDefaultStyle().getId());
+        LayerGroupInfo group = copy.getLayerGroupByName("ws", "group");
+        assertNotNull(group);
+        assertEquals(1, group.getLayers().size());
+        assertEquals(layer.getId(), group.getLayers().get(0).getId());
+        assertEquals(style.getId(), group.getStyles().get(0).getId());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRejectUnexpectedClasses() throws IOException {
+        CatalogSnapshot snapshot = new CatalogSnapshot(resourceLoader, null);
+        String manifest = snapshot.computeManifest();
+
+        // a snapshot smuggling an object that cannot be part of a catalog
+        CatalogSnapshot.Contents contents = new CatalogSnapshot.Contents();
+        contents.manifest = manifest;
+        ((List<Object>) (List<?>) contents.layers).add(new File("test"));
+        Resource resource = resourceLoader.get(CatalogSnapshot.SNAPSHOT_PATH);
+        try (ObjectOutputStream oos = new ObjectOutputStream(resource.out())) {
+            oos.writeObject(contents);
+        }
+        assertNull(snapshot.read(manifest));
+    }
+
+    @Test
+    public void testAllowedClasses() {
+        assertTrue(CatalogObjectInputStream.isAllowed("org.geoserver.catalog.impl.LayerInfoImpl"));
+        assertTrue(CatalogObjectInputStream.isAllowed("[Lorg.geoserver.catalog.Keyword;"));
+        assertTrue(CatalogObjectInputStream.isAllowed("[[D"));
+        assertTrue(CatalogObjectInputStream.isAllowed("java.util.HashMap"));
+        assertTrue(CatalogObjectInputStream.isAllowed("org.geotools.util.NumberRange"));
+        assertTrue(CatalogObjectInputStream.isAllowed("org.opengis.referencing.cs.AxisDirection"));
+        assertFalse(CatalogObjectInputStream.isAllowed("java.io.File"));
+        assertFalse(CatalogObjectInputStream.isAllowed("java.util.PriorityQueue"));
+        assertFalse(CatalogObjectInputStream.isAllowed("java.lang.ProcessBuilder"));
+        assertFalse(CatalogObjectInputStream.isAllowed("org.geotools.util.SoftValueHashMap"));
+        assertFalse(CatalogObjectInputStream.isAllowed("org.opengis.referencing.crs.ProjectedCRS"));
+        assertFalse(CatalogObjectInputStream.isAllowed("[Ljava.io.File;"));
+        assertFalse(
+                CatalogObjectInputStream.isAllowed(
+                        "org.apache.commons.collections.functors.InvokerTransformer"));
+    }
+
+    @Test
+    public void testPasswordsLeftOut() throws IOException {
+        DataStoreInfo store = catalog.getDataStoreByName("ws", "ds");
+        store.getConnectionParameters().put("user", "admin");
+        store.getConnectionParameters().put("passwd", "secretPassword");
+        catalog.save(store);
+
+        CatalogSnapshot snapshot =
+                new CatalogSnapshot(resourceLoader, null) {
+                    @Override
+                    Set<String> getPasswordFields(StoreInfo store) {
+                        return Collections.singleton("passwd");
+                    }
+
+                    @Override
+                    Map<String, Serializable> readPasswords(StoreInfo store, Set<String> fields) {
+                        assertEquals(Collections.singleton("passwd"), fields);
+                        return Collections.singletonMap("passwd", "secretPassword");
+                    }
+                };
+        String manifest = snapshot.computeManifest();
+        snapshot.write(catalog, manifest);
+
+        // the password is not in the snapshot, and the live catalog is untouched
+        Resource resource = resourceLoader.get(CatalogSnapshot.SNAPSHOT_PATH);
+        String contents = new String(resource.getContents(), StandardCharsets.ISO_8859_1);
+        assertFalse(contents.contains("secretPassword"));
+        assertTrue(contents.contains("admin"));
+        assertEquals(
+                "secretPassword",
+                catalog.getDataStoreByName("ws", "ds").getConnectionParameters().get("passwd"));
+
+        // it's read back from the store configuration
+        CatalogImpl copy = snapshot.read(manifest);
+        Map<String, Serializable> params =
+                copy.getDataStoreByName("ws", "ds").getConnectionParameters();
+        assertEquals("admin", params.get("user"));
+        assertEquals("secretPassword", params.get("passwd"));
+    }
+
+    @Test
+    public void testPasswordFieldsUnknown() throws IOException {
+        DataStoreInfo store = catalog.getDataStoreByName("ws", "ds");
+        store.getConnectionParameters().put("passwd", "secretPassword");
+        catalog.save(store);
+
+        // without a security manager the password fields are unknown, no snapshot is written
+        CatalogSnapshot snapshot = new CatalogSnapshot(resourceLoader, null);
+        String manifest = snapshot.computeManifest();
+        snapshot.write(catalog, manifest);
+        assertEquals(
+                Resource.Type.UNDEFINED,
+                resourceLoader.get(CatalogSnapshot.SNAPSHOT_PATH).getType());
+    }
+
+    @Test
+    public void testStaleSnapshot() throws IOException {
+        CatalogSnapshot snapshot = new CatalogSnapshot(resourceLoader, null);
+        String manifest = snapshot.computeManifest();
+        snapshot.write(catalog, manifest);
+
+        // adding a configuration file changes the manifest, the snapshot is ignored
+        touch("styles/test.xml", "<style/>");
+        String updated = snapshot.computeManifest();
+        assertNotEquals(manifest, updated);
+        assertNull(snapshot.read(updated));
+    }
+}
@@ -127,6 +127,33 @@ public class DefaultGeoServerLoaderTest {
         assertTrue(nestedLayerGroup.getLayers().get(1) instanceof LayerInfo);
     }
 
+    @Test
+    public void testReloadLayers() throws Exception {
+        GeoServerImpl gs = new GeoServerImpl();
+        gs.setCatalog(catalog);
+        loader.postProcessBeforeInitialization(catalog, "catalog");
+        loader.postProcessBeforeInitialization(gs, "geoServer");
+        assertLayersLoaded();
+
+        // reloading parses the layers again, before their resources are in the new catalog
+        loader.reload();
+        assertLayersLoaded();
+    }
+
+    private void assertLayersLoaded() {
+        assertEquals(2, catalog.getLayers().size());
+        for (String name : new String[] {"layer1", "layer2"}) {
+            LayerInfo layer = catalog.getLayerByName(name);
+            assertNotNull(name, layer);
+            assertNotNull(layer.getResource());
+            assertEquals(name, layer.getResource().getName());
+            assertEquals(
+                    catalog.getFeatureTypeByName("topp", name).getId(),
+                    layer.getResource().getId());
+        }
+        assertNotNull(catalog.getLayerGroupByName("topp", "nestedgroup"));
+    }
+
     @Test
     public void testLoadWithoutResaving() throws Exception {
         GeoServerImpl gs = new GeoServerImpl();
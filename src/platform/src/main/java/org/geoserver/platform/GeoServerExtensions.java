@@ -441,6 +441,46 @@ public class GeoServerExtensions implements ApplicationContextAware, Application
         return result;
     }
 
+    /**
+     * Looks up a long property with {@link #getProperty(String)}, falling back on the default value
+     * if the property is not set or is not a valid number.
+     *
+     * @param propertyName The property name to lookup.
+     * @param defaultValue The value returned if the property is missing or invalid
+     */
+    public static long getLongProperty(String propertyName, long defaultValue) {
+        String value = getProperty(propertyName);
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning(
+                        "Invalid value for " + propertyName + ": " + value + ", using default");
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Looks up an integer property with {@link #getProperty(String)}, falling back on the default
+     * value if the property is not set or is not a valid number.
+     *
+     * @param propertyName The property name to lookup.
+     * @param defaultValue The value returned if the property is missing or invalid
+     */
+    public static int getIntProperty(String propertyName, int defaultValue) {
+        String value = getProperty(propertyName);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning(
+                        "Invalid value for " + propertyName + ": " + value + ", using default");
+            }
+        }
+        return defaultValue;
+    }
+
     /**
      * Search the context for indicated file.
      *
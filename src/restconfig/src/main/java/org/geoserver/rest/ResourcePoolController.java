@@ -0,0 +1,66 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.rest;
+
+import com.thoughtworks.xstream.XStream;
+import java.util.List;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.ResourceCacheStatistics;
+import org.geoserver.config.util.XStreamPersister;
+import org.geoserver.rest.converters.XStreamMessageConverter;
+import org.geoserver.rest.wrapper.RestWrapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Reports the statistics of the resource pool caches. The load statistics are omitted for the
+ * caches that do not create their own values.
+ */
+@RestController
+@RequestMapping(
+        path = RestBaseController.ROOT_PATH + "/resourcepool",
+        produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+public class ResourcePoolController extends RestBaseController {
+
+    Catalog catalog;
+
+    @Autowired
+    public ResourcePoolController(@Qualifier("rawCatalog") Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @GetMapping(value = "/statistics")
+    public RestWrapper<CacheStatisticsList> statisticsGet() {
+        CacheStatisticsList caches =
+                new CacheStatisticsList(catalog.getResourcePool().getCacheStatistics());
+        return wrapObject(caches, CacheStatisticsList.class);
+    }
+
+    @Override
+    public void configurePersister(XStreamPersister persister, XStreamMessageConverter converter) {
+        XStream xs = persister.getXStream();
+        xs.alias("caches", CacheStatisticsList.class);
+        xs.alias("cache", ResourceCacheStatistics.class);
+        xs.addImplicitCollection(CacheStatisticsList.class, "caches");
+    }
+
+    /** The list of cache statistics, as encoded in the response */
+    static class CacheStatisticsList {
+
+        List<ResourceCacheStatistics> caches;
+
+        CacheStatisticsList(List<ResourceCacheStatistics> caches) {
+            this.caches = caches;
+        }
+
+        public List<ResourceCacheStatistics> getCaches() {
+            return caches;
+        }
+    }
+}
@@ -217,7 +217,12 @@ public class DataStoreController extends AbstractCatalogController {
 
         DataStoreInfo ds = getExistingDataStore(workspaceName, storeName);
         if (recurse) {
-            new CascadeDeleteVisitor(catalog).visit(ds);
+            catalog.beginBatch();
+            try {
+                new CascadeDeleteVisitor(catalog).visit(ds);
+            } finally {
+                catalog.commitBatch();
+            }
         } else {
             try {
                 catalog.remove(ds);
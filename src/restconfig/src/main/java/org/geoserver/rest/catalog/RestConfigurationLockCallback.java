@@ -5,6 +5,8 @@
  */
 package org.geoserver.rest.catalog;
 
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.geoserver.GeoServerConfigurationLock;
@@ -19,11 +21,18 @@ import org.springframework.stereotype.Controller;
  * call modifying catalog resources, in read mode all others catalog resource related calls, no
  * locks will be performed on other rest requests.
  *
+ * <p>Calls working on the contents of a workspace (e.g., {@code /workspaces/ws/datastores/...})
+ * only lock the workspace, see {@link GeoServerConfigurationLock#lock(LockType, String)}, all other
+ * calls, including the ones acting on the workspace itself, take a global lock.
+ *
  * @author Andrea Aime - GeoSolutions
  */
 @Controller
 public class RestConfigurationLockCallback implements DispatcherCallback {
 
+    /** Matches paths inside a workspace, the workspace itself being excluded */
+    static final Pattern WORKSPACE_PATH = Pattern.compile(".*/workspaces/([^/]+)/.+");
+
     GeoServerConfigurationLock locker;
 
     public RestConfigurationLockCallback(GeoServerConfigurationLock locker) {
@@ -44,16 +53,30 @@ public class RestConfigurationLockCallback implements DispatcherCallback {
         Object controller = DispatcherCallback.getControllerBean(handler);
         if (controller instanceof AbstractCatalogController
                 || controller instanceof AbstractGeoServerController) {
-            if (controller instanceof CatalogReloadController
-                    || isWriteMethod(request.getMethod())) {
+            if (controller instanceof CatalogReloadController) {
                 // this requires a full lock, it affects part of GeoTools that are not thread safe
                 locker.lock(LockType.WRITE);
+            } else if (isWriteMethod(request.getMethod())) {
+                locker.lock(LockType.WRITE, getWorkspace(request));
             } else {
-                locker.lock(LockType.READ);
+                locker.lock(LockType.READ, getWorkspace(request));
             }
         }
     }
 
+    /** Returns the workspace the request is limited to, or null if it's not limited to one */
+    static String getWorkspace(HttpServletRequest request) {
+        String path = request.getPathInfo();
+        if (path == null) {
+            path = request.getRequestURI();
+        }
+        if (path == null) {
+            return null;
+        }
+        Matcher matcher = WORKSPACE_PATH.matcher(path);
+        return matcher.matches() ? matcher.group(1) : null;
+    }
+
     private boolean isWriteMethod(String method) {
         return "PUT".equalsIgnoreCase(method)
                 || "POST".equalsIgnoreCase(method)
@@ -209,8 +209,13 @@ public class WorkspaceController extends AbstractCatalogController {
 
             catalog.remove(ws);
         } else {
-            // recursive delete
-            new CascadeDeleteVisitor(catalog).visit(ws);
+            // recursive delete, batched to notify the listeners of all the removals at once
+            catalog.beginBatch();
+            try {
+                new CascadeDeleteVisitor(catalog).visit(ws);
+            } finally {
+                catalog.commitBatch();
+            }
         }
 
         LOGGER.info("DELETE workspace " + ws);
@@ -0,0 +1,66 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.rest;
+
+import static org.custommonkey.xmlunit.XMLAssert.assertXpathEvaluatesTo;
+import static org.custommonkey.xmlunit.XMLAssert.assertXpathExists;
+import static org.custommonkey.xmlunit.XMLAssert.assertXpathNotExists;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.data.test.MockData;
+import org.geoserver.test.GeoServerSystemTestSupport;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class ResourcePoolControllerTest extends GeoServerSystemTestSupport {
+
+    static final String STATISTICS = RestBaseController.ROOT_PATH + "/resourcepool/statistics";
+
+    @Before
+    public void loadResources() throws Exception {
+        // fill both a loading cache and a cache filled by put
+        FeatureTypeInfo info = getCatalog().getFeatureTypeByName(getLayerId(MockData.BUILDINGS));
+        info.getFeatureType();
+        DataStoreInfo store = (DataStoreInfo) info.getStore();
+        store.getDataStore(null);
+    }
+
+    @Test
+    public void testGetAsXML() throws Exception {
+        Document dom = getAsDOM(STATISTICS + ".xml");
+        assertXpathExists("/caches/cache[name='dataStore']", dom);
+        assertXpathEvaluatesTo("-1", "/caches/cache[name='dataStore']/maximumSize", dom);
+        assertXpathExists("/caches/cache[name='dataStore']/loadSuccessCount", dom);
+        // the feature type cache is filled by put, load statistics are not available
+        assertXpathExists("/caches/cache[name='featureType']/hitCount", dom);
+        assertXpathNotExists("/caches/cache[name='featureType']/loadSuccessCount", dom);
+    }
+
+    @Test
+    public void testGetAsJSON() throws Exception {
+        JSONObject json = (JSONObject) getAsJSON(STATISTICS + ".json");
+        JSONArray caches = json.getJSONObject("caches").getJSONArray("cache");
+        boolean dataStoreFound = false;
+        for (Object o : caches) {
+            JSONObject cache = (JSONObject) o;
+            if ("dataStore".equals(cache.getString("name"))) {
+                dataStoreFound = true;
+                assertTrue(cache.getLong("loadSuccessCount") > 0);
+                assertEquals(-1, cache.getLong("maximumSize"));
+            } else if ("featureType".equals(cache.getString("name"))) {
+                assertFalse(cache.has("loadSuccessCount"));
+                assertFalse(cache.has("totalLoadTime"));
+            }
+        }
+        assertTrue(dataStoreFound);
+    }
+}
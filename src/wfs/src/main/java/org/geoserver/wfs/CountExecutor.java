@@ -24,11 +24,22 @@ class CountExecutor {
 
     Query query;
 
+    FeatureCountCache cache;
+
     int providedCount = COUNT_UNSET;
 
     public CountExecutor(FeatureSource source, Query query) {
+        this(source, query, null);
+    }
+
+    /**
+     * Builds an executor running the count through the given cache, that can also estimate it. When
+     * the cache is null the features are always counted.
+     */
+    public CountExecutor(FeatureSource source, Query query, FeatureCountCache cache) {
         this.source = source;
         this.query = query;
+        this.cache = cache;
     }
 
     public CountExecutor(int providedCount) {
@@ -38,6 +49,8 @@ class CountExecutor {
     public int getCount() throws IOException {
         if (isCountSet()) {
             return providedCount;
+        } else if (cache != null) {
+            return cache.getCount(source, query);
         } else {
             // make sure we get a count by getting a feature colleciton
             // FeatureSource.getCount(...) can return -1
@@ -0,0 +1,318 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.namespace.QName;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.ResourcePool;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.event.CatalogInvalidator;
+import org.geoserver.ows.util.ResponseCacheUtils;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.wfs.request.TransactionRequest;
+import org.geoserver.wfs.request.TransactionResponse;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.Join;
+import org.geotools.data.Query;
+import org.geotools.filter.text.ecql.ECQL;
+import org.geotools.filter.visitor.SimplifyingFilterVisitor;
+import org.geotools.util.factory.Hints;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.type.Name;
+import org.opengis.filter.Filter;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Computes the feature counts used for the WFS 2.0 numberMatched attribute, caching them so that
+ * paging through a large result does not count all the matching features again for each page.
+ *
+ * <p>Counts are keyed by feature type, normalized filter, joins, view parameters and the roles of
+ * the current user (the data security subsystem can restrict the features visible to each user).
+ * The counts of a feature type are dropped when a WFS transaction modifies it, both when the change
+ * happens and once committed, and all counts are dropped on changes to the resources and stores in
+ * the catalog. Entries also expire after a while, as the data can be modified without GeoServer
+ * knowing.
+ *
+ * <p>The cache is disabled by default, it can be enabled setting the "{@value #SIZE_KEY}" variable
+ * to the maximum number of counts to keep, "{@value #EXPIRATION_KEY}" controls their time to live,
+ * in seconds (300 by default).
+ *
+ * <p>Setting "{@value #ESTIMATED_KEY}" to "true" makes the counts rely only on the store ability to
+ * count features in an optimized way, e.g., using the table statistics or header, reporting the
+ * number of features matched as unknown when the store cannot do so, instead of reading all of the
+ * matching features.
+ */
+public class FeatureCountCache implements TransactionCallback {
+
+    static final Logger LOGGER = Logging.getLogger(FeatureCountCache.class);
+
+    static final String SIZE_KEY = "WFS_COUNT_CACHE_SIZE";
+
+    static final String EXPIRATION_KEY = "WFS_COUNT_CACHE_EXPIRATION";
+
+    static final String ESTIMATED_KEY = "WFS_COUNT_ESTIMATED";
+
+    static final long DEFAULT_EXPIRATION = 300;
+
+    /** Extended property of the transaction requests, holding the feature types it modified */
+    static final String MODIFIED_TYPES = "FeatureCountCache.modifiedTypes";
+
+    /** Returns the cache registered in the application context, if any */
+    public static FeatureCountCache get() {
+        return GeoServerExtensions.bean(FeatureCountCache.class);
+    }
+
+    Cache<CountKey, Integer> counts;
+
+    boolean estimated;
+
+    public FeatureCountCache(Catalog catalog) {
+        this(
+                GeoServerExtensions.getIntProperty(SIZE_KEY, 0),
+                GeoServerExtensions.getLongProperty(EXPIRATION_KEY, DEFAULT_EXPIRATION),
+                Boolean.parseBoolean(GeoServerExtensions.getProperty(ESTIMATED_KEY)));
+        catalog.addListener(
+                new CatalogInvalidator(this::invalidateAll, ResourceInfo.class, StoreInfo.class));
+    }
+
+    /**
+     * Builds a new cache
+     *
+     * @param maxSize the maximum number of counts, zero or less disables the cache
+     * @param expiration the time, in seconds, after which a count is computed again
+     * @param estimated if true, only the counts the stores compute in an optimized way are used
+     */
+    FeatureCountCache(int maxSize, long expiration, boolean estimated) {
+        if (maxSize > 0) {
+            counts =
+                    CacheBuilder.newBuilder()
+                            .maximumSize(maxSize)
+                            .expireAfterWrite(expiration, TimeUnit.SECONDS)
+                            .recordStats()
+                            .build();
+        }
+        this.estimated = estimated;
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(
+                    "Feature count cache size: " + maxSize + ", estimated counts: " + estimated);
+        }
+    }
+
+    /** Returns true if the counts are cached */
+    public boolean isEnabled() {
+        return counts != null;
+    }
+
+    /** Returns true if only the counts the stores can compute in an optimized way are used */
+    public boolean isEstimated() {
+        return estimated;
+    }
+
+    /**
+     * Returns the number of features matched by the query, or -1 if unknown (only in estimated
+     * mode)
+     */
+    public int getCount(FeatureSource source, Query query) throws IOException {
+        CountKey key = counts != null ? getKey(source, query) : null;
+        if (key != null) {
+            Integer count = counts.getIfPresent(key);
+            if (count != null) {
+                return count;
+            }
+        }
+
+        int count;
+        if (estimated) {
+            count = source.getCount(query);
+        } else {
+            // make sure we get a count by getting a feature collection
+            // FeatureSource.getCount(...) can return -1
+            count = source.getFeatures(query).size();
+        }
+        if (key != null && count >= 0) {
+            counts.put(key, count);
+        }
+        return count;
+    }
+
+    /** Drops all the cached counts */
+    public void invalidateAll() {
+        if (counts != null) {
+            counts.invalidateAll();
+        }
+    }
+
+    /** Drops the cached counts of the given feature type */
+    public void invalidate(QName typeName) {
+        if (counts != null && typeName != null) {
+            counts.asMap().keySet().removeIf(k -> k.matches(typeName));
+        }
+    }
+
+    /** Returns the cache hit and miss statistics */
+    public CacheStats getStatistics() {
+        return counts != null ? counts.stats() : new CacheStats(0, 0, 0, 0, 0, 0);
+    }
+
+    /** Builds the cache key for the query, or returns null if it cannot be cached */
+    CountKey getKey(FeatureSource source, Query query) {
+        Name name = source.getName();
+        if (name == null) {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(query.getTypeName()).append('\n');
+        sb.append(toString(query.getFilter())).append('\n');
+        Hints hints = query.getHints();
+        if (hints != null) {
+            Object joins = hints.get(ResourcePool.JOINS);
+            if (joins instanceof List) {
+                for (Object o : (List) joins) {
+                    if (o instanceof Join) {
+                        Join join = (Join) o;
+                        sb.append(join.getType())
+                                .append(' ')
+                                .append(join.getTypeName())
+                                .append(' ')
+                                .append(join.getAlias())
+                                .append(' ')
+                                .append(toString(join.getJoinFilter()))
+                                .append(' ')
+                                .append(toString(join.getFilter()))
+                                .append('\n');
+                    }
+                }
+            }
+            Object viewParams = hints.get(Hints.VIRTUAL_TABLE_PARAMETERS);
+            if (viewParams instanceof Map) {
+                // sort them, the order does not matter
+                sb.append(new TreeMap<>((Map<?, ?>) viewParams));
+            }
+        }
+        sb.append('\n');
+        sb.append(getRoles());
+
+        return new CountKey(name.getNamespaceURI(), name.getLocalPart(), sb.toString());
+    }
+
+    /** Normalizes the filter, so that equivalent filters map to the same key */
+    private String toString(Filter filter) {
+        if (filter == null) {
+            return "INCLUDE";
+        }
+        Filter simplified = (Filter) filter.accept(new SimplifyingFilterVisitor(), null);
+        try {
+            return ECQL.toCQL(simplified);
+        } catch (Exception e) {
+            // not all filters can be expressed in ECQL
+            return simplified.toString();
+        }
+    }
+
+    private String getRoles() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null) {
+            return "";
+        }
+        return auth.getName() + ":" + ResponseCacheUtils.getRoles();
+    }
+
+    @Override
+    public TransactionRequest beforeTransaction(TransactionRequest request) throws WFSException {
+        return request;
+    }
+
+    @Override
+    public void beforeCommit(TransactionRequest request) throws WFSException {
+        // nothing to do
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void dataStoreChange(TransactionEvent event) throws WFSException {
+        QName typeName = event.getLayerName();
+        invalidate(typeName);
+
+        // remember the type, counts computed before the commit can still see the old data
+        Map<Object, Object> properties = event.getRequest().getExtendedProperties();
+        if (properties != null && typeName != null) {
+            Set<QName> modified = (Set<QName>) properties.get(MODIFIED_TYPES);
+            if (modified == null) {
+                modified = new HashSet<>();
+                properties.put(MODIFIED_TYPES, modified);
+            }
+            modified.add(typeName);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void afterTransaction(
+            TransactionRequest request, TransactionResponse result, boolean committed) {
+        Map<Object, Object> properties = request.getExtendedProperties();
+        Set<QName> modified =
+                properties != null ? (Set<QName>) properties.get(MODIFIED_TYPES) : null;
+        if (modified != null) {
+            modified.forEach(this::invalidate);
+        }
+    }
+
+    /** A cached count key, the feature type name is kept apart to allow invalidating it */
+    static class CountKey {
+        final String namespaceURI;
+        final String localPart;
+        final String query;
+
+        CountKey(String namespaceURI, String localPart, String query) {
+            this.namespaceURI = namespaceURI;
+            this.localPart = localPart;
+            this.query = query;
+        }
+
+        /**
+         * Returns true if the key refers to the given feature type. The namespace is not compared
+         * when missing from either side, the type names in transaction requests can lack it
+         */
+        boolean matches(QName typeName) {
+            String uri = typeName.getNamespaceURI();
+            return localPart.equals(typeName.getLocalPart())
+                    && (namespaceURI == null
+                            || uri == null
+                            || uri.isEmpty()
+                            || namespaceURI.equals(uri));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            CountKey countKey = (CountKey) o;
+            return Objects.equals(namespaceURI, countKey.namespaceURI)
+                    && Objects.equals(localPart, countKey.localPart)
+                    && Objects.equals(query, countKey.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(namespaceURI, localPart, query);
+        }
+    }
+}
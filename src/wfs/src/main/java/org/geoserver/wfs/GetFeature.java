@@ -7,6 +7,7 @@ package org.geoserver.wfs;
 
 import static org.geoserver.ows.util.ResponseUtils.buildURL;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.net.URI;
@@ -16,6 +17,13 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -36,6 +44,7 @@ import org.geoserver.ows.URLMangler.URLType;
 import org.geoserver.ows.util.KvpMap;
 import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.ServiceException;
+import org.geoserver.threadlocals.ThreadLocalsTransfer;
 import org.geoserver.wfs.request.FeatureCollectionResponse;
 import org.geoserver.wfs.request.GetFeatureRequest;
 import org.geoserver.wfs.request.Lock;
@@ -140,6 +149,13 @@ public class GetFeature {
     private static final Logger LOGGER =
             org.geotools.util.logging.Logging.getLogger("org.vfny.geoserver.requests");
 
+    static final String QUERY_POOL_SIZE_KEY = "WFS_QUERY_POOL_SIZE";
+
+    /** Runs the feature counts of multi query requests in parallel, see {@link #getQueryPool()} */
+    static volatile ExecutorService QUERY_POOL;
+
+    static volatile boolean QUERY_POOL_INITIALIZED;
+
     /** Describes the allowed filters we support for join queries. */
     private static final FilterCapabilities joinFilterCapabilities;
 
@@ -199,10 +215,14 @@ public class GetFeature {
     /** stored query provider */
     StoredQueryProvider storedQueryProvider;
 
+    /** computes and caches the numberMatched counts, null if not available */
+    FeatureCountCache countCache;
+
     /** Creates the WFS 1.0/1.1 GetFeature operation. */
     public GetFeature(WFSInfo wfs, Catalog catalog) {
         this.wfs = wfs;
         this.catalog = catalog;
+        this.countCache = FeatureCountCache.get();
     }
 
     /** @return The reference to the GeoServer catalog. */
@@ -225,6 +245,11 @@ public class GetFeature {
         this.filterFactory = filterFactory;
     }
 
+    /** Sets the cache used to compute the numberMatched counts, null to always count features */
+    public void setCountCache(FeatureCountCache countCache) {
+        this.countCache = countCache;
+    }
+
     /** Sets the stored query provider */
     public void setStoredQueryProvider(StoredQueryProvider storedQueryProvider) {
         this.storedQueryProvider = storedQueryProvider;
@@ -375,6 +400,13 @@ public class GetFeature {
 
         List results = new ArrayList();
         final List<CountExecutor> totalCountExecutors = new ArrayList<CountExecutor>();
+        // with multiple queries and no paging the sizes can be computed in parallel, using the
+        // query limits as if each query was alone, and settled once all the sizes are known
+        ExecutorService queryPool =
+                calculateSize && queries.size() > 1 && totalOffset <= 0 && !request.isLockRequest()
+                        ? getQueryPool()
+                        : null;
+        List<PendingQuery> pendingQueries = new ArrayList<>();
         try {
             for (int i = 0; (i < queries.size()) && (count < maxFeatures); i++) {
 
@@ -670,6 +702,38 @@ public class GetFeature {
                                 .put("targetVersion", request.getVersion());
                     }
 
+                    if (queryPool != null) {
+                        PendingQuery pending =
+                                new PendingQuery(
+                                        features,
+                                        source,
+                                        gtQuery,
+                                        metaMaxFeatures,
+                                        meta,
+                                        primaryMeta,
+                                        query.getSrsName(),
+                                        propNames.get(0),
+                                        allPropNames.get(0));
+                        if (!meta.getSkipNumberMatched() || request.isResultTypeHits()) {
+                            pending.totalQuery =
+                                    toDataQuery(
+                                            query,
+                                            filter,
+                                            0,
+                                            Integer.MAX_VALUE,
+                                            source,
+                                            request,
+                                            allPropNames.get(0),
+                                            viewParam,
+                                            joins,
+                                            primaryTypeName,
+                                            primaryAlias);
+                        }
+                        pending.size = submitQueryTask(queryPool, pending.features::size);
+                        pendingQueries.add(pending);
+                        continue;
+                    }
+
                     if (!calculateSize) {
                         // if offset was specified and we have more queries left in this request
                         // then we
@@ -710,7 +774,7 @@ public class GetFeature {
                                             joins,
                                             primaryTypeName,
                                             primaryAlias);
-                            totalCountExecutors.add(new CountExecutor(source, qTotal));
+                            totalCountExecutors.add(new CountExecutor(source, qTotal, countCache));
                         }
                     }
 
@@ -748,34 +812,9 @@ public class GetFeature {
                         }
                     }
 
-                    // we may need to shave off geometries we did load only to make bounds
-                    // computation happy
-                    // TODO: support non-SimpleFeature geometry shaving
-                    List<PropertyName> metaPropNames = propNames.get(0);
-                    if (features.getSchema() instanceof SimpleFeatureType
-                            && metaPropNames != null
-                            && metaPropNames.size() < allPropNames.get(0).size()) {
-                        String[] residualNames = new String[metaPropNames.size()];
-                        Iterator<PropertyName> it = metaPropNames.iterator();
-                        int j = 0;
-                        while (it.hasNext()) {
-                            residualNames[j] = it.next().getPropertyName();
-                            j++;
-                        }
-                        SimpleFeatureType targetType =
-                                DataUtilities.createSubType(
-                                        (SimpleFeatureType) features.getSchema(), residualNames);
-                        features =
-                                new FeatureBoundsFeatureCollection(
-                                        (SimpleFeatureCollection) features, targetType);
-                    }
-
-                    // allow encoders to grab information about this layer if needs be
-                    if (primaryMeta != null) {
-                        features = TypeInfoCollectionWrapper.wrap(features, primaryMeta);
-                    }
-
-                    results.add(features);
+                    results.add(
+                            finishFeatures(
+                                    features, propNames.get(0), allPropNames.get(0), primaryMeta));
                 } catch (WFSException e) {
                     // intercept and set locator to query handle if one was set, or if it simply set
                     // to GetFeature, which is the default
@@ -788,6 +827,59 @@ public class GetFeature {
                 }
             }
 
+            if (queryPool != null) {
+                for (PendingQuery pending : pendingQueries) {
+                    if (count >= maxFeatures) {
+                        break;
+                    }
+                    // the actual local maximum, given the features returned by the previous
+                    // queries
+                    int queryMaxFeatures = maxFeatures - count;
+                    if (pending.metaMaxFeatures > 0 && pending.metaMaxFeatures < queryMaxFeatures) {
+                        queryMaxFeatures = pending.metaMaxFeatures;
+                    }
+                    FeatureCollection<? extends FeatureType, ? extends Feature> features =
+                            pending.features;
+                    int size = getQueryTaskResult(pending.size);
+                    if (size > queryMaxFeatures) {
+                        // the previous queries used part of the max features, run a
+                        // query with the actual limit
+                        size = queryMaxFeatures;
+                        org.geotools.data.Query limited =
+                                new org.geotools.data.Query(pending.query);
+                        limited.setMaxFeatures(queryMaxFeatures);
+                        features = getFeatures(request, pending.source, limited);
+                        if (!(pending.meta.getFeatureType() instanceof SimpleFeatureType)) {
+                            features.getSchema().getUserData().put("targetCrs", pending.targetCrs);
+                            features.getSchema()
+                                    .getUserData()
+                                    .put("targetVersion", request.getVersion());
+                        }
+                    }
+                    count += size;
+
+                    // same as the serial case, without an offset
+                    isNumberMatchedSkipped =
+                            pending.meta.getSkipNumberMatched() && !request.isResultTypeHits();
+                    if (!isNumberMatchedSkipped) {
+                        if (queryMaxFeatures == Integer.MAX_VALUE || size < queryMaxFeatures) {
+                            totalCountExecutors.add(new CountExecutor(size));
+                        } else {
+                            totalCountExecutors.add(
+                                    new CountExecutor(
+                                            pending.source, pending.totalQuery, countCache));
+                        }
+                    }
+
+                    results.add(
+                            finishFeatures(
+                                    features,
+                                    pending.propNames,
+                                    pending.allPropNames,
+                                    pending.primaryMeta));
+                }
+            }
+
             // total count represents the total count of the features matched for this query in
             // cases
             // where the client has limited the result set size, so we compute it lazily
@@ -827,6 +919,11 @@ public class GetFeature {
         } catch (SchemaException e) {
             throw new WFSException(
                     request, "Error occurred getting features", e, request.getHandle());
+        } finally {
+            // stop computing sizes no longer needed, if the max features was reached or we failed
+            for (PendingQuery pending : pendingQueries) {
+                pending.size.cancel(true);
+            }
         }
 
         return buildResults(
@@ -851,21 +948,183 @@ public class GetFeature {
     }
 
     private long getTotalCount(List<CountExecutor> totalCountExecutors) throws IOException {
+        // run the actual counts in parallel, if there is more than one and the pool is enabled
+        List<Future<Integer>> counts = null;
+        ExecutorService pool = getQueryPool();
+        if (pool != null && totalCountExecutors.stream().filter(q -> !q.isCountSet()).count() > 1) {
+            counts = new ArrayList<>();
+            for (CountExecutor q : totalCountExecutors) {
+                counts.add(q.isCountSet() ? null : submitQueryTask(pool, q::getCount));
+            }
+        }
+
         long totalCount = 0;
-        for (CountExecutor q : totalCountExecutors) {
-            int result = q.getCount();
-            // if the count is unknown for one, we don't know the total,
-            // period
-            if (result == -1) {
-                totalCount = -1;
-                break;
-            } else {
-                totalCount += result;
+        try {
+            for (int i = 0; i < totalCountExecutors.size(); i++) {
+                Future<Integer> future = counts != null ? counts.get(i) : null;
+                int result =
+                        future != null
+                                ? getQueryTaskResult(future)
+                                : totalCountExecutors.get(i).getCount();
+                // if the count is unknown for one, we don't know the total,
+                // period
+                if (result == -1) {
+                    totalCount = -1;
+                    break;
+                } else {
+                    totalCount += result;
+                }
+            }
+        } finally {
+            if (counts != null) {
+                for (Future<Integer> future : counts) {
+                    if (future != null) {
+                        future.cancel(true);
+                    }
+                }
             }
         }
         return totalCount;
     }
 
+    /**
+     * Returns the pool used to run the feature counts of multi query requests in parallel, or null
+     * if parallel execution is disabled. The pool size is controlled by the {@value
+     * #QUERY_POOL_SIZE_KEY} variable, and defaults to zero, meaning disabled, as each parallel
+     * query uses its own store connection.
+     */
+    static ExecutorService getQueryPool() {
+        if (!QUERY_POOL_INITIALIZED) {
+            synchronized (GetFeature.class) {
+                if (!QUERY_POOL_INITIALIZED) {
+                    int poolSize = GeoServerExtensions.getIntProperty(QUERY_POOL_SIZE_KEY, 0);
+                    if (poolSize > 0) {
+                        ThreadPoolExecutor pool =
+                                new ThreadPoolExecutor(
+                                        poolSize,
+                                        poolSize,
+                                        60L,
+                                        TimeUnit.SECONDS,
+                                        new LinkedBlockingQueue<>(),
+                                        new ThreadFactoryBuilder()
+                                                .setNameFormat("gs-wfs-query-%d")
+                                                .setDaemon(true)
+                                                .build());
+                        pool.allowCoreThreadTimeOut(true);
+                        QUERY_POOL = pool;
+                    }
+                    QUERY_POOL_INITIALIZED = true;
+                }
+            }
+        }
+        return QUERY_POOL;
+    }
+
+    /** Submits a task to the query pool, transferring the thread locals of the request thread */
+    private static <T> Future<T> submitQueryTask(ExecutorService pool, Callable<T> task) {
+        ThreadLocalsTransfer threadLocalsTransfer = new ThreadLocalsTransfer();
+        return pool.submit(
+                () -> {
+                    threadLocalsTransfer.apply();
+                    try {
+                        return task.call();
+                    } finally {
+                        threadLocalsTransfer.cleanup();
+                    }
+                });
+    }
+
+    private static <T> T getQueryTaskResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the query results", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Shaves off the geometries loaded only to compute the feature bounds, and attaches the layer
+     * information for the encoders
+     */
+    private FeatureCollection<? extends FeatureType, ? extends Feature> finishFeatures(
+            FeatureCollection<? extends FeatureType, ? extends Feature> features,
+            List<PropertyName> metaPropNames,
+            List<PropertyName> allPropNames,
+            FeatureTypeInfo primaryMeta)
+            throws SchemaException {
+        // we may need to shave off geometries we did load only to make bounds
+        // computation happy
+        // TODO: support non-SimpleFeature geometry shaving
+        if (features.getSchema() instanceof SimpleFeatureType
+                && metaPropNames != null
+                && metaPropNames.size() < allPropNames.size()) {
+            String[] residualNames = new String[metaPropNames.size()];
+            Iterator<PropertyName> it = metaPropNames.iterator();
+            int j = 0;
+            while (it.hasNext()) {
+                residualNames[j] = it.next().getPropertyName();
+                j++;
+            }
+            SimpleFeatureType targetType =
+                    DataUtilities.createSubType(
+                            (SimpleFeatureType) features.getSchema(), residualNames);
+            features =
+                    new FeatureBoundsFeatureCollection(
+                            (SimpleFeatureCollection) features, targetType);
+        }
+
+        // allow encoders to grab information about this layer if needs be
+        if (primaryMeta != null) {
+            features = TypeInfoCollectionWrapper.wrap(features, primaryMeta);
+        }
+        return features;
+    }
+
+    /** A query whose size is being computed in parallel with the others */
+    static class PendingQuery {
+        final FeatureCollection<? extends FeatureType, ? extends Feature> features;
+        final FeatureSource<? extends FeatureType, ? extends Feature> source;
+        final org.geotools.data.Query query;
+        final int metaMaxFeatures;
+        final FeatureTypeInfo meta;
+        final FeatureTypeInfo primaryMeta;
+        final Object targetCrs;
+        final List<PropertyName> propNames;
+        final List<PropertyName> allPropNames;
+        org.geotools.data.Query totalQuery;
+        Future<Integer> size;
+
+        PendingQuery(
+                FeatureCollection<? extends FeatureType, ? extends Feature> features,
+                FeatureSource<? extends FeatureType, ? extends Feature> source,
+                org.geotools.data.Query query,
+                int metaMaxFeatures,
+                FeatureTypeInfo meta,
+                FeatureTypeInfo primaryMeta,
+                Object targetCrs,
+                List<PropertyName> propNames,
+                List<PropertyName> allPropNames) {
+            this.features = features;
+            this.source = source;
+            this.query = query;
+            this.metaMaxFeatures = metaMaxFeatures;
+            this.meta = meta;
+            this.primaryMeta = primaryMeta;
+            this.targetCrs = targetCrs;
+            this.propNames = propNames;
+            this.allPropNames = allPropNames;
+        }
+    }
+
     private Filter toFeatureIdFilter(List<FeatureId> lockedFeatures) {
         if (lockedFeatures == null || lockedFeatures.isEmpty()) {
             return Filter.EXCLUDE;
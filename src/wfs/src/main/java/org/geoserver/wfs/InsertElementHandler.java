@@ -7,6 +7,7 @@ package org.geoserver.wfs;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -47,6 +48,12 @@ import org.opengis.referencing.crs.CoordinateReferenceSystem;
 /**
  * Handler for the insert element
  *
+ * <p>When {@link WFSInfo#getTransactionBatchSize()} is greater than one, consecutive inserts are
+ * executed together. The pre and post insert {@link TransactionEvent}s are then fired once per
+ * feature type, carrying the features of all the inserts in the batch, and their source is the
+ * first insert of the batch, not the one each feature comes from. Listeners needing the element
+ * each feature comes from should leave batching disabled.
+ *
  * @author Andrea Aime - TOPP
  */
 public class InsertElementHandler extends AbstractTransactionElementHandler {
@@ -68,7 +75,6 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
         }
     }
 
-    @SuppressWarnings("unchecked")
     public void execute(
             TransactionElement element,
             TransactionRequest request,
@@ -76,9 +82,32 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
             TransactionResponse response,
             TransactionListener listener)
             throws WFSTransactionException {
+        execute(Collections.singletonList(element), request, featureStores, response, listener);
+    }
 
-        Insert insert = (Insert) element;
-        LOGGER.finer("Transaction Insert:" + insert);
+    /** Consecutive inserts are always executed together, grouping their features by schema */
+    @Override
+    public boolean canBatch(List<TransactionElement> batch, TransactionElement element) {
+        return true;
+    }
+
+    /**
+     * Executes the inserts adding the features of all of them with a single call per feature store.
+     * The transaction events are fired once per feature type, using the first insert as their
+     * source.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void execute(
+            List<TransactionElement> elements,
+            TransactionRequest request,
+            Map featureStores,
+            TransactionResponse response,
+            TransactionListener listener)
+            throws WFSTransactionException {
+
+        Insert insert = (Insert) elements.get(0);
+        LOGGER.finer("Transaction Insert:" + elements);
 
         long inserted = response.getTotalInserted().longValue();
 
@@ -86,9 +115,18 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
             // group features by their schema
             HashMap /* <SimpleFeatureType,FeatureCollection> */ schema2features = new HashMap();
 
-            List featureList = insert.getFeatures();
-            for (Iterator f = featureList.iterator(); f.hasNext(); ) {
-                SimpleFeature feature = (SimpleFeature) f.next();
+            // the features, and the inserts they come from, in the order they were supplied
+            List<SimpleFeature> featureList = new ArrayList<>();
+            List<Insert> featureInserts = new ArrayList<>();
+            for (TransactionElement element : elements) {
+                for (Object f : ((Insert) element).getFeatures()) {
+                    featureList.add((SimpleFeature) f);
+                    featureInserts.add((Insert) element);
+                }
+            }
+            for (int i = 0; i < featureList.size(); i++) {
+                SimpleFeature feature = featureList.get(i);
+                Insert featureInsert = featureInserts.get(i);
                 SimpleFeatureType schema = feature.getFeatureType();
                 ListFeatureCollection collection =
                         (ListFeatureCollection) schema2features.get(schema);
@@ -100,12 +138,12 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
 
                 // do a check for idegen = useExisting, if set try to tell the datastore to use
                 // the provided fid
-                if (insert.isIdGenUseExisting()) {
+                if (featureInsert.isIdGenUseExisting()) {
                     feature.getUserData().put(Hints.USE_PROVIDED_FID, true);
                 } else {
                     Object identifier =
                             feature.getAttribute(new NameImpl(GML.NAMESPACE, "identifier"));
-                    if (WFSInfo.Version.V_20.compareTo(insert.getVersion()) >= 0
+                    if (WFSInfo.Version.V_20.compareTo(featureInsert.getVersion()) >= 0
                             && identifier instanceof String) {
                         SimpleFeatureBuilder fb =
                                 new SimpleFeatureBuilder(feature.getFeatureType());
@@ -218,16 +256,15 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
 
             // report back fids, we need to keep the same order the
             // fids were reported in the original feature collection
-            for (Iterator f = featureList.iterator(); f.hasNext(); ) {
-                SimpleFeature feature = (SimpleFeature) f.next();
-                SimpleFeatureType schema = feature.getFeatureType();
+            for (int i = 0; i < featureList.size(); i++) {
+                SimpleFeatureType schema = featureList.get(i).getFeatureType();
 
                 // get the next fid
                 LinkedList<FeatureId> fids =
                         (LinkedList<FeatureId>) schema2fids.get(schema.getTypeName());
                 FeatureId fid = fids.removeFirst();
 
-                response.addInsertedFeature(insert.getHandle(), fid);
+                response.addInsertedFeature(featureInserts.get(i).getHandle(), fid);
             }
 
             // update the insert counter
@@ -288,12 +288,29 @@ public class Transaction {
         Exception exception = null;
 
         try {
+            // consecutive elements of the same kind can be executed together, if the handler
+            // allows, up to the configured batch size
+            Integer configuredBatchSize = wfs.getTransactionBatchSize();
+            int batchSize = configuredBatchSize != null ? Math.max(1, configuredBatchSize) : 1;
+            List<TransactionElement> batch = new ArrayList<>();
+            TransactionElementHandler batchHandler = null;
             for (Iterator it = elementHandlers.entrySet().iterator(); it.hasNext(); ) {
                 Map.Entry entry = (Map.Entry) it.next();
                 TransactionElement element = (TransactionElement) entry.getKey();
                 TransactionElementHandler handler = (TransactionElementHandler) entry.getValue();
 
-                handler.execute(element, request, stores, result, multiplexer);
+                if (!batch.isEmpty()
+                        && (handler != batchHandler
+                                || batch.size() >= batchSize
+                                || !handler.canBatch(batch, element))) {
+                    executeBatch(batchHandler, batch, request, stores, result, multiplexer);
+                    batch = new ArrayList<>();
+                }
+                batch.add(element);
+                batchHandler = handler;
+            }
+            if (!batch.isEmpty()) {
+                executeBatch(batchHandler, batch, request, stores, result, multiplexer);
             }
         } catch (WFSTransactionException e) {
             LOGGER.log(Level.SEVERE, "Transaction failed", e);
@@ -415,6 +432,38 @@ public class Transaction {
         // response = build;
     }
 
+    /** Executes a group of consecutive elements sharing the same handler */
+    private void executeBatch(
+            TransactionElementHandler handler,
+            List<TransactionElement> elements,
+            TransactionRequest request,
+            Map stores,
+            TransactionResponse result,
+            TransactionListener listener)
+            throws WFSTransactionException {
+        long start = System.currentTimeMillis();
+        if (elements.size() == 1) {
+            handler.execute(elements.get(0), request, stores, result, listener);
+        } else {
+            handler.execute(elements, request, stores, result, listener);
+        }
+        long time = System.currentTimeMillis() - start;
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(
+                    "Executed "
+                            + elements.size()
+                            + " transaction element(s) with "
+                            + handler.getClass().getSimpleName()
+                            + " in "
+                            + time
+                            + "ms");
+        }
+        for (TransactionCallback tp : transactionCallbacks) {
+            tp.elementsExecuted(request, elements, time);
+        }
+    }
+
     private TransactionRequest fireBeforeTransaction(TransactionRequest request) {
         for (TransactionCallback tp : transactionCallbacks) {
             request = tp.beforeTransaction(request);
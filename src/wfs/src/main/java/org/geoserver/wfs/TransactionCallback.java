@@ -4,7 +4,9 @@
  */
 package org.geoserver.wfs;
 
+import java.util.List;
 import org.geoserver.platform.ExtensionPriority;
+import org.geoserver.wfs.request.TransactionElement;
 import org.geoserver.wfs.request.TransactionRequest;
 import org.geoserver.wfs.request.TransactionResponse;
 
@@ -31,6 +33,19 @@ public interface TransactionCallback extends ExtensionPriority, TransactionListe
     void afterTransaction(
             TransactionRequest request, TransactionResponse result, boolean committed);
 
+    /**
+     * Notification a group of transaction elements got executed, elements are executed in groups
+     * when {@link WFSInfo#getTransactionBatchSize()} is greater than one
+     *
+     * @param request the originating transaction request
+     * @param elements the elements executed together
+     * @param time the execution time, in milliseconds
+     */
+    default void elementsExecuted(
+            TransactionRequest request, List<TransactionElement> elements, long time) {
+        // nothing to do by default
+    }
+
     @Override
     default int getPriority() {
         return ExtensionPriority.LOWEST;
@@ -5,6 +5,7 @@
  */
 package org.geoserver.wfs;
 
+import java.util.List;
 import java.util.Map;
 import javax.xml.namespace.QName;
 import org.eclipse.emf.ecore.EObject;
@@ -59,4 +60,33 @@ public interface TransactionElementHandler {
             TransactionResponse response,
             TransactionListener listener)
             throws WFSTransactionException;
+
+    /**
+     * Returns true if the element can be executed in the same batch as the previous ones, all
+     * handled by this handler, using {@link #execute(List, TransactionRequest, Map,
+     * TransactionResponse, TransactionListener)}. By default elements are executed one at a time.
+     *
+     * @param batch the elements of the batch being built, never empty
+     * @param element the element following them in the transaction
+     */
+    default boolean canBatch(List<TransactionElement> batch, TransactionElement element) {
+        return false;
+    }
+
+    /**
+     * Executes a batch of consecutive elements, for which {@link #canBatch(List,
+     * TransactionElement)} returned true. The default implementation executes them one at a time.
+     */
+    @SuppressWarnings("rawtypes")
+    default void execute(
+            List<TransactionElement> elements,
+            TransactionRequest request,
+            Map<QName, FeatureStore> featureStores,
+            TransactionResponse response,
+            TransactionListener listener)
+            throws WFSTransactionException {
+        for (TransactionElement element : elements) {
+            execute(element, request, featureStores, response, listener);
+        }
+    }
 }
@@ -7,13 +7,16 @@ package org.geoserver.wfs;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Set;
 import java.util.logging.Logger;
 import javax.xml.namespace.QName;
@@ -59,6 +62,12 @@ import org.opengis.referencing.operation.MathTransform;
 /**
  * Processes standard update elements
  *
+ * <p>When {@link WFSInfo#getTransactionBatchSize()} is greater than one, consecutive updates
+ * setting the same values on the same feature type, with the same handle, are executed together.
+ * The pre and post update {@link TransactionEvent}s are then fired once, carrying the features
+ * matched by all the updates in the batch, and their source is the first update of the batch. The
+ * merged updates differ only by their filter.
+ *
  * @author Andrea Aime - TOPP
  */
 public class UpdateElementHandler extends AbstractTransactionElementHandler {
@@ -200,8 +209,62 @@ public class UpdateElementHandler extends AbstractTransactionElementHandler {
             TransactionResponse response,
             TransactionListener listener)
             throws WFSTransactionException {
+        execute(Collections.singletonList(element), request, featureStores, response, listener);
+    }
 
-        Update update = (Update) element;
+    /**
+     * Updates on the same feature type, setting the same values, and with the same handle, are
+     * executed together as a single update whose filter matches the features of all of them. Only
+     * updates selecting features by id, with no id in common with the rest of the batch, are
+     * batched, as the combined update would otherwise count the shared features once, changing the
+     * total number of updated features.
+     */
+    @Override
+    public boolean canBatch(List<TransactionElement> batch, TransactionElement element) {
+        Update u1 = (Update) batch.get(batch.size() - 1);
+        Update u2 = (Update) element;
+        if (!Objects.equals(u1.getTypeName(), u2.getTypeName())
+                || !Objects.equals(u1.getHandle(), u2.getHandle())) {
+            return false;
+        }
+        List<Property> p1 = u1.getUpdateProperties();
+        List<Property> p2 = u2.getUpdateProperties();
+        if (p1.isEmpty() || p1.size() != p2.size()) {
+            return false;
+        }
+        for (int i = 0; i < p1.size(); i++) {
+            if (!Objects.equals(p1.get(i).getName(), p2.get(i).getName())
+                    || !Objects.equals(p1.get(i).getValue(), p2.get(i).getValue())) {
+                return false;
+            }
+        }
+        if (!(element.getFilter() instanceof Id)) {
+            return false;
+        }
+        Set<Object> ids = ((Id) element.getFilter()).getIDs();
+        for (TransactionElement e : batch) {
+            if (!(e.getFilter() instanceof Id)
+                    || !Collections.disjoint(ids, ((Id) e.getFilter()).getIDs())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Executes the updates as a single one, with a filter matching the features of all of them. The
+     * transaction events use the first update as their source.
+     */
+    @Override
+    public void execute(
+            List<TransactionElement> elements,
+            TransactionRequest request,
+            @SuppressWarnings("rawtypes") Map<QName, FeatureStore> featureStores,
+            TransactionResponse response,
+            TransactionListener listener)
+            throws WFSTransactionException {
+
+        Update update = (Update) elements.get(0);
         final QName elementName = update.getTypeName();
         String handle = update.getHandle();
 
@@ -215,21 +278,31 @@ public class UpdateElementHandler extends AbstractTransactionElementHandler {
                     request, "Could not locate FeatureStore for '" + elementName + "'");
         }
 
-        LOGGER.finer("Transaction Update:" + update);
+        LOGGER.finer("Transaction Update:" + elements);
 
         try {
-            Filter filter = update.getFilter();
-
             // make sure all geometric elements in the filter have a crs, and that the filter
             // is reprojected to store's native crs as well
             CoordinateReferenceSystem declaredCRS =
                     WFSReprojectionUtil.getDeclaredCrs(store.getSchema(), request.getVersion());
-            if (filter != null) {
-                filter =
+            List<Filter> filters = new ArrayList<>();
+            for (TransactionElement element : elements) {
+                Filter filter = element.getFilter();
+                if (filter == null) {
+                    filters.clear();
+                    break;
+                }
+                filters.add(
                         WFSReprojectionUtil.normalizeFilterCRS(
-                                filter, store.getSchema(), declaredCRS);
-            } else {
+                                filter, store.getSchema(), declaredCRS));
+            }
+            Filter filter;
+            if (filters.isEmpty()) {
                 filter = Filter.INCLUDE;
+            } else if (filters.size() == 1) {
+                filter = filters.get(0);
+            } else {
+                filter = CommonFactoryFinder.getFilterFactory2(null).or(filters);
             }
 
             List<Property> properties = update.getUpdateProperties();
@@ -258,6 +258,21 @@ public interface WFSInfo extends ServiceInfo {
     /** Set the maximum number of features to be displayed in a layer preview */
     void setMaxNumberOfFeaturesForPreview(Integer maxNumberOfFeaturesForPreview);
 
+    /**
+     * Get the maximum number of consecutive transaction elements of the same kind executed
+     * together, e.g., inserts bulk added to the store in one call. By default 1, no batching.
+     *
+     * @return transactionBatchSize
+     */
+    default Integer getTransactionBatchSize() {
+        return 1;
+    }
+
+    /** Set the maximum number of consecutive transaction elements executed together */
+    default void setTransactionBatchSize(Integer transactionBatchSize) {
+        // if not implemented nothing is done
+    }
+
     /** The srs's that the WFS service will advertise in the capabilities document */
     List<String> getSRS();
 
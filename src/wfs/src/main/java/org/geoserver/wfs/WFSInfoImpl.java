@@ -103,6 +103,17 @@ public class WFSInfoImpl extends ServiceInfoImpl implements WFSInfo {
         getMetadata().put("maxNumberOfFeaturesForPreview", maxNumberOfFeaturesForPreview);
     }
 
+    @Override
+    public Integer getTransactionBatchSize() {
+        Integer i = getMetadata().get("transactionBatchSize", Integer.class);
+        return i != null ? i : 1;
+    }
+
+    @Override
+    public void setTransactionBatchSize(Integer transactionBatchSize) {
+        getMetadata().put("transactionBatchSize", transactionBatchSize);
+    }
+
     public List<String> getSRS() {
         return srs;
     }
@@ -5,12 +5,15 @@
  */
 package org.geoserver.wfs.json;
 
+import java.io.IOException;
 import java.io.Writer;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Map;
 import net.sf.json.JSONException;
+import net.sf.json.JSONString;
 import net.sf.json.util.JSONBuilder;
+import net.sf.json.util.JSONUtils;
 import org.geotools.referencing.CRS;
 import org.geotools.util.Converters;
 import org.locationtech.jts.geom.CoordinateSequence;
@@ -28,6 +31,10 @@ import org.locationtech.jts.geom.Polygon;
  * This class extends the JSONBuilder to be able to write out geometric types. It is coded against
  * the draft 5 version of the spec on http://geojson.org
  *
+ * <p>Coordinates are the bulk of the output, so they are streamed straight to the writer, with the
+ * numbers formatted in a reusable buffer, instead of going through the builder one ordinate at a
+ * time. The builder is still used to track the JSON structure around them.
+ *
  * @author Chris Holmes, The Open Planning Project
  * @version $Id$
  */
@@ -39,6 +46,20 @@ public class GeoJSONBuilder extends JSONBuilder {
 
     private boolean encodeMeasures = false;
 
+    /** Powers of ten, indexed by the number of decimals */
+    private static final long[] SCALE = {
+        1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L
+    };
+
+    /**
+     * A value writing nothing, passed to the builder so that it writes the separator and updates
+     * its state before the raw output of a value
+     */
+    private static final JSONString RAW_VALUE = () -> "";
+
+    /** Buffer for the formatted numbers, reused for all the ordinates */
+    private final char[] numberBuffer = new char[32];
+
     public GeoJSONBuilder(Writer w) {
         super(w);
     }
@@ -134,7 +155,13 @@ public class GeoJSONBuilder extends JSONBuilder {
         CoordinateSequence coordinates = point.getCoordinateSequence();
         // let's see if we need to encode measures, NaN values will not be encoded
         double m = encodeMeasures ? coordinates.getM(0) : Double.NaN;
-        return writeCoordinate(coordinates.getX(0), coordinates.getY(0), coordinates.getZ(0), m);
+        this.value(RAW_VALUE);
+        try {
+            writeCoordinate(coordinates.getX(0), coordinates.getY(0), coordinates.getZ(0), m);
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+        return this;
     }
 
     /**
@@ -146,17 +173,26 @@ public class GeoJSONBuilder extends JSONBuilder {
      * @return the JSON builder instance, this allow chained calls
      */
     private JSONBuilder writeCoordinates(CoordinateSequence coordinates) throws JSONException {
-        // start encoding the JSON array of coordinates
-        this.array();
-        // each coordinate will be encoded has an array of ordinates
-        for (int i = 0; i < coordinates.size(); i++) {
-            // let's see if we need to encode measures, NaN values will not be encoded
-            double m = encodeMeasures ? coordinates.getM(i) : Double.NaN;
-            // encode the coordinate ordinates to the JSON output
-            writeCoordinate(coordinates.getX(i), coordinates.getY(i), coordinates.getZ(i), m);
+        this.value(RAW_VALUE);
+        try {
+            // start encoding the JSON array of coordinates
+            writer.write('[');
+            // each coordinate will be encoded has an array of ordinates
+            for (int i = 0, n = coordinates.size(); i < n; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                // let's see if we need to encode measures, NaN values will not be encoded
+                double m = encodeMeasures ? coordinates.getM(i) : Double.NaN;
+                // encode the coordinate ordinates to the JSON output
+                writeCoordinate(coordinates.getX(i), coordinates.getY(i), coordinates.getZ(i), m);
+            }
+            // we are done with the array
+            writer.write(']');
+        } catch (IOException e) {
+            throw new JSONException(e);
         }
-        // we are done with the array
-        return this.endArray();
+        return this;
     }
 
     /**
@@ -171,41 +207,126 @@ public class GeoJSONBuilder extends JSONBuilder {
      * @param y X ordinate
      * @param z Z ordinate, can be {@code NaN}
      * @param m M ordinate, can be {@code NaN}
-     * @return the JSON builder instance, this allow chained calls
      */
-    private JSONBuilder writeCoordinate(double x, double y, double z, double m) {
+    private void writeCoordinate(double x, double y, double z, double m) throws IOException {
         // start encoding JSON array
-        this.array();
+        writer.write('[');
         // adjust the order of X and Y ordinates if needed
         if (axisOrder == CRS.AxisOrder.NORTH_EAST) {
             // encode latitude first and then longitude
             if (!Double.isNaN(y)) { // for 1d linear referencing cases
-                roundedValue(y);
+                writeRounded(y);
+                writer.write(',');
             }
-            roundedValue(x);
+            writeRounded(x);
         } else {
             // encode longitude first and then latitude
-            roundedValue(x);
+            writeRounded(x);
             if (!Double.isNaN(y)) { // for 1d linear referencing cases
-                roundedValue(y);
+                writer.write(',');
+                writeRounded(y);
             }
         }
         // if Z value is not available but we have a measure, we set Z value to zero
         z = Double.isNaN(z) && !Double.isNaN(m) ? 0 : z;
         // encode Z value if available
         if (!Double.isNaN(z)) {
-            roundedValue(z);
+            writer.write(',');
+            writeRounded(z);
         }
         // encode M value if available
         if (!Double.isNaN(m)) {
-            roundedValue(m);
+            writer.write(',');
+            writeRounded(m);
         }
         // we are done with the array
-        return this.endArray();
+        writer.write(']');
     }
 
     private void roundedValue(double value) {
-        super.value(RoundingUtil.round(value, numDecimals));
+        this.value(RAW_VALUE);
+        try {
+            writeRounded(value);
+        } catch (IOException e) {
+            throw new JSONException(e);
+        }
+    }
+
+    /** Writes out the value rounded to the configured number of decimals */
+    private void writeRounded(double value) throws IOException {
+        double rounded = RoundingUtil.round(value, numDecimals);
+        int length = formatRounded(rounded, numDecimals, numberBuffer);
+        if (length >= 0) {
+            writer.write(numberBuffer, 0, length);
+        } else {
+            // will also fail on non finite numbers, as JSON does not allow them
+            writer.write(JSONUtils.numberToString(rounded));
+        }
+    }
+
+    /**
+     * Formats a value already rounded to the given number of decimals, producing the same text as
+     * {@link JSONUtils#numberToString(Number)}, that is, {@link Double#toString(double)} without
+     * the trailing zeroes. Only the values that {@link Double#toString(double)} prints in plain
+     * notation, and that have no more than 15 significant digits, are handled: their digits can be
+     * computed exactly with integer math.
+     *
+     * @return the number of chars written in the buffer, or -1 if the value cannot be handled
+     */
+    static int formatRounded(double value, int numDecimals, char[] buffer) {
+        if (numDecimals < 0 || numDecimals >= SCALE.length) {
+            return -1;
+        }
+        int pos = 0;
+        if (value == 0) {
+            if (Double.doubleToRawLongBits(value) < 0) {
+                buffer[pos++] = '-';
+            }
+            buffer[pos++] = '0';
+            return pos;
+        }
+        double abs = Math.abs(value);
+        // also excludes NaN
+        if (!(abs >= 1e-3 && abs < 1e7)) {
+            return -1;
+        }
+
+        long scale = SCALE[numDecimals];
+        long scaled = Math.round(abs * scale);
+        long integer = scaled / scale;
+        long fraction = scaled % scale;
+        if (value < 0) {
+            buffer[pos++] = '-';
+        }
+        pos = writeDigits(integer, digitCount(integer), buffer, pos);
+        if (fraction != 0) {
+            int digits = numDecimals;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+            buffer[pos++] = '.';
+            pos = writeDigits(fraction, digits, buffer, pos);
+        }
+        return pos;
+    }
+
+    private static int digitCount(long value) {
+        int count = 1;
+        while (value >= 10) {
+            value /= 10;
+            count++;
+        }
+        return count;
+    }
+
+    /** Writes the value using the given number of digits, padding with zeroes on the left */
+    private static int writeDigits(long value, int digits, char[] buffer, int pos) {
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + digits;
     }
 
     /**
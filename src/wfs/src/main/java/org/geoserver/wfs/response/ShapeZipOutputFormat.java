@@ -11,29 +11,34 @@ import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.SimpleTimeZone;
 import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.xml.namespace.QName;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.CatalogBuilder;
 import org.geoserver.catalog.FeatureTypeInfo;
@@ -96,6 +101,17 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat
     private long maxShpSize = Long.getLong("GS_SHP_MAX_SIZE", Integer.MAX_VALUE);
     private long maxDbfSize = Long.getLong("GS_DBF_MAX_SIZE", Integer.MAX_VALUE);
 
+    /** The files making up the shapefiles written by the dumper */
+    private static final FilenameFilter SHAPEFILE_FILTER =
+            (dir, name) -> {
+                name = name.toLowerCase();
+                return name.endsWith(".shp")
+                        || name.endsWith(".shx")
+                        || name.endsWith(".dbf")
+                        || name.endsWith(".prj")
+                        || name.endsWith(".cst");
+            };
+
     public ShapeZipOutputFormat(
             GeoServer gs, Catalog catalog, GeoServerResourceLoader resourceLoader) {
         super(gs, "SHAPE-ZIP");
@@ -209,37 +225,26 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat
         // target charset
 
         try {
+            ZipOutputStream zipOut = new ZipOutputStream(output);
+            Set<String> zippedNames = new HashSet<>();
+
             // if an empty result out of feature type with unknown geometry is created, the
             // zip file will be empty and the zip output stream will break
             boolean shapefileCreated = false;
             for (SimpleFeatureCollection collection : collections) {
                 shapefileCreated |= dumper.dump(collection);
+                // send out the shapefiles of this collection while the next ones are dumped
+                zipShapefiles(tempDir, zipOut, zippedNames);
             }
 
             // take care of the case the output is completely empty
             if (!shapefileCreated) {
-                createEmptyZipWarning(tempDir);
+                createEmptyZipWarning(zipOut);
             }
 
             // dump the request
-            createRequestDump(tempDir, request, collections.get(0));
-
-            // zip all the files produced
-            final FilenameFilter filter =
-                    new FilenameFilter() {
-
-                        public boolean accept(File dir, String name) {
-                            name = name.toLowerCase();
-                            return name.endsWith(".shp")
-                                    || name.endsWith(".shx")
-                                    || name.endsWith(".dbf")
-                                    || name.endsWith(".prj")
-                                    || name.endsWith(".cst")
-                                    || name.endsWith(".txt");
-                        }
-                    };
-            ZipOutputStream zipOut = new ZipOutputStream(output);
-            IOUtils.zipDirectory(tempDir, zipOut, filter);
+            createRequestDump(zipOut, request, collections.get(0));
+
             zipOut.finish();
 
             // This is an error, because this closes the output stream too... it's
@@ -259,9 +264,45 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat
         }
     }
 
+    /**
+     * Moves the shapefiles dumped so far from the temp directory to the zip file, so that they are
+     * sent out while the next ones are being dumped, and the disk holds only one set of shapefiles
+     * at a time. Shapefiles with the same name as one already zipped, e.g., from another query
+     * against the same feature type, get a numeric suffix.
+     */
+    private void zipShapefiles(File tempDir, ZipOutputStream zipOut, Set<String> zippedNames)
+            throws IOException {
+        File[] files = tempDir.listFiles(SHAPEFILE_FILTER);
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        Map<String, String> names = new HashMap<>();
+        for (File file : files) {
+            String fileName = file.getName();
+            int idx = fileName.lastIndexOf('.');
+            String name =
+                    names.computeIfAbsent(
+                            fileName.substring(0, idx), n -> getUniqueName(n, zippedNames));
+            zipOut.putNextEntry(new ZipEntry(name + fileName.substring(idx)));
+            Files.copy(file.toPath(), zipOut);
+            zipOut.closeEntry();
+            Files.delete(file.toPath());
+        }
+        zipOut.flush();
+    }
+
+    private String getUniqueName(String name, Set<String> zippedNames) {
+        String result = name;
+        for (int i = 1; !zippedNames.add(result); i++) {
+            result = name + "_" + i;
+        }
+        return result;
+    }
+
     /** Dumps the request */
     private void createRequestDump(
-            File tempDir, GetFeatureRequest gft, SimpleFeatureCollection fc) {
+            ZipOutputStream zipOut, GetFeatureRequest gft, SimpleFeatureCollection fc) {
         final Request request = Dispatcher.REQUEST.get();
         if (request == null || gft == null) {
             // we're probably running in a unit test
@@ -271,9 +312,9 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat
         // build the target file
         FeatureTypeInfo ftInfo = getFeatureTypeInfo(fc.getSchema());
         String fileName = new FileNameSource(getClass()).getRequestDumpName(ftInfo) + ".txt";
-        File target = new File(tempDir, fileName);
 
         try {
+            zipOut.putNextEntry(new ZipEntry(fileName));
             if (request.isGet()) {
                 final HttpServletRequest httpRequest = request.getHttpRequest();
                 String baseUrl = ResponseUtils.baseURL(httpRequest);
@@ -283,7 +324,7 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat
                 StringBuilder url = new StringBuilder();
                 String parameters = httpRequest.getQueryString();
                 url.append(mangledUrl).append("?").append(parameters);
-                FileUtils.writeStringToFile(target, url.toString(), "UTF-8");
+                zipOut.write(url.toString().getBytes(StandardCharsets.UTF_8));
             } else {
                 org.geotools.xsd.Configuration cfg = null;
                 QName elementName = null;
@@ -294,32 +335,25 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat
                     cfg = new WFSConfiguration_1_0();
                     elementName = org.geotools.wfs.v1_0.WFS.GetFeature;
                 }
-                FileOutputStream fos = null;
-                try {
-                    fos = new FileOutputStream(target);
-                    Encoder encoder = new Encoder(cfg);
-                    encoder.setIndenting(true);
-                    encoder.setIndentSize(2);
-                    encoder.encode(gft, elementName, fos);
-                } finally {
-                    if (fos != null) fos.close();
-                }
+                Encoder encoder = new Encoder(cfg);
+                encoder.setIndenting(true);
+                encoder.setIndentSize(2);
+                // the zip stream must stay open for the next entries
+                encoder.encode(gft, elementName, new CloseShieldOutputStream(zipOut));
             }
+            zipOut.closeEntry();
         } catch (IOException e) {
             throw new WFSException(gft, "Failed to dump the WFS request");
         }
     }
 
-    private void createEmptyZipWarning(File tempDir) throws IOException {
-        PrintWriter pw = null;
-        try {
-            pw = new PrintWriter(new File(tempDir, "README.TXT"));
-            pw.print(
-                    "The query result is empty, and the geometric type of the features is unknwon:"
-                            + "an empty point shapefile has been created to fill the zip file");
-        } finally {
-            if (pw != null) pw.close();
-        }
+    private void createEmptyZipWarning(ZipOutputStream zipOut) throws IOException {
+        zipOut.putNextEntry(new ZipEntry("README.TXT"));
+        zipOut.write(
+                ("The query result is empty, and the geometric type of the features is unknwon:"
+                                + "an empty point shapefile has been created to fill the zip file")
+                        .getBytes(StandardCharsets.UTF_8));
+        zipOut.closeEntry();
     }
 
     /**
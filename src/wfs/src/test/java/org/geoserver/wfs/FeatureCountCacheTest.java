@@ -0,0 +1,107 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import javax.xml.namespace.QName;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.Query;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.NameImpl;
+import org.geotools.filter.text.ecql.ECQL;
+import org.junit.Test;
+
+public class FeatureCountCacheTest {
+
+    static final String NS = "http://www.opengis.net/cite";
+
+    private FeatureSource source(int count, int times) {
+        FeatureCollection fc = createNiceMock(FeatureCollection.class);
+        expect(fc.size()).andReturn(count).anyTimes();
+        replay(fc);
+        FeatureSource source = createMock(FeatureSource.class);
+        expect(source.getName()).andReturn(new NameImpl(NS, "Buildings")).anyTimes();
+        expect(source.getFeatures(anyObject(Query.class))).andReturn(fc).times(times);
+        replay(source);
+        return source;
+    }
+
+    private Query query(String cql) throws Exception {
+        return new Query("Buildings", ECQL.toFilter(cql));
+    }
+
+    @Test
+    public void testCached() throws Exception {
+        FeatureCountCache cache = new FeatureCountCache(100, 300, false);
+        FeatureSource source = source(10, 1);
+
+        assertEquals(10, cache.getCount(source, query("ADDRESS = 'Main Street'")));
+        assertEquals(10, cache.getCount(source, query("ADDRESS = 'Main Street'")));
+        // equivalent filter, normalized to the same key
+        assertEquals(10, cache.getCount(source, query("ADDRESS = 'Main Street' AND INCLUDE")));
+        verify(source);
+        assertEquals(2, cache.getStatistics().hitCount());
+    }
+
+    @Test
+    public void testDifferentFilters() throws Exception {
+        FeatureCountCache cache = new FeatureCountCache(100, 300, false);
+        FeatureSource source = source(10, 2);
+
+        cache.getCount(source, query("ADDRESS = 'Main Street'"));
+        cache.getCount(source, query("ADDRESS = 'Second Street'"));
+        verify(source);
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        FeatureCountCache cache = new FeatureCountCache(0, 300, false);
+        assertFalse(cache.isEnabled());
+        FeatureSource source = source(10, 2);
+
+        cache.getCount(source, query("ADDRESS = 'Main Street'"));
+        cache.getCount(source, query("ADDRESS = 'Main Street'"));
+        verify(source);
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        FeatureCountCache cache = new FeatureCountCache(100, 300, false);
+        FeatureSource source = source(10, 3);
+
+        cache.getCount(source, query("ADDRESS = 'Main Street'"));
+        // another type, nothing happens
+        cache.invalidate(new QName(NS, "Bridges"));
+        cache.getCount(source, query("ADDRESS = 'Main Street'"));
+        cache.invalidate(new QName(NS, "Buildings"));
+        cache.getCount(source, query("ADDRESS = 'Main Street'"));
+        // transaction requests may lack the namespace
+        cache.invalidate(new QName("Buildings"));
+        cache.getCount(source, query("ADDRESS = 'Main Street'"));
+        verify(source);
+    }
+
+    @Test
+    public void testEstimated() throws Exception {
+        FeatureCountCache cache = new FeatureCountCache(100, 300, true);
+        FeatureSource source = createMock(FeatureSource.class);
+        expect(source.getName()).andReturn(new NameImpl(NS, "Buildings")).anyTimes();
+        expect(source.getCount(anyObject(Query.class))).andReturn(-1).times(2);
+        replay(source);
+
+        // the store cannot count in an optimized way, unknown counts are not cached
+        assertEquals(-1, cache.getCount(source, query("ADDRESS = 'Main Street'")));
+        assertEquals(-1, cache.getCount(source, query("ADDRESS = 'Main Street'")));
+        verify(source);
+    }
+}
@@ -0,0 +1,130 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.concurrent.ExecutorService;
+import org.custommonkey.xmlunit.XMLAssert;
+import org.custommonkey.xmlunit.XMLUnit;
+import org.custommonkey.xmlunit.XpathEngine;
+import org.geoserver.wfs.v2_0.WFS20TestSupport;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Checks multi query GetFeature requests return the same features and counts when the query sizes
+ * and counts are computed in parallel, with {@value GetFeature#QUERY_POOL_SIZE_KEY} set
+ */
+public class GetFeatureParallelTest extends WFS20TestSupport {
+
+    static final String MULTI_QUERY =
+            "wfs?request=GetFeature&typenames=cdf:Fifteen,cdf:Seven&version=2.0.0&service=wfs";
+
+    @BeforeClass
+    public static void enableQueryPool() {
+        System.setProperty(GetFeature.QUERY_POOL_SIZE_KEY, "4");
+        resetQueryPool();
+    }
+
+    @AfterClass
+    public static void disableQueryPool() {
+        System.clearProperty(GetFeature.QUERY_POOL_SIZE_KEY);
+        resetQueryPool();
+    }
+
+    private static void resetQueryPool() {
+        synchronized (GetFeature.class) {
+            if (GetFeature.QUERY_POOL != null) {
+                GetFeature.QUERY_POOL.shutdownNow();
+                GetFeature.QUERY_POOL = null;
+            }
+            GetFeature.QUERY_POOL_INITIALIZED = false;
+        }
+    }
+
+    @Test
+    public void testPoolEnabled() {
+        assertNotNull(GetFeature.getQueryPool());
+    }
+
+    @Test
+    public void testAllFeatures() throws Exception {
+        Document dom = getAsDOM(MULTI_QUERY);
+        assertEquals("22", dom.getDocumentElement().getAttribute("numberMatched"));
+        assertEquals("22", dom.getDocumentElement().getAttribute("numberReturned"));
+        XMLAssert.assertXpathEvaluatesTo("15", "count(//cdf:Fifteen)", dom);
+        XMLAssert.assertXpathEvaluatesTo("7", "count(//cdf:Seven)", dom);
+        assertSameAsSerial(MULTI_QUERY);
+    }
+
+    @Test
+    public void testMaxFeaturesCarriedOver() throws Exception {
+        // the first query uses 15 of the 20 features, the second one is cut down to 5
+        Document dom = getAsDOM(MULTI_QUERY + "&count=20");
+        assertEquals("22", dom.getDocumentElement().getAttribute("numberMatched"));
+        assertEquals("20", dom.getDocumentElement().getAttribute("numberReturned"));
+        XMLAssert.assertXpathEvaluatesTo("15", "count(//cdf:Fifteen)", dom);
+        XMLAssert.assertXpathEvaluatesTo("5", "count(//cdf:Seven)", dom);
+        assertSameAsSerial(MULTI_QUERY + "&count=20");
+    }
+
+    @Test
+    public void testMaxFeaturesReachedByFirstQuery() throws Exception {
+        Document dom = getAsDOM(MULTI_QUERY + "&count=10");
+        assertEquals("10", dom.getDocumentElement().getAttribute("numberReturned"));
+        XMLAssert.assertXpathEvaluatesTo("10", "count(//cdf:Fifteen)", dom);
+        XMLAssert.assertXpathEvaluatesTo("0", "count(//cdf:Seven)", dom);
+        assertSameAsSerial(MULTI_QUERY + "&count=10");
+    }
+
+    @Test
+    public void testMaxFeaturesExactlyFirstQuery() throws Exception {
+        Document dom = getAsDOM(MULTI_QUERY + "&count=15");
+        assertEquals("15", dom.getDocumentElement().getAttribute("numberReturned"));
+        XMLAssert.assertXpathEvaluatesTo("15", "count(//cdf:Fifteen)", dom);
+        XMLAssert.assertXpathEvaluatesTo("0", "count(//cdf:Seven)", dom);
+        assertSameAsSerial(MULTI_QUERY + "&count=15");
+    }
+
+    @Test
+    public void testHits() throws Exception {
+        Document dom = getAsDOM(MULTI_QUERY + "&resultType=hits");
+        assertEquals("22", dom.getDocumentElement().getAttribute("numberMatched"));
+        assertEquals("0", dom.getDocumentElement().getAttribute("numberReturned"));
+        assertSameAsSerial(MULTI_QUERY + "&resultType=hits");
+    }
+
+    /** Runs the request again on the serial path, checking the counts match */
+    private void assertSameAsSerial(String request) throws Exception {
+        Document parallel = getAsDOM(request);
+        Document serial;
+        ExecutorService pool = GetFeature.getQueryPool();
+        synchronized (GetFeature.class) {
+            GetFeature.QUERY_POOL = null;
+        }
+        try {
+            serial = getAsDOM(request);
+        } finally {
+            synchronized (GetFeature.class) {
+                GetFeature.QUERY_POOL = pool;
+            }
+        }
+        for (String attribute : new String[] {"numberMatched", "numberReturned"}) {
+            assertEquals(
+                    attribute,
+                    serial.getDocumentElement().getAttribute(attribute),
+                    parallel.getDocumentElement().getAttribute(attribute));
+        }
+        XpathEngine xpath = XMLUnit.newXpathEngine();
+        for (String type : new String[] {"cdf:Fifteen", "cdf:Seven"}) {
+            String count = "count(//" + type + ")";
+            assertEquals(type, xpath.evaluate(count, serial), xpath.evaluate(count, parallel));
+        }
+    }
+}
@@ -198,6 +198,138 @@ public class TransactionTest extends WFSTestSupport {
         assertEquals(2, dom.getElementsByTagName("gml:featureMember").getLength());
     }
 
+    @Test
+    public void testBatchedInsertsAndUpdates() throws Exception {
+        WFSInfo wfs = getGeoServer().getService(WFSInfo.class);
+        wfs.setTransactionBatchSize(10);
+        getGeoServer().save(wfs);
+        try {
+            // two inserts executed in a batch, and two updates setting the same value, executed
+            // one at a time as their filters do not select features by id
+            String transaction =
+                    "<wfs:Transaction service=\"WFS\" version=\"1.0.0\" "
+                            + "xmlns:cgf=\"http://www.opengis.net/cite/geometry\" "
+                            + "xmlns:ogc=\"http://www.opengis.net/ogc\" "
+                            + "xmlns:wfs=\"http://www.opengis.net/wfs\" "
+                            + "xmlns:gml=\"http://www.opengis.net/gml\"> "
+                            + "<wfs:Insert handle=\"first\"> "
+                            + "<cgf:Lines>"
+                            + "<cgf:lineStringProperty>"
+                            + "<gml:LineString>"
+                            + "<gml:coordinates decimal=\".\" cs=\",\" ts=\" \">"
+                            + "494475.71056415,5433016.8189323 494982.70115662,5435041.95096618"
+                            + "</gml:coordinates>"
+                            + "</gml:LineString>"
+                            + "</cgf:lineStringProperty>"
+                            + "<cgf:id>t0003</cgf:id>"
+                            + "</cgf:Lines>"
+                            + "</wfs:Insert>"
+                            + "<wfs:Insert handle=\"second\"> "
+                            + "<cgf:Lines>"
+                            + "<cgf:lineStringProperty>"
+                            + "<gml:LineString>"
+                            + "<gml:coordinates decimal=\".\" cs=\",\" ts=\" \">"
+                            + "494475.71056415,5433016.8189323 494982.70115662,5435041.95096618"
+                            + "</gml:coordinates>"
+                            + "</gml:LineString>"
+                            + "</cgf:lineStringProperty>"
+                            + "<cgf:id>t0004</cgf:id>"
+                            + "</cgf:Lines>"
+                            + "</wfs:Insert>"
+                            + "<wfs:Update typeName=\"cgf:Lines\"> "
+                            + "<wfs:Property>"
+                            + "<wfs:Name>id</wfs:Name>"
+                            + "<wfs:Value>t0005</wfs:Value>"
+                            + "</wfs:Property>"
+                            + "<ogc:Filter>"
+                            + "<ogc:PropertyIsEqualTo>"
+                            + "<ogc:PropertyName>id</ogc:PropertyName>"
+                            + "<ogc:Literal>t0001</ogc:Literal>"
+                            + "</ogc:PropertyIsEqualTo>"
+                            + "</ogc:Filter>"
+                            + "</wfs:Update>"
+                            + "<wfs:Update typeName=\"cgf:Lines\"> "
+                            + "<wfs:Property>"
+                            + "<wfs:Name>id</wfs:Name>"
+                            + "<wfs:Value>t0005</wfs:Value>"
+                            + "</wfs:Property>"
+                            + "<ogc:Filter>"
+                            + "<ogc:PropertyIsEqualTo>"
+                            + "<ogc:PropertyName>id</ogc:PropertyName>"
+                            + "<ogc:Literal>t0003</ogc:Literal>"
+                            + "</ogc:PropertyIsEqualTo>"
+                            + "</ogc:Filter>"
+                            + "</wfs:Update>"
+                            + "</wfs:Transaction>";
+
+            Document dom = postAsDOM("wfs", transaction);
+            assertTrue(dom.getElementsByTagName("wfs:SUCCESS").getLength() != 0);
+            // a fid for each inserted feature
+            assertEquals(2, dom.getElementsByTagName("ogc:FeatureId").getLength());
+
+            dom =
+                    getAsDOM(
+                            "wfs?service=WFS&version=1.0.0&request=GetFeature&typeName=cgf:Lines"
+                                    + "&CQL_FILTER=id='t0005'");
+            assertEquals(2, dom.getElementsByTagName("gml:featureMember").getLength());
+            dom =
+                    getAsDOM(
+                            "wfs?service=WFS&version=1.0.0&request=GetFeature&typeName=cgf:Lines"
+                                    + "&CQL_FILTER=id='t0004'");
+            assertEquals(1, dom.getElementsByTagName("gml:featureMember").getLength());
+        } finally {
+            wfs.setTransactionBatchSize(null);
+            getGeoServer().save(wfs);
+        }
+    }
+
+    @Test
+    public void testBatchedUpdatesOverlappingIds() throws Exception {
+        WFSInfo wfs = getGeoServer().getService(WFSInfo.class);
+        wfs.setTransactionBatchSize(10);
+        getGeoServer().save(wfs);
+        try {
+            // the first two updates are batched, the third one selects a feature of the batch,
+            // and is executed on its own, so that the total still counts it
+            String transaction =
+                    "<wfs:Transaction service=\"WFS\" version=\"1.1.0\" "
+                            + "xmlns:cite=\"http://www.opengis.net/cite\" "
+                            + "xmlns:ogc=\"http://www.opengis.net/ogc\" "
+                            + "xmlns:wfs=\"http://www.opengis.net/wfs\"> "
+                            + buildingUpdate("Buildings.1107531701010")
+                            + buildingUpdate("Buildings.1107531701011")
+                            + buildingUpdate("Buildings.1107531701010")
+                            + "</wfs:Transaction>";
+
+            Document dom = postAsDOM("wfs", transaction);
+            assertEquals(
+                    "3", dom.getElementsByTagName("wfs:totalUpdated").item(0).getTextContent());
+
+            dom =
+                    getAsDOM(
+                            "wfs?service=WFS&version=1.0.0&request=GetFeature&typeName=cite:Buildings"
+                                    + "&CQL_FILTER=ADDRESS='Batched'");
+            assertEquals(2, dom.getElementsByTagName("gml:featureMember").getLength());
+        } finally {
+            wfs.setTransactionBatchSize(null);
+            getGeoServer().save(wfs);
+        }
+    }
+
+    private String buildingUpdate(String fid) {
+        return "<wfs:Update typeName=\"cite:Buildings\"> "
+                + "<wfs:Property>"
+                + "<wfs:Name>ADDRESS</wfs:Name>"
+                + "<wfs:Value>Batched</wfs:Value>"
+                + "</wfs:Property>"
+                + "<ogc:Filter>"
+                + "<ogc:FeatureId fid=\""
+                + fid
+                + "\"/>"
+                + "</ogc:Filter>"
+                + "</wfs:Update>";
+    }
+
     @Test
     public void testInsertWithGetFeatureInThePath() throws Exception {
         // perform an insert
@@ -11,6 +11,8 @@ import java.io.StringWriter;
 import java.util.*;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
+import net.sf.json.util.JSONUtils;
+import org.geotools.referencing.CRS;
 import org.junit.Before;
 import org.junit.Test;
 import org.locationtech.jts.geom.Coordinate;
@@ -489,6 +491,51 @@ public class GeoJSONBuilderTest {
     }
 
     /** Checks max json nested level should allow up to 100 by default. */
+    @Test
+    public void testFormatRoundedMatchesJSONUtils() throws Exception {
+        char[] buffer = new char[32];
+        Random random = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            int numDecimals = random.nextInt(9);
+            double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12) - 4);
+            double rounded = RoundingUtil.round(value, numDecimals);
+            int length = GeoJSONBuilder.formatRounded(rounded, numDecimals, buffer);
+            if (length >= 0) {
+                assertEquals(JSONUtils.numberToString(rounded), new String(buffer, 0, length));
+            }
+        }
+    }
+
+    @Test
+    public void testWriteRoundedCoordinates() throws Exception {
+        builder.setNumberOfDecimals(3);
+        Geometry g =
+                new WKTReader()
+                        .read(
+                                "POLYGON((0.00012 -0.0004, 12345678.123456 1.9999, 1 0.000001, "
+                                        + "0.00012 -0.0004),"
+                                        + "(0.5 0.5, 0.6 0.5, 0.6 0.6, 0.5 0.5))");
+        builder.writeGeom(g);
+        assertEquals(
+                "{\"type\":\"Polygon\",\"coordinates\":[[[0,0],[1.2345678123E7,2],[1,0],[0,0]],"
+                        + "[[0.5,0.5],[0.6,0.5],[0.6,0.6],[0.5,0.5]]]}",
+                writer.toString());
+    }
+
+    @Test
+    public void testWriteGeometriesInArray() throws Exception {
+        builder.setAxisOrder(CRS.AxisOrder.NORTH_EAST);
+        builder.array();
+        builder.value(new WKTReader().read("POINT(1 2)"));
+        builder.value(new WKTReader().read("MULTIPOINT((1 2), (3 4))"));
+        builder.value(null);
+        builder.endArray();
+        assertEquals(
+                "[{\"type\":\"Point\",\"coordinates\":[2,1]},"
+                        + "{\"type\":\"MultiPoint\",\"coordinates\":[[2,1],[4,3]]},null]",
+                writer.toString());
+    }
+
     @Test
     public void testMaxNestedLevel() {
         builder.object();
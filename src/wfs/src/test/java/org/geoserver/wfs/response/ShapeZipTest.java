@@ -210,6 +210,26 @@ public class ShapeZipTest extends WFSTestSupport {
         checkFieldsAreNotEmpty(new ByteArrayInputStream(zip));
     }
 
+    @Test
+    public void testSameTypeTwice() throws Exception {
+        ShapeZipOutputFormat zip =
+                new ShapeZipOutputFormat(
+                        GeoServerExtensions.bean(GeoServer.class),
+                        (Catalog) GeoServerExtensions.bean("catalog"),
+                        (GeoServerResourceLoader) GeoServerExtensions.bean("resourceLoader"));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        FeatureCollectionResponse fct =
+                FeatureCollectionResponse.adapt(WfsFactory.eINSTANCE.createFeatureCollectionType());
+        fct.getFeature().add(getFeatureSource(SystemTestData.BASIC_POLYGONS).getFeatures());
+        fct.getFeature().add(getFeatureSource(SystemTestData.BASIC_POLYGONS).getFeatures());
+        zip.write(fct, bos, op);
+
+        // the second shapefile does not overwrite the first one
+        String shapefileName = SystemTestData.BASIC_POLYGONS.getLocalPart();
+        final String[] expectedTypes = new String[] {shapefileName, shapefileName + "_1"};
+        checkShapefileIntegrity(expectedTypes, new ByteArrayInputStream(bos.toByteArray()));
+    }
+
     @Test
     public void testSplitSize() throws Exception {
         ShapeZipOutputFormat of =
@@ -337,12 +337,31 @@ public class DefaultWebMapService
         new GetMapDefaults().autoSetBoundsAndSize(getMap);
     }
 
-    /** Returns a app wide cached rendering pool that can be used for parallelized rendering */
+    /**
+     * Returns a app wide rendering pool that can be used for parallelized rendering. The pool is a
+     * {@link RenderingExecutor} whose size can be controlled with the RENDERING_POOL_SIZE variable
+     * (defaults to twice the number of available processors), and the number of threads a single
+     * request can use with the RENDERING_POOL_MAX_REQUEST_PARALLELISM one (defaults to the number
+     * of available processors). Tile cache requests yield to the interactive ones for at most
+     * RENDERING_POOL_BATCH_MAX_DELAY milliseconds (defaults to 5000)
+     */
     public static ExecutorService getRenderingPool() {
         if (USE_GLOBAL_RENDERING_POOL && RENDERING_POOL == null) {
             synchronized (DefaultWebMapService.class) {
                 if (RENDERING_POOL == null) {
-                    RENDERING_POOL = new ThreadLocalTransferExecutor();
+                    int processors = Runtime.getRuntime().availableProcessors();
+                    int poolSize =
+                            GeoServerExtensions.getIntProperty(
+                                    "RENDERING_POOL_SIZE", processors * 2);
+                    int maxRequestParallelism =
+                            GeoServerExtensions.getIntProperty(
+                                    "RENDERING_POOL_MAX_REQUEST_PARALLELISM", processors);
+                    long batchMaxDelay =
+                            GeoServerExtensions.getLongProperty(
+                                    "RENDERING_POOL_BATCH_MAX_DELAY",
+                                    RenderingExecutor.DEFAULT_BATCH_MAX_DELAY);
+                    RENDERING_POOL =
+                            new RenderingExecutor(poolSize, maxRequestParallelism, batchMaxDelay);
                 }
             }
         }
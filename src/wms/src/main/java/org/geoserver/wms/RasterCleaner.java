@@ -13,6 +13,8 @@ import javax.media.jai.PlanarImage;
 import javax.media.jai.RenderedImageList;
 import org.geoserver.ows.AbstractDispatcherCallback;
 import org.geoserver.ows.Request;
+import org.geoserver.wms.animate.FrameCatalogVisitor.FrameImageList;
+import org.geoserver.wms.map.CanvasBufferPool;
 import org.geoserver.wms.map.RenderedImageTimeDecorator;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.image.util.ImageUtilities;
@@ -23,6 +25,19 @@ public class RasterCleaner extends AbstractDispatcherCallback {
     static final ThreadLocal<List<GridCoverage2D>> coverages =
             new ThreadLocal<List<GridCoverage2D>>();
 
+    /** Marks the threads running a dispatched request, whose images are disposed at its end */
+    static final ThreadLocal<Boolean> requestThread = new ThreadLocal<Boolean>();
+
+    /**
+     * Returns true if the current thread is running a request dispatched by the {@link
+     * org.geoserver.ows.Dispatcher}, so that the images scheduled for cleanup will be disposed when
+     * it finishes. Images scheduled from other threads, e.g., the ones rendering animation frames,
+     * are never disposed.
+     */
+    public static boolean isRequestThread() {
+        return Boolean.TRUE.equals(requestThread.get());
+    }
+
     /** Schedules a RenderedImage for cleanup at the end of the request */
     public static void addImage(RenderedImage image) {
         if (image == null) {
@@ -51,8 +66,15 @@ public class RasterCleaner extends AbstractDispatcherCallback {
         list.add(coverage);
     }
 
+    @Override
+    public Request init(Request request) {
+        requestThread.set(Boolean.TRUE);
+        return request;
+    }
+
     @Override
     public void finished(Request request) {
+        requestThread.remove();
         disposeCoverages();
         disposeImages();
     }
@@ -65,6 +87,10 @@ public class RasterCleaner extends AbstractDispatcherCallback {
                 if (image instanceof RenderedImageTimeDecorator)
                     image = ((RenderedImageTimeDecorator) image).getDelegate();
 
+                if (image instanceof FrameImageList) {
+                    // the response is complete, don't render frames just to dispose them
+                    ((FrameImageList) image).cancel();
+                }
                 if (image instanceof RenderedImageList) {
                     RenderedImageList ril = (RenderedImageList) image;
                     for (int i = 0; i < ril.size(); i++) {
@@ -84,6 +110,7 @@ public class RasterCleaner extends AbstractDispatcherCallback {
         } else if (image instanceof BufferedImage) {
             BufferedImage bi = (BufferedImage) image;
             bi.flush();
+            CanvasBufferPool.get().release(bi);
         }
     }
 
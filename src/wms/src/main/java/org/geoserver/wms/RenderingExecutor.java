@@ -0,0 +1,283 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.geoserver.threadlocals.ThreadLocalsTransfer;
+
+/**
+ * Bounded thread pool used for parallel rendering, executing tasks by priority, and in submission
+ * order within the same priority, so that concurrent requests are served fairly. To avoid starving
+ * {@link Priority#BATCH} tasks under sustained interactive load, a batch task waiting longer than
+ * the batch maximum delay gets ahead of the interactive tasks submitted after that delay.
+ *
+ * <p>Thread locals registered via {@link org.geoserver.threadlocals.ThreadLocalTransfer} are
+ * transferred to the pool threads when running a task. Tasks submitted directly get the {@link
+ * Priority#INTERACTIVE} priority, use {@link #withPriority(Priority)} to get a view submitting
+ * tasks with a different one. {@link #submitAll(List, Priority)} allows a single request to run
+ * multiple tasks without using more than {@link #getMaxRequestParallelism()} threads at the same
+ * time.
+ */
+public class RenderingExecutor extends ThreadPoolExecutor {
+
+    /** Task priorities, in decreasing order of importance */
+    public enum Priority {
+        /** Requests from interactive clients */
+        INTERACTIVE,
+        /** Throughput oriented requests, such as tile caching and seeding */
+        BATCH
+    }
+
+    static final AtomicLong SEQUENCE = new AtomicLong();
+
+    /** Default maximum delay of batch tasks, in milliseconds */
+    static final long DEFAULT_BATCH_MAX_DELAY = 5000;
+
+    /**
+     * A task carrying its priority and submission order. Tasks are ordered by deadline, the
+     * submission time for interactive tasks, and the submission time plus the batch maximum delay
+     * for batch ones. The order does not change while the tasks are queued, yet batch tasks age,
+     * getting ahead of the interactive tasks submitted after their deadline.
+     */
+    static class PrioritizedTask<T> extends FutureTask<T>
+            implements Comparable<PrioritizedTask<?>> {
+        final Priority priority;
+        final long sequence;
+        final long submitted;
+        final long deadline;
+
+        PrioritizedTask(Runnable runnable, Priority priority, long batchMaxDelay) {
+            super(runnable, null);
+            this.priority = priority;
+            this.sequence = SEQUENCE.incrementAndGet();
+            this.submitted = System.nanoTime();
+            this.deadline = priority == Priority.BATCH ? submitted + batchMaxDelay : submitted;
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask<?> other) {
+            // difference based, as nano times can overflow
+            int result = Long.signum(deadline - other.deadline);
+            if (result == 0) {
+                result = priority.compareTo(other.priority);
+            }
+            if (result == 0) {
+                result = Long.compare(sequence, other.sequence);
+            }
+            return result;
+        }
+    }
+
+    int maxRequestParallelism;
+
+    long batchMaxDelay;
+
+    LongAdder executed = new LongAdder();
+
+    LongAdder waitTime = new LongAdder();
+
+    AtomicLong maxWaitTime = new AtomicLong();
+
+    /**
+     * Builds a new executor
+     *
+     * @param poolSize the maximum number of threads in the pool, threads are released when idle
+     * @param maxRequestParallelism the maximum number of threads a single request can use in {@link
+     *     #submitAll(List, Priority)}
+     */
+    public RenderingExecutor(int poolSize, int maxRequestParallelism) {
+        this(poolSize, maxRequestParallelism, DEFAULT_BATCH_MAX_DELAY);
+    }
+
+    /**
+     * Builds a new executor
+     *
+     * @param poolSize the maximum number of threads in the pool, threads are released when idle
+     * @param maxRequestParallelism the maximum number of threads a single request can use in {@link
+     *     #submitAll(List, Priority)}
+     * @param batchMaxDelay the time, in milliseconds, after which a queued batch task gets ahead of
+     *     the interactive tasks submitted later
+     */
+    public RenderingExecutor(int poolSize, int maxRequestParallelism, long batchMaxDelay) {
+        super(
+                poolSize,
+                poolSize,
+                60L,
+                TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("gs-rendering-%d")
+                        .setDaemon(true)
+                        .build());
+        allowCoreThreadTimeOut(true);
+        this.maxRequestParallelism = Math.max(1, maxRequestParallelism);
+        this.batchMaxDelay = TimeUnit.MILLISECONDS.toNanos(Math.max(0, batchMaxDelay));
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        execute(command, Priority.INTERACTIVE);
+    }
+
+    /** Executes the command with the given priority */
+    public void execute(Runnable command, Priority priority) {
+        ThreadLocalsTransfer threadLocalTransfer = new ThreadLocalsTransfer();
+        Runnable transferring =
+                () -> {
+                    threadLocalTransfer.apply();
+                    try {
+                        command.run();
+                    } finally {
+                        threadLocalTransfer.cleanup();
+                    }
+                };
+        super.execute(new PrioritizedTask<>(transferring, priority, batchMaxDelay));
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        if (r instanceof PrioritizedTask) {
+            long wait = System.nanoTime() - ((PrioritizedTask<?>) r).submitted;
+            waitTime.add(wait);
+            maxWaitTime.accumulateAndGet(wait, Math::max);
+        }
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        executed.increment();
+    }
+
+    /**
+     * Submits all the tasks with the given priority, keeping at most {@link
+     * #getMaxRequestParallelism()} of them in the pool at any given time. The remaining ones are
+     * submitted as the running ones complete.
+     *
+     * @return the futures of the tasks, in the same order as the tasks
+     */
+    public <T> List<Future<T>> submitAll(List<? extends Callable<T>> tasks, Priority priority) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(tasks.size());
+        Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+        for (Callable<T> task : tasks) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            futures.add(future);
+            pending.add(
+                    () -> {
+                        try {
+                            if (!future.isDone()) {
+                                future.complete(task.call());
+                            }
+                        } catch (Throwable t) {
+                            future.completeExceptionally(t);
+                        } finally {
+                            // hand the thread over to the next task of the same request
+                            submitNext(pending, priority);
+                        }
+                    });
+        }
+        int initial = Math.min(maxRequestParallelism, tasks.size());
+        for (int i = 0; i < initial; i++) {
+            submitNext(pending, priority);
+        }
+        return new ArrayList<>(futures);
+    }
+
+    private void submitNext(Queue<Runnable> pending, Priority priority) {
+        Runnable next = pending.poll();
+        if (next != null) {
+            execute(next, priority);
+        }
+    }
+
+    /**
+     * Returns a view of this executor submitting all tasks with the given priority. The view does
+     * not own the pool, shutting it down has no effect.
+     */
+    public AbstractExecutorService withPriority(Priority priority) {
+        return new AbstractExecutorService() {
+
+            @Override
+            public void execute(Runnable command) {
+                RenderingExecutor.this.execute(command, priority);
+            }
+
+            @Override
+            public void shutdown() {
+                // the pool is shared, its lifecycle is managed by the owner
+            }
+
+            @Override
+            public List<Runnable> shutdownNow() {
+                // the pool is shared, its lifecycle is managed by the owner
+                return Collections.emptyList();
+            }
+
+            @Override
+            public boolean isShutdown() {
+                return RenderingExecutor.this.isShutdown();
+            }
+
+            @Override
+            public boolean isTerminated() {
+                return RenderingExecutor.this.isTerminated();
+            }
+
+            @Override
+            public boolean awaitTermination(long timeout, TimeUnit unit)
+                    throws InterruptedException {
+                return RenderingExecutor.this.awaitTermination(timeout, unit);
+            }
+        };
+    }
+
+    /**
+     * The time, in the given unit, after which a queued batch task gets ahead of interactive ones
+     */
+    public long getBatchMaxDelay(TimeUnit unit) {
+        return unit.convert(batchMaxDelay, TimeUnit.NANOSECONDS);
+    }
+
+    /** The maximum number of threads a single request can use in {@link #submitAll} */
+    public int getMaxRequestParallelism() {
+        return maxRequestParallelism;
+    }
+
+    /** The number of tasks waiting for a thread */
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    /** The number of tasks executed so far */
+    public long getExecutedCount() {
+        return executed.sum();
+    }
+
+    /** The total time tasks spent waiting for a thread, in the given unit */
+    public long getTotalWaitTime(TimeUnit unit) {
+        return unit.convert(waitTime.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    /** The longest time a task waited for a thread, in the given unit */
+    public long getMaxWaitTime(TimeUnit unit) {
+        return unit.convert(maxWaitTime.get(), TimeUnit.NANOSECONDS);
+    }
+}
@@ -682,6 +682,14 @@ public class WMS implements ApplicationContextAware {
         return getServiceInfo().getMaxRequestedDimensionValues();
     }
 
+    /**
+     * Returns the image size, in pixels, above which a GetMap is rendered in parallel tiles, or a
+     * non positive value if tiled rendering is disabled
+     */
+    public int getTiledRenderingThreshold() {
+        return getServiceInfo().getTiledRenderingThreshold();
+    }
+
     public String getKmlReflectorMode() {
         String value = (String) getServiceInfo().getMetadata().get(KML_REFLECTOR_MODE);
         return value != null ? value : KML_REFLECTOR_MODE_DEFAULT;
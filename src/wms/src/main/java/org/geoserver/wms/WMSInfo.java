@@ -183,6 +183,25 @@ public interface WMSInfo extends ServiceInfo {
         // if not implemented nothing is done
     }
 
+    /**
+     * Returns the image size, in pixels, above which a GetMap is split in tiles rendered in
+     * parallel, each painting directly into its own clipped region of the output image. Zero or
+     * negative (the default) disables tiled rendering.
+     */
+    default int getTiledRenderingThreshold() {
+        return 0;
+    }
+
+    /**
+     * Sets the image size, in pixels, above which a GetMap is split in tiles rendered in parallel.
+     * Zero or negative will disable tiled rendering.
+     *
+     * @param tiledRenderingThreshold Any integer number
+     */
+    default void setTiledRenderingThreshold(int tiledRenderingThreshold) {
+        // if not implemented nothing is done
+    }
+
     /** Returns WMS cache configuration for remote resources. */
     CacheConfiguration getCacheConfiguration();
 
@@ -65,6 +65,8 @@ public class WMSInfoImpl extends ServiceInfoImpl implements WMSInfo {
 
     private Integer maxRequestedDimensionValues;
 
+    private Integer tiledRenderingThreshold;
+
     private CacheConfiguration cacheConfiguration = new CacheConfiguration();
 
     public WMSInfoImpl() {
@@ -241,6 +243,16 @@ public class WMSInfoImpl extends ServiceInfoImpl implements WMSInfo {
         this.maxRequestedDimensionValues = maxRequestedDimensionValues;
     }
 
+    @Override
+    public int getTiledRenderingThreshold() {
+        return tiledRenderingThreshold == null ? 0 : tiledRenderingThreshold;
+    }
+
+    @Override
+    public void setTiledRenderingThreshold(int tiledRenderingThreshold) {
+        this.tiledRenderingThreshold = tiledRenderingThreshold;
+    }
+
     @Override
     public CacheConfiguration getCacheConfiguration() {
         if (cacheConfiguration == null) {
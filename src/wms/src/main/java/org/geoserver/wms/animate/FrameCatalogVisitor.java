@@ -7,22 +7,30 @@ package org.geoserver.wms.animate;
 
 import java.awt.image.RenderedImage;
 import java.io.IOException;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
 import javax.media.jai.RenderedImageList;
 import org.apache.commons.beanutils.BeanUtils;
 import org.geoserver.ows.Dispatcher;
 import org.geoserver.ows.util.CaseInsensitiveMap;
 import org.geoserver.ows.util.KvpUtils;
+import org.geoserver.platform.ServiceException;
+import org.geoserver.threadlocals.ThreadLocalsTransfer;
 import org.geoserver.wms.DefaultWebMapService;
 import org.geoserver.wms.GetMapRequest;
 import org.geoserver.wms.MapProducerCapabilities;
@@ -34,8 +42,13 @@ import org.geoserver.wms.map.RenderedImageMapResponse;
 
 /**
  * The Frame Visitor contains the logic to produce frame images.<br>
- * The "visit" method initializes the runnables and the animatorExecutor service, while the
- * "produce" method runs the tasks and generated the frames images.
+ * The "visit" method collects the frames to be rendered, while the "produce" method starts
+ * rendering them and returns the list of frame images.
+ *
+ * <p>Frames are rendered in parallel in the animator executor service, but only a window of them is
+ * rendered ahead of the encoder consuming them in order, so that a single animation does not flood
+ * the pool, and the memory used is bounded by the window size rather than the number of frames. The
+ * encoder can start writing the first frames while the following ones are still being rendered.
  *
  * @author Alessio Fabiani, GeoSolutions S.A.S., alessio.fabiani@geo-solutions.it
  * @author Andrea Aime, GeoSolutions S.A.S., andrea.aime@geo-solutions.it
@@ -45,13 +58,10 @@ public class FrameCatalogVisitor {
     /** total number of available frames for this visitor */
     int framesNumber;
 
-    /** the list of runnables to be executed */
-    List<Future<RenderedImage>> tasks;
+    /** the frame loaders, in animation order */
+    List<FrameLoader> tasks;
 
-    /**
-     * Adds a new visitor to the runnables list and initializes the animatorExecutor service is not
-     * yet initialied.
-     */
+    /** Adds a new frame loader to the list of frames to be produced. */
     public void visit(
             final GetMapRequest request,
             WebMapService wms,
@@ -59,59 +69,59 @@ public class FrameCatalogVisitor {
             String aparam,
             String avalue) {
         if (this.tasks == null) {
-            this.tasks = new LinkedList<Future<RenderedImage>>();
+            this.tasks = new ArrayList<FrameLoader>();
         }
 
-        FrameLoader loader = new FrameLoader(request, wms, wmsConfiguration, aparam, avalue);
-
-        final FutureTask<RenderedImage> task = new FutureTask<RenderedImage>(loader);
-        this.tasks.add(task);
+        this.tasks.add(new FrameLoader(request, wms, wmsConfiguration, aparam, avalue));
         this.framesNumber++;
-
-        // run the loading in this thread
-        wmsConfiguration.getAnimatorExecutorService().execute(task);
     }
 
-    /** Invokes the Executor service and produces the frames images. */
+    /**
+     * Starts rendering the frames and returns the list of frame images. The first frame is rendered
+     * before returning, to check the size of the animation before the output is started, the others
+     * are rendered as the list is consumed.
+     */
     public RenderedImageList produce(WMS wmsConfiguration) throws IOException {
-        List<RenderedImage> images = new ArrayList<RenderedImage>();
-
-        long gifAnimatedSize = 0;
-
-        for (Future<RenderedImage> future : tasks) {
-            RenderedImage image = null;
-            try {
-                image = future.get();
-            } catch (InterruptedException e) {
-                dispose();
-                throw new IOException(e);
-            } catch (ExecutionException e) {
-                dispose();
-                throw new IOException(e);
-            }
-
-            if (image == null) {
-                continue;
-            }
-
-            // collect the images
-            gifAnimatedSize += getImageSizeInBytes(image);
-            if (wmsConfiguration.getMaxRenderingSize() != null
-                    && gifAnimatedSize >= wmsConfiguration.getMaxRenderingSize()) {
-                dispose();
-                throw new IOException("Max rendering size exceed!");
-            }
-
-            images.add(image);
+        if (tasks == null || tasks.isEmpty()) {
+            dispose();
+            throw new IOException("Empty list of frames.");
         }
 
-        if (images == null || images.size() == 0) {
+        ExecutorService executor = wmsConfiguration.getAnimatorExecutorService();
+        FrameList frames = new FrameList(tasks, executor, getMaxParallelFrames(executor));
+        RenderedImage first = null;
+        try {
+            first = frames.get(0);
+        } catch (ServiceException e) {
+            frames.cancel();
+            dispose();
+            throw new IOException(e.getCause());
+        }
+        if (first == null) {
+            frames.cancel();
             dispose();
             throw new IOException("Empty list of frames.");
         }
 
+        // all frames have the same size
+        long gifAnimatedSize = getImageSizeInBytes(first) * framesNumber;
+        if (wmsConfiguration.getMaxRenderingSize() != null
+                && gifAnimatedSize >= wmsConfiguration.getMaxRenderingSize()) {
+            frames.cancel();
+            dispose();
+            throw new IOException("Max rendering size exceed!");
+        }
+
         dispose();
-        return new RenderedImageList(images);
+        return new FrameImageList(frames);
+    }
+
+    /** The number of frames of an animation rendered at the same time */
+    static int getMaxParallelFrames(ExecutorService executor) {
+        if (executor instanceof ThreadPoolExecutor) {
+            return Math.max(1, ((ThreadPoolExecutor) executor).getCorePoolSize());
+        }
+        return Runtime.getRuntime().availableProcessors();
     }
 
     private long getImageSizeInBytes(RenderedImage image) {
@@ -123,7 +133,7 @@ public class FrameCatalogVisitor {
         return (long) Math.ceil(2 * tileWidth * tileLength * numBands * (sampleSize[0] / 8.0));
     }
 
-    /** Suddenly stops the Executor service and clear instantiated visitors. */
+    /** Clears the collected frames. */
     private void dispose() {
         this.framesNumber = 0;
 
@@ -131,6 +141,126 @@ public class FrameCatalogVisitor {
 
         this.tasks = null;
     }
+
+    /** A list of frame images, rendered as the list is consumed */
+    public static class FrameImageList extends RenderedImageList {
+        private static final long serialVersionUID = -3442446347466325432L;
+
+        FrameImageList(FrameList frames) {
+            super();
+            this.imageCollection = frames;
+        }
+
+        /**
+         * Stops rendering the frames not yet consumed. The frames not rendered successfully will be
+         * returned as null from then on.
+         */
+        public void cancel() {
+            ((FrameList) imageCollection).cancel();
+        }
+    }
+}
+
+/**
+ * The list of frames of an animation, rendered in parallel as the list is consumed. Getting a frame
+ * waits for it to be rendered and schedules the rendering of the following ones, keeping at most
+ * {@code window} frames ahead of the consumer. Thread locals registered via {@link
+ * org.geoserver.threadlocals.ThreadLocalTransfer} are transferred to the rendering threads.
+ */
+class FrameList extends AbstractList<RenderedImage> {
+
+    final List<FrameLoader> loaders;
+
+    final ExecutorService executor;
+
+    final int window;
+
+    final List<Future<RenderedImage>> futures;
+
+    final ThreadLocalsTransfer threadLocalsTransfer = new ThreadLocalsTransfer();
+
+    boolean cancelled;
+
+    FrameList(List<FrameLoader> loaders, ExecutorService executor, int window) {
+        this.loaders = new ArrayList<FrameLoader>(loaders);
+        this.executor = executor;
+        this.window = Math.max(1, window);
+        this.futures = new ArrayList<Future<RenderedImage>>(loaders.size());
+        schedule(this.window - 1);
+    }
+
+    /** Schedules the rendering of the frames up to the given index */
+    private synchronized void schedule(int index) {
+        int last = Math.min(index, loaders.size() - 1);
+        while (!cancelled && futures.size() <= last) {
+            FrameLoader loader = loaders.get(futures.size());
+            FutureTask<RenderedImage> task =
+                    new FutureTask<RenderedImage>(
+                            () -> {
+                                threadLocalsTransfer.apply();
+                                try {
+                                    return loader.call();
+                                } finally {
+                                    threadLocalsTransfer.cleanup();
+                                }
+                            });
+            futures.add(task);
+            executor.execute(task);
+        }
+    }
+
+    private synchronized Future<RenderedImage> getFuture(int index) {
+        return index < futures.size() ? futures.get(index) : null;
+    }
+
+    /**
+     * Returns the frame image, waiting for it to be rendered. Once the rendering is cancelled,
+     * returns null for the frames that were not successfully rendered.
+     */
+    @Override
+    public RenderedImage get(int index) {
+        if (index < 0 || index >= loaders.size()) {
+            throw new IndexOutOfBoundsException("Frame " + index + " out of " + loaders.size());
+        }
+        // the consumer got here, render the frames in the window after this one
+        schedule(index + window);
+        Future<RenderedImage> future = getFuture(index);
+        if (future == null) {
+            return null;
+        }
+        try {
+            return future.get();
+        } catch (CancellationException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+            throw new ServiceException("Interrupted while rendering the animation frames", e);
+        } catch (ExecutionException e) {
+            if (isCancelled()) {
+                return null;
+            }
+            cancel();
+            throw new ServiceException("Failed to render animation frame " + index, e.getCause());
+        }
+    }
+
+    @Override
+    public int size() {
+        return loaders.size();
+    }
+
+    /** Stops rendering the frames */
+    synchronized void cancel() {
+        cancelled = true;
+        for (Future<RenderedImage> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    synchronized boolean isCancelled() {
+        return cancelled;
+    }
 }
 
 /**
@@ -140,6 +270,10 @@ public class FrameCatalogVisitor {
  */
 class FrameLoader implements Callable<RenderedImage> {
 
+    /** Parameters that do not require resolving layers and styles again when changed */
+    static final Set<String> SHARED_SETUP_PARAMS =
+            new HashSet<String>(Arrays.asList("TIME", "ELEVATION", "ENV"));
+
     /** The default output format for each frame if not specified in the request */
     private static final String GIF_FORMAT = "image/gif";
 
@@ -248,12 +382,17 @@ class FrameLoader implements Callable<RenderedImage> {
         // setting up the right RAW-KVP map for the single frame request
         request.setRawKvp(rawKvp);
 
-        // building the request KVP map using the reflection
-        HashMap<String, String> kvp = new HashMap<String, String>(rawKvp);
-        KvpUtils.parse(kvp);
+        // parameters not affecting layers and styles can be set on a copy of the original
+        // request, without resolving layers and styles again for each frame
+        String key = param.contains(":") ? param.split(":")[0].toUpperCase() : param.toUpperCase();
+        if (!SHARED_SETUP_PARAMS.contains(key) || !setParsedParam(request, rawKvp, key)) {
+            // building the request KVP map using the reflection
+            HashMap<String, String> kvp = new HashMap<String, String>(rawKvp);
+            KvpUtils.parse(kvp);
 
-        // finally building the request
-        request = kvpRequestReader.read(new GetMapRequest(), kvp, rawKvp);
+            // finally building the request
+            request = kvpRequestReader.read(new GetMapRequest(), kvp, rawKvp);
+        }
 
         // add the param value for text decorations to use
         request.getEnv().put("avalue", value);
@@ -261,6 +400,42 @@ class FrameLoader implements Callable<RenderedImage> {
         return request;
     }
 
+    /**
+     * Parses the frame value of the parameter and sets it in the copy of the original request.
+     * Returns false if the value could not be parsed, leaving to the full request parsing the error
+     * reporting.
+     */
+    @SuppressWarnings("unchecked")
+    private static boolean setParsedParam(
+            GetMapRequest request, Map<String, String> rawKvp, String key) {
+        Map<String, Object> kvp = new HashMap<String, Object>();
+        for (String context : new String[] {"SERVICE", "VERSION", "REQUEST"}) {
+            if (rawKvp.get(context) != null) {
+                kvp.put(context, rawKvp.get(context));
+            }
+        }
+        kvp.put(key, rawKvp.get(key));
+        if (!KvpUtils.parse(kvp).isEmpty()) {
+            return false;
+        }
+        Object parsed = kvp.get(key);
+        // the copy is shallow, use new maps to avoid sharing them among frames
+        request.setFormatOptions(new CaseInsensitiveMap(new HashMap(request.getFormatOptions())));
+        if ("ENV".equals(key) && parsed instanceof Map) {
+            request.setEnv(new HashMap((Map) parsed));
+        } else {
+            request.setEnv(new HashMap(request.getEnv()));
+            if ("TIME".equals(key) && parsed instanceof List) {
+                request.setTime((List<Object>) parsed);
+            } else if ("ELEVATION".equals(key) && parsed instanceof List) {
+                request.setElevation((List<Object>) parsed);
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static String mergeParams(List<String> kvps) {
         StringBuilder sb = new StringBuilder();
 
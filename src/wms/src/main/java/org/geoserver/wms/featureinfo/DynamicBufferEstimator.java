@@ -5,7 +5,10 @@
  */
 package org.geoserver.wms.featureinfo;
 
+import java.net.MalformedURLException;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.*;
@@ -37,6 +40,12 @@ public class DynamicBufferEstimator extends AbstractStyleVisitor {
 
     double buffer;
 
+    /**
+     * The expressions embedded in the external graphic locations, parsed once instead of at every
+     * feature
+     */
+    Map<ExternalGraphic, Expression> locations = new IdentityHashMap<>();
+
     public void setFeature(Feature feature) {
         this.feature = feature;
     }
@@ -76,15 +85,16 @@ public class DynamicBufferEstimator extends AbstractStyleVisitor {
                     if (eg.getInlineContent() != null) {
                         icon = eg.getInlineContent();
                     } else {
-                        String location = eg.getLocation().toExternalForm();
-                        // expand embedded cql expression
-                        Expression expanded = ExpressionExtractor.extractCqlExpressions(location);
+                        Expression expanded = getLocation(eg);
 
                         Iterator<ExternalGraphicFactory> it =
                                 DynamicSymbolFactoryFinder.getExternalGraphicFactories();
                         while (it.hasNext()) {
                             try {
                                 icon = it.next().getIcon(feature, expanded, eg.getFormat(), -1);
+                                if (icon != null) {
+                                    break;
+                                }
                             } catch (Exception e) {
                                 LOGGER.log(
                                         Level.FINE,
@@ -118,4 +128,15 @@ public class DynamicBufferEstimator extends AbstractStyleVisitor {
                     e);
         }
     }
+
+    private Expression getLocation(ExternalGraphic eg) throws MalformedURLException {
+        Expression expanded = locations.get(eg);
+        if (expanded == null) {
+            String location = eg.getLocation().toExternalForm();
+            // expand embedded cql expression
+            expanded = ExpressionExtractor.extractCqlExpressions(location);
+            locations.put(eg, expanded);
+        }
+        return expanded;
+    }
 }
@@ -5,6 +5,8 @@
  */
 package org.geoserver.wms.featureinfo;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Composite;
@@ -27,7 +29,11 @@ import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.ImageTypeSpecifier;
@@ -98,9 +104,20 @@ public class VectorRenderingLayerIdentifier extends AbstractVectorLayerIdentifie
     protected static final int MIN_BUFFER_SIZE =
             Integer.getInteger(VectorBasicLayerIdentifier.FEATUREINFO_DEFAULT_BUFFER, 3);
     public static boolean RENDERING_FEATUREINFO_ENABLED;
+    // number of styles whose identification plans are kept around, zero or less disables caching
+    private static final int PLAN_CACHE_SIZE =
+            Integer.getInteger("org.geoserver.wms.featureinfo.render.planCacheSize", 100);
+    // number of plans kept for a single style, one per layer, scale and dpi combination
+    static final int MAX_PLANS_PER_STYLE = 32;
 
     private WMS wms;
     private VectorBasicLayerIdentifier fallback;
+    /**
+     * The identification plans, by style. Styles are compared by identity and weakly referenced, a
+     * style modification results in a new style object, and thus in new plans
+     */
+    private Cache<Style, Map<PlanKey, IdentificationPlan>> plans;
+
     private static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2();
 
     static {
@@ -118,6 +135,14 @@ public class VectorRenderingLayerIdentifier extends AbstractVectorLayerIdentifie
     public VectorRenderingLayerIdentifier(WMS wms, VectorBasicLayerIdentifier fallback) {
         this.wms = wms;
         this.fallback = fallback;
+        if (PLAN_CACHE_SIZE > 0) {
+            this.plans =
+                    CacheBuilder.newBuilder()
+                            .weakKeys()
+                            .maximumSize(PLAN_CACHE_SIZE)
+                            .expireAfterAccess(1, TimeUnit.HOURS)
+                            .build();
+        }
     }
 
     @Override
@@ -142,16 +167,15 @@ public class VectorRenderingLayerIdentifier extends AbstractVectorLayerIdentifie
             return fallback.identify(params, maxFeatures);
         }
 
-        final Style style =
-                preprocessStyle(params.getStyle(), params.getLayer().getFeature().getFeatureType());
-        final int userBuffer = params.getBuffer() > 0 ? params.getBuffer() : MIN_BUFFER_SIZE;
-        final int buffer = getBuffer(userBuffer);
-
         // check the style to see what's active
-        final List<Rule> rules = getActiveRules(style, params.getScaleDenominator());
-        if (rules.size() == 0) {
+        final IdentificationPlan plan = getIdentificationPlan(params);
+        if (plan.rules.size() == 0) {
             return null;
         }
+        final Style style = plan.style;
+        final int userBuffer = params.getBuffer() > 0 ? params.getBuffer() : MIN_BUFFER_SIZE;
+        final int buffer = getBuffer(userBuffer);
+
         GetMapRequest getMap = params.getGetMapRequest();
         getMap.getFormatOptions().put("antialias", "NONE");
         WMSMapContent mc = new WMSMapContent(getMap);
@@ -174,11 +198,8 @@ public class VectorRenderingLayerIdentifier extends AbstractVectorLayerIdentifie
                             new Rectangle(params.getWidth(), params.getHeight()));
             AffineTransform screenToWorld = worldToScreen.createInverse();
 
-            // apply uom rescale on the rules
-            rescaleRules(rules, params);
-
             // setup the area we are actually going to paint
-            int radius = getSearchRadius(params, rules, layer, getMap, screenToWorld);
+            int radius = getSearchRadius(params, plan, layer, getMap, screenToWorld);
             if (radius < buffer) {
                 radius = buffer;
             }
@@ -226,6 +247,45 @@ public class VectorRenderingLayerIdentifier extends AbstractVectorLayerIdentifie
         }
     }
 
+    /**
+     * Returns the identification plan for the style, layer, scale and dpi of the request, reusing
+     * the one computed by a previous request if possible
+     */
+    IdentificationPlan getIdentificationPlan(FeatureInfoRequestParameters params)
+            throws IOException {
+        Style original = params.getStyle();
+        FeatureType schema = params.getLayer().getFeature().getFeatureType();
+        Integer dpi = (Integer) params.getGetMapRequest().getFormatOptions().get("dpi");
+        PlanKey key = new PlanKey(schema, params.getScaleDenominator(), dpi);
+        Map<PlanKey, IdentificationPlan> stylePlans = null;
+        if (plans != null) {
+            try {
+                stylePlans = plans.get(original, () -> new ConcurrentHashMap<>());
+            } catch (ExecutionException e) {
+                throw new IOException(e);
+            }
+            IdentificationPlan plan = stylePlans.get(key);
+            if (plan != null) {
+                return plan;
+            }
+        }
+
+        Style style = preprocessStyle(original, schema);
+        List<Rule> rules = getActiveRules(style, params.getScaleDenominator());
+        // apply uom rescale on the rules
+        rescaleRules(rules, params);
+        IdentificationPlan plan = new IdentificationPlan(style, rules);
+
+        if (stylePlans != null) {
+            // continuous zooming can generate any number of scales, keep the most recent ones
+            if (stylePlans.size() >= MAX_PLANS_PER_STYLE) {
+                stylePlans.clear();
+            }
+            stylePlans.put(key, plan);
+        }
+        return plan;
+    }
+
     protected int getBuffer(final int userBuffer) {
         if (wms.getMaxBuffer() <= 0) {
             return userBuffer;
@@ -419,7 +479,7 @@ public class VectorRenderingLayerIdentifier extends AbstractVectorLayerIdentifie
 
     private int getSearchRadius(
             FeatureInfoRequestParameters params,
-            List<Rule> rules,
+            IdentificationPlan plan,
             FeatureLayer layer,
             GetMapRequest getMap,
             AffineTransform screenToWorld)
@@ -441,15 +501,9 @@ public class VectorRenderingLayerIdentifier extends AbstractVectorLayerIdentifie
             return layerBuffer;
         }
 
-        // estimate the radius given the currently active rules
-        MetaBufferEstimator estimator = new MetaBufferEstimator();
-        for (Rule rule : rules) {
-            rule.accept(estimator);
-        }
-
         // easy case, the style is static, we can just use size computed from the style
-        int estimatedRadius = estimator.getBuffer() / 2;
-        if (estimator.isEstimateAccurate()) {
+        int estimatedRadius = plan.estimatedRadius;
+        if (plan.estimateAccurate) {
             if (estimatedRadius < MIN_BUFFER_SIZE) {
                 return MIN_BUFFER_SIZE;
             } else {
@@ -457,19 +511,9 @@ public class VectorRenderingLayerIdentifier extends AbstractVectorLayerIdentifie
             }
         } else {
             // ok, so we have an estimate based on the static portion of the style,
-            // let's extract the dynamic one
-            DynamicSizeStyleExtractor extractor = new DynamicSizeStyleExtractor();
-            final List<Rule> dynamicRules = new ArrayList<Rule>();
-            for (Rule rule : rules) {
-                rule.accept(extractor);
-                Rule copy = (Rule) extractor.getCopy();
-                if (copy != null) {
-                    dynamicRules.add(copy);
-                }
-            }
-
-            // this can happen, the meta buffer estimator can get tripped by
-            // graphic fills using dynamic sizes for their strokes
+            // the plan has the dynamic one, which can be empty: the meta buffer estimator
+            // can get tripped by graphic fills using dynamic sizes for their strokes
+            final List<Rule> dynamicRules = plan.dynamicRules;
             if (dynamicRules.size() == 0) {
                 if (LOGGER.isLoggable(Level.FINE)) {
                     LOGGER.fine(
@@ -489,7 +533,7 @@ public class VectorRenderingLayerIdentifier extends AbstractVectorLayerIdentifie
                             -estimatedRadius,
                             params.getWidth() + estimatedRadius,
                             -estimatedRadius,
-                            params.getWidth() + estimatedRadius);
+                            params.getHeight() + estimatedRadius);
             Envelope expanded =
                     JTS.transform(targetRasterSpace, new AffineTransform2D(screenToWorld));
             ReferencedEnvelope renderingBBOX = new ReferencedEnvelope(expanded, getMap.getCrs());
@@ -505,8 +549,7 @@ public class VectorRenderingLayerIdentifier extends AbstractVectorLayerIdentifie
                 Filter and = FF.and(query.getFilter(), bbox);
                 query.setFilter(and);
             }
-            String[] dynamicProperties = getDynamicProperties(dynamicRules);
-            query.setPropertyNames(dynamicProperties);
+            query.setPropertyNames(plan.dynamicProperties);
 
             // visit all features and evaluate buffer size
             final DynamicBufferEstimator dbe = new DynamicBufferEstimator();
@@ -529,7 +572,7 @@ public class VectorRenderingLayerIdentifier extends AbstractVectorLayerIdentifie
         }
     }
 
-    private String[] getDynamicProperties(List<Rule> dynamicRules) {
+    private static String[] getDynamicProperties(List<Rule> dynamicRules) {
         StyleAttributeExtractor extractor = new StyleAttributeExtractor();
         for (Rule rule : dynamicRules) {
             rule.accept(extractor);
@@ -538,6 +581,90 @@ public class VectorRenderingLayerIdentifier extends AbstractVectorLayerIdentifie
         return extractor.getAttributeNames();
     }
 
+    /**
+     * The parts of a rendering based identification that depend only on the style, the layer
+     * schema, the scale and the dpi: the style prepared for feature info, its active rules rescaled
+     * to pixels, and the search radius they need, or the rules and attributes needed to compute it
+     * when symbol sizes depend on the features. Plans are immutable, and shared among requests.
+     */
+    static final class IdentificationPlan {
+
+        final Style style;
+
+        final List<Rule> rules;
+
+        final int estimatedRadius;
+
+        final boolean estimateAccurate;
+
+        final List<Rule> dynamicRules;
+
+        final String[] dynamicProperties;
+
+        IdentificationPlan(Style style, List<Rule> rules) {
+            this.style = style;
+            this.rules = rules;
+
+            // estimate the radius given the currently active rules
+            MetaBufferEstimator estimator = new MetaBufferEstimator();
+            for (Rule rule : rules) {
+                rule.accept(estimator);
+            }
+            this.estimatedRadius = estimator.getBuffer() / 2;
+            this.estimateAccurate = estimator.isEstimateAccurate();
+
+            // extract the dynamic portion of the style, if any
+            List<Rule> dynamicRules = new ArrayList<>();
+            if (!estimateAccurate) {
+                DynamicSizeStyleExtractor extractor = new DynamicSizeStyleExtractor();
+                for (Rule rule : rules) {
+                    rule.accept(extractor);
+                    Rule copy = (Rule) extractor.getCopy();
+                    if (copy != null) {
+                        dynamicRules.add(copy);
+                    }
+                }
+            }
+            this.dynamicRules = dynamicRules;
+            this.dynamicProperties =
+                    dynamicRules.isEmpty() ? null : getDynamicProperties(dynamicRules);
+        }
+    }
+
+    /** Identifies a plan among the ones of a style */
+    static final class PlanKey {
+
+        final FeatureType schema;
+
+        final double scaleDenominator;
+
+        final Integer dpi;
+
+        PlanKey(FeatureType schema, double scaleDenominator, Integer dpi) {
+            this.schema = schema;
+            this.scaleDenominator = scaleDenominator;
+            this.dpi = dpi;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PlanKey)) {
+                return false;
+            }
+            PlanKey other = (PlanKey) o;
+            // schemas are compared by identity, a different object means a reloaded feature type
+            return schema == other.schema
+                    && Double.compare(scaleDenominator, other.scaleDenominator) == 0
+                    && Objects.equals(dpi, other.dpi);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(
+                    System.identityHashCode(schema), Double.hashCode(scaleDenominator), dpi);
+        }
+    }
+
     /** Returns a priority higher than the default, but still allows for overrides */
     @Override
     public int getPriority() {
@@ -0,0 +1,73 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.legendgraphic;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.geoserver.ows.Response;
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.ServiceException;
+import org.geoserver.wms.legendgraphic.LegendGraphicCache.CachedLegendGraphic;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Writes out a legend graphic cached by {@link LegendGraphicCache}, along with its ETag
+ *
+ * <p>Used both as the response for the cached legends returned by the operation, and as a wrapper
+ * writing out a legend just encoded and cached.
+ */
+public class CachedLegendGraphicResponse extends Response {
+
+    CachedLegendGraphic legend;
+
+    public CachedLegendGraphicResponse() {
+        super(CachedLegendGraphic.class);
+    }
+
+    CachedLegendGraphicResponse(CachedLegendGraphic legend) {
+        this();
+        this.legend = legend;
+    }
+
+    private CachedLegendGraphic getLegend(Object value) {
+        return legend != null ? legend : (CachedLegendGraphic) value;
+    }
+
+    @Override
+    public String getMimeType(Object value, Operation operation) throws ServiceException {
+        return getLegend(value).mimeType;
+    }
+
+    @Override
+    public String[][] getHeaders(Object value, Operation operation) throws ServiceException {
+        CachedLegendGraphic legend = getLegend(value);
+        List<String[]> headers = new ArrayList<>();
+        if (legend.headers != null) {
+            headers.addAll(Arrays.asList(legend.headers));
+        }
+        headers.add(new String[] {HttpHeaders.ETAG, legend.etag});
+        return headers.toArray(new String[headers.size()][]);
+    }
+
+    @Override
+    public void write(Object value, OutputStream output, Operation operation)
+            throws IOException, ServiceException {
+        output.write(getLegend(value).contents);
+    }
+
+    @Override
+    public String getPreferredDisposition(Object value, Operation operation) {
+        String disposition = getLegend(value).disposition;
+        return disposition != null ? disposition : super.getPreferredDisposition(value, operation);
+    }
+
+    @Override
+    public String getAttachmentFileName(Object value, Operation operation) {
+        return getLegend(value).fileName;
+    }
+}
@@ -0,0 +1,261 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.legendgraphic;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hashing;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.http.HttpServletResponse;
+import org.geoserver.catalog.event.CatalogInvalidator;
+import org.geoserver.config.ConfigurationListenerAdapter;
+import org.geoserver.config.GeoServer;
+import org.geoserver.config.ServiceInfo;
+import org.geoserver.ows.AbstractDispatcherCallback;
+import org.geoserver.ows.DirectInvocationService;
+import org.geoserver.ows.HttpErrorCodeException;
+import org.geoserver.ows.Request;
+import org.geoserver.ows.Response;
+import org.geoserver.ows.util.ResponseCacheUtils;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.Service;
+import org.geoserver.platform.ServiceException;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Caches the encoded GetLegendGraphic outputs, so that the legends web clients request on every
+ * page load are not rendered again each time.
+ *
+ * <p>Legends are keyed by request path and parameters, and the roles of the current user. When a
+ * request hits the cache the operation is replaced by one returning the cached bytes, that are
+ * written by {@link CachedLegendGraphicResponse}, so the legend is neither built nor encoded. The
+ * cache is emptied on every catalog change, as legends depend on styles, layers and their titles,
+ * and on service configuration changes. Entries also expire after a while, as styles can refer to
+ * external graphics that can change without the catalog knowing. Cached responses carry an ETag,
+ * requests whose If-None-Match header matches it get back a 304.
+ *
+ * <p>Legends depending on the data, counting or hiding rules based on the features matched, and
+ * legends of styles fetched from a remote SLD are not cached.
+ *
+ * <p>The cache is disabled by default, it can be enabled by setting "{@value #ENABLED_KEY}" to
+ * "true", either as a system, environment or servlet context variable. The maximum memory used by
+ * the cache (in bytes) and the time to live of the entries (in seconds) can be set using the
+ * "{@value #MAX_MEMORY_KEY}" and "{@value #EXPIRATION_KEY}" variables.
+ */
+public class LegendGraphicCache extends AbstractDispatcherCallback {
+
+    static final Logger LOGGER = Logging.getLogger(LegendGraphicCache.class);
+
+    static final String ENABLED_KEY = "LEGEND_GRAPHIC_CACHE_ENABLED";
+
+    static final String MAX_MEMORY_KEY = "LEGEND_GRAPHIC_CACHE_MAX_MEMORY";
+
+    static final String EXPIRATION_KEY = "LEGEND_GRAPHIC_CACHE_EXPIRATION";
+
+    static final long DEFAULT_MAX_MEMORY = 16 * 1024 * 1024;
+
+    static final long DEFAULT_EXPIRATION = 3600;
+
+    /** Legend options making the legend depend on the data */
+    static final String[] DATA_DEPENDENT_OPTIONS = {"countMatched", "hideEmptyRules"};
+
+    /** An encoded legend graphic */
+    public static class CachedLegendGraphic {
+        final byte[] contents;
+        final String mimeType;
+        final String[][] headers;
+        final String disposition;
+        final String fileName;
+        final String etag;
+
+        CachedLegendGraphic(
+                byte[] contents,
+                String mimeType,
+                String[][] headers,
+                String disposition,
+                String fileName) {
+            this.contents = contents;
+            this.mimeType = mimeType;
+            this.headers = headers;
+            this.disposition = disposition;
+            this.fileName = fileName;
+            this.etag = "\"" + Hashing.murmur3_128().hashBytes(contents) + "\"";
+        }
+
+        int getWeight() {
+            return contents.length;
+        }
+    }
+
+    boolean enabled;
+
+    Cache<String, CachedLegendGraphic> legends;
+
+    public LegendGraphicCache(GeoServer gs) {
+        this.enabled = Boolean.parseBoolean(GeoServerExtensions.getProperty(ENABLED_KEY));
+        long maxMemory = GeoServerExtensions.getLongProperty(MAX_MEMORY_KEY, DEFAULT_MAX_MEMORY);
+        long expiration = GeoServerExtensions.getLongProperty(EXPIRATION_KEY, DEFAULT_EXPIRATION);
+        this.legends =
+                CacheBuilder.newBuilder()
+                        .maximumWeight(maxMemory)
+                        .<String, CachedLegendGraphic>weigher((k, v) -> v.getWeight())
+                        .expireAfterWrite(expiration, TimeUnit.SECONDS)
+                        .recordStats()
+                        .build();
+
+        gs.getCatalog().addListener(new CatalogInvalidator(this::invalidate));
+        gs.addListener(new ConfigurationInvalidator());
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Legend graphic cache is enabled: " + enabled);
+        }
+    }
+
+    /** Returns true if the legend graphics are cached */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Enables/disables the legend graphic cache */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            invalidate();
+        }
+    }
+
+    /** Drops all the cached legends */
+    public void invalidate() {
+        legends.invalidateAll();
+    }
+
+    /** Returns the cache statistics */
+    public CacheStats getStatistics() {
+        return legends.stats();
+    }
+
+    @Override
+    public Operation operationDispatched(Request request, Operation operation) {
+        if (!isCacheable(request)) {
+            return operation;
+        }
+        CachedLegendGraphic legend = legends.getIfPresent(getKey(request));
+        if (legend == null) {
+            return operation;
+        }
+        if (ResponseCacheUtils.matches(request.getHttpRequest(), legend.etag)) {
+            throw new HttpErrorCodeException(HttpServletResponse.SC_NOT_MODIFIED);
+        }
+
+        // replace the operation with one returning the cached legend
+        Service service = operation.getService();
+        DirectInvocationService cached = (name, parameters) -> legend;
+        return new Operation(
+                operation.getId(),
+                new Service(
+                        service.getId(),
+                        service.getNamespace(),
+                        cached,
+                        service.getVersion(),
+                        service.getOperations()),
+                operation.getMethod(),
+                operation.getParameters());
+    }
+
+    @Override
+    public Response responseDispatched(
+            Request request, Operation operation, Object result, Response response) {
+        if (result instanceof CachedLegendGraphic || !isCacheable(request)) {
+            return response;
+        }
+
+        CachedLegendGraphic legend;
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            response.write(result, bos, operation);
+            legend =
+                    new CachedLegendGraphic(
+                            bos.toByteArray(),
+                            response.getMimeType(result, operation),
+                            response.getHeaders(result, operation),
+                            response.getPreferredDisposition(result, operation),
+                            response.getAttachmentFileName(result, operation));
+        } catch (IOException e) {
+            throw new ServiceException("Failed to encode the legend graphic", e);
+        }
+        legends.put(getKey(request), legend);
+        return new CachedLegendGraphicResponse(legend);
+    }
+
+    boolean isCacheable(Request request) {
+        if (!enabled
+                || !"GetLegendGraphic".equalsIgnoreCase(request.getRequest())
+                || !request.isGet()
+                || request.isSOAP()
+                || request.getHttpRequest() == null
+                || request.getRawKvp() == null) {
+            return false;
+        }
+        Map<String, Object> kvp = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        kvp.putAll(request.getRawKvp());
+        if (kvp.containsKey("SLD")) {
+            return false;
+        }
+        Object options = kvp.get("LEGEND_OPTIONS");
+        if (options != null) {
+            String value = String.valueOf(options).toLowerCase();
+            for (String option : DATA_DEPENDENT_OPTIONS) {
+                if (value.contains(option.toLowerCase())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Builds the cache key for the request */
+    String getKey(Request request) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(request.getHttpRequest().getRequestURI()).append('\n');
+        // sort the parameters, their order does not matter
+        Map<String, Object> kvp = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        kvp.putAll(request.getRawKvp());
+        for (Map.Entry<String, Object> entry : kvp.entrySet()) {
+            Object value = entry.getValue();
+            sb.append(entry.getKey()).append('=');
+            sb.append(
+                    value instanceof Object[]
+                            ? Arrays.toString((Object[]) value)
+                            : String.valueOf(value));
+            sb.append('&');
+        }
+        sb.append('\n');
+        sb.append(ResponseCacheUtils.getRoles());
+        return sb.toString();
+    }
+
+    /** Empties the cache on service configuration changes */
+    class ConfigurationInvalidator extends ConfigurationListenerAdapter {
+
+        @Override
+        public void handlePostServiceChange(ServiceInfo service) {
+            invalidate();
+        }
+
+        @Override
+        public void reloaded() {
+            invalidate();
+        }
+    }
+}
@@ -0,0 +1,387 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Deque;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.ows.Dispatcher;
+import org.geoserver.ows.Request;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.Operation;
+import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.RasterCleaner;
+import org.geotools.util.logging.Logging;
+
+/**
+ * A pool of the byte arrays backing the images GetMap renders onto, avoiding the allocation of a
+ * new, large array for each request. Arrays are kept in buckets of similar size, and an image can
+ * be built on top of an array larger than needed.
+ *
+ * <p>Images are taken from the pool only when they are known not to outlive the request: they are
+ * scheduled for cleanup in the {@link RasterCleaner}, that returns them to the pool when the
+ * request is finished. Images that get garbage collected without being returned are reported as
+ * leaks, at FINE level, and counted in the statistics.
+ *
+ * <p>The pool is disabled by default, it can be enabled setting the CANVAS_BUFFER_POOL_ENABLED
+ * variable to true. CANVAS_BUFFER_POOL_MAX_MEMORY controls the memory retained by the pool (256MB
+ * by default), and CANVAS_BUFFER_POOL_MIN_SIZE the smallest image, in bytes, worth pooling (1MB by
+ * default, smaller ones are cheap to allocate).
+ *
+ * <p>The pooled arrays are plain heap arrays, Java2D only has fast rendering loops for images
+ * backed by arrays, and the arrays are softly referenced, so that they can be reclaimed if the heap
+ * runs short.
+ */
+public class CanvasBufferPool {
+
+    static final Logger LOGGER = Logging.getLogger(CanvasBufferPool.class);
+
+    static final String LEASE_PROPERTY = "org.geoserver.wms.map.CanvasBufferPool.lease";
+
+    static final ColorModel ABGR_MODEL =
+            new BufferedImage(1, 1, BufferedImage.TYPE_4BYTE_ABGR).getColorModel();
+
+    static final ColorModel BGR_MODEL =
+            new BufferedImage(1, 1, BufferedImage.TYPE_3BYTE_BGR).getColorModel();
+
+    private static volatile CanvasBufferPool INSTANCE;
+
+    /** Returns the pool instance, configured from the environment */
+    public static CanvasBufferPool get() {
+        if (INSTANCE == null) {
+            synchronized (CanvasBufferPool.class) {
+                if (INSTANCE == null) {
+                    INSTANCE =
+                            new CanvasBufferPool(
+                                    Boolean.parseBoolean(
+                                            GeoServerExtensions.getProperty(
+                                                    "CANVAS_BUFFER_POOL_ENABLED")),
+                                    GeoServerExtensions.getLongProperty(
+                                            "CANVAS_BUFFER_POOL_MAX_MEMORY", 256 << 20),
+                                    GeoServerExtensions.getLongProperty(
+                                            "CANVAS_BUFFER_POOL_MIN_SIZE", 1 << 20));
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /** Allocation statistics for a given output format */
+    public static class Statistics {
+        LongAdder allocated = new LongAdder();
+
+        LongAdder reused = new LongAdder();
+
+        LongAdder released = new LongAdder();
+
+        LongAdder leaked = new LongAdder();
+
+        LongAdder allocatedBytes = new LongAdder();
+
+        /** Number of images built on a newly allocated array */
+        public long getAllocated() {
+            return allocated.sum();
+        }
+
+        /** Number of images built on an array taken from the pool */
+        public long getReused() {
+            return reused.sum();
+        }
+
+        /** Number of images returned to the pool */
+        public long getReleased() {
+            return released.sum();
+        }
+
+        /** Number of images garbage collected without being returned to the pool */
+        public long getLeaked() {
+            return leaked.sum();
+        }
+
+        /** Total size of the arrays newly allocated, in bytes */
+        public long getAllocatedBytes() {
+            return allocatedBytes.sum();
+        }
+    }
+
+    /** Tracks an image built on a pooled array */
+    static class Lease extends WeakReference<BufferedImage> {
+        final byte[] data;
+
+        final Statistics statistics;
+
+        final String format;
+
+        Lease(
+                BufferedImage image,
+                byte[] data,
+                Statistics statistics,
+                String format,
+                ReferenceQueue<BufferedImage> queue) {
+            super(image, queue);
+            this.data = data;
+            this.statistics = statistics;
+            this.format = format;
+        }
+    }
+
+    /** A pooled array, that the garbage collector can reclaim if memory is short */
+    static class PooledArray extends SoftReference<byte[]> {
+        final int length;
+
+        PooledArray(byte[] data) {
+            super(data);
+            this.length = data.length;
+        }
+    }
+
+    boolean enabled;
+
+    long maxMemory;
+
+    long minSize;
+
+    AtomicLong retained = new AtomicLong();
+
+    Map<Integer, Deque<PooledArray>> buckets = new ConcurrentHashMap<>();
+
+    Map<String, Statistics> statistics = new ConcurrentHashMap<>();
+
+    Set<Lease> leases = ConcurrentHashMap.newKeySet();
+
+    ReferenceQueue<BufferedImage> queue = new ReferenceQueue<>();
+
+    /**
+     * Builds a new pool
+     *
+     * @param enabled whether the pool is used at all
+     * @param maxMemory the maximum memory retained by the pool, in bytes
+     * @param minSize the minimum image size, in bytes, worth pooling
+     */
+    public CanvasBufferPool(boolean enabled, long maxMemory, long minSize) {
+        this.enabled = enabled;
+        this.maxMemory = maxMemory;
+        this.minSize = minSize;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /** The memory currently retained by the pool, in bytes */
+    public long getRetainedMemory() {
+        return retained.get();
+    }
+
+    /** Returns the allocation statistics for the given output format */
+    public Statistics getStatistics(String format) {
+        return statistics.computeIfAbsent(String.valueOf(format), f -> new Statistics());
+    }
+
+    /**
+     * Returns true if the image for the current request can be taken from the pool, that is, the
+     * request is a GetMap going through the {@link Dispatcher}, the image is rendered on the
+     * request thread (the {@link RasterCleaner} does not run on the threads the request is
+     * transferred to, e.g., the animation frames ones), and it is not going to be cached, either in
+     * the tile cache, or in the meta tiles
+     */
+    public boolean isPoolable(RenderedImageMapOutputFormat format) {
+        if (!enabled || !RasterCleaner.isRequestThread()) {
+            return false;
+        }
+        Request request = Dispatcher.REQUEST.get();
+        if (request == null || request.getOperation() == null) {
+            return false;
+        }
+        Operation operation = request.getOperation();
+        Object[] parameters = operation.getParameters();
+        if (!"GetMap".equalsIgnoreCase(operation.getId())
+                || parameters == null
+                || parameters.length == 0
+                || !(parameters[0] instanceof GetMapRequest)) {
+            return false;
+        }
+        GetMapRequest getMap = (GetMapRequest) parameters[0];
+        Map<String, String> rawKvp = getMap.getRawKvp();
+        return (rawKvp == null
+                        || !rawKvp.containsKey(
+                                RenderedImageMapOutputFormat.GWC_SEED_INTERCEPT_TOKEN))
+                && !MetatileMapOutputFormat.isRequestTiled(getMap, format);
+    }
+
+    /**
+     * Builds an image with the same structure as {@link ImageUtils#createImage(int, int,
+     * IndexColorModel, boolean)}, on top of a pooled array, or returns null if the image is too
+     * small to be pooled, or cannot be built on a byte array. The image contents are not cleared,
+     * the caller is expected to paint the background. The image is returned to the pool at the end
+     * of the request.
+     */
+    public BufferedImage createImage(
+            int width, int height, IndexColorModel palette, boolean transparent, String format) {
+        if (!enabled) {
+            return null;
+        }
+        if (palette != null && palette.getTransferType() != DataBuffer.TYPE_BYTE) {
+            return null;
+        }
+        int pixelStride = palette != null ? 1 : transparent ? 4 : 3;
+        long size = (long) width * height * pixelStride;
+        if (size < minSize || size == 0) {
+            return null;
+        }
+        long capacity = getCapacity(size);
+        if (capacity > Integer.MAX_VALUE - 8) {
+            return null;
+        }
+
+        expungeLeases();
+        Statistics stats = getStatistics(format);
+        byte[] data = take((int) capacity);
+        if (data == null) {
+            data = new byte[(int) capacity];
+            stats.allocated.increment();
+            stats.allocatedBytes.add(capacity);
+        } else {
+            stats.reused.increment();
+        }
+
+        DataBufferByte buffer = new DataBufferByte(data, (int) size);
+        int[] bandOffsets;
+        ColorModel cm;
+        if (palette != null) {
+            bandOffsets = new int[] {0};
+            cm = palette;
+        } else if (transparent) {
+            bandOffsets = new int[] {3, 2, 1, 0};
+            cm = ABGR_MODEL;
+        } else {
+            bandOffsets = new int[] {2, 1, 0};
+            cm = BGR_MODEL;
+        }
+        WritableRaster raster =
+                Raster.createInterleavedRaster(
+                        buffer, width, height, width * pixelStride, pixelStride, bandOffsets, null);
+        Hashtable<String, Object> properties = new Hashtable<>();
+        BufferedImage image = new BufferedImage(cm, raster, false, properties);
+        Lease lease = new Lease(image, data, stats, format, queue);
+        leases.add(lease);
+        properties.put(LEASE_PROPERTY, lease);
+        RasterCleaner.addImage(image);
+
+        return image;
+    }
+
+    /**
+     * Returns the array backing the image to the pool, if the image was built by this pool and has
+     * not been returned yet. The image must not be used after this call.
+     *
+     * @return true if the image was returned to the pool
+     */
+    public boolean release(BufferedImage image) {
+        Object property = image.getProperty(LEASE_PROPERTY);
+        if (!(property instanceof Lease)) {
+            return false;
+        }
+        Lease lease = (Lease) property;
+        if (lease.get() != image || !leases.remove(lease)) {
+            return false;
+        }
+        lease.clear();
+        lease.statistics.released.increment();
+        give(lease.data);
+        return true;
+    }
+
+    /** Logs and counts the images collected without having been returned */
+    void expungeLeases() {
+        Lease lease;
+        while ((lease = (Lease) queue.poll()) != null) {
+            if (leases.remove(lease)) {
+                lease.statistics.leaked.increment();
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine(
+                            "A pooled "
+                                    + lease.format
+                                    + " canvas of "
+                                    + lease.data.length
+                                    + " bytes was not returned to the pool");
+                }
+            }
+        }
+    }
+
+    /**
+     * Rounds up the size to the bucket capacity, buckets are a quarter of a power of two apart, so
+     * that at most 25% of the array goes unused
+     */
+    static long getCapacity(long size) {
+        int exponent = 63 - Long.numberOfLeadingZeros(size);
+        if (exponent < 2) {
+            return size;
+        }
+        long step = 1L << (exponent - 2);
+        return ((size + step - 1) / step) * step;
+    }
+
+    private byte[] take(int capacity) {
+        Deque<PooledArray> bucket = buckets.get(capacity);
+        if (bucket == null) {
+            return null;
+        }
+        PooledArray pooled;
+        while ((pooled = bucket.pollFirst()) != null) {
+            retained.addAndGet(-pooled.length);
+            byte[] data = pooled.get();
+            if (data != null) {
+                return data;
+            }
+        }
+        return null;
+    }
+
+    private void give(byte[] data) {
+        if (retained.get() + data.length > maxMemory) {
+            purge();
+        }
+        if (retained.addAndGet(data.length) > maxMemory) {
+            retained.addAndGet(-data.length);
+            return;
+        }
+        buckets.computeIfAbsent(data.length, c -> new ConcurrentLinkedDeque<>())
+                .addFirst(new PooledArray(data));
+    }
+
+    /** Removes the arrays reclaimed by the garbage collector */
+    private void purge() {
+        for (Deque<PooledArray> bucket : buckets.values()) {
+            for (PooledArray pooled : bucket) {
+                if (pooled.get() == null && bucket.removeFirstOccurrence(pooled)) {
+                    retained.addAndGet(-pooled.length);
+                }
+            }
+        }
+    }
+}
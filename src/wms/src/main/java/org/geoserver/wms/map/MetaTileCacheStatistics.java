@@ -0,0 +1,92 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.geotools.util.logging.Logging;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Publishes the {@link QuickTileCache} statistics in the platform MBean server, under the {@link
+ * #OBJECT_NAME} name.
+ */
+public class MetaTileCacheStatistics
+        implements MetaTileCacheStatisticsMXBean, InitializingBean, DisposableBean {
+
+    static final Logger LOGGER = Logging.getLogger(MetaTileCacheStatistics.class);
+
+    public static final String OBJECT_NAME = "org.geoserver:type=MetaTileCache";
+
+    QuickTileCache cache;
+
+    ObjectName registered;
+
+    public MetaTileCacheStatistics(QuickTileCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public long getSize() {
+        return cache.size();
+    }
+
+    @Override
+    public long getHitCount() {
+        return cache.getStatistics().hitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return cache.getStatistics().missCount();
+    }
+
+    @Override
+    public double getHitRate() {
+        return cache.getStatistics().hitRate();
+    }
+
+    @Override
+    public long getLoadSuccessCount() {
+        return cache.getStatistics().loadSuccessCount();
+    }
+
+    @Override
+    public long getTotalLoadTime() {
+        return cache.getStatistics().totalLoadTime();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return cache.getStatistics().evictionCount();
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        try {
+            // might be already there, e.g., multiple application contexts in the same JVM
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+                registered = name;
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to register the meta tile cache statistics", e);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (registered != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registered);
+            registered = null;
+        }
+    }
+}
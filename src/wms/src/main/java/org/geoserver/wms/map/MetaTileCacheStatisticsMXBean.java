@@ -0,0 +1,27 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+/** JMX view of the {@link QuickTileCache} statistics */
+public interface MetaTileCacheStatisticsMXBean {
+
+    /** The number of meta tiles in the cache */
+    long getSize();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    /** Number of meta tiles built and stored in the cache */
+    long getLoadSuccessCount();
+
+    /** The total time spent building meta tiles, in nanoseconds */
+    long getTotalLoadTime();
+
+    /** Number of meta tiles evicted to respect the memory limit */
+    long getEvictionCount();
+}
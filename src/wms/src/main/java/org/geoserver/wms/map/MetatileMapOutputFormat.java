@@ -14,6 +14,7 @@ import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
@@ -118,68 +119,70 @@ public final class MetatileMapOutputFormat implements GetMapOutputFormat {
     /** @see org.geoserver.wms.GetMapOutputFormat#produceMap(org.geoserver.wms.WMSMapContent) */
     public WebMap produceMap(WMSMapContent mapContent) throws ServiceException, IOException {
         // get the key that identifies the meta tile. The cache will make sure
-        // two threads asking
-        // for the same tile will get the same key, and thus will synchronize
-        // with each other
-        // (the first eventually builds the meta-tile, the second finds it ready
-        // to be used)
+        // only one thread builds the meta tile, while the others asking
+        // for the same meta tile wait for it to be ready
         QuickTileCache.MetaTileKey key = tileCache.getMetaTileKey(request);
 
-        synchronized (key) {
-            RenderedImage tile = tileCache.getTile(key, request);
-            List<GridCoverage2D> renderedCoverages = null;
-
-            if (LOGGER.isLoggable(Level.FINER)) {
-                LOGGER.finer(
-                        "Looked for meta tile "
-                                + key.metaTileCoords.x
-                                + ", "
-                                + key.metaTileCoords.y
-                                + "in cache: "
-                                + ((tile != null) ? "hit!" : "miss"));
-            }
+        List<List<GridCoverage2D>> renderedCoverages = new ArrayList<>(1);
+        RenderedImage[] tiles =
+                tileCache.getTiles(
+                        key,
+                        () -> {
+                            RenderedImageMap metaTileMap = buildMetaTile(key, mapContent);
+                            renderedCoverages.add(metaTileMap.getRenderedCoverages());
+                            return split(key, metaTileMap.getImage());
+                        });
 
-            if (tile == null) {
-                // compute the meta-tile
-                if (LOGGER.isLoggable(Level.FINER)) {
-                    LOGGER.finer(
-                            "Building meta tile "
-                                    + key.metaTileCoords.x
-                                    + ", "
-                                    + key.metaTileCoords.y
-                                    + " of size w="
-                                    + key.getTileSize() * key.getMetaFactor()
-                                    + ", h="
-                                    + key.getTileSize() * key.getMetaFactor()
-                                    + " with metatilign factor "
-                                    + key.getMetaFactor());
-                }
+        if (LOGGER.isLoggable(Level.FINER)) {
+            LOGGER.finer(
+                    "Looked for meta tile "
+                            + key.metaTileCoords.x
+                            + ", "
+                            + key.metaTileCoords.y
+                            + "in cache: "
+                            + (renderedCoverages.isEmpty() ? "hit!" : "miss"));
+        }
 
-                // alter the map definition so that we build a meta-tile instead
-                // of just the tile
-                mapContent.getViewport().setBounds(key.getMetaTileEnvelope());
-                mapContent.setMapWidth(key.getTileSize() * key.getMetaFactor());
-                mapContent.setMapHeight(key.getTileSize() * key.getMetaFactor());
-                mapContent.setTileSize(key.getTileSize());
-
-                // adjust the bbox/width/height env vars that GetMap setup, since we
-                // are changing them under its feet
-                EnvFunction.setLocalValue("wms_bbox", mapContent.getViewport().getBounds());
-                EnvFunction.setLocalValue("wms_width", mapContent.getMapWidth());
-                EnvFunction.setLocalValue("wms_height", mapContent.getMapHeight());
-
-                RenderedImageMap metaTileMap = delegate.produceMap(mapContent);
-
-                RenderedImage metaTile = metaTileMap.getImage();
-                RenderedImage[] tiles = split(key, metaTile);
-                tileCache.storeTiles(key, tiles);
-                tile = tileCache.getTile(key, request, tiles);
-                renderedCoverages = metaTileMap.getRenderedCoverages();
-            }
-            RenderedImageMap tileMap = new RenderedImageMap(mapContent, tile, getMimeType());
-            tileMap.setRenderedCoverages(renderedCoverages);
-            return tileMap;
+        RenderedImage tile = tileCache.getTile(key, request, tiles);
+        RenderedImageMap tileMap = new RenderedImageMap(mapContent, tile, getMimeType());
+        if (!renderedCoverages.isEmpty()) {
+            tileMap.setRenderedCoverages(renderedCoverages.get(0));
+        }
+        return tileMap;
+    }
+
+    /** Renders the whole meta tile */
+    private RenderedImageMap buildMetaTile(
+            QuickTileCache.MetaTileKey key, WMSMapContent mapContent) {
+        // compute the meta-tile
+        if (LOGGER.isLoggable(Level.FINER)) {
+            LOGGER.finer(
+                    "Building meta tile "
+                            + key.metaTileCoords.x
+                            + ", "
+                            + key.metaTileCoords.y
+                            + " of size w="
+                            + key.getTileSize() * key.getMetaFactor()
+                            + ", h="
+                            + key.getTileSize() * key.getMetaFactor()
+                            + " with metatilign factor "
+                            + key.getMetaFactor());
         }
+
+        // alter the map definition so that we build a meta-tile instead
+        // of just the tile
+        mapContent.getViewport().setBounds(key.getMetaTileEnvelope());
+        mapContent.setMapWidth(key.getTileSize() * key.getMetaFactor());
+        mapContent.setMapHeight(key.getTileSize() * key.getMetaFactor());
+        mapContent.setTileSize(key.getTileSize());
+
+        // adjust the bbox/width/height env vars that GetMap setup, since we
+        // are changing them under its feet
+        EnvFunction.setLocalValue("wms_bbox", mapContent.getViewport().getBounds());
+        EnvFunction.setLocalValue("wms_width", mapContent.getMapWidth());
+        EnvFunction.setLocalValue("wms_height", mapContent.getMapHeight());
+
+        return delegate.produceMap(mapContent);
     }
 
     /** @see org.geoserver.wms.GetMapOutputFormat#getOutputFormatNames() */
@@ -9,17 +9,22 @@ import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.geoserver.config.JAIInfo;
 import org.geoserver.platform.Operation;
 import org.geoserver.platform.ServiceException;
+import org.geoserver.wms.DefaultWebMapService;
 import org.geoserver.wms.GetMapRequest;
 import org.geoserver.wms.MapProducerCapabilities;
 import org.geoserver.wms.RasterCleaner;
+import org.geoserver.wms.RenderingExecutor;
+import org.geoserver.wms.RenderingExecutor.Priority;
 import org.geoserver.wms.WMS;
 import org.geoserver.wms.WMSMapContent;
 import org.geoserver.wms.map.png.PNGJWriter;
+import org.geoserver.wms.map.png.ParallelPNGWriter;
 import org.geotools.image.ImageWorker;
 import org.geotools.util.logging.Logging;
 
@@ -96,7 +101,11 @@ public class PNGMapResponse extends RenderedImageMapResponse {
         image = applyPalette(image, mapContent, f -> f != null && f.contains("png8"), true);
         float quality = (100 - wms.getPngCompression()) / 100.0f;
         JAIInfo.PngEncoderType encoder = wms.getPNGEncoderType();
-        if (encoder == JAIInfo.PngEncoderType.PNGJ) {
+        if (encoder == JAIInfo.PngEncoderType.PARALLEL && ParallelPNGWriter.isSupported(image)) {
+            getParallelWriter(mapContent).writePNG(image, outStream, quality);
+            RasterCleaner.addImage(image);
+        } else if (encoder == JAIInfo.PngEncoderType.PNGJ
+                || encoder == JAIInfo.PngEncoderType.PARALLEL) {
             image = new PNGJWriter().writePNG(image, outStream, quality, mapContent);
             RasterCleaner.addImage(image);
         } else {
@@ -116,6 +125,18 @@ public class PNGMapResponse extends RenderedImageMapResponse {
         }
     }
 
+    /** Builds a PNG writer compressing the image in parallel in the rendering pool, if enabled */
+    private ParallelPNGWriter getParallelWriter(WMSMapContent mapContent) {
+        ExecutorService pool = DefaultWebMapService.getRenderingPool();
+        GetMapRequest request = mapContent != null ? mapContent.getRequest() : null;
+        Priority priority =
+                request != null
+                        ? RenderedImageMapOutputFormat.getPriority(request)
+                        : Priority.INTERACTIVE;
+        return new ParallelPNGWriter(
+                pool instanceof RenderingExecutor ? (RenderingExecutor) pool : null, priority);
+    }
+
     @Override
     public MapProducerCapabilities getCapabilities(String outputFormat) {
         return CAPABILITIES;
@@ -0,0 +1,326 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import java.awt.image.IndexColorModel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogInvalidator;
+import org.geoserver.ows.LocalPublished;
+import org.geoserver.ows.LocalWorkspace;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.WMSMapContent;
+import org.geotools.image.palette.ColorIndexer;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Caches the palettes computed for paletted output formats, such as PNG8, so that requests for the
+ * same layers, styles and scale band, typically the tiles of a map, reuse the palette computed for
+ * the first one instead of analyzing the colors of each image. Besides saving the color analysis,
+ * this gives adjacent tiles the same colors.
+ *
+ * <p>The cached palettes map pixels to colors with a precomputed inverse color lookup table, {@link
+ * LookupColorIndexer}, that is shared among the requests.
+ *
+ * <p>The cache is disabled by default, as a palette learned from one image can miss colors found
+ * only in others, e.g., raster layers. It can be enabled setting the PALETTE_CACHE_SIZE variable to
+ * the maximum number of palettes to keep, PALETTE_CACHE_EXPIRATION controls after how many seconds
+ * a palette is computed again (600 by default), to follow data changes. Style, layer and layer
+ * group changes in the catalog empty the cache right away.
+ *
+ * <p>Palettes with less than PALETTE_CACHE_MIN_COLORS colors (16 by default) are not cached, as
+ * they typically come from empty or nearly empty images, e.g., tiles at the edge of the data, and
+ * would not fit the other maps sharing the key.
+ */
+public class PaletteCache {
+
+    static final Logger LOGGER = Logging.getLogger(PaletteCache.class);
+
+    /** The request parameters affecting the colors of the output */
+    static final String[] KEY_PARAMETERS = {
+        "LAYERS",
+        "STYLES",
+        "SLD",
+        "SLD_BODY",
+        "STYLE_FORMAT",
+        "FORMAT",
+        "FORMAT_OPTIONS",
+        "TRANSPARENT",
+        "BGCOLOR",
+        "SRS",
+        "CRS",
+        "CQL_FILTER",
+        "FILTER",
+        "FEATUREID",
+        "ENV",
+        "VIEWPARAMS",
+        "TIME",
+        "ELEVATION",
+        "INTERPOLATIONS",
+        "SORTBY"
+    };
+
+    static final int DEFAULT_MIN_COLORS = 16;
+
+    private static volatile PaletteCache INSTANCE;
+
+    /** Returns the cache instance, configured from the environment */
+    public static PaletteCache get() {
+        if (INSTANCE == null) {
+            synchronized (PaletteCache.class) {
+                if (INSTANCE == null) {
+                    INSTANCE =
+                            new PaletteCache(
+                                    GeoServerExtensions.getIntProperty("PALETTE_CACHE_SIZE", 0),
+                                    GeoServerExtensions.getLongProperty(
+                                            "PALETTE_CACHE_EXPIRATION", 600),
+                                    GeoServerExtensions.getIntProperty(
+                                            "PALETTE_CACHE_MIN_COLORS", DEFAULT_MIN_COLORS));
+                    Catalog catalog = (Catalog) GeoServerExtensions.bean("catalog");
+                    if (INSTANCE.isEnabled() && catalog != null) {
+                        catalog.addListener(
+                                new CatalogInvalidator(
+                                        INSTANCE::invalidateAll,
+                                        StyleInfo.class,
+                                        LayerInfo.class,
+                                        LayerGroupInfo.class));
+                    }
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    Cache<String, LookupColorIndexer> palettes;
+
+    int minColors;
+
+    /**
+     * Builds a new cache, with the default minimum number of colors
+     *
+     * @param maxSize the maximum number of palettes, zero or less disables the cache
+     * @param expiration the time, in seconds, after which a palette is computed again
+     */
+    PaletteCache(int maxSize, long expiration) {
+        this(maxSize, expiration, DEFAULT_MIN_COLORS);
+    }
+
+    /**
+     * Builds a new cache
+     *
+     * @param maxSize the maximum number of palettes, zero or less disables the cache
+     * @param expiration the time, in seconds, after which a palette is computed again
+     * @param minColors the minimum number of colors of a palette to be cached
+     */
+    PaletteCache(int maxSize, long expiration, int minColors) {
+        this.minColors = minColors;
+        if (maxSize > 0) {
+            palettes =
+                    CacheBuilder.newBuilder()
+                            .maximumSize(maxSize)
+                            .expireAfterWrite(expiration, TimeUnit.SECONDS)
+                            .recordStats()
+                            .build();
+        }
+    }
+
+    /** Returns true if the cache is enabled */
+    public boolean isEnabled() {
+        return palettes != null;
+    }
+
+    /**
+     * Returns the palette cached for the map, or null if missing
+     *
+     * @param bitmask true for palettes with bitmask transparency, false for translucent ones
+     */
+    public IndexColorModel getPalette(WMSMapContent mapContent, boolean bitmask) {
+        LookupColorIndexer indexer = getColorIndexer(mapContent, bitmask);
+        return indexer != null ? indexer.toIndexColorModel() : null;
+    }
+
+    /**
+     * Returns a color indexer for the palette cached for the map, or null if missing
+     *
+     * @param bitmask true for palettes with bitmask transparency, false for translucent ones
+     */
+    public LookupColorIndexer getColorIndexer(WMSMapContent mapContent, boolean bitmask) {
+        String key = getKey(mapContent, bitmask);
+        return key != null ? palettes.getIfPresent(key) : null;
+    }
+
+    /**
+     * Caches the palette computed for the map, if the cache is enabled and the palette has enough
+     * colors
+     *
+     * @param bitmask true for palettes with bitmask transparency, false for translucent ones
+     * @return true if the palette got cached
+     */
+    public boolean putPalette(WMSMapContent mapContent, boolean bitmask, IndexColorModel palette) {
+        if (palette.getMapSize() < minColors) {
+            return false;
+        }
+        String key = getKey(mapContent, bitmask);
+        if (key != null) {
+            palettes.put(key, new LookupColorIndexer(palette));
+            return true;
+        }
+        return false;
+    }
+
+    /** Drops all the cached palettes */
+    public void invalidateAll() {
+        if (palettes != null) {
+            palettes.invalidateAll();
+        }
+    }
+
+    /** Returns the cache hit and miss statistics */
+    public CacheStats getStatistics() {
+        return palettes != null ? palettes.stats() : new CacheStats(0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Builds the cache key for the map, made of the virtual service the request went through, the
+     * request parameters affecting the colors and the scale band, a power of two, as styles change
+     * with the scale. Returns null if the cache is disabled or the request cannot be keyed.
+     */
+    String getKey(WMSMapContent mapContent, boolean bitmask) {
+        GetMapRequest request = mapContent.getRequest();
+        Map<String, String> rawKvp = request != null ? request.getRawKvp() : null;
+        if (palettes == null || rawKvp == null || mapContent.getPalette() != null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(bitmask ? "bitmask" : "translucent");
+        // the same layer names resolve to different layers in different virtual services
+        WorkspaceInfo workspace = LocalWorkspace.get();
+        if (workspace != null) {
+            sb.append("&workspace=").append(workspace.getName());
+        }
+        PublishedInfo published = LocalPublished.get();
+        if (published != null) {
+            sb.append("&published=").append(published.getName());
+        }
+        for (String parameter : KEY_PARAMETERS) {
+            String value = rawKvp.get(parameter);
+            if (value != null) {
+                sb.append('&').append(parameter).append('=').append(value);
+            }
+        }
+        try {
+            double scale = mapContent.getScaleDenominator();
+            long band = Math.round(Math.log(scale) / Math.log(2));
+            sb.append("&scaleBand=").append(band);
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Could not compute the scale, not caching the palette", e);
+            return null;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A color indexer mapping pixels to a fixed palette through an inverse color lookup table,
+     * indexed by the 5 most significant bits of the color components and the 3 most significant
+     * ones of the alpha. The table is allocated on first use and filled lazily, a cell is computed
+     * at most once in the common case, then a lookup is a single array access. Filling is thread
+     * safe, as concurrent threads would write the same value in a cell.
+     */
+    public static class LookupColorIndexer implements ColorIndexer {
+
+        static final int EMPTY = -1;
+
+        final IndexColorModel palette;
+
+        final int[] colors;
+
+        volatile short[] table;
+
+        final int transparentIndex;
+
+        public LookupColorIndexer(IndexColorModel palette) {
+            this.palette = palette;
+            this.colors = new int[palette.getMapSize()];
+            palette.getRGBs(colors);
+            int transparent = 0;
+            for (int i = 1; i < colors.length; i++) {
+                if ((colors[i] >>> 24) < (colors[transparent] >>> 24)) {
+                    transparent = i;
+                }
+            }
+            this.transparentIndex = transparent;
+        }
+
+        @Override
+        public IndexColorModel toIndexColorModel() {
+            return palette;
+        }
+
+        @Override
+        public int getClosestIndex(int r, int g, int b, int a) {
+            if (a == 0) {
+                return transparentIndex;
+            }
+            int cell = (r >> 3) << 13 | (g >> 3) << 8 | (b >> 3) << 3 | (a >> 5);
+            short[] table = getTable();
+            int index = table[cell];
+            if (index == EMPTY) {
+                // search against the center of the cell, opaque colors being the common case
+                int ca = (a & 0xE0) == 0xE0 ? 255 : (a & 0xE0) | 0x10;
+                index = searchClosest((r & 0xF8) | 4, (g & 0xF8) | 4, (b & 0xF8) | 4, ca);
+                table[cell] = (short) index;
+            }
+            return index;
+        }
+
+        private short[] getTable() {
+            short[] result = table;
+            if (result == null) {
+                synchronized (this) {
+                    result = table;
+                    if (result == null) {
+                        result = new short[1 << 18];
+                        Arrays.fill(result, (short) EMPTY);
+                        table = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        private int searchClosest(int r, int g, int b, int a) {
+            int closest = 0;
+            long minDistance = Long.MAX_VALUE;
+            for (int i = 0; i < colors.length; i++) {
+                int color = colors[i];
+                int da = a - (color >>> 24);
+                int dr = r - ((color >> 16) & 0xFF);
+                int dg = g - ((color >> 8) & 0xFF);
+                int db = b - (color & 0xFF);
+                long distance = (long) dr * dr + dg * dg + db * db + da * da;
+                if (distance < minDistance) {
+                    minDistance = distance;
+                    closest = i;
+                    if (distance == 0) {
+                        break;
+                    }
+                }
+            }
+            return closest;
+        }
+    }
+}
@@ -5,16 +5,23 @@
  */
 package org.geoserver.wms.map;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.awt.image.RenderedImage;
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.geoserver.config.ConfigurationListenerAdapter;
@@ -22,6 +29,7 @@ import org.geoserver.config.GeoServer;
 import org.geoserver.config.GeoServerInfo;
 import org.geoserver.config.ServiceInfo;
 import org.geoserver.config.impl.GeoServerLifecycleHandler;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wfs.TransactionEvent;
 import org.geoserver.wfs.TransactionListener;
@@ -30,10 +38,15 @@ import org.geoserver.wms.GetMapRequest;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.CRS.AxisOrder;
-import org.geotools.util.CanonicalSet;
 import org.locationtech.jts.geom.Envelope;
 
+/**
+ * Caches the tiles of the meta-tiles built for WMS tiled requests (tiled=true). The cache is
+ * bounded in memory, evicting the least recently used meta-tiles, and allows concurrent access,
+ * with a single thread building a given meta-tile while the others wait for it.
+ */
 public class QuickTileCache implements TransactionListener, GeoServerLifecycleHandler {
+
     /**
      * Set of parameters that we can ignore, since they do not define a map, are either unrelated,
      * or define the tiling instead
@@ -52,12 +65,12 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
         ignoredParameters.add("EXCEPTIONS");
     }
 
-    /** Canonicalizer used to return the same object when two threads ask for the same meta-tile */
-    private CanonicalSet<MetaTileKey> metaTileKeys = CanonicalSet.newInstance(MetaTileKey.class);
+    private static final long DEFAULT_MAX_MEMORY = 64 * 1024 * 1024;
 
-    private WeakHashMap tileCache = new WeakHashMap();
+    private Cache<MetaTileKey, CacheElement> tileCache;
 
     public QuickTileCache(GeoServer geoServer) {
+        this();
         geoServer.addListener(
                 new ConfigurationListenerAdapter() {
                     public void handleGlobalChange(
@@ -65,7 +78,7 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
                             List<String> propertyNames,
                             List<Object> oldValues,
                             List<Object> newValues) {
-                        tileCache.clear();
+                        tileCache.invalidateAll();
                     }
 
                     public void handleServiceChange(
@@ -73,22 +86,45 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
                             List<String> propertyNames,
                             List<Object> oldValues,
                             List<Object> newValues) {
-                        tileCache.clear();
+                        tileCache.invalidateAll();
                     }
 
                     public void reloaded() {
-                        tileCache.clear();
+                        tileCache.invalidateAll();
                     }
                 });
     }
 
-    /** For testing only */
-    QuickTileCache() {}
+    /** Builds a cache sized according to the QUICK_TILE_CACHE_MAX_MEMORY variable */
+    QuickTileCache() {
+        this(getMaxMemory());
+    }
+
+    /**
+     * Builds a cache holding at most the given amount of tiles, in bytes. The least recently used
+     * meta tiles are evicted first
+     */
+    QuickTileCache(long maxMemory) {
+        tileCache =
+                CacheBuilder.newBuilder()
+                        .maximumWeight(maxMemory)
+                        .weigher((MetaTileKey key, CacheElement element) -> element.getWeight())
+                        .recordStats()
+                        .build();
+    }
+
+    /**
+     * The maximum memory used by the cache can be controlled with the QUICK_TILE_CACHE_MAX_MEMORY
+     * variable, in bytes, defaults to 64MB
+     */
+    static long getMaxMemory() {
+        return GeoServerExtensions.getLongProperty(
+                "QUICK_TILE_CACHE_MAX_MEMORY", DEFAULT_MAX_MEMORY);
+    }
 
     /**
      * Given a tiled request, builds a key that can be used to access the cache looking for a
-     * specific meta-tile, and also as a synchronization tool to avoid multiple requests to trigger
-     * parallel computation of the same meta-tile
+     * specific meta-tile
      */
     public MetaTileKey getMetaTileKey(GetMapRequest request) {
         String mapDefinition = buildMapDefinition(request.getRawKvp());
@@ -113,12 +149,7 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
         Point tileCoords = getTileCoordinates(bbox, origin);
         Point metaTileCoords = getMetaTileCoordinates(tileCoords);
         ReferencedEnvelope metaTileEnvelope = getMetaTileEnvelope(bbox, tileCoords, metaTileCoords);
-        MetaTileKey key = new MetaTileKey(mapKey, metaTileCoords, metaTileEnvelope);
-
-        // since this will be used for thread synchronization, we have to make
-        // sure two thread asking for the same meta tile will get the same key
-        // object
-        return metaTileKeys.unique(key);
+        return new MetaTileKey(mapKey, metaTileCoords, metaTileEnvelope);
     }
 
     private ReferencedEnvelope getMetaTileEnvelope(
@@ -320,9 +351,12 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
         }
     }
 
-    /** Gathers a tile from the cache, if available */
-    public synchronized RenderedImage getTile(MetaTileKey key, GetMapRequest request) {
-        CacheElement ce = (CacheElement) tileCache.get(key);
+    /**
+     * Gathers a tile from the cache, if available. This is a plain lookup that does not affect the
+     * statistics, which are only recorded by {@link #getTiles(MetaTileKey, Callable)}
+     */
+    public RenderedImage getTile(MetaTileKey key, GetMapRequest request) {
+        CacheElement ce = tileCache.asMap().get(key);
 
         if (ce == null) {
             return null;
@@ -331,6 +365,28 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
         return getTile(key, request, ce.tiles);
     }
 
+    /**
+     * Returns the tiles of the meta-tile, building them with the provided loader if missing. Only
+     * one thread builds a given meta-tile, the other ones asking for the same meta-tile wait for it
+     * to be ready.
+     */
+    public RenderedImage[] getTiles(MetaTileKey key, Callable<RenderedImage[]> loader)
+            throws IOException {
+        try {
+            return tileCache.get(key, () -> new CacheElement(loader.call())).tiles;
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ServiceException("Failed to build meta tile", cause);
+        }
+    }
+
     /** */
     public RenderedImage getTile(MetaTileKey key, GetMapRequest request, RenderedImage[] tiles) {
         Envelope bbox = request.getBbox();
@@ -346,16 +402,41 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
     /**
      * Puts the specified tile array in the cache, and returns the tile the request was looking for
      */
-    public synchronized void storeTiles(MetaTileKey key, RenderedImage[] tiles) {
+    public void storeTiles(MetaTileKey key, RenderedImage[] tiles) {
         tileCache.put(key, new CacheElement(tiles));
     }
 
-    class CacheElement {
+    /** Returns the cache statistics, including the hit ratio */
+    public CacheStats getStatistics() {
+        return tileCache.stats();
+    }
+
+    /** Returns the number of meta-tiles in the cache */
+    public long size() {
+        return tileCache.size();
+    }
+
+    static class CacheElement {
         RenderedImage[] tiles;
 
         public CacheElement(RenderedImage[] tiles) {
             this.tiles = tiles;
         }
+
+        /**
+         * The memory used by the tiles, in bytes. The tiles usually share the meta-tile raster, the
+         * sum of their sizes is the size of the meta-tile
+         */
+        int getWeight() {
+            long weight = 0;
+            for (RenderedImage tile : tiles) {
+                if (tile != null) {
+                    int pixelSize = tile.getColorModel().getPixelSize();
+                    weight += (long) tile.getWidth() * tile.getHeight() * pixelSize / 8;
+                }
+            }
+            return (int) Math.min(weight, Integer.MAX_VALUE);
+        }
     }
 
     public void dataStoreChange(TransactionEvent event) throws WFSException {
@@ -363,18 +444,18 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
         // contains a string with part of the map request where the layer
         // name is included, but we would have to parse it and consider
         // also that the namespace may be missing in the getmap request
-        tileCache.clear();
+        tileCache.invalidateAll();
     }
 
     @Override
     public void onReset() {
         // data might have changed in the meantime
-        tileCache.clear();
+        tileCache.invalidateAll();
     }
 
     @Override
     public void onDispose() {
-        tileCache.clear();
+        tileCache.invalidateAll();
     }
 
     public void beforeReload() {
@@ -383,6 +464,6 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
 
     @Override
     public void onReload() {
-        tileCache.clear();
+        tileCache.invalidateAll();
     }
 }
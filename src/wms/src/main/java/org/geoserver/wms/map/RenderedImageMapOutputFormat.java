@@ -25,6 +25,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -49,6 +50,8 @@ import org.geoserver.wms.DefaultWebMapService;
 import org.geoserver.wms.GetMapOutputFormat;
 import org.geoserver.wms.GetMapRequest;
 import org.geoserver.wms.MapProducerCapabilities;
+import org.geoserver.wms.RenderingExecutor;
+import org.geoserver.wms.RenderingExecutor.Priority;
 import org.geoserver.wms.WMS;
 import org.geoserver.wms.WMSInfo;
 import org.geoserver.wms.WMSInfo.WMSInterpolation;
@@ -428,8 +431,11 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         graphic.setRenderingHints(hintsMap);
 
         RenderingHints hints = new RenderingHints(hintsMap);
-        StreamingRenderer renderer = buildRenderer();
-        renderer.setThreadPool(DefaultWebMapService.getRenderingPool());
+        StreamingRenderer renderer = buildTiledRenderer(mapContent, paintArea);
+        if (renderer == null) {
+            renderer = buildRenderer();
+            renderer.setThreadPool(getRenderingPool(request));
+        }
         renderer.setMapContent(mapContent);
         renderer.setJava2DHints(hints);
 
@@ -672,6 +678,50 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         return new StreamingRenderer();
     }
 
+    /** Key marking the GetMap requests issued by the tile cache (see GeoServerTileLayer) */
+    static final String GWC_SEED_INTERCEPT_TOKEN = "GWC_SEED_INTERCEPT";
+
+    /**
+     * Returns the rendering pool, with the request priority applied: tile cache requests are
+     * throughput oriented, and yield to the interactive ones
+     */
+    static ExecutorService getRenderingPool(GetMapRequest request) {
+        ExecutorService pool = DefaultWebMapService.getRenderingPool();
+        if (pool instanceof RenderingExecutor) {
+            pool = ((RenderingExecutor) pool).withPriority(getPriority(request));
+        }
+        return pool;
+    }
+
+    static Priority getPriority(GetMapRequest request) {
+        Map<String, String> rawKvp = request.getRawKvp();
+        boolean tileCache = rawKvp != null && rawKvp.containsKey(GWC_SEED_INTERCEPT_TOKEN);
+        return tileCache ? Priority.BATCH : Priority.INTERACTIVE;
+    }
+
+    /**
+     * Builds a renderer splitting the map in tiles painted in parallel, if the image is larger than
+     * the configured {@link WMS#getTiledRenderingThreshold()}, or returns null otherwise. Maps
+     * using the accurate scale computation are not tiled, as the scale would vary between tiles.
+     */
+    private StreamingRenderer buildTiledRenderer(WMSMapContent mapContent, Rectangle paintArea) {
+        int threshold = wms.getTiledRenderingThreshold();
+        ExecutorService pool = DefaultWebMapService.getRenderingPool();
+        if (threshold <= 0
+                || (long) paintArea.width * paintArea.height <= threshold
+                || !(pool instanceof RenderingExecutor)
+                || !StreamingRenderer.SCALE_OGC.equals(mapContent.getRendererScaleMethod())) {
+            return null;
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Rendering " + paintArea.width + "x" + paintArea.height + " map in tiles");
+        }
+        return new TiledStreamingRenderer(
+                this::buildRenderer,
+                (RenderingExecutor) pool,
+                getPriority(mapContent.getRequest()));
+    }
+
     private boolean getFormatOptionAsBoolean(
             final GetMapRequest request, final String formatOptionKey) {
         if (request.getFormatOptions().get(formatOptionKey) != null) {
@@ -816,10 +866,24 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
     /**
      * Sets up a {@link BufferedImage#TYPE_4BYTE_ABGR} if the paletteInverter is not provided, or a
      * indexed image otherwise. Subclasses may override this method should they need a special kind
-     * of image
+     * of image. The image is taken from the {@link CanvasBufferPool}, when enabled and the image is
+     * not going to outlive the request.
      */
     protected RenderedImage prepareImage(
             int width, int height, IndexColorModel palette, boolean transparent) {
+        CanvasBufferPool pool = CanvasBufferPool.get();
+        if (pool.isPoolable(this)) {
+            BufferedImage image =
+                    pool.createImage(
+                            width,
+                            height,
+                            isPaletteSupported() ? palette : null,
+                            transparent && isTransparencySupported(),
+                            getMimeType());
+            if (image != null) {
+                return image;
+            }
+        }
         return ImageUtils.createImage(
                 width,
                 height,
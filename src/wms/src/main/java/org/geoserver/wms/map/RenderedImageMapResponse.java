@@ -160,8 +160,20 @@ public abstract class RenderedImageMapResponse extends AbstractMapResponse {
             if (icm != null) {
                 image = forceIndexed8Bitmask(image, PaletteManager.getInverseColorMapOp(icm));
             } else if (palettedFormatCheck.apply(format)) {
-                // or format that needs palette to be applied?
-                image = forceIndexed8Bitmask(image, null);
+                // or format that needs palette to be applied? Reuse the one of similar maps
+                PaletteCache paletteCache = PaletteCache.get();
+                IndexColorModel cached = paletteCache.getPalette(mapContent, true);
+                if (cached != null) {
+                    image =
+                            forceIndexed8Bitmask(
+                                    image, PaletteManager.getInverseColorMapOp(cached));
+                } else {
+                    image = forceIndexed8Bitmask(image, null);
+                    if (image.getColorModel() instanceof IndexColorModel) {
+                        paletteCache.putPalette(
+                                mapContent, true, (IndexColorModel) image.getColorModel());
+                    }
+                }
             }
         } else {
             if (!(image.getColorModel() instanceof IndexColorModel)) {
@@ -177,8 +189,14 @@ public abstract class RenderedImageMapResponse extends AbstractMapResponse {
                 if (mapContent.getPalette() != null) {
                     indexer = new CachingColorIndexer(new LRUColorIndexer(icm, 1024));
                 } else if (palettedFormatCheck.apply(format)) {
-                    // build the palette and grab the optimized color indexer
-                    indexer = new Quantizer(256).subsample().buildColorIndexer(image);
+                    // reuse the palette of similar maps, or build it and grab the optimized
+                    // color indexer
+                    PaletteCache paletteCache = PaletteCache.get();
+                    indexer = paletteCache.getColorIndexer(mapContent, false);
+                    if (indexer == null) {
+                        indexer = new Quantizer(256).subsample().buildColorIndexer(image);
+                        paletteCache.putPalette(mapContent, false, indexer.toIndexColorModel());
+                    }
                 }
 
                 // if we have an indexer transform the image
@@ -0,0 +1,603 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geoserver.wms.RenderingExecutor;
+import org.geoserver.wms.RenderingExecutor.Priority;
+import org.geotools.geometry.jts.LiteShape2;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.Layer;
+import org.geotools.referencing.operation.transform.ProjectiveTransform;
+import org.geotools.renderer.RenderListener;
+import org.geotools.renderer.label.LabelCacheImpl;
+import org.geotools.renderer.label.LabelCacheImpl.LabelRenderingMode;
+import org.geotools.renderer.lite.LabelCache;
+import org.geotools.renderer.lite.StreamingRenderer;
+import org.geotools.styling.TextSymbolizer;
+import org.geotools.util.NumberRange;
+import org.geotools.util.logging.Logging;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Polygonal;
+import org.locationtech.jts.operation.union.CascadedPolygonUnion;
+import org.opengis.feature.Feature;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * A {@link StreamingRenderer} splitting the paint area in a grid of tiles, rendered concurrently in
+ * the {@link RenderingExecutor} by independent renderers, each painting its own portion of the
+ * target graphics.
+ *
+ * <p>Labels are not painted by the tile renderers, but collected and painted once, at the end, on
+ * the whole image, so that they are not cut at the tile seams. A feature labelled by more than one
+ * tile is labelled only once, with the polygons seen by the different tiles merged back, and the
+ * other geometries taken from the first tile in grid order. The events of the tile renderers are
+ * relayed to the listeners of this renderer, with each layer starting when the first tile starts
+ * it, and ending when the last one completes it.
+ *
+ * <p>The tile renderers do not use the rendering pool to paint layers in parallel, as waiting on
+ * the pool from within the pool could exhaust it.
+ */
+public class TiledStreamingRenderer extends StreamingRenderer {
+
+    static final Logger LOGGER = Logging.getLogger(TiledStreamingRenderer.class);
+
+    Supplier<StreamingRenderer> rendererFactory;
+
+    RenderingExecutor executor;
+
+    Priority priority;
+
+    List<RenderListener> listeners = new CopyOnWriteArrayList<>();
+
+    List<StreamingRenderer> tileRenderers = new CopyOnWriteArrayList<>();
+
+    volatile boolean stopped;
+
+    /**
+     * Builds a new tiled renderer
+     *
+     * @param rendererFactory builds the renderers painting the single tiles
+     * @param executor the pool the tiles are rendered into
+     * @param priority the priority of the tile rendering tasks
+     */
+    public TiledStreamingRenderer(
+            Supplier<StreamingRenderer> rendererFactory,
+            RenderingExecutor executor,
+            Priority priority) {
+        this.rendererFactory = rendererFactory;
+        this.executor = executor;
+        this.priority = priority;
+    }
+
+    @Override
+    public void addRenderListener(RenderListener listener) {
+        super.addRenderListener(listener);
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeRenderListener(RenderListener listener) {
+        super.removeRenderListener(listener);
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void stopRendering() {
+        stopped = true;
+        for (StreamingRenderer renderer : tileRenderers) {
+            renderer.stopRendering();
+        }
+        super.stopRendering();
+    }
+
+    /**
+     * Splits the paint area in a grid with roughly as many tiles as the threads a single request
+     * can use, trying to keep the tiles square to limit the data read more than once
+     */
+    List<Rectangle> getTiles(Rectangle paintArea) {
+        int count = executor.getMaxRequestParallelism();
+        int cols =
+                (int)
+                        Math.max(
+                                1,
+                                Math.round(
+                                        Math.sqrt(
+                                                count
+                                                        * paintArea.getWidth()
+                                                        / paintArea.getHeight())));
+        int rows = Math.max(1, (int) Math.ceil(count / (double) cols));
+        int tileWidth = (int) Math.ceil(paintArea.width / (double) cols);
+        int tileHeight = (int) Math.ceil(paintArea.height / (double) rows);
+        List<Rectangle> tiles = new ArrayList<>();
+        for (int y = 0; y < paintArea.height; y += tileHeight) {
+            for (int x = 0; x < paintArea.width; x += tileWidth) {
+                tiles.add(
+                        new Rectangle(
+                                paintArea.x + x,
+                                paintArea.y + y,
+                                Math.min(tileWidth, paintArea.width - x),
+                                Math.min(tileHeight, paintArea.height - y)));
+            }
+        }
+        return tiles;
+    }
+
+    @Override
+    public void paint(
+            Graphics2D graphics,
+            Rectangle paintArea,
+            ReferencedEnvelope mapArea,
+            AffineTransform worldToScreen) {
+        List<Rectangle> tiles = getTiles(paintArea);
+        if (tiles.size() < 2) {
+            super.paint(graphics, paintArea, mapArea, worldToScreen);
+            return;
+        }
+
+        AffineTransform screenToWorld;
+        try {
+            screenToWorld = worldToScreen.createInverse();
+        } catch (NoninvertibleTransformException e) {
+            fireError(e);
+            return;
+        }
+
+        LabelCache labelCache = getLabelCache();
+        TileLabelCollector collector = new TileLabelCollector();
+        TileListener tileListener = new TileListener(tiles.size());
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < tiles.size(); i++) {
+            final int index = i;
+            final Rectangle tile = tiles.get(i);
+            tasks.add(
+                    () -> {
+                        if (!stopped) {
+                            paintTile(
+                                    graphics,
+                                    tile,
+                                    index,
+                                    mapArea,
+                                    worldToScreen,
+                                    screenToWorld,
+                                    collector,
+                                    tileListener);
+                        }
+                        return null;
+                    });
+        }
+
+        for (Future<Void> future : executor.submitAll(tasks, priority)) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopRendering();
+                return;
+            } catch (ExecutionException e) {
+                fireError(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+            }
+        }
+
+        if (!stopped) {
+            for (RenderListener listener : listeners) {
+                listener.labellingStart();
+            }
+            collector.paint(labelCache, graphics, paintArea);
+            for (RenderListener listener : listeners) {
+                listener.labellingEnd();
+            }
+        }
+        for (RenderListener listener : listeners) {
+            listener.renderingComplete();
+        }
+    }
+
+    /** Returns the label cache provided in the hints, or a new one configured like the tiles */
+    private LabelCache getLabelCache() {
+        Map<?, ?> hints = getRendererHints();
+        LabelCache labelCache = hints != null ? (LabelCache) hints.get(LABEL_CACHE_KEY) : null;
+        if (labelCache == null) {
+            labelCache = new LabelCacheImpl();
+            Object mode = hints != null ? hints.get(TEXT_RENDERING_KEY) : null;
+            if (mode instanceof String) {
+                ((LabelCacheImpl) labelCache)
+                        .setLabelRenderingMode(LabelRenderingMode.valueOf((String) mode));
+            }
+        }
+        return labelCache;
+    }
+
+    /**
+     * Paints a single tile. The tile renderer works in tile coordinates, on a copy of the target
+     * graphics translated and clipped to the tile
+     */
+    private void paintTile(
+            Graphics2D graphics,
+            Rectangle tile,
+            int index,
+            ReferencedEnvelope mapArea,
+            AffineTransform worldToScreen,
+            AffineTransform screenToWorld,
+            TileLabelCollector collector,
+            TileListener tileListener) {
+        Rectangle2D tileBounds = screenToWorld.createTransformedShape(tile).getBounds2D();
+        ReferencedEnvelope tileArea =
+                new ReferencedEnvelope(tileBounds, mapArea.getCoordinateReferenceSystem());
+        AffineTransform tileTransform = AffineTransform.getTranslateInstance(-tile.x, -tile.y);
+        tileTransform.concatenate(worldToScreen);
+
+        StreamingRenderer renderer = rendererFactory.get();
+        renderer.setMapContent(getMapContent());
+        renderer.setJava2DHints(getJava2DHints());
+        Map<Object, Object> hints = new HashMap<>();
+        if (getRendererHints() != null) {
+            hints.putAll(getRendererHints());
+        }
+        hints.put(LABEL_CACHE_KEY, collector.forTile(index, tile));
+        renderer.setRendererHints(hints);
+        renderer.addRenderListener(tileListener);
+        tileRenderers.add(renderer);
+        if (stopped) {
+            return;
+        }
+
+        Graphics2D tileGraphics = (Graphics2D) graphics.create();
+        try {
+            tileGraphics.translate(tile.x, tile.y);
+            tileGraphics.clipRect(0, 0, tile.width, tile.height);
+            renderer.paint(
+                    tileGraphics,
+                    new Rectangle(0, 0, tile.width, tile.height),
+                    tileArea,
+                    tileTransform);
+        } finally {
+            tileGraphics.dispose();
+            tileRenderers.remove(renderer);
+        }
+    }
+
+    private void fireError(Exception e) {
+        LOGGER.log(Level.FINE, "Tiled rendering failed", e);
+        for (RenderListener listener : listeners) {
+            listener.errorOccurred(e);
+        }
+    }
+
+    /**
+     * Relays the events of the tile renderers to the listeners of this renderer, merging the layer
+     * events of the different tiles
+     */
+    class TileListener implements RenderListener {
+
+        int tiles;
+
+        Map<Layer, Integer> started = new IdentityHashMap<>();
+
+        Map<Layer, Integer> ended = new IdentityHashMap<>();
+
+        TileListener(int tiles) {
+            this.tiles = tiles;
+        }
+
+        @Override
+        public synchronized void featureRenderer(SimpleFeature feature) {
+            for (RenderListener listener : listeners) {
+                listener.featureRenderer(feature);
+            }
+        }
+
+        @Override
+        public synchronized void errorOccurred(Exception e) {
+            for (RenderListener listener : listeners) {
+                listener.errorOccurred(e);
+            }
+        }
+
+        @Override
+        public synchronized void layerStart(Layer layer) {
+            if (started.merge(layer, 1, Integer::sum) == 1) {
+                for (RenderListener listener : listeners) {
+                    listener.layerStart(layer);
+                }
+            }
+        }
+
+        @Override
+        public synchronized void layerEnd(Layer layer) {
+            if (ended.merge(layer, 1, Integer::sum) == tiles) {
+                for (RenderListener listener : listeners) {
+                    listener.layerEnd(layer);
+                }
+            }
+        }
+
+        @Override
+        public void labellingStart() {
+            // labels are painted once by the tiled renderer
+        }
+
+        @Override
+        public void labellingEnd() {
+            // labels are painted once by the tiled renderer
+        }
+
+        @Override
+        public void renderingComplete() {
+            // completion is notified once by the tiled renderer
+        }
+    }
+
+    /** A label, as put by a tile renderer, in image coordinates */
+    static class TileLabel {
+        int tile;
+
+        Object featureKey;
+
+        TextSymbolizer symbolizer;
+
+        Feature feature;
+
+        LiteShape2 shape;
+
+        NumberRange<Double> scaleRange;
+
+        Rectangle2D area;
+    }
+
+    /**
+     * Collects the labels of all the tiles, by layer, and replays them on the target label cache
+     * once all the tiles have been rendered, skipping the duplicates
+     */
+    static class TileLabelCollector {
+
+        Map<String, List<TileLabel>> labels = new LinkedHashMap<>();
+
+        Map<Object, List<TileLabel>> features = new HashMap<>();
+
+        List<String> disabledLayers = new ArrayList<>();
+
+        synchronized void startLayer(String layerId) {
+            labels.computeIfAbsent(layerId, id -> new ArrayList<>());
+        }
+
+        synchronized void add(String layerId, TileLabel label) {
+            labels.computeIfAbsent(layerId, id -> new ArrayList<>()).add(label);
+            if (label.featureKey != null) {
+                features.computeIfAbsent(label.featureKey, k -> new ArrayList<>()).add(label);
+            }
+        }
+
+        synchronized void disableLayer(String layerId) {
+            if (!disabledLayers.contains(layerId)) {
+                disabledLayers.add(layerId);
+            }
+        }
+
+        synchronized void enableLayer(String layerId) {
+            disabledLayers.remove(layerId);
+        }
+
+        /** Replays the labels on the target cache, and paints them */
+        synchronized void paint(LabelCache target, Graphics2D graphics, Rectangle paintArea) {
+            target.start();
+            for (String layerId : disabledLayers) {
+                target.disableLayer(layerId);
+            }
+            for (Map.Entry<String, List<TileLabel>> entry : labels.entrySet()) {
+                String layerId = entry.getKey();
+                List<TileLabel> layerLabels = new ArrayList<>(entry.getValue());
+                // make the outcome independent of the tile completion order
+                layerLabels.sort((l1, l2) -> Integer.compare(l1.tile, l2.tile));
+                target.startLayer(layerId);
+                for (TileLabel label : layerLabels) {
+                    if (label.area != null) {
+                        target.put(label.area);
+                    } else if (label.featureKey == null) {
+                        target.put(
+                                layerId,
+                                label.symbolizer,
+                                label.feature,
+                                label.shape,
+                                label.scaleRange);
+                    } else {
+                        List<TileLabel> copies = features.get(label.featureKey);
+                        if (copies.stream().allMatch(l -> l.tile >= label.tile)) {
+                            target.put(
+                                    layerId,
+                                    label.symbolizer,
+                                    label.feature,
+                                    getShape(label, copies),
+                                    label.scaleRange);
+                        }
+                    }
+                }
+                target.endLayer(layerId, graphics, paintArea);
+            }
+            target.end(graphics, paintArea);
+        }
+
+        /**
+         * Returns the shape to label. Polygons labelled by multiple tiles are merged back, as the
+         * label is placed against the visible portion of the polygon, and each tile only sees the
+         * part falling inside it. Other geometries use the copy of the first tile.
+         */
+        private LiteShape2 getShape(TileLabel label, List<TileLabel> copies) {
+            if (copies.size() < 2) {
+                return label.shape;
+            }
+            List<Geometry> geometries = new ArrayList<>();
+            Set<Integer> tiles = new HashSet<>();
+            for (TileLabel copy : copies) {
+                Geometry geometry = copy.shape.getGeometry();
+                if (!(geometry instanceof Polygonal) || !tiles.add(copy.tile)) {
+                    // not a polygon, or the same feature labelled more than once in a tile,
+                    // e.g., due to map wrapping
+                    return label.shape;
+                }
+                geometries.add(geometry);
+            }
+            try {
+                return new LiteShape2(CascadedPolygonUnion.union(geometries), null, null, false);
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Could not merge the tile label geometries", e);
+                return label.shape;
+            }
+        }
+
+        /** Returns the label cache a tile renderer puts its labels into */
+        LabelCache forTile(int tile, Rectangle bounds) {
+            AffineTransform toImage = AffineTransform.getTranslateInstance(bounds.x, bounds.y);
+            return new LabelCache() {
+
+                @Override
+                public void start() {
+                    // started once when painting
+                }
+
+                @Override
+                public void startLayer(String layerId) {
+                    TileLabelCollector.this.startLayer(layerId);
+                }
+
+                @Override
+                public void put(
+                        String layerId,
+                        TextSymbolizer symbolizer,
+                        Feature feature,
+                        LiteShape2 shape,
+                        NumberRange<Double> scaleRange) {
+                    TileLabel label = new TileLabel();
+                    label.tile = tile;
+                    label.symbolizer = symbolizer;
+                    label.feature = feature;
+                    label.scaleRange = scaleRange;
+                    if (feature != null && feature.getIdentifier() != null) {
+                        label.featureKey =
+                                new FeatureKey(
+                                        layerId, symbolizer, feature.getIdentifier().getID());
+                    }
+                    try {
+                        label.shape =
+                                new LiteShape2(
+                                        shape.getGeometry(),
+                                        ProjectiveTransform.create(toImage),
+                                        null,
+                                        false);
+                    } catch (Exception e) {
+                        LOGGER.log(Level.FINE, "Could not move label to image coordinates", e);
+                        return;
+                    }
+                    add(layerId, label);
+                }
+
+                @Override
+                public void put(Rectangle2D area) {
+                    TileLabel label = new TileLabel();
+                    label.tile = tile;
+                    label.area = toImage.createTransformedShape(area).getBounds2D();
+                    // obstacles are not tied to a layer, keep them along the first one
+                    synchronized (TileLabelCollector.this) {
+                        String layerId = labels.isEmpty() ? "" : labels.keySet().iterator().next();
+                        add(layerId, label);
+                    }
+                }
+
+                @Override
+                public void endLayer(String layerId, Graphics2D graphics, Rectangle displayArea) {
+                    // painted once when all tiles are done
+                }
+
+                @Override
+                public void end(Graphics2D graphics, Rectangle displayArea) {
+                    // painted once when all tiles are done
+                }
+
+                @Override
+                public void stop() {
+                    // the tiled renderer stops all the tiles
+                }
+
+                @Override
+                public void clear() {
+                    // labels are collected across tiles
+                }
+
+                @Override
+                public void clear(String layerId) {
+                    // labels are collected across tiles
+                }
+
+                @Override
+                public void enableLayer(String layerId) {
+                    TileLabelCollector.this.enableLayer(layerId);
+                }
+
+                @Override
+                public void disableLayer(String layerId) {
+                    TileLabelCollector.this.disableLayer(layerId);
+                }
+
+                @Override
+                @SuppressWarnings("rawtypes")
+                public List orderedLabels() {
+                    return new ArrayList<>();
+                }
+            };
+        }
+    }
+
+    /** Identifies the same label requested by different tiles */
+    static class FeatureKey {
+        String layerId;
+
+        TextSymbolizer symbolizer;
+
+        String featureId;
+
+        FeatureKey(String layerId, TextSymbolizer symbolizer, String featureId) {
+            this.layerId = layerId;
+            this.symbolizer = symbolizer;
+            this.featureId = featureId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FeatureKey)) {
+                return false;
+            }
+            FeatureKey other = (FeatureKey) o;
+            // symbolizers are compared by identity, equals is expensive and they are shared
+            return symbolizer == other.symbolizer
+                    && layerId.equals(other.layerId)
+                    && featureId.equals(other.featureId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * layerId.hashCode() + System.identityHashCode(symbolizer))
+                    + featureId.hashCode();
+        }
+    }
+}
@@ -0,0 +1,476 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map.png;
+
+import java.awt.Rectangle;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import org.geoserver.wms.RenderingExecutor;
+import org.geoserver.wms.RenderingExecutor.Priority;
+
+/**
+ * Encodes 8 bit per sample images in PNG, splitting the image data in bands of rows that are
+ * filtered and deflated in parallel, pigz style, and then concatenated in a single zlib stream.
+ *
+ * <p>Each band but the last is terminated by a sync flush, so that the deflate streams can be
+ * concatenated, and is primed with the last 32KB of filtered data of the previous band, so the
+ * compression ratio stays close to the one of a serial encoder. The scanline filter is chosen row
+ * by row, using the minimum sum of absolute differences heuristic suggested by the PNG
+ * specification. Palette images are not filtered, as suggested by the same specification.
+ *
+ * <p>Only images with byte samples and a gray, RGB or palette color model are supported, see {@link
+ * #isSupported(RenderedImage)}, the others should be encoded with {@link PNGJWriter}.
+ */
+public class ParallelPNGWriter {
+
+    /** The default amount of raw image data compressed by a single task */
+    public static final int DEFAULT_BAND_SIZE = 256 * 1024;
+
+    static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+
+    static final int DICTIONARY_SIZE = 32 * 1024;
+
+    static final int FILTER_NONE = 0;
+
+    static final int FILTER_SUB = 1;
+
+    static final int FILTER_UP = 2;
+
+    static final int FILTER_AVERAGE = 3;
+
+    static final int FILTER_PAETH = 4;
+
+    /** Deflaters are expensive to build and hold native memory, keep one per thread and level */
+    static final ThreadLocal<Deflater[]> DEFLATERS =
+            ThreadLocal.withInitial(() -> new Deflater[Deflater.BEST_COMPRESSION + 1]);
+
+    RenderingExecutor executor;
+
+    Priority priority;
+
+    int bandSize = DEFAULT_BAND_SIZE;
+
+    /**
+     * Builds a new writer
+     *
+     * @param executor the pool used to compress the bands in parallel, if null the image will be
+     *     encoded serially in the calling thread
+     * @param priority the priority of the compression tasks
+     */
+    public ParallelPNGWriter(RenderingExecutor executor, Priority priority) {
+        this.executor = executor;
+        this.priority = priority;
+    }
+
+    /** Sets the amount of raw image data compressed by a single task */
+    public void setBandSize(int bandSize) {
+        this.bandSize = bandSize;
+    }
+
+    /** Returns true if the image can be encoded by this writer */
+    public static boolean isSupported(RenderedImage image) {
+        return getColorType(image) >= 0;
+    }
+
+    /**
+     * Returns the PNG color type matching the image, or -1 if the image cannot be encoded by this
+     * writer
+     */
+    static int getColorType(RenderedImage image) {
+        SampleModel sm = image.getSampleModel();
+        ColorModel cm = image.getColorModel();
+        if (sm.getDataType() != DataBuffer.TYPE_BYTE
+                || !(sm instanceof ComponentSampleModel)
+                || cm == null) {
+            return -1;
+        }
+        for (int size : sm.getSampleSize()) {
+            if (size != 8) {
+                return -1;
+            }
+        }
+        if (cm instanceof IndexColorModel) {
+            return sm.getNumBands() == 1 ? 3 : -1;
+        } else if (cm instanceof ComponentColorModel
+                && !cm.isAlphaPremultiplied()
+                && sm.getNumBands() == cm.getNumComponents()) {
+            ColorSpace cs = cm.getColorSpace();
+            int colorBands = sm.getNumBands() - (cm.hasAlpha() ? 1 : 0);
+            if (cs.getType() == ColorSpace.TYPE_GRAY && colorBands == 1) {
+                return cm.hasAlpha() ? 4 : 0;
+            } else if (cs.isCS_sRGB() && colorBands == 3) {
+                return cm.hasAlpha() ? 6 : 2;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Encodes the image
+     *
+     * @param image the image, must be supported according to {@link #isSupported(RenderedImage)}
+     * @param out the target stream
+     * @param quality the quality, between 0 (best compression) and 1 (fastest encoding)
+     */
+    public void writePNG(RenderedImage image, OutputStream out, float quality) throws IOException {
+        int colorType = getColorType(image);
+        if (colorType < 0) {
+            throw new IllegalArgumentException("Unsupported image layout, cannot encode it");
+        }
+        int level = Math.round(Deflater.BEST_COMPRESSION * (1 - quality));
+        level = Math.max(Deflater.BEST_SPEED, Math.min(Deflater.BEST_COMPRESSION, level));
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int bpp = image.getSampleModel().getNumBands();
+        int rowSize = width * bpp + 1;
+
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.write(SIGNATURE);
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        DataOutputStream hos = new DataOutputStream(header);
+        hos.writeInt(width);
+        hos.writeInt(height);
+        hos.writeByte(8);
+        hos.writeByte(colorType);
+        hos.writeByte(0); // deflate compression
+        hos.writeByte(0); // adaptive filtering
+        hos.writeByte(0); // no interlace
+        writeChunk(dos, "IHDR", header.toByteArray());
+        if (colorType == 3) {
+            writePalette(dos, (IndexColorModel) image.getColorModel());
+        }
+
+        // split the image in bands of rows, each compressed by a separate task
+        int bandRows = Math.max(1, bandSize / rowSize);
+        List<Band> bands = new ArrayList<>();
+        for (int y = 0; y < height; y += bandRows) {
+            bands.add(new Band(image, y, Math.min(height, y + bandRows), level, colorType == 3));
+        }
+        bands.get(bands.size() - 1).last = true;
+        List<Band> results = compress(bands);
+
+        // the bands are parts of a single zlib stream, the header goes in front of the first
+        // one, and the checksum of the whole data after the last one
+        long adler = 1;
+        for (Band band : results) {
+            adler = adler32Combine(adler, band.adler, band.rawLength);
+        }
+        Band lastBand = results.get(results.size() - 1);
+        lastBand.compressed = Arrays.copyOf(lastBand.compressed, lastBand.compressedLength + 4);
+        for (int i = 0; i < 4; i++) {
+            lastBand.compressed[lastBand.compressedLength++] = (byte) (adler >>> (24 - i * 8));
+        }
+        for (Band band : results) {
+            writeChunk(dos, "IDAT", band.compressed, band.compressedLength);
+        }
+        writeChunk(dos, "IEND", new byte[0]);
+        dos.flush();
+    }
+
+    private List<Band> compress(List<Band> bands) throws IOException {
+        if (executor == null || bands.size() == 1) {
+            for (Band band : bands) {
+                band.call();
+            }
+            return bands;
+        }
+        List<Future<Band>> futures = executor.submitAll(bands, priority);
+        List<Band> results = new ArrayList<>(bands.size());
+        try {
+            for (Future<Band> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while encoding the PNG", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to encode the PNG", e.getCause());
+        } finally {
+            for (Future<Band> future : futures) {
+                future.cancel(false);
+            }
+        }
+        return results;
+    }
+
+    private void writePalette(DataOutputStream dos, IndexColorModel icm) throws IOException {
+        int size = icm.getMapSize();
+        byte[] palette = new byte[size * 3];
+        byte[] alphas = new byte[size];
+        int lastTranslucent = -1;
+        for (int i = 0; i < size; i++) {
+            palette[i * 3] = (byte) icm.getRed(i);
+            palette[i * 3 + 1] = (byte) icm.getGreen(i);
+            palette[i * 3 + 2] = (byte) icm.getBlue(i);
+            alphas[i] = (byte) icm.getAlpha(i);
+            if (icm.getAlpha(i) != 255) {
+                lastTranslucent = i;
+            }
+        }
+        writeChunk(dos, "PLTE", palette);
+        if (lastTranslucent >= 0) {
+            byte[] trns = new byte[lastTranslucent + 1];
+            System.arraycopy(alphas, 0, trns, 0, trns.length);
+            writeChunk(dos, "tRNS", trns);
+        }
+    }
+
+    private static void writeChunk(DataOutputStream dos, String type, byte[] data)
+            throws IOException {
+        writeChunk(dos, type, data, data.length);
+    }
+
+    private static void writeChunk(DataOutputStream dos, String type, byte[] data, int length)
+            throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        dos.writeInt(length);
+        dos.write(typeBytes);
+        dos.write(data, 0, length);
+        dos.writeInt((int) crc.getValue());
+    }
+
+    /** Returns the two bytes zlib header for a deflate stream with a 32KB window */
+    static byte[] getZlibHeader(int level) {
+        int cmf = 0x78;
+        int flevel = level < 2 ? 0 : level < 6 ? 1 : level == 6 ? 2 : 3;
+        int flg = flevel << 6;
+        flg += (31 - (cmf * 256 + flg) % 31) % 31;
+        return new byte[] {(byte) cmf, (byte) flg};
+    }
+
+    /**
+     * Computes the Adler-32 checksum of the concatenation of two sequences, given their checksums
+     * and the length of the second one, as in zlib adler32_combine
+     */
+    static long adler32Combine(long adler1, long adler2, long length2) {
+        final long base = 65521;
+        long rem = length2 % base;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % base;
+        sum1 += (adler2 & 0xffff) + base - 1;
+        sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + base - rem;
+        if (sum1 >= base) sum1 -= base;
+        if (sum1 >= base) sum1 -= base;
+        if (sum2 >= (base << 1)) sum2 -= (base << 1);
+        if (sum2 >= base) sum2 -= base;
+        return sum1 | (sum2 << 16);
+    }
+
+    static Deflater getDeflater(int level) {
+        Deflater[] deflaters = DEFLATERS.get();
+        Deflater deflater = deflaters[level];
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+            deflaters[level] = deflater;
+        } else {
+            deflater.reset();
+        }
+        return deflater;
+    }
+
+    /** A band of rows, filtered and compressed as a unit */
+    static class Band implements Callable<Band> {
+        final RenderedImage image;
+        final int minRow;
+        final int maxRow;
+        final int level;
+        final boolean palette;
+        boolean last;
+
+        byte[] compressed;
+        int compressedLength;
+        long adler;
+        int rawLength;
+
+        Band(RenderedImage image, int minRow, int maxRow, int level, boolean palette) {
+            this.image = image;
+            this.minRow = minRow;
+            this.maxRow = maxRow;
+            this.level = level;
+            this.palette = palette;
+        }
+
+        @Override
+        public Band call() throws IOException {
+            int bpp = image.getSampleModel().getNumBands();
+            int rowSize = image.getWidth() * bpp + 1;
+            // the rows before the band are needed to filter the first one, and to build the
+            // dictionary, the data the previous band compressed last
+            int dictionaryRows = minRow == 0 ? 0 : (DICTIONARY_SIZE + rowSize - 1) / rowSize;
+            int firstRow = Math.max(0, minRow - dictionaryRows - (palette ? 0 : 1));
+            Raster raster = getRaster(firstRow, maxRow);
+
+            byte[] filtered = new byte[rowSize * (maxRow - firstRow)];
+            byte[] previous = new byte[rowSize - 1];
+            byte[] current = new byte[rowSize - 1];
+            int offset = 0;
+            for (int y = firstRow; y < maxRow; y++) {
+                raster.getDataElements(
+                        image.getMinX(), image.getMinY() + y, image.getWidth(), 1, current);
+                if (palette) {
+                    filtered[offset] = FILTER_NONE;
+                    System.arraycopy(current, 0, filtered, offset + 1, current.length);
+                } else {
+                    filterRow(current, y == 0 ? null : previous, bpp, filtered, offset);
+                }
+                offset += rowSize;
+                byte[] swap = previous;
+                previous = current;
+                current = swap;
+            }
+            int start = (minRow - firstRow) * rowSize;
+            rawLength = filtered.length - start;
+            Adler32 checksum = new Adler32();
+            checksum.update(filtered, start, rawLength);
+            adler = checksum.getValue();
+
+            Deflater deflater = getDeflater(level);
+            if (start > 0) {
+                int dictionaryLength = Math.min(start, DICTIONARY_SIZE);
+                deflater.setDictionary(filtered, start - dictionaryLength, dictionaryLength);
+            }
+            deflater.setInput(filtered, start, rawLength);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(rawLength / 4 + 64);
+            if (minRow == 0) {
+                bos.write(getZlibHeader(level));
+            }
+            byte[] buffer = new byte[16 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(buffer);
+                    bos.write(buffer, 0, count);
+                }
+            } else {
+                // a sync flush ends the data on a byte boundary, so that the next band can follow
+                int count;
+                do {
+                    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    bos.write(buffer, 0, count);
+                } while (count == buffer.length);
+            }
+            compressed = bos.toByteArray();
+            compressedLength = compressed.length;
+            return this;
+        }
+
+        private Raster getRaster(int firstRow, int maxRow) {
+            if (image instanceof BufferedImage) {
+                return ((BufferedImage) image).getRaster();
+            }
+            return image.getData(
+                    new Rectangle(
+                            image.getMinX(),
+                            image.getMinY() + firstRow,
+                            image.getWidth(),
+                            maxRow - firstRow));
+        }
+    }
+
+    /**
+     * Filters the row with the filter type having the minimum sum of absolute differences, writing
+     * the filter type and the filtered row in the target at the given offset
+     *
+     * @param row the row samples
+     * @param prior the previous row samples, or null if this is the first row
+     * @param bpp the bytes per pixel
+     */
+    static void filterRow(byte[] row, byte[] prior, int bpp, byte[] target, int offset) {
+        int length = row.length;
+        // estimate the cost of each filter in a single pass
+        long none = 0, sub = 0, up = 0, average = 0, paeth = 0;
+        for (int i = 0; i < length; i++) {
+            int x = row[i] & 0xff;
+            int a = i >= bpp ? row[i - bpp] & 0xff : 0;
+            int b = prior != null ? prior[i] & 0xff : 0;
+            int c = prior != null && i >= bpp ? prior[i - bpp] & 0xff : 0;
+            none += Math.abs((byte) x);
+            sub += Math.abs((byte) (x - a));
+            up += Math.abs((byte) (x - b));
+            average += Math.abs((byte) (x - ((a + b) >> 1)));
+            paeth += Math.abs((byte) (x - paethPredictor(a, b, c)));
+        }
+        int type = FILTER_NONE;
+        long min = none;
+        if (sub < min) {
+            type = FILTER_SUB;
+            min = sub;
+        }
+        if (up < min) {
+            type = FILTER_UP;
+            min = up;
+        }
+        if (average < min) {
+            type = FILTER_AVERAGE;
+            min = average;
+        }
+        if (paeth < min) {
+            type = FILTER_PAETH;
+        }
+
+        target[offset++] = (byte) type;
+        for (int i = 0; i < length; i++) {
+            int x = row[i] & 0xff;
+            int a = i >= bpp ? row[i - bpp] & 0xff : 0;
+            int b = prior != null ? prior[i] & 0xff : 0;
+            int c = prior != null && i >= bpp ? prior[i - bpp] & 0xff : 0;
+            int predicted;
+            switch (type) {
+                case FILTER_SUB:
+                    predicted = a;
+                    break;
+                case FILTER_UP:
+                    predicted = b;
+                    break;
+                case FILTER_AVERAGE:
+                    predicted = (a + b) >> 1;
+                    break;
+                case FILTER_PAETH:
+                    predicted = paethPredictor(a, b, c);
+                    break;
+                default:
+                    predicted = 0;
+            }
+            target[offset + i] = (byte) (x - predicted);
+        }
+    }
+
+    static int paethPredictor(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        } else if (pb <= pc) {
+            return b;
+        }
+        return c;
+    }
+}
@@ -5,16 +5,21 @@
 package org.geoserver.wms.utfgrid;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
-import java.io.PrintWriter;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import net.sf.json.util.JSONBuilder;
-import net.sf.json.util.JSONStringer;
 import org.geoserver.wms.map.RawMap;
 import org.geoserver.wms.utfgrid.UTFGridEntries.UTFGridEntry;
 import org.geotools.util.Converters;
@@ -37,46 +42,48 @@ public class UTFGridMap extends RawMap {
     public void writeTo(java.io.OutputStream out) throws java.io.IOException {
         UTFGridEntries entries = getEntries();
 
-        PrintWriter pw = new PrintWriter(out);
-        pw.println("{");
-        pw.println("\"grid\": [");
-        List<UTFGridEntry> encodedEntries = writeGrid(pw, image, entries);
-        pw.println("],");
-        pw.println("\"keys\": [");
+        // JSON is UTF-8, and the grid is written a row at a time, the writer needs no locking
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write("{\n");
+        writer.write("\"grid\": [\n");
+        List<UTFGridEntry> encodedEntries = writeGrid(writer, image, entries);
+        writer.write("],\n");
+        writer.write("\"keys\": [\n");
         if (encodedEntries.isEmpty()) {
-            pw.println("  \"\"");
+            writer.write("  \"\"\n");
         } else {
-            pw.println("  \"\",");
+            writer.write("  \"\",\n");
             for (Iterator<UTFGridEntry> it = encodedEntries.iterator(); it.hasNext(); ) {
-                UTFGridEntry entry = (UTFGridEntry) it.next();
-                pw.print("  \"");
-                pw.print(entry.getKey());
+                UTFGridEntry entry = it.next();
+                writer.write("  \"");
+                writer.write(String.valueOf(entry.getKey()));
                 if (it.hasNext()) {
-                    pw.println("\",");
+                    writer.write("\",\n");
                 } else {
-                    pw.println("\"");
+                    writer.write("\"\n");
                 }
             }
         }
-        pw.println("],");
-        pw.println("\"data\": {");
+        writer.write("],\n");
+        writer.write("\"data\": {\n");
         for (Iterator<UTFGridEntry> it = encodedEntries.iterator(); it.hasNext(); ) {
-            UTFGridEntry entry = (UTFGridEntry) it.next();
-            pw.print("  \"");
-            pw.print(entry.getKey());
-            pw.print("\" : ");
-            pw.print(getAttributesJson(entry.getFeature()));
+            UTFGridEntry entry = it.next();
+            writer.write("  \"");
+            writer.write(String.valueOf(entry.getKey()));
+            writer.write("\" : ");
+            // stream the attributes, no need to build a string for each feature
+            writeAttributesJson(writer, entry.getFeature());
             if (it.hasNext()) {
-                pw.println(",");
+                writer.write(",\n");
             }
         }
-        pw.println("}");
-        pw.println("}");
-        pw.flush();
+        writer.write("}\n");
+        writer.write("}\n");
+        writer.flush();
     }
 
-    private String getAttributesJson(Feature feature) {
-        JSONBuilder builder = new JSONStringer().object();
+    private void writeAttributesJson(Writer writer, Feature feature) {
+        JSONBuilder builder = new JSONBuilder(writer).object();
         builder.key("id").value(feature.getIdentifier().toString());
         if (feature instanceof SimpleFeature) {
             SimpleFeature sf = (SimpleFeature) feature;
@@ -101,7 +108,6 @@ public class UTFGridMap extends RawMap {
         }
 
         builder.endObject();
-        return builder.toString();
     }
 
     private void addAttribute(JSONBuilder builder, String name, Object value) {
@@ -115,25 +121,47 @@ public class UTFGridMap extends RawMap {
      * Writes the grid, and maps the original values into a compact sequence of keys (the original
      * values might be sparse due to features being fully overwritten by other features)
      */
-    private List<UTFGridEntry> writeGrid(
-            PrintWriter pw, RenderedImage image, UTFGridEntries entries) {
-        Map<Integer, UTFGridEntry> keyToFeature = entries.getEntryMap();
+    private List<UTFGridEntry> writeGrid(Writer writer, RenderedImage image, UTFGridEntries entries)
+            throws IOException {
+        UTFGridEntry[] valueToEntry = entries.getEntryArray();
         List<UTFGridEntry> result = new ArrayList<UTFGridEntry>();
 
         int key = 1;
         Raster data = getData(image);
         int width = data.getWidth();
-        int[] pixels = new int[width];
         int height = data.getHeight();
+        // the feature values, read straight from the canvas when possible
+        int[] pixels = getPixels(data);
+        boolean direct = pixels != null;
+        int scanlineStride = width;
+        int offset = 0;
+        if (direct) {
+            SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) data.getSampleModel();
+            scanlineStride = sm.getScanlineStride();
+            offset =
+                    data.getDataBuffer().getOffset()
+                            + (data.getMinY() - data.getSampleModelTranslateY()) * scanlineStride
+                            + (data.getMinX() - data.getSampleModelTranslateX());
+        } else {
+            pixels = new int[width];
+        }
+        char[] row = new char[width + 3];
         for (int r = 0; r < height; r++) {
-            data.getDataElements(0, r, width, 1, pixels);
-            pw.print("\"");
-            for (int i = 0; i < pixels.length; i++) {
-                int pixel = pixels[i] & 0xFFFFFF;
+            int idx;
+            if (direct) {
+                idx = offset + r * scanlineStride;
+            } else {
+                data.getDataElements(data.getMinX(), data.getMinY() + r, width, 1, pixels);
+                idx = 0;
+            }
+            int c = 0;
+            row[c++] = '"';
+            for (int i = 0; i < width; i++) {
+                int pixel = pixels[idx++] & 0xFFFFFF;
                 if (pixel == 0) {
-                    pw.print(" ");
+                    row[c++] = ' ';
                 } else {
-                    UTFGridEntry entry = keyToFeature.get(pixel);
+                    UTFGridEntry entry = pixel < valueToEntry.length ? valueToEntry[pixel] : null;
                     if (entry == null) {
                         throw new RuntimeException(
                                 "Could not find entry for pixel value "
@@ -147,19 +175,34 @@ public class UTFGridMap extends RawMap {
                         entry.setKey(entryKey);
                         result.add(entry);
                     }
-                    pw.print(getGridChar(entryKey));
+                    row[c++] = getGridChar(entryKey);
                 }
             }
+            row[c++] = '"';
             if (r < height - 1) {
-                pw.println("\",");
-            } else {
-                pw.println("\"");
+                row[c++] = ',';
             }
+            row[c++] = '\n';
+            writer.write(row, 0, c);
         }
 
         return result;
     }
 
+    /**
+     * Returns the backing array of a raster storing a pixel per int, as the one of the canvas
+     * UTFGrid is rendered on, or null if the raster uses another layout
+     */
+    private int[] getPixels(Raster data) {
+        DataBuffer buffer = data.getDataBuffer();
+        if (buffer instanceof DataBufferInt
+                && buffer.getNumBanks() == 1
+                && data.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+            return ((DataBufferInt) buffer).getData();
+        }
+        return null;
+    }
+
     private Raster getData(RenderedImage image) {
         if (image instanceof BufferedImage) {
             // copy-less version of data access
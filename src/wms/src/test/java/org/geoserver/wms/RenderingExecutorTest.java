@@ -0,0 +1,121 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.geoserver.wms.RenderingExecutor.Priority;
+import org.junit.After;
+import org.junit.Test;
+
+public class RenderingExecutorTest {
+
+    RenderingExecutor executor;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testPriorities() throws Exception {
+        executor = new RenderingExecutor(1, 1);
+        // keep the only thread busy while queueing the other tasks
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.submit(
+                () -> {
+                    latch.await();
+                    return null;
+                });
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        futures.add(executor.withPriority(Priority.BATCH).submit(() -> order.add("batch1")));
+        futures.add(executor.submit(() -> order.add("interactive1")));
+        futures.add(executor.withPriority(Priority.BATCH).submit(() -> order.add("batch2")));
+        futures.add(executor.submit(() -> order.add("interactive2")));
+        assertEquals(4, executor.getQueueDepth());
+
+        latch.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        assertEquals(Arrays.asList("interactive1", "interactive2", "batch1", "batch2"), order);
+    }
+
+    @Test
+    public void testBatchAging() throws Exception {
+        executor = new RenderingExecutor(1, 1, 50);
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.submit(
+                () -> {
+                    latch.await();
+                    return null;
+                });
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        futures.add(executor.withPriority(Priority.BATCH).submit(() -> order.add("batch")));
+        // past the batch maximum delay the queued batch task goes before new interactive ones
+        Thread.sleep(100);
+        futures.add(executor.submit(() -> order.add("interactive")));
+
+        latch.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        assertEquals(Arrays.asList("batch", "interactive"), order);
+    }
+
+    @Test
+    public void testPriorityViewShutdown() throws Exception {
+        executor = new RenderingExecutor(1, 1);
+        ExecutorService view = executor.withPriority(Priority.BATCH);
+        view.shutdown();
+        assertTrue(view.shutdownNow().isEmpty());
+        // the shared pool is still running
+        assertFalse(executor.isShutdown());
+        assertEquals(Integer.valueOf(1), view.submit(() -> 1).get());
+    }
+
+    @Test
+    public void testRequestParallelism() throws Exception {
+        executor = new RenderingExecutor(8, 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            final int value = i;
+            tasks.add(
+                    () -> {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        Thread.sleep(5);
+                        running.decrementAndGet();
+                        return value;
+                    });
+        }
+
+        List<Future<Integer>> futures = executor.submitAll(tasks, Priority.INTERACTIVE);
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(Integer.valueOf(i), futures.get(i).get());
+        }
+        assertTrue(maxRunning.get() <= 2);
+    }
+}
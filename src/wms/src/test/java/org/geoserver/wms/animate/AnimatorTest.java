@@ -8,14 +8,19 @@ package org.geoserver.wms.animate;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javax.imageio.ImageIO;
 import javax.imageio.ImageReader;
 import javax.imageio.metadata.IIOMetadata;
@@ -135,6 +140,77 @@ public class AnimatorTest extends WMSTestSupport {
         }
     }
 
+    /** Produce an animated gif changing an env variable, without parsing each frame request */
+    @org.junit.Test
+    public void testAnimatorEnv() throws Exception {
+        final String layerName =
+                MockData.BASIC_POLYGONS.getPrefix() + ":" + MockData.BASIC_POLYGONS.getLocalPart();
+
+        MockHttpServletResponse resp =
+                getAsServletResponse(
+                        "wms/animate?layers=" + layerName + "&aparam=env:color&avalues=a,b,c");
+        assertEquals("image/gif", resp.getContentType());
+        try (ImageInputStream is = ImageIO.createImageInputStream(getBinaryInputStream(resp))) {
+            ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+            reader.setInput(is);
+            assertEquals(3, reader.getNumImages(true));
+        }
+    }
+
+    /** Frames are returned in order, rendering only a window of them ahead of the consumer */
+    @org.junit.Test
+    public void testFrameWindow() throws Exception {
+        List<FrameLoader> loaders = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final int width = i + 1;
+            loaders.add(
+                    new FrameLoader(null, null, null, "fake_param", String.valueOf(i)) {
+                        @Override
+                        public RenderedImage call() throws Exception {
+                            return new BufferedImage(width, 1, BufferedImage.TYPE_BYTE_GRAY);
+                        }
+                    });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            FrameList frames = new FrameList(loaders, executor, 2);
+            assertEquals(10, frames.size());
+            assertEquals(2, frames.futures.size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i + 1, frames.get(i).getWidth());
+                assertEquals(Math.min(10, i + 3), frames.futures.size());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @org.junit.Test
+    public void testFrameCancel() throws Exception {
+        List<FrameLoader> loaders = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            loaders.add(
+                    new FrameLoader(null, null, null, "fake_param", String.valueOf(i)) {
+                        @Override
+                        public RenderedImage call() throws Exception {
+                            return new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY);
+                        }
+                    });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            FrameList frames = new FrameList(loaders, executor, 2);
+            assertNotNull(frames.get(0));
+            frames.cancel();
+            // the rendered frames are still available, the others are not rendered
+            assertNotNull(frames.get(0));
+            assertNull(frames.get(9));
+            assertEquals(3, frames.futures.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     private void checkAnimatedGif(String requestURL, boolean loopContinously, String disposal)
             throws Exception, IOException {
         MockHttpServletResponse resp = getAsServletResponse(requestURL);
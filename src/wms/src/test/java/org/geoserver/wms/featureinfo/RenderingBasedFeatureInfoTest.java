@@ -8,6 +8,8 @@ package org.geoserver.wms.featureinfo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 
 import java.awt.image.BufferedImage;
@@ -158,6 +160,47 @@ public class RenderingBasedFeatureInfoTest extends WMSTestSupport {
         assertEquals(0, vrli.identify(params, 10).size());
     }
 
+    @Test
+    public void testIdentificationPlanReuse() throws Exception {
+        VectorRenderingLayerIdentifier vrli = new VectorRenderingLayerIdentifier(getWMS(), null);
+        Envelope bbox = new Envelope(0.000196, 0.000204, 0.000696, 0.000704);
+        VectorRenderingLayerIdentifier.IdentificationPlan plan =
+                vrli.getIdentificationPlan(getBridgesParams(bbox, "dynamic"));
+        assertThat(plan.rules.size(), is(1));
+        assertThat(plan.estimateAccurate, is(false));
+        assertThat(plan.dynamicProperties, notNullValue());
+
+        // same style and scale, the plan is reused
+        assertSame(plan, vrli.getIdentificationPlan(getBridgesParams(bbox, "dynamic")));
+
+        // a different scale, or style, needs a new plan
+        Envelope larger = new Envelope(0.000192, 0.000208, 0.000692, 0.000708);
+        assertNotSame(plan, vrli.getIdentificationPlan(getBridgesParams(larger, "dynamic")));
+        assertNotSame(plan, vrli.getIdentificationPlan(getBridgesParams(bbox, "ranged")));
+    }
+
+    private FeatureInfoRequestParameters getBridgesParams(Envelope bbox, String style)
+            throws Exception {
+        GetFeatureInfoRequest request = new GetFeatureInfoRequest();
+        GetMapRequest getMapRequest = new GetMapRequest();
+        List<MapLayerInfo> layers = new ArrayList<>();
+        layers.add(new MapLayerInfo(getCatalog().getLayerByName(MockData.BRIDGES.getLocalPart())));
+        getMapRequest.setLayers(layers);
+        getMapRequest.setStyles(
+                Collections.singletonList(getCatalog().getStyleByName(style).getStyle()));
+        getMapRequest.setSRS("EPSG:4326");
+        getMapRequest.setCrs(DefaultGeographicCRS.WGS84);
+        getMapRequest.setBbox(bbox);
+        getMapRequest.setWidth(100);
+        getMapRequest.setHeight(100);
+        getMapRequest.setFormat("image/png");
+        request.setGetMapRequest(getMapRequest);
+        request.setQueryLayers(layers);
+        request.setXPixel(50);
+        request.setYPixel(50);
+        return new FeatureInfoRequestParameters(request);
+    }
+
     @Test
     public void testBoxOffset() throws Exception {
         // try the old way clicking in the area of the symbol that is transparent
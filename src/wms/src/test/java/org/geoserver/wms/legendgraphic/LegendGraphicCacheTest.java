@@ -0,0 +1,199 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.legendgraphic;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import javax.servlet.http.HttpServletResponse;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.config.impl.GeoServerImpl;
+import org.geoserver.ows.DirectInvocationService;
+import org.geoserver.ows.HttpErrorCodeException;
+import org.geoserver.ows.Request;
+import org.geoserver.ows.Response;
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.Service;
+import org.geotools.util.Version;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class LegendGraphicCacheTest {
+
+    static final byte[] LEGEND = {1, 2, 3, 4};
+
+    /** Counts how many times the legend got encoded */
+    static class CountingResponse extends Response {
+        int writes;
+
+        CountingResponse() {
+            super(byte[].class);
+        }
+
+        @Override
+        public String getMimeType(Object value, Operation operation) {
+            return "image/png";
+        }
+
+        @Override
+        public void write(Object value, OutputStream output, Operation operation)
+                throws IOException {
+            writes++;
+            output.write((byte[]) value);
+        }
+    }
+
+    GeoServerImpl gs;
+
+    LegendGraphicCache cache;
+
+    CountingResponse response;
+
+    Operation operation;
+
+    @Before
+    public void setUp() {
+        gs = new GeoServerImpl();
+        gs.setCatalog(new CatalogImpl());
+        gs.setGlobal(gs.getFactory().createGlobal());
+        cache = new LegendGraphicCache(gs);
+        cache.setEnabled(true);
+        response = new CountingResponse();
+        Service service = new Service("wms", new Object(), new Version("1.1.1"), null);
+        operation = new Operation("GetLegendGraphic", service, null, new Object[0]);
+    }
+
+    private Request request(String... parameters) {
+        MockHttpServletRequest httpRequest = new MockHttpServletRequest("GET", "/geoserver/wms");
+        Request request = new Request();
+        request.setHttpRequest(httpRequest);
+        request.setGet(true);
+        request.setRequest("GetLegendGraphic");
+        Map<String, Object> kvp = new HashMap<>();
+        kvp.put("SERVICE", "WMS");
+        kvp.put("REQUEST", "GetLegendGraphic");
+        kvp.put("LAYER", "topp:states");
+        kvp.put("FORMAT", "image/png");
+        for (int i = 0; i < parameters.length - 1; i += 2) {
+            kvp.put(parameters[i], parameters[i + 1]);
+        }
+        request.setRawKvp(kvp);
+        return request;
+    }
+
+    private byte[] write(Response r, Object value) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        r.write(value, bos, null);
+        return bos.toByteArray();
+    }
+
+    private String getHeader(Response r, Object value, String name) {
+        for (String[] header : r.getHeaders(value, null)) {
+            if (header[0].equals(name)) {
+                return header[1];
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testCached() throws Exception {
+        // miss, the operation runs and the legend gets cached
+        assertSame(operation, cache.operationDispatched(request(), operation));
+        Response r = cache.responseDispatched(request(), operation, LEGEND, response);
+        assertNotSame(response, r);
+        assertArrayEquals(LEGEND, write(r, LEGEND));
+        assertEquals("image/png", r.getMimeType(LEGEND, operation));
+        assertEquals(1, response.writes);
+
+        // hit, the operation is replaced with one returning the cached legend
+        Operation cached = cache.operationDispatched(request(), operation);
+        assertNotSame(operation, cached);
+        Object result =
+                ((DirectInvocationService) cached.getService().getService())
+                        .invokeDirect("GetLegendGraphic", cached.getParameters());
+        assertTrue(result instanceof LegendGraphicCache.CachedLegendGraphic);
+        CachedLegendGraphicResponse cachedResponse = new CachedLegendGraphicResponse();
+        assertSame(response, cache.responseDispatched(request(), cached, result, response));
+        assertArrayEquals(LEGEND, write(cachedResponse, result));
+        assertEquals("image/png", cachedResponse.getMimeType(result, cached));
+        assertEquals(1, response.writes);
+        assertEquals(1, cache.getStatistics().hitCount());
+    }
+
+    @Test
+    public void testParametersOrder() throws Exception {
+        cache.responseDispatched(
+                request("WIDTH", "20", "HEIGHT", "20"), operation, LEGEND, response);
+        assertNotSame(
+                operation,
+                cache.operationDispatched(request("HEIGHT", "20", "WIDTH", "20"), operation));
+        assertSame(operation, cache.operationDispatched(request("WIDTH", "30"), operation));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        cache.setEnabled(false);
+        assertSame(response, cache.responseDispatched(request(), operation, LEGEND, response));
+        assertSame(operation, cache.operationDispatched(request(), operation));
+    }
+
+    @Test
+    public void testNotCacheable() throws Exception {
+        assertFalse(cache.isCacheable(request("SLD", "http://localhost/style.sld")));
+        assertFalse(cache.isCacheable(request("LEGEND_OPTIONS", "countMatched:true")));
+        assertFalse(
+                cache.isCacheable(request("legend_options", "fontSize:10;hideEmptyRules:true")));
+        assertTrue(cache.isCacheable(request("LEGEND_OPTIONS", "fontSize:10")));
+        Request post = request();
+        post.setGet(false);
+        assertFalse(cache.isCacheable(post));
+    }
+
+    @Test
+    public void testInvalidatedOnStyleChange() throws Exception {
+        cache.responseDispatched(request(), operation, LEGEND, response);
+
+        StyleInfo style = gs.getCatalog().getFactory().createStyle();
+        style.setName("style");
+        style.setFilename("style.sld");
+        gs.getCatalog().add(style);
+        assertSame(operation, cache.operationDispatched(request(), operation));
+
+        cache.responseDispatched(request(), operation, LEGEND, response);
+        style = gs.getCatalog().getStyleByName("style");
+        style.setFilename("style2.sld");
+        gs.getCatalog().save(style);
+        assertSame(operation, cache.operationDispatched(request(), operation));
+    }
+
+    @Test
+    public void testNotModified() throws Exception {
+        Response r = cache.responseDispatched(request(), operation, LEGEND, response);
+        String etag = getHeader(r, LEGEND, HttpHeaders.ETAG);
+        Request request = request();
+        ((MockHttpServletRequest) request.getHttpRequest())
+                .addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+        try {
+            cache.operationDispatched(request, operation);
+            fail("Should have thrown a 304");
+        } catch (HttpErrorCodeException e) {
+            assertEquals(HttpServletResponse.SC_NOT_MODIFIED, e.getErrorCode());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.geoserver.ows.Dispatcher;
+import org.geoserver.ows.Request;
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.Service;
+import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.RasterCleaner;
+import org.geotools.util.Version;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CanvasBufferPoolTest {
+
+    CanvasBufferPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new CanvasBufferPool(true, 64 << 20, 1024);
+    }
+
+    @After
+    public void tearDown() {
+        // clear the images scheduled for cleanup
+        new RasterCleaner().finished(null);
+    }
+
+    @Test
+    public void testImageTypes() {
+        BufferedImage abgr = pool.createImage(100, 100, null, true, "image/png");
+        assertEquals(BufferedImage.TYPE_4BYTE_ABGR, abgr.getType());
+        BufferedImage bgr = pool.createImage(100, 100, null, false, "image/jpeg");
+        assertEquals(BufferedImage.TYPE_3BYTE_BGR, bgr.getType());
+        IndexColorModel palette =
+                new IndexColorModel(
+                        8, 2, new byte[] {0, (byte) 255}, new byte[] {0, 0}, new byte[] {0, 0});
+        BufferedImage indexed = pool.createImage(100, 100, palette, false, "image/png8");
+        assertEquals(BufferedImage.TYPE_BYTE_INDEXED, indexed.getType());
+        assertSame(palette, indexed.getColorModel());
+
+        Graphics2D graphics = abgr.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 100, 100);
+        graphics.dispose();
+        assertEquals(Color.RED.getRGB(), abgr.getRGB(99, 99));
+    }
+
+    @Test
+    public void testReuse() {
+        BufferedImage image = pool.createImage(100, 100, null, true, "image/png");
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        assertTrue(pool.release(image));
+        // releasing twice does nothing
+        assertFalse(pool.release(image));
+        assertEquals(data.length, pool.getRetainedMemory());
+
+        // a slightly smaller image fits in the same bucket
+        BufferedImage other = pool.createImage(99, 100, null, true, "image/png");
+        assertSame(data, ((DataBufferByte) other.getRaster().getDataBuffer()).getData());
+        assertEquals(99, other.getWidth());
+        assertEquals(0, pool.getRetainedMemory());
+
+        CanvasBufferPool.Statistics stats = pool.getStatistics("image/png");
+        assertEquals(1, stats.getAllocated());
+        assertEquals(1, stats.getReused());
+        assertEquals(1, stats.getReleased());
+    }
+
+    @Test
+    public void testSmallImagesNotPooled() {
+        assertNull(pool.createImage(10, 10, null, true, "image/png"));
+        assertFalse(pool.release(new BufferedImage(10, 10, BufferedImage.TYPE_4BYTE_ABGR)));
+    }
+
+    @Test
+    public void testMaxMemory() {
+        pool = new CanvasBufferPool(true, 50000, 1024);
+        BufferedImage i1 = pool.createImage(100, 100, null, true, "image/png");
+        BufferedImage i2 = pool.createImage(100, 100, null, true, "image/png");
+        assertNotNull(i1);
+        pool.release(i1);
+        pool.release(i2);
+        // only one of the two arrays is kept
+        assertEquals(40960, pool.getRetainedMemory());
+    }
+
+    @Test
+    public void testCapacity() {
+        assertEquals(1024, CanvasBufferPool.getCapacity(1024));
+        assertEquals(1280, CanvasBufferPool.getCapacity(1025));
+        assertEquals(1536, CanvasBufferPool.getCapacity(1500));
+        assertEquals(2048, CanvasBufferPool.getCapacity(1800));
+    }
+
+    @Test
+    public void testPoolableOnlyOnRequestThread() throws Exception {
+        Service service = new Service("wms", new Object(), new Version("1.1.1"), null);
+        Request request = new Request();
+        request.setOperation(
+                new Operation("GetMap", service, null, new Object[] {new GetMapRequest()}));
+        RasterCleaner cleaner = new RasterCleaner();
+        Dispatcher.REQUEST.set(request);
+        try {
+            // not dispatched, nothing would return the images to the pool
+            assertFalse(pool.isPoolable(null));
+            cleaner.init(request);
+            assertTrue(pool.isPoolable(null));
+
+            // the threads the request is transferred to, e.g., the animation frames ones, do not
+            // run the cleaner
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Future<Boolean> poolable =
+                        executor.submit(
+                                () -> {
+                                    Dispatcher.REQUEST.set(request);
+                                    try {
+                                        return pool.isPoolable(null);
+                                    } finally {
+                                        Dispatcher.REQUEST.remove();
+                                    }
+                                });
+                assertFalse(poolable.get());
+            } finally {
+                executor.shutdown();
+            }
+        } finally {
+            cleaner.finished(request);
+            Dispatcher.REQUEST.remove();
+        }
+    }
+
+    @Test
+    public void testDisabled() {
+        pool.setEnabled(false);
+        assertNull(pool.createImage(100, 100, null, true, "image/png"));
+    }
+}
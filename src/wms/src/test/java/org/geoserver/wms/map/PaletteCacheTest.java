@@ -0,0 +1,189 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.util.HashMap;
+import java.util.Map;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogInvalidator;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.catalog.impl.WorkspaceInfoImpl;
+import org.geoserver.ows.LocalWorkspace;
+import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.WMSMapContent;
+import org.geoserver.wms.map.PaletteCache.LookupColorIndexer;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.image.palette.Quantizer;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Test;
+
+public class PaletteCacheTest {
+
+    /** Red, green, a transparent blue and opaque dark grays, enough colors to be cached */
+    static final IndexColorModel PALETTE = buildPalette();
+
+    private static IndexColorModel buildPalette() {
+        int size = PaletteCache.DEFAULT_MIN_COLORS;
+        byte[] r = new byte[size];
+        byte[] g = new byte[size];
+        byte[] b = new byte[size];
+        byte[] a = new byte[size];
+        r[0] = (byte) 255;
+        g[1] = (byte) 255;
+        b[2] = (byte) 255;
+        for (int i = 3; i < size; i++) {
+            r[i] = g[i] = b[i] = (byte) (i * 4);
+        }
+        for (int i = 0; i < size; i++) {
+            a[i] = i == 2 ? 0 : (byte) 255;
+        }
+        return new IndexColorModel(8, size, r, g, b, a);
+    }
+
+    private WMSMapContent buildMap(String styles, double minX, double size) {
+        Map<String, String> kvp = new HashMap<>();
+        kvp.put("LAYERS", "topp:states");
+        kvp.put("STYLES", styles);
+        kvp.put("FORMAT", "image/png8");
+        kvp.put("BBOX", minX + ",0," + (minX + size) + "," + size);
+        GetMapRequest request = new GetMapRequest();
+        request.setRawKvp(kvp);
+        WMSMapContent mapContent = new WMSMapContent(request);
+        mapContent.setMapWidth(256);
+        mapContent.setMapHeight(256);
+        mapContent
+                .getViewport()
+                .setBounds(
+                        new ReferencedEnvelope(
+                                minX, minX + size, 0, size, DefaultGeographicCRS.WGS84));
+        return mapContent;
+    }
+
+    @Test
+    public void testKey() {
+        PaletteCache cache = new PaletteCache(10, 60);
+        // tiles of the same map share the key
+        String key = cache.getKey(buildMap("population", 0, 10), false);
+        assertEquals(key, cache.getKey(buildMap("population", 10, 10), false));
+        // but not with other styles, scales or transparency
+        assertNotEquals(key, cache.getKey(buildMap("polygon", 0, 10), false));
+        assertNotEquals(key, cache.getKey(buildMap("population", 0, 40), false));
+        assertNotEquals(key, cache.getKey(buildMap("population", 0, 10), true));
+    }
+
+    @Test
+    public void testKeyVirtualService() {
+        PaletteCache cache = new PaletteCache(10, 60);
+        String key = cache.getKey(buildMap("population", 0, 10), false);
+        WorkspaceInfo ws1 = new WorkspaceInfoImpl();
+        ws1.setName("ws1");
+        WorkspaceInfo ws2 = new WorkspaceInfoImpl();
+        ws2.setName("ws2");
+        try {
+            LocalWorkspace.set(ws1);
+            String key1 = cache.getKey(buildMap("population", 0, 10), false);
+            LocalWorkspace.set(ws2);
+            String key2 = cache.getKey(buildMap("population", 0, 10), false);
+            assertNotEquals(key, key1);
+            assertNotEquals(key1, key2);
+        } finally {
+            LocalWorkspace.remove();
+        }
+    }
+
+    @Test
+    public void testInvalidatedOnStyleChange() {
+        PaletteCache cache = new PaletteCache(10, 60);
+        CatalogImpl catalog = new CatalogImpl();
+        catalog.addListener(
+                new CatalogInvalidator(
+                        cache::invalidateAll,
+                        StyleInfo.class,
+                        LayerInfo.class,
+                        LayerGroupInfo.class));
+        StyleInfo style = catalog.getFactory().createStyle();
+        style.setName("population");
+        style.setFilename("population.sld");
+        catalog.add(style);
+
+        cache.putPalette(buildMap("population", 0, 10), false, PALETTE);
+        assertSame(PALETTE, cache.getPalette(buildMap("population", 0, 10), false));
+
+        StyleInfo modified = catalog.getStyleByName("population");
+        modified.setFilename("population2.sld");
+        catalog.save(modified);
+        assertNull(cache.getPalette(buildMap("population", 0, 10), false));
+
+        cache.putPalette(buildMap("population", 0, 10), false, PALETTE);
+        catalog.remove(catalog.getStyleByName("population"));
+        assertNull(cache.getPalette(buildMap("population", 0, 10), false));
+    }
+
+    @Test
+    public void testCache() {
+        PaletteCache cache = new PaletteCache(10, 60);
+        assertNull(cache.getPalette(buildMap("population", 0, 10), false));
+        cache.putPalette(buildMap("population", 0, 10), false, PALETTE);
+        assertSame(PALETTE, cache.getPalette(buildMap("population", 10, 10), false));
+        assertNotNull(cache.getColorIndexer(buildMap("population", 20, 10), false));
+        assertNull(cache.getPalette(buildMap("population", 0, 10), true));
+        assertEquals(2, cache.getStatistics().hitCount());
+    }
+
+    @Test
+    public void testEmptyFirstTile() {
+        PaletteCache cache = new PaletteCache(10, 60);
+        // the first tile is empty, its palette is not representative of the others
+        BufferedImage empty = new BufferedImage(256, 256, BufferedImage.TYPE_4BYTE_ABGR);
+        IndexColorModel emptyPalette =
+                new Quantizer(256).subsample().buildColorIndexer(empty).toIndexColorModel();
+        assertFalse(cache.putPalette(buildMap("population", 0, 10), false, emptyPalette));
+        assertNull(cache.getPalette(buildMap("population", 10, 10), false));
+        // the next tile has the colors, and its palette gets cached
+        assertTrue(cache.putPalette(buildMap("population", 10, 10), false, PALETTE));
+        assertSame(PALETTE, cache.getPalette(buildMap("population", 20, 10), false));
+    }
+
+    @Test
+    public void testMinColors() {
+        PaletteCache cache = new PaletteCache(10, 60, 2);
+        IndexColorModel twoColors =
+                new IndexColorModel(8, 2, new byte[] {0, 1}, new byte[] {0, 1}, new byte[] {0, 1});
+        assertTrue(cache.putPalette(buildMap("population", 0, 10), false, twoColors));
+        assertSame(twoColors, cache.getPalette(buildMap("population", 0, 10), false));
+    }
+
+    @Test
+    public void testDisabled() {
+        PaletteCache cache = new PaletteCache(0, 60);
+        cache.putPalette(buildMap("population", 0, 10), false, PALETTE);
+        assertNull(cache.getPalette(buildMap("population", 0, 10), false));
+    }
+
+    @Test
+    public void testLookupIndexer() {
+        LookupColorIndexer indexer = new LookupColorIndexer(PALETTE);
+        assertSame(PALETTE, indexer.toIndexColorModel());
+        assertEquals(0, indexer.getClosestIndex(250, 10, 10, 255));
+        assertEquals(1, indexer.getClosestIndex(10, 200, 30, 255));
+        // cached lookups return the same
+        assertEquals(1, indexer.getClosestIndex(10, 200, 30, 255));
+        assertEquals(2, indexer.getClosestIndex(0, 0, 0, 0));
+        assertEquals(2, indexer.getClosestIndex(255, 0, 0, 0));
+    }
+}
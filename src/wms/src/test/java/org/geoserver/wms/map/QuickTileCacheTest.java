@@ -6,9 +6,25 @@
 package org.geoserver.wms.map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.awt.Point;
 import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.geoserver.wms.GetMapRequest;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.junit.Test;
 import org.locationtech.jts.geom.Envelope;
 
@@ -68,4 +84,85 @@ public class QuickTileCacheTest {
         assertEquals(new Point(0, 2), cache.getTileOffsetsInMeta(box1, meta));
         assertEquals(new Point(1, 2), cache.getTileOffsetsInMeta(box2, meta));
     }
+
+    private QuickTileCache.MetaTileKey key(int x, int y) {
+        QuickTileCache.MapKey mapKey =
+                new QuickTileCache.MapKey("LAYERS=test", 1, new Point2D.Double(0, 0));
+        ReferencedEnvelope envelope =
+                new ReferencedEnvelope(x, x + 3, y, y + 3, DefaultGeographicCRS.WGS84);
+        return new QuickTileCache.MetaTileKey(mapKey, new Point(x, y), envelope);
+    }
+
+    private RenderedImage[] tiles() {
+        RenderedImage[] tiles = new RenderedImage[9];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = new BufferedImage(256, 256, BufferedImage.TYPE_4BYTE_ABGR);
+        }
+        return tiles;
+    }
+
+    @Test
+    public void testSingleFlight() throws Exception {
+        AtomicInteger builds = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<RenderedImage[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(
+                        executor.submit(
+                                () -> {
+                                    start.await();
+                                    return cache.getTiles(
+                                            key(0, 0),
+                                            () -> {
+                                                builds.incrementAndGet();
+                                                Thread.sleep(50);
+                                                return tiles();
+                                            });
+                                }));
+            }
+            start.countDown();
+            RenderedImage[] first = futures.get(0).get();
+            for (Future<RenderedImage[]> future : futures) {
+                assertSame(first, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, builds.get());
+        assertEquals(7, cache.getStatistics().hitCount());
+    }
+
+    @Test
+    public void testMemoryBound() throws Exception {
+        // room for eight meta tiles of 9 256x256 ABGR tiles
+        cache = new QuickTileCache(8 * 9 * 256 * 256 * 4);
+        for (int i = 0; i < 20; i++) {
+            cache.storeTiles(key(i * 3, 0), tiles());
+        }
+        assertTrue(cache.size() <= 8);
+        assertNotNull(cache.getTile(key(57, 0), request(57)));
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        MetaTileCacheStatistics statistics = new MetaTileCacheStatistics(cache);
+        assertNull(cache.getTile(key(0, 0), request(0)));
+        cache.getTiles(key(0, 0), this::tiles);
+        assertNotNull(cache.getTile(key(0, 0), request(0)));
+        cache.getTiles(key(0, 0), this::tiles);
+        // only the meta tile lookups are counted, once each
+        assertEquals(1, statistics.getMissCount());
+        assertEquals(1, statistics.getHitCount());
+        assertEquals(1, statistics.getLoadSuccessCount());
+        assertEquals(1, statistics.getSize());
+    }
+
+    private GetMapRequest request(int x) {
+        GetMapRequest request = new GetMapRequest();
+        request.setBbox(new Envelope(x, x + 1, 0, 1));
+        request.setCrs(DefaultGeographicCRS.WGS84);
+        return request;
+    }
 }
@@ -0,0 +1,175 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.geoserver.wms.RenderingExecutor;
+import org.geoserver.wms.RenderingExecutor.Priority;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.LiteShape2;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.MapContent;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.renderer.label.LabelCacheImpl;
+import org.geotools.renderer.lite.RendererUtilities;
+import org.geotools.renderer.lite.StreamingRenderer;
+import org.geotools.styling.Style;
+import org.geotools.styling.StyleBuilder;
+import org.geotools.styling.TextSymbolizer;
+import org.geotools.util.NumberRange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.io.WKTReader;
+import org.opengis.feature.Feature;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+public class TiledStreamingRendererTest {
+
+    static final ReferencedEnvelope BOUNDS =
+            new ReferencedEnvelope(0, 100, 0, 100, DefaultGeographicCRS.WGS84);
+
+    RenderingExecutor executor;
+
+    MapContent mapContent;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = new RenderingExecutor(4, 4);
+
+        SimpleFeatureType type = DataUtilities.createType("squares", "geom:Polygon,name:String");
+        WKTReader reader = new WKTReader();
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(type);
+        fb.add(reader.read("POLYGON((10 10, 10 90, 90 90, 90 10, 10 10))"));
+        fb.add("big");
+        SimpleFeatureSource big =
+                DataUtilities.source(new SimpleFeature[] {fb.buildFeature("f.1")});
+        fb.add(reader.read("POLYGON((20 20, 20 30, 30 30, 30 20, 20 20))"));
+        fb.add("small");
+        SimpleFeatureSource small =
+                DataUtilities.source(new SimpleFeature[] {fb.buildFeature("f.2")});
+
+        StyleBuilder sb = new StyleBuilder();
+        Style polygons = sb.createStyle(sb.createPolygonSymbolizer(Color.BLUE, Color.BLACK, 3));
+        Style labels =
+                sb.createStyle(
+                        sb.createTextSymbolizer(Color.BLACK, sb.createFont("Serif", 12), "name"));
+        mapContent = new MapContent();
+        mapContent.addLayer(new FeatureLayer(big, polygons));
+        mapContent.addLayer(new FeatureLayer(small, polygons));
+        mapContent.addLayer(new FeatureLayer(big, labels));
+        mapContent.getViewport().setBounds(BOUNDS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mapContent.dispose();
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private BufferedImage paint(StreamingRenderer renderer, LabelCacheImpl labelCache)
+            throws Exception {
+        renderer.setMapContent(mapContent);
+        Map<Object, Object> hints = new HashMap<>();
+        hints.put(StreamingRenderer.LABEL_CACHE_KEY, labelCache);
+        renderer.setRendererHints(hints);
+        renderer.setJava2DHints(
+                new RenderingHints(
+                        RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF));
+
+        Rectangle paintArea = new Rectangle(0, 0, 300, 300);
+        BufferedImage image = new BufferedImage(300, 300, BufferedImage.TYPE_4BYTE_ABGR);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            renderer.paint(
+                    graphics,
+                    paintArea,
+                    BOUNDS,
+                    RendererUtilities.worldToScreenTransform(BOUNDS, paintArea));
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    @Test
+    public void testTiles() {
+        TiledStreamingRenderer renderer =
+                new TiledStreamingRenderer(StreamingRenderer::new, executor, Priority.INTERACTIVE);
+        // the tiles cover the paint area without overlapping
+        int area = 0;
+        for (Rectangle tile : renderer.getTiles(new Rectangle(0, 0, 301, 150))) {
+            area += tile.width * tile.height;
+            assertEquals(tile, tile.intersection(new Rectangle(0, 0, 301, 150)));
+        }
+        assertEquals(301 * 150, area);
+    }
+
+    @Test
+    public void testSameAsUntiled() throws Exception {
+        // labels are placed against the whole geometry, compare only the tiled parts
+        mapContent.removeLayer(mapContent.layers().get(2));
+        BufferedImage expected = paint(new StreamingRenderer(), new LabelCacheImpl());
+        TiledStreamingRenderer renderer =
+                new TiledStreamingRenderer(StreamingRenderer::new, executor, Priority.INTERACTIVE);
+        BufferedImage actual = paint(renderer, new LabelCacheImpl());
+
+        int differences = 0;
+        for (int x = 0; x < expected.getWidth(); x++) {
+            for (int y = 0; y < expected.getHeight(); y++) {
+                if (expected.getRGB(x, y) != actual.getRGB(x, y)) {
+                    differences++;
+                }
+            }
+        }
+        assertEquals(0, differences);
+    }
+
+    @Test
+    public void testLabelsNotDuplicated() throws Exception {
+        List<LiteShape2> shapes = new ArrayList<>();
+        LabelCacheImpl labelCache =
+                new LabelCacheImpl() {
+                    @Override
+                    public void put(
+                            String layerId,
+                            TextSymbolizer symbolizer,
+                            Feature feature,
+                            LiteShape2 shape,
+                            NumberRange<Double> scaleRange) {
+                        shapes.add(shape);
+                        super.put(layerId, symbolizer, feature, shape, scaleRange);
+                    }
+                };
+        TiledStreamingRenderer renderer =
+                new TiledStreamingRenderer(StreamingRenderer::new, executor, Priority.INTERACTIVE);
+        paint(renderer, labelCache);
+
+        // the big square spans all tiles, but gets labelled just once, against the whole square
+        assertEquals(1, shapes.size());
+        Envelope envelope = shapes.get(0).getGeometry().getEnvelopeInternal();
+        assertEquals(30, envelope.getMinX(), 1);
+        assertEquals(270, envelope.getMaxX(), 1);
+        assertEquals(30, envelope.getMinY(), 1);
+        assertEquals(270, envelope.getMaxY(), 1);
+    }
+}
@@ -0,0 +1,121 @@
+/* (c) 2020 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map.png;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Adler32;
+import javax.imageio.ImageIO;
+import org.geoserver.wms.RenderingExecutor;
+import org.geoserver.wms.RenderingExecutor.Priority;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelPNGWriterTest {
+
+    RenderingExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new RenderingExecutor(4, 4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private BufferedImage buildImage(int type) {
+        BufferedImage image = new BufferedImage(377, 255, type);
+        Graphics2D graphics = image.createGraphics();
+        Random random = new Random(0);
+        for (int i = 0; i < 100; i++) {
+            graphics.setColor(new Color(random.nextInt(), true));
+            graphics.fillOval(
+                    random.nextInt(377),
+                    random.nextInt(255),
+                    random.nextInt(100),
+                    random.nextInt(100));
+        }
+        graphics.dispose();
+        return image;
+    }
+
+    private void assertRoundTrip(BufferedImage image, RenderingExecutor executor) throws Exception {
+        assertTrue(ParallelPNGWriter.isSupported(image));
+        ParallelPNGWriter writer = new ParallelPNGWriter(executor, Priority.INTERACTIVE);
+        // force several bands
+        writer.setBandSize(40000);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        writer.writePNG(image, bos, 0.5f);
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(bos.toByteArray()));
+        assertEquals(image.getWidth(), decoded.getWidth());
+        assertEquals(image.getHeight(), decoded.getHeight());
+        for (int x = 0; x < image.getWidth(); x++) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                assertEquals(image.getRGB(x, y), decoded.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testRGBA() throws Exception {
+        assertRoundTrip(buildImage(BufferedImage.TYPE_4BYTE_ABGR), executor);
+    }
+
+    @Test
+    public void testRGB() throws Exception {
+        assertRoundTrip(buildImage(BufferedImage.TYPE_3BYTE_BGR), executor);
+    }
+
+    @Test
+    public void testGray() throws Exception {
+        assertRoundTrip(buildImage(BufferedImage.TYPE_BYTE_GRAY), executor);
+    }
+
+    @Test
+    public void testPalette() throws Exception {
+        assertRoundTrip(buildImage(BufferedImage.TYPE_BYTE_INDEXED), executor);
+    }
+
+    @Test
+    public void testSerial() throws Exception {
+        assertRoundTrip(buildImage(BufferedImage.TYPE_4BYTE_ABGR), null);
+    }
+
+    @Test
+    public void testUnsupported() throws Exception {
+        assertFalse(ParallelPNGWriter.isSupported(buildImage(BufferedImage.TYPE_INT_ARGB)));
+        assertFalse(ParallelPNGWriter.isSupported(buildImage(BufferedImage.TYPE_BYTE_BINARY)));
+        assertFalse(ParallelPNGWriter.isSupported(buildImage(BufferedImage.TYPE_USHORT_GRAY)));
+    }
+
+    @Test
+    public void testAdlerCombine() {
+        byte[] data = new byte[100000];
+        new Random(0).nextBytes(data);
+        Adler32 whole = new Adler32();
+        whole.update(data);
+        Adler32 first = new Adler32();
+        first.update(data, 0, 70000);
+        Adler32 second = new Adler32();
+        second.update(data, 70000, 30000);
+        assertEquals(
+                whole.getValue(),
+                ParallelPNGWriter.adler32Combine(first.getValue(), second.getValue(), 30000));
+    }
+}